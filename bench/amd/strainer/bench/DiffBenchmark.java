@@ -0,0 +1,150 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import amd.strainer.algs.Util;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReadStartComparator;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.Strain;
+
+/**
+ * Times the diff comparisons the strainers and the display spend most of their time in:
+ * Util.countDiffsBetweenSequences() on overlapping reads and the merging of read diffs 
+ * into strain diffs (StrainAlignment.calculateDiffs()).
+ *
+ * @author jmeppley
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiffBenchmark {
+	@Param({"20000"})
+	public int referenceLength;
+
+	@Param({"2000"})
+	public int readCount;
+
+	@Param({"250","1000"})
+	public int readLength;
+
+	@Param({"0.001","0.01","0.05"})
+	public double snpDensity;
+
+	@Param({"4"})
+	public int strainCount;
+
+	// each read and the next read (by start position) that overlaps it
+	private Read [] mLeft = null;
+	private Read [] mRight = null;
+
+	// one strain for each variant, holding every read sampled from it
+	private Strain [] mStrains = null;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		SyntheticData data = new SyntheticData(referenceLength,readCount,readLength,snpDensity,strainCount);
+		ReferenceSequence refSeq = data.generate(1);
+
+		Read [] reads = refSeq.reads.values().toArray(new Read [refSeq.reads.size()]);
+		Arrays.sort(reads,ReadStartComparator.getReadStartComparator());
+		List<Read> left = new ArrayList<Read>();
+		List<Read> right = new ArrayList<Read>();
+		for (int i = 0; i + 1 < reads.length; i++) {
+			if (reads[i+1].getStart()<=reads[i].getEnd()) {
+				left.add(reads[i]);
+				right.add(reads[i+1]);
+			}
+		}
+		mLeft = left.toArray(new Read [left.size()]);
+		mRight = right.toArray(new Read [right.size()]);
+
+		// (this moves the reads out of their single read strains)
+		List<List<Read>> readsByStrain = data.getReadsByStrain();
+		mStrains = new Strain [readsByStrain.size()];
+		for (int s = 0; s < mStrains.length; s++) {
+			mStrains[s] = new Strain();
+			mStrains[s].setId(s+1);
+			for (Read read : readsByStrain.get(s)) {
+				mStrains[s].putRead(read.getIdInteger(),read);
+			}
+		}
+	}
+
+	@Benchmark
+	public int countDiffsBetweenSequences() {
+		int total = 0;
+		for (int i = 0; i < mLeft.length; i++) {
+			total += Util.countDiffsBetweenSequences(mLeft[i],mRight[i],mRight[i].getStart(),mLeft[i].getEnd());
+		}
+		return total;
+	}
+
+	@Benchmark
+	public int calculateStrainDiffs() {
+		int total = 0;
+		for (Strain strain : mStrains) {
+			// a new StrainAlignment recalculates its diffs the first time they are asked for
+			strain.setAlignmentFromReads();
+			total += strain.getAlignment().getDiffs().size();
+		}
+		return total;
+	}
+}
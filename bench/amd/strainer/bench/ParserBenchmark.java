@@ -0,0 +1,188 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.biojava.bio.program.sax.SAMSAXParser;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import amd.strainer.display.actions.GetReferenceFromFileTask;
+import amd.strainer.file.AceFileReader;
+import amd.strainer.file.BlastEventHandler;
+import amd.strainer.file.CAFFileReader;
+import amd.strainer.file.ReadsLoader;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * Times loading the same synthetic assembly from ACE, CAF and SAM files. The files are
+ * written to the temp directory once per trial.
+ * <P>
+ * Results are in files per second, with the "megabytes" counter giving the input rate in MB/s.
+ * The ACE and CAF readers are run with and without memory mapping. parseSamLegacy runs the SAM
+ * file through the old SAMSAXParser event layer for comparison with the direct SAMFileReader.
+ *
+ * @author jmeppley
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+	@Param({"100000"})
+	public int referenceLength;
+
+	@Param({"1000","10000"})
+	public int readCount;
+
+	@Param({"250"})
+	public int readLength;
+
+	@Param({"0.01"})
+	public double snpDensity;
+
+	@Param({"4"})
+	public int strainCount;
+
+	@Param({"true","false"})
+	public boolean memoryMapped;
+
+	/**
+	 * Counts the megabytes parsed so JMH can report MB/s
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Bytes {
+		public double megabytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megabytes = 0;
+		}
+
+		void add(File pFile) {
+			megabytes += pFile.length() / 1e6;
+		}
+	}
+
+	private SyntheticData mData = null;
+	private File mAceFile = null;
+	private File mCafFile = null;
+	private File mSamFile = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mData = new SyntheticData(referenceLength,readCount,readLength,snpDensity,strainCount);
+		mData.generate(1);
+
+		mAceFile = File.createTempFile("strainer-bench",".ace");
+		mData.writeAce(mAceFile);
+		mCafFile = File.createTempFile("strainer-bench",".caf");
+		mData.writeCaf(mCafFile);
+		mSamFile = File.createTempFile("strainer-bench",".sam");
+		mData.writeSam(mSamFile);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mAceFile.delete();
+		mCafFile.delete();
+		mSamFile.delete();
+	}
+
+	@Benchmark
+	public ReferenceSequence parseAce(Bytes pBytes) throws IOException {
+		AceFileReader reader = new AceFileReader(mAceFile);
+		reader.setMemoryMapped(memoryMapped);
+		pBytes.add(mAceFile);
+		return reader.getContigIterator().next();
+	}
+
+	@Benchmark
+	public ReferenceSequence parseCaf(Bytes pBytes) throws IOException {
+		CAFFileReader reader = new CAFFileReader(mCafFile);
+		reader.setMemoryMapped(memoryMapped);
+		pBytes.add(mCafFile);
+		return reader.getContigIterator().next();
+	}
+
+	@Benchmark
+	public ReferenceSequence parseSam(Bytes pBytes) throws SAXException, IOException {
+		pBytes.add(mSamFile);
+		ReferenceSequence refSeq = mData.createEmptyReference();
+		ReadsLoader.loadRefSeqReadAlignmentsFromFile(mSamFile,refSeq,GetReferenceFromFileTask.SAM,0,Integer.MAX_VALUE);
+		return refSeq;
+	}
+
+	@Benchmark
+	public ReferenceSequence parseSamLegacy(Bytes pBytes) throws SAXException, IOException {
+		pBytes.add(mSamFile);
+		ReferenceSequence refSeq = mData.createEmptyReference();
+		SAMSAXParser parser = new SAMSAXParser();
+		parser.setContentHandler(new BlastEventHandler(refSeq,0,Integer.MAX_VALUE,null,null));
+		InputStream is = new FileInputStream(mSamFile);
+		try {
+			parser.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return refSeq;
+	}
+}
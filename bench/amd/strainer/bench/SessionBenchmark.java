@@ -0,0 +1,144 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import amd.strainer.file.ReadsLoader;
+import amd.strainer.file.StrainSessionFile;
+import amd.strainer.file.Util;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * Times saving and loading strains as Strainer XML and as a binary session
+ * file (with and without compressed blocks).
+ *
+ * @author jmeppley
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SessionBenchmark {
+	@Param({"200000"})
+	public int referenceLength;
+
+	@Param({"10000","100000"})
+	public int readCount;
+
+	@Param({"400"})
+	public int readLength;
+
+	@Param({"0.01"})
+	public double snpDensity;
+
+	@Param({"5"})
+	public int strainCount;
+
+	@Param({"true","false"})
+	public boolean compress;
+
+	private SyntheticData mData = null;
+	private ReferenceSequence mRefSeq = null;
+	private File mXmlFile = null;
+	private File mSessionFile = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mData = new SyntheticData(referenceLength,readCount,readLength,snpDensity,strainCount);
+		mRefSeq = mData.generate(1);
+
+		mXmlFile = File.createTempFile("strainer-bench",".xml");
+		Util.writeStrainsToXML(mRefSeq,mXmlFile,null,true);
+		mSessionFile = File.createTempFile("strainer-bench",StrainSessionFile.EXTENSION);
+		StrainSessionFile.write(mRefSeq,mSessionFile,null,compress);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mXmlFile.delete();
+		mSessionFile.delete();
+	}
+
+	@Benchmark
+	public File saveXml() throws IOException {
+		Util.writeStrainsToXML(mRefSeq,mXmlFile,null,true);
+		return mXmlFile;
+	}
+
+	@Benchmark
+	public File saveSession() throws IOException {
+		StrainSessionFile.write(mRefSeq,mSessionFile,null,compress);
+		return mSessionFile;
+	}
+
+	@Benchmark
+	public ReferenceSequence loadXml() throws IOException, SAXException, ParserConfigurationException {
+		ReferenceSequence refSeq = mData.createEmptyReference();
+		ReadsLoader.addStrainedReadsFromFileToReferenceSequence(refSeq,mXmlFile);
+		return refSeq;
+	}
+
+	@Benchmark
+	public ReferenceSequence loadSession() throws IOException {
+		ReferenceSequence refSeq = mData.createEmptyReference();
+		StrainSessionFile.read(refSeq,mSessionFile,null);
+		return refSeq;
+	}
+}
@@ -0,0 +1,143 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import amd.strainer.display.util.Stacker;
+import amd.strainer.objects.AlignedSequenceLengthComparator;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.Strain;
+import amd.strainer.test.LegacyStacker;
+
+/**
+ * Times the row placement done each time the reference sequence display is laid out: the reads 
+ * within a strain (sorted by length, as in the default display settings) and the strains on the 
+ * canvas. The *Legacy methods time the old exception-driven placement in LegacyStacker on the
+ * same data.
+ *
+ * @author jmeppley
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StackerBenchmark {
+	@Param({"50000"})
+	public int referenceLength;
+
+	@Param({"1000","10000"})
+	public int readCount;
+
+	@Param({"250"})
+	public int readLength;
+
+	@Param({"0.01"})
+	public double snpDensity;
+
+	@Param({"4"})
+	public int strainCount;
+
+	private List<Read> mReads = null;
+	private List<Strain> mStrains = null;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		SyntheticData data = new SyntheticData(referenceLength,readCount,readLength,snpDensity,strainCount);
+		ReferenceSequence refSeq = data.generate(1);
+
+		mReads = new ArrayList<Read>(refSeq.reads.values());
+		Collections.sort(mReads,AlignedSequenceLengthComparator.getAlignedSequenceLengthComparator());
+
+		// every read is still in its own strain
+		mStrains = new ArrayList<Strain>(refSeq.strains.values());
+		for (Strain strain : mStrains) {
+			strain.initializeGraphics();
+		}
+	}
+
+	@Benchmark
+	public int stackReads() {
+		return Stacker.stackPositions(mReads);
+	}
+
+	@Benchmark
+	public int stackReadsLegacy() {
+		return LegacyStacker.stackPositions(mReads);
+	}
+
+	@Benchmark
+	public int stackReadsStrictly() {
+		return Stacker.stackPositionsStrictly(mReads);
+	}
+
+	@Benchmark
+	public int stackReadsStrictlyLegacy() {
+		return LegacyStacker.stackPositionsStrictly(mReads);
+	}
+
+	@Benchmark
+	public int stackStrains() {
+		return Stacker.stackPositions(mStrains);
+	}
+
+	@Benchmark
+	public int stackStrainsLegacy() {
+		return LegacyStacker.stackPositions(mStrains);
+	}
+}
@@ -0,0 +1,115 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import amd.strainer.algs.Config;
+import amd.strainer.algs.SegmentStrainer;
+import amd.strainer.algs.SegmentStrainerException;
+import amd.strainer.algs.StrainerResult;
+import amd.strainer.objects.Gene;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * Times getStrains() for each of the automatic strainers on a gene in the middle of a synthetic
+ * reference sequence.
+ * <P>
+ * GeneCrawler's running time grows very quickly with coverage, so the default read count is low.
+ * Use more reads for the other strainers (eg: -p strainer=SegmentLinker -p readCount=1000,3000).
+ *
+ * @author jmeppley
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StrainerBenchmark {
+	@Param({"SimpleGeneCrawler","GeneCrawler","SegmentLinker"})
+	public String strainer;
+
+	@Param({"3000"})
+	public int referenceLength;
+
+	@Param({"300"})
+	public int readCount;
+
+	@Param({"250"})
+	public int readLength;
+
+	@Param({"0.01"})
+	public double snpDensity;
+
+	@Param({"4"})
+	public int strainCount;
+
+	private Class<? extends SegmentStrainer> mStrainerClass = null;
+	private Gene mGene = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws ClassNotFoundException {
+		mStrainerClass = Class.forName("amd.strainer.algs." + strainer).asSubclass(SegmentStrainer.class);
+		SyntheticData data = new SyntheticData(referenceLength,readCount,readLength,snpDensity,strainCount);
+		ReferenceSequence refSeq = data.generate(1);
+		mGene = new Gene(1,refSeq,referenceLength/6,referenceLength/2,true,"synthetic gene");
+	}
+
+	@Benchmark
+	public StrainerResult getStrains() throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException, SegmentStrainerException {
+		SegmentStrainer ss = Config.getSegmentStrainer(mStrainerClass);
+		ss.setSegment(mGene);
+		return ss.getStrains();
+	}
+}
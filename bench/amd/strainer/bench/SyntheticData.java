@@ -0,0 +1,358 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.Difference;
+import amd.strainer.objects.QualifiedDifference;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
+import amd.strainer.objects.Strain;
+
+/**
+ * Generates random ReferenceSequences for the benchmarks.
+ * <P>
+ * A random reference sequence is created along with pStrainCount variants of it (each with SNPs at
+ * about pSnpDensity of the positions). Reads are sampled from random positions of random variants
+ * and are aligned to the reference without gaps. A few bases in each read are set to 'n'. As when
+ * an assembly is loaded, every read starts out in its own Strain.
+ * <P>
+ * The same seed always produces the same data, so results from different runs can be compared.
+ * The generated reads can also be written out as ACE, CAF or SAM files for the parser benchmarks.
+ *
+ * @author jmeppley
+ *
+ */
+public class SyntheticData {
+	private static final char [] BASES = {'a','c','g','t'};
+	private static final double UNKNOWN_DENSITY = 0.002;
+	private static final int LINE_LENGTH = 60;
+
+	private int mReferenceLength;
+	private int mReadCount;
+	private int mReadLength;
+	private double mSnpDensity;
+	private int mStrainCount;
+
+	private ReferenceSequence mReferenceSequence = null;
+	// bases of each read in the orientation of the reference (indexed by read id - 1)
+	private String [] mReadBases = null;
+	// the reads generated from each variant
+	private List<List<Read>> mReadsByStrain = null;
+
+	/**
+	 * @param pReferenceLength number of bases in the reference sequence
+	 * @param pReadCount number of reads
+	 * @param pReadLength number of bases in each read
+	 * @param pSnpDensity fraction of positions where each variant differs from the reference
+	 * @param pStrainCount number of variants to sample reads from
+	 */
+	public SyntheticData(int pReferenceLength, int pReadCount, int pReadLength, double pSnpDensity, int pStrainCount) {
+		if (pReadLength>=pReferenceLength) {
+			throw new IllegalArgumentException("Reads (" + pReadLength + "bp) must be shorter than the reference (" + pReferenceLength + "bp)");
+		}
+		if (pStrainCount<1) {
+			throw new IllegalArgumentException("There must be at least one strain");
+		}
+		mReferenceLength = pReferenceLength;
+		mReadCount = pReadCount;
+		mReadLength = pReadLength;
+		mSnpDensity = pSnpDensity;
+		mStrainCount = pStrainCount;
+	}
+
+	/**
+	 * Creates a new ReferenceSequence with reads. 
+	 * @param pSeed random seed
+	 * @return the reference sequence
+	 */
+	public ReferenceSequence generate(long pSeed) {
+		Random random = new Random(pSeed);
+
+		ReferenceSequence refSeq = new ReferenceSequence();
+		refSeq.setName("Contig1");
+		refSeq.setId(1);
+		char [] refBases = new char [mReferenceLength + 1];
+		for (int i = 1; i <= mReferenceLength; i++) {
+			refBases[i] = BASES[random.nextInt(BASES.length)];
+		}
+		refSeq.setBases(new String(refBases,1,mReferenceLength));
+		refSeq.setLength(mReferenceLength);
+
+		// create variants
+		char [][] variants = new char [mStrainCount][];
+		mReadsByStrain = new ArrayList<List<Read>>(mStrainCount);
+		for (int s = 0; s < mStrainCount; s++) {
+			variants[s] = refBases.clone();
+			for (int i = 1; i <= mReferenceLength; i++) {
+				if (random.nextDouble()<mSnpDensity) {
+					char base;
+					do {
+						base = BASES[random.nextInt(BASES.length)];
+					} while (base==refBases[i]);
+					variants[s][i] = base;
+				}
+			}
+			mReadsByStrain.add(new ArrayList<Read>());
+		}
+
+		// sample reads
+		mReadBases = new String [mReadCount];
+		for (int r = 1; r <= mReadCount; r++) {
+			int variant = random.nextInt(mStrainCount);
+			int start = 1 + random.nextInt(mReferenceLength - mReadLength + 1);
+			int end = start + mReadLength - 1;
+
+			StringBuffer bases = new StringBuffer(mReadLength);
+			List<Difference> diffs = new ArrayList<Difference>();
+			for (int pos = start; pos <= end; pos++) {
+				char base = variants[variant][pos];
+				if (random.nextDouble()<UNKNOWN_DENSITY) {
+					base = 'n';
+				}
+				bases.append(base);
+				if (base!=refBases[pos]) {
+					if (base=='n' || random.nextInt(5)>0) {
+						diffs.add(new Difference(pos,refBases[pos],pos-start+1,base));
+					} else {
+						diffs.add(new QualifiedDifference(pos,refBases[pos],pos-start+1,base,(short)(10+random.nextInt(30))));
+					}
+				}
+			}
+			mReadBases[r-1] = bases.toString();
+
+			Read read = new Read();
+			read.setId(r);
+			read.setName("read" + r);
+			read.setLength(mReadLength);
+			Alignment alignment = new Alignment(
+					new SequenceSegment(refSeq,start,end),
+					new SequenceSegment(read,1,mReadLength),
+					random.nextBoolean(),
+					diffs);
+			read.setAlignment(alignment);
+			refSeq.reads.put(read.getIdInteger(),read);
+			mReadsByStrain.get(variant).add(read);
+
+			Strain strain = new Strain();
+			strain.setId(r);
+			strain.putRead(read.getIdInteger(),read);
+			strain.setAlignmentFromReads();
+			refSeq.putStrain(strain.getIdInteger(),strain);
+		}
+
+		mReferenceSequence = refSeq;
+		return refSeq;
+	}
+
+	/**
+	 * @return the last ReferenceSequence generated (null if generate() hasn't been called)
+	 */
+	public ReferenceSequence getReferenceSequence() {
+		return mReferenceSequence;
+	}
+
+	/**
+	 * @return the reads from the last generated sequence grouped by the variant they were sampled from
+	 */
+	public List<List<Read>> getReadsByStrain() {
+		return mReadsByStrain;
+	}
+
+	/**
+	 * Writes the last generated sequence and its reads as an ACE file with one contig
+	 * @param pFile file to create
+	 * @throws IOException
+	 */
+	public void writeAce(File pFile) throws IOException {
+		ReferenceSequence refSeq = getGenerated();
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(pFile)));
+		try {
+			out.println("AS 1 " + mReadCount);
+			out.println();
+			out.println("CO " + refSeq.getName() + " " + refSeq.getLength() + " " + mReadCount + " 0 U");
+			printSequence(out,refSeq.getBases().toUpperCase());
+			out.println();
+
+			for (int r = 1; r <= mReadCount; r++) {
+				Read read = refSeq.reads.get(r);
+				out.println("AF " + read.getName() + " " + (read.getAlignment().isForward() ? "U" : "C") + " " + read.getStart());
+			}
+			out.println();
+
+			for (int r = 1; r <= mReadCount; r++) {
+				Read read = refSeq.reads.get(r);
+				out.println("RD " + read.getName() + " " + mReadLength + " 0 0");
+				printSequence(out,mReadBases[r-1].toUpperCase());
+				out.println();
+				out.println("QA 1 " + mReadLength + " 1 " + mReadLength);
+				out.println();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the last generated sequence and its reads as a CAF file with one contig
+	 * @param pFile file to create
+	 * @throws IOException
+	 */
+	public void writeCaf(File pFile) throws IOException {
+		ReferenceSequence refSeq = getGenerated();
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(pFile)));
+		try {
+			for (int r = 1; r <= mReadCount; r++) {
+				Read read = refSeq.reads.get(r);
+				out.println("Sequence : " + read.getName());
+				out.println("Is_read");
+				out.println("Template " + read.getName());
+				out.println("Strand " + (read.getAlignment().isForward() ? "Forward" : "Reverse"));
+				out.println("Clipping QUAL 1 " + mReadLength);
+				out.println();
+				out.println("DNA : " + read.getName());
+				// reads are stored in their own orientation
+				String bases = mReadBases[r-1];
+				printSequence(out,read.getAlignment().isForward() ? bases : reverseComplement(bases));
+				out.println();
+			}
+
+			out.println("Sequence : " + refSeq.getName());
+			out.println("Is_contig");
+			for (int r = 1; r <= mReadCount; r++) {
+				Read read = refSeq.reads.get(r);
+				// reversed reads have the contig positions backwards
+				if (read.getAlignment().isForward()) {
+					out.println("Assembled_from " + read.getName() + " " + read.getStart() + " " + read.getEnd() + " 1 " + mReadLength);
+				} else {
+					out.println("Assembled_from " + read.getName() + " " + read.getEnd() + " " + read.getStart() + " 1 " + mReadLength);
+				}
+			}
+			out.println();
+			out.println("DNA : " + refSeq.getName());
+			printSequence(out,refSeq.getBases());
+			out.println();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the reads of the last generated sequence as SAM alignments to it
+	 * @param pFile file to create
+	 * @throws IOException
+	 */
+	public void writeSam(File pFile) throws IOException {
+		ReferenceSequence refSeq = getGenerated();
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(pFile)));
+		try {
+			out.println("@HD\tVN:1.0\tSO:unsorted");
+			out.println("@SQ\tSN:" + refSeq.getName() + "\tLN:" + refSeq.getLength());
+
+			StringBuffer quality = new StringBuffer(mReadLength);
+			for (int i = 0; i < mReadLength; i++) {
+				quality.append('I');
+			}
+
+			for (int r = 1; r <= mReadCount; r++) {
+				Read read = refSeq.reads.get(r);
+				out.println(read.getName() + "\t" 
+						+ (read.getAlignment().isForward() ? 0 : 16) + "\t" 
+						+ refSeq.getName() + "\t" 
+						+ read.getStart() + "\t60\t" 
+						+ mReadLength + "M\t*\t0\t0\t" 
+						+ mReadBases[r-1].toUpperCase() + "\t" 
+						+ quality + "\t" 
+						+ "AS:i:" + (mReadLength - read.getAlignment().getDiffs().size()));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return a ReferenceSequence with the same name and bases as the generated one, but no reads 
+	 * (for loading SAM files into)
+	 */
+	public ReferenceSequence createEmptyReference() {
+		ReferenceSequence refSeq = getGenerated();
+		ReferenceSequence empty = new ReferenceSequence();
+		empty.setName(refSeq.getName());
+		empty.setId(refSeq.getId());
+		empty.setBases(refSeq.getBases());
+		empty.setLength(refSeq.getLength());
+		return empty;
+	}
+
+	private ReferenceSequence getGenerated() {
+		if (mReferenceSequence==null) {
+			throw new IllegalStateException("No data has been generated");
+		}
+		return mReferenceSequence;
+	}
+
+	private static void printSequence(PrintWriter pOut, String pBases) {
+		for (int i = 0; i < pBases.length(); i += LINE_LENGTH) {
+			pOut.println(pBases.substring(i,Math.min(pBases.length(),i+LINE_LENGTH)));
+		}
+	}
+
+	private static String reverseComplement(String pBases) {
+		StringBuffer rc = new StringBuffer(pBases.length());
+		for (int i = pBases.length() - 1; i >= 0; i--) {
+			switch (pBases.charAt(i)) {
+			case 'a': rc.append('t'); break;
+			case 'c': rc.append('g'); break;
+			case 'g': rc.append('c'); break;
+			case 't': rc.append('a'); break;
+			default: rc.append('n');
+			}
+		}
+		return rc.toString();
+	}
+}
@@ -0,0 +1,382 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import jme.tools.misc.CmdLineOptions;
+import jme.tools.misc.CmdLineOptions.CmdLineParsingException;
+import jme.tools.misc.CmdLineOptions.Option;
+import amd.strainer.algs.Config;
+import amd.strainer.algs.ParallelGeneStrainer;
+import amd.strainer.algs.SegmentStrainer;
+import amd.strainer.algs.SegmentStrainerException;
+import amd.strainer.algs.StrainerResult;
+import amd.strainer.display.actions.GetReferenceFromFileTask;
+import amd.strainer.file.QualityData;
+import amd.strainer.file.ReadsLoader;
+import amd.strainer.file.ReferenceSequenceLoader;
+import amd.strainer.objects.Gene;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * Command line (no GUI) program to autostrain the genes of one reference sequence and write the
+ * resulting strains to a FASTA file.
+ * <P>
+ * The reference sequence (and its genes) are read from a FASTA or GenBank file. Reads come from either
+ * a BLAST/SAM/BAM alignment file or a strainer XML or session file. Any gene names given after the options limit straining
+ * to those genes. Algorithm settings are taken from the saved preferences (as set in the GUI) and can be
+ * changed with --settings.
+ * <P>
+ * When it's done, the time taken by each step, the number of genes and reads strained per second, and
+ * the peak heap usage are printed to STDERR.
+ *
+ * @author jmeppley
+ *
+ */
+public class AutoStrainEntry {
+	private static final String PROGRAM_NAME = "AutoStrainEntry";
+	private static final String ARGUMENT_USAGE = "[GENE_NAME_LIST]";
+
+	private static final String DEFAULT_ALGORITHM = "amd.strainer.algs.SimpleGeneCrawler";
+
+	// short names for alignment types
+	private static final Map<String,String> ALIGNMENT_TYPES = new LinkedHashMap<String,String>();
+	static {
+		ALIGNMENT_TYPES.put("reads-db",GetReferenceFromFileTask.BLAST_READS_DB);
+		ALIGNMENT_TYPES.put("reads-query",GetReferenceFromFileTask.BLAST_READS_QUERY);
+		ALIGNMENT_TYPES.put("sam",GetReferenceFromFileTask.SAM);
+		ALIGNMENT_TYPES.put("bam",GetReferenceFromFileTask.BAM);
+	}
+
+	// wall time of each step (in order)
+	private static final Map<String,Long> phaseTimes = new LinkedHashMap<String,Long>();
+	private static long phaseStart = 0;
+
+	private static void startPhase() {
+		phaseStart = System.currentTimeMillis();
+	}
+
+	private static void endPhase(String pName) {
+		phaseTimes.put(pName,Long.valueOf(System.currentTimeMillis() - phaseStart));
+	}
+
+	/**
+	 * Strains genes from the command line. Run with no arguments for usage.
+	 * @param args options and (optionally) a list of gene names
+	 */
+	public static void main(String[] args) {
+		Set<Option> opts = new HashSet<Option>();
+
+		Option refFileOption = new Option("ref-file", 'r', true,
+				"the reference sequence (FASTA or GenBank)");
+		Option refTypeOption = new Option("ref-type", 't', true,
+				"the format of the reference file: FASTA or GENBANK (default)");
+		Option annotationsOption = new Option("annotations", 'n', true,
+				"comma separated GenBank feature types to use as genes (default: CDS)");
+		Option genePrefixOption = new Option("gene-prefix", 'p', true,
+				"rename genes using this prefix and a number");
+		Option readsFileOption = new Option("reads-file", 'a', true,
+				"file of read alignments to the reference");
+		Option alignmentTypeOption = new Option("alignment-type", 'y', true,
+				"type of reads file: reads-query (default), reads-db, sam, or bam");
+		Option minCloneOption = new Option("min-clone", 'm', true,
+				"smallest expected insert size (default 0)");
+		Option maxCloneOption = new Option("max-clone", 'x', true,
+				"largest expected insert size (default 10000)");
+		Option strainsFileOption = new Option("strains-file", 's', true,
+				"a strainer XML or session file (used instead of a reads file)");
+		Option qualsFileOption = new Option("qual-file", 'q', true,
+				"the list of quality data");
+		Option algorithmOption = new Option("algorithm", 'g', true,
+				"straining algorithm class (default: SimpleGeneCrawler)");
+		Option settingsOption = new Option("settings", 'S', true,
+				"semicolon separated list of NAME=VALUE algorithm settings");
+		Option outputFileOption = new Option("out-file", 'o', true,
+				"FASTA file to write strains to (default: STDOUT)");
+		Option threadsOption = new Option("threads", 'j', true,
+				"number of genes to strain at once (default: one per processor)");
+		Option diffCacheOption = new Option("diff-cache", 'c', true,
+				"leave the diffs of a session file on disk and keep about this many in memory");
+
+		opts.add(refFileOption);
+		opts.add(refTypeOption);
+		opts.add(annotationsOption);
+		opts.add(genePrefixOption);
+		opts.add(readsFileOption);
+		opts.add(alignmentTypeOption);
+		opts.add(minCloneOption);
+		opts.add(maxCloneOption);
+		opts.add(strainsFileOption);
+		opts.add(qualsFileOption);
+		opts.add(algorithmOption);
+		opts.add(settingsOption);
+		opts.add(outputFileOption);
+		opts.add(threadsOption);
+		opts.add(diffCacheOption);
+
+		CmdLineOptions options = new CmdLineOptions(PROGRAM_NAME, opts,
+				ARGUMENT_USAGE);
+
+		// parse input
+		String [] geneNames = null;
+		try {
+			geneNames = options.parse(args);
+
+			if (refFileOption.getValue()==null) {
+				throw options.new CmdLineParsingException("A reference sequence file is required");
+			}
+			if ((readsFileOption.getValue()==null) == (strainsFileOption.getValue()==null)) {
+				throw options.new CmdLineParsingException("Use exactly one of --reads-file and --strains-file");
+			}
+		} catch (CmdLineParsingException e1) {
+			System.err.println(e1.getMessage());
+			System.err.println(options.getUsageString());
+			System.exit(-1);
+		}
+
+		try {
+			// set up algorithm
+			Class<? extends SegmentStrainer> algClass = getAlgorithm(algorithmOption.getValue());
+			if (settingsOption.getValue()!=null) {
+				applySettings(settingsOption.getValue());
+			}
+
+			//////
+			// load the data
+			startPhase();
+			String refType = refTypeOption.getValue()==null ? ReferenceSequenceLoader.GENBANK : refTypeOption.getValue();
+			GlobalSettings.setAnnotationList(GlobalSettings.parseCommaList(
+					annotationsOption.getValue()==null ? "CDS" : annotationsOption.getValue()));
+			if (genePrefixOption.getValue()!=null) {
+				GlobalSettings.setGenePrefix(genePrefixOption.getValue());
+			}
+			if (diffCacheOption.getValue()!=null) {
+				GlobalSettings.setDiffCacheSize(Integer.parseInt(diffCacheOption.getValue()));
+			}
+			ReferenceSequence refSeq = ReferenceSequenceLoader.getRefSeqFromSequenceFile(
+					refFileOption.getValue(), refType);
+			endPhase("load reference");
+
+			startPhase();
+			if (readsFileOption.getValue()!=null) {
+				String alignmentType = ALIGNMENT_TYPES.get(
+						alignmentTypeOption.getValue()==null ? "reads-query" : alignmentTypeOption.getValue());
+				if (alignmentType==null) {
+					throw new IllegalArgumentException("Unknown alignment type: " + alignmentTypeOption.getValue());
+				}
+				int minClone = minCloneOption.getValue()==null ? 0 : Integer.parseInt(minCloneOption.getValue());
+				int maxClone = maxCloneOption.getValue()==null ? 10000 : Integer.parseInt(maxCloneOption.getValue());
+				ReadsLoader.addReadsFromFileToReferenceSequence(refSeq, readsFileOption.getValue(),
+						alignmentType, minClone, maxClone);
+			} else {
+				ReadsLoader.addStrainedReadsFromFileToReferenceSequence(refSeq,
+						new File(strainsFileOption.getValue()));
+			}
+			endPhase("load reads");
+
+			if (qualsFileOption.getValue()!=null) {
+				startPhase();
+				QualityData.loadQualityData(refSeq, new File(qualsFileOption.getValue()), null, null);
+				endPhase("load quality");
+			}
+
+			List<Gene> genes = getGenes(refSeq, geneNames);
+			System.err.println("Straining " + genes.size() + " genes with " +
+					refSeq.reads.size() + " reads using " + algClass.getName());
+
+			//////
+			// strain
+			startPhase();
+			PrintWriter fasta;
+			if (outputFileOption.getValue()==null) {
+				fasta = new PrintWriter(new OutputStreamWriter(System.out));
+			} else {
+				fasta = new PrintWriter(new FileWriter(outputFileOption.getValue()));
+			}
+
+			ParallelGeneStrainer strainer;
+			if (threadsOption.getValue()==null) {
+				strainer = new ParallelGeneStrainer(algClass);
+			} else {
+				strainer = new ParallelGeneStrainer(algClass,Integer.parseInt(threadsOption.getValue()));
+			}
+			List<StrainerResult> results = strainer.strainGenes(genes, fasta, null);
+			fasta.close();
+			endPhase("strain and write");
+
+			for (Map.Entry<Gene,SegmentStrainerException> failure : strainer.getFailures().entrySet()) {
+				System.err.println("Can't strain gene " + failure.getKey().getName() + ": " + failure.getValue().toString());
+			}
+
+			printStatistics(refSeq, genes, results);
+
+		} catch (Exception e) {
+			System.err.println("Error: " + e.toString());
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/*
+	 * Find the requested algorithm (by class name or simple class name) in Config's algorithm list
+	 */
+	private static Class<? extends SegmentStrainer> getAlgorithm(String pName) throws ClassNotFoundException {
+		if (pName==null) {
+			pName = DEFAULT_ALGORITHM;
+		}
+
+		for (Class<?> alg : Config.getAlgorithmList()) {
+			if (alg.getName().equals(pName) || alg.getSimpleName().equals(pName)) {
+				return alg.asSubclass(SegmentStrainer.class);
+			}
+		}
+
+		StringBuffer available = new StringBuffer();
+		for (Class<?> alg : Config.getAlgorithmList()) {
+			available.append(" ").append(alg.getSimpleName());
+		}
+		throw new ClassNotFoundException("Unknown algorithm: " + pName + ". Available algorithms:" + available);
+	}
+
+	/*
+	 * Parse NAME=VALUE;NAME=VALUE... into the settings
+	 */
+	private static void applySettings(String pSettings) throws ClassNotFoundException {
+		StringTokenizer st = new StringTokenizer(pSettings,";");
+		while (st.hasMoreTokens()) {
+			String setting = st.nextToken();
+			int eq = setting.indexOf('=');
+			if (eq<=0) {
+				throw new IllegalArgumentException("Setting should be NAME=VALUE: " + setting);
+			}
+			String name = setting.substring(0,eq).trim();
+			if (!Config.getConfig().getSettings().containsKey(name)) {
+				throw new IllegalArgumentException("Unknown setting: " + name);
+			}
+			Config.setOptionFromString(name,setting.substring(eq+1).trim());
+		}
+	}
+
+	/*
+	 * Get the named genes (or all genes) sorted by position
+	 */
+	private static List<Gene> getGenes(ReferenceSequence pRefSeq, String [] pNames) {
+		List<Gene> genes = new ArrayList<Gene>();
+		if (pNames.length==0) {
+			genes.addAll(pRefSeq.genes.values());
+		} else {
+			for (int i = 0; i < pNames.length; i++) {
+				Gene gene = pRefSeq.genes.get(pNames[i]);
+				if (gene==null) {
+					throw new IllegalArgumentException("No gene named " + pNames[i] + " in " + pRefSeq.getName());
+				}
+				genes.add(gene);
+			}
+		}
+
+		Collections.sort(genes, new Comparator<Gene>() {
+			public int compare(Gene g1, Gene g2) {
+				if (g1.getStart() != g2.getStart()) {
+					return g1.getStart() - g2.getStart();
+				}
+				return g1.getName().compareTo(g2.getName());
+			}
+		});
+		return genes;
+	}
+
+	private static void printStatistics(ReferenceSequence pRefSeq, List<Gene> pGenes, List<StrainerResult> pResults) {
+		long readCount = 0;
+		for (Gene gene : pGenes) {
+			readCount += pRefSeq.readsOverlapping(gene.getStart(),gene.getEnd()).size();
+		}
+		int strainCount = 0;
+		for (StrainerResult sr : pResults) {
+			if (sr!=null) {
+				strainCount += sr.size();
+			}
+		}
+
+		long total = 0;
+		System.err.println("Time:");
+		for (Map.Entry<String,Long> phase : phaseTimes.entrySet()) {
+			System.err.println("  " + phase.getKey() + ": " + phase.getValue() + " ms");
+			total += phase.getValue().longValue();
+		}
+		System.err.println("  total: " + total + " ms");
+
+		double strainSeconds = Math.max(1,phaseTimes.get("strain and write").longValue()) / 1000.0;
+		System.err.println("Genes: " + pGenes.size() + " (" +
+				format(pGenes.size() / strainSeconds) + " genes/sec)");
+		System.err.println("Reads: " + readCount + " (" +
+				format(readCount / strainSeconds) + " reads/sec, counted once per gene)");
+		System.err.println("Strains: " + strainCount);
+		System.err.println("Peak heap: " + (getPeakHeap() / (1024 * 1024)) + " MB");
+	}
+
+	private static String format(double pValue) {
+		return String.valueOf(Math.round(pValue * 10) / 10.0);
+	}
+
+	// sum of the peak usage of each heap memory pool
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType()==MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
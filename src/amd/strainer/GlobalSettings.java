@@ -79,6 +79,21 @@ public class GlobalSettings {
 		genePrefix = pGenePrefix;
 	}
 
+	/*
+	 * If positive, reads loaded from strain session files leave their diffs in
+	 * the file and about this many diffs are cached in memory at a time (see
+	 * StrainSessionFile). Otherwise all diffs are loaded.
+	 */
+	private static int diffCacheSize = 0;
+
+	public static int getDiffCacheSize() {
+		return diffCacheSize;
+	}
+
+	public static void setDiffCacheSize(int pDiffCacheSize) {
+		diffCacheSize = pDiffCacheSize;
+	}
+
 	private static Preferences prefs;
 
 	private static void checkPrefs() {
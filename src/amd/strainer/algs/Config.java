@@ -41,6 +41,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -52,6 +53,11 @@ import java.util.prefs.Preferences;
 
 /**
  * Singelton class that holds configuration options for auto-straining in a HashMap. Settings are defined by individual algorithms.
+ * <P>
+ * The settings HashMap holds the global (user edited) values. Algorithms read their options through 
+ * getOptions(), which returns the immutable run options set for the current thread with setRunOptions(), or
+ * the global settings if there are none. This lets a strainer (or a pool of strainers running in parallel)
+ * use its own values without changing the settings seen by anyone else.
  * 
  * @author John Eppley
  */
@@ -70,7 +76,7 @@ public class Config {
 	/**
 	 * @return The HashMap containting setting name:value pairs.
 	 */
-	public HashMap<String,Object> getSettings() { 
+	public synchronized HashMap<String,Object> getSettings() { 
 		if (settings==null) {
 			settings = new HashMap<String,Object>();
 			
@@ -123,12 +129,75 @@ public class Config {
 		}
 	}
 	
+	/////////////
+	// per-run options
+	/////////////
+	private static final ThreadLocal<Map<String,Object>> runOptions = new ThreadLocal<Map<String,Object>>();
+
+	/**
+	 * @return the options to use for straining in the current thread: the run options if any have been set, 
+	 * otherwise the global settings HashMap
+	 */
+	public static Map<String,Object> getOptions() {
+		Map<String,Object> options = runOptions.get();
+		if (options==null) {
+			return getConfig().getSettings();
+		}
+		return options;
+	}
+	
+	/**
+	 * Copy the current options (see getOptions()) into an unmodifiable Map
+	 * @param pOverrides option values to replace in the copy (may be null)
+	 * @return an immutable set of options suitable for setRunOptions()
+	 */
+	public static Map<String,Object> snapshotOptions(Map<String,Object> pOverrides) {
+		Map<String,Object> options = getOptions();
+		HashMap<String,Object> copy;
+		synchronized (getConfig()) {
+			copy = new HashMap<String,Object>(options);
+		}
+		if (pOverrides!=null) {
+			copy.putAll(pOverrides);
+		}
+		return Collections.unmodifiableMap(copy);
+	}
+	
+	/**
+	 * Set the options returned by getOptions() in the current thread. Strainers read their options 
+	 * when they are created, so this should be called before creating them.
+	 * @param pOptions the options to use (see snapshotOptions()) or null to go back to the global settings
+	 * @return the previous run options for this thread (or null), so they can be restored
+	 */
+	public static Map<String,Object> setRunOptions(Map<String,Object> pOptions) {
+		Map<String,Object> previous = runOptions.get();
+		if (pOptions==null) {
+			runOptions.remove();
+		} else {
+			runOptions.set(pOptions);
+		}
+		return previous;
+	}
+	
+	/**
+	 * Store the value an algorithm used for a missing (or unreadable) option in the global settings. Run 
+	 * options are never changed.
+	 * @param pSetting the name of the option
+	 * @param pValue the default value
+	 */
+	public static void setDefaultOption(String pSetting, Object pValue) {
+		Config config = getConfig();
+		synchronized (config) {
+			config.getSettings().put(pSetting,pValue);
+		}
+	}
+	
 	// make singleton
 	private static Config instance = null;
 	
 	private Config() {}
 	
-	public static Config getConfig() {
+	public static synchronized Config getConfig() {
 		if (instance==null) {
 			instance = new Config();
 		}
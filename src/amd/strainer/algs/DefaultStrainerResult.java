@@ -37,10 +37,8 @@
 
 package amd.strainer.algs;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
@@ -91,12 +89,12 @@ public class DefaultStrainerResult implements StrainerResult {
 		// should we compress strains to AA sequences (it means re-checking for uniqueness)
 		//  the setting is global and it would be faster to require the algorithms to deal with this, but
 		//  this set up is more flexible and doesn't slow things down TOO much
-		boolean convertToAA = ((Boolean)Config.getConfig().getSettings().get(Config.CONVERT_TO_AA)).booleanValue();
-		Map<String,Strain> usedSeqs = new HashMap<String,Strain>();
+		boolean convertToAA = ((Boolean)Config.getOptions().get(Config.CONVERT_TO_AA)).booleanValue();
+		WildcardSequenceIndex<Strain> usedSeqs = new WildcardSequenceIndex<Strain>();
 		Set<Strain> duplicates = new HashSet<Strain>();
 
 		// do we want to fill in gaps using the ReferenceSequence
-		boolean fillFromComposite = ((Boolean)Config.getConfig().getSettings().get(Config.FILL_FROM_COMPOSITE)).booleanValue();
+		boolean fillFromComposite = ((Boolean)Config.getOptions().get(Config.FILL_FROM_COMPOSITE)).booleanValue();
 
 		// figure out if we need to reverse complement
 		boolean direction = true;
@@ -115,14 +113,15 @@ public class DefaultStrainerResult implements StrainerResult {
 					// convert bases to sequence of Amino Acids
 					bases = Util.getProteinSequence(bases,direction);
 
-					Strain dup = findMatchingSequence(usedSeqs,bases);
+					// look for an earlier strain with the same sequence (X matches anything)
+					Strain dup = usedSeqs.findMatch(bases);
 					
 					if (dup!=null) {
 						duplicates.add(strain);
 						// adjust size of first strain we found with this seq
 						dup.putAllReads(strain);
 					} else {
-						usedSeqs.put(bases,strain);
+						usedSeqs.add(bases,strain);
 					}
 				} catch (BioException ex) {
 					System.err.println("error converting to AA: " + ex.toString());
@@ -141,32 +140,6 @@ public class DefaultStrainerResult implements StrainerResult {
 		}
 	}
 	
-	private Strain findMatchingSequence(Map<String, Strain> usedSeqs, String bases) {
-		for (Map.Entry<String,Strain> seqPair : usedSeqs.entrySet()) {
-			String seq = seqPair.getKey();
-			
-			if (seq.length() != bases.length()) {
-				// different lengths ==> different
-				continue;
-			}
-			
-			for (int i=0; i<seq.length(); i++) {
-				char schar = Character.toUpperCase(seq.charAt(i));
-				char bchar = Character.toUpperCase(bases.charAt(i));
-				if (schar!=bchar && schar!='X' && bchar!='X') {
-					// bases don't match
-					continue;
-				}
-			}
-			
-			// everything is the same
-			return seqPair.getValue();
-		}
-				
-		// no other strains matched
-		return null;
-	}
-		
 	/**
 	 * Returns the fsata header identifying the given strain.  Looks like
 	 * <pre>&gt;REFERENCESEQUENCE_GENE_INDEX LENGTH STRAIN_SIZE NUM_DIFFS</pre>
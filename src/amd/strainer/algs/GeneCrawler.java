@@ -44,11 +44,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import amd.strainer.objects.AlignedSequence;
 import amd.strainer.objects.Alignment;
 import amd.strainer.objects.Difference;
+import amd.strainer.objects.PackedDiffList;
 import amd.strainer.objects.Read;
 import amd.strainer.objects.ReadEndComparator;
 import amd.strainer.objects.ReadHolder;
@@ -67,6 +69,12 @@ import amd.strainer.objects.Strain;
  * that span the given segment and determining which of these combinations
  * represent unique sequences. If a unique pattern cannot be extened accross the Gene span,
  * it is extended using the closest match from the variants which do span the gene.
+ * <p>
+ * An optional limit on the number of chains extended through each read bounds the running time 
+ * on SNP dense segments (extra chains are kept as incomplete strains and filled in as above).
+ * With a limit set, chains that reach the same read (from the same previous read, with the same 
+ * reads ruled out) with identical diffs are also merged, and only the first one is extended.
+ * With no limit, every chain is extended as before.
  * 
  * @author J M Eppley
  */
@@ -89,6 +97,7 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 			mOptionsHash = new HashMap<String,Object>();
 			mOptionsHash.put(MINIMUM_OVERLAP,new Integer(mMinimumOverlap));
 			mOptionsHash.put(COMPLETION_DIFF,new Double(mCompletionDiff));
+			mOptionsHash.put(MAXIMUM_PATHS_PER_READ,Integer.valueOf(mMaximumPathsPerRead));
 			mOptionsHash.put(Config.FILL_FROM_COMPOSITE,Boolean.FALSE);
 			mOptionsHash.put(Config.CONVERT_TO_AA,Boolean.TRUE);
 		}
@@ -100,7 +109,7 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 	 */
 	private void readSettings() {
 		// Get the settings hash map
-		HashMap<String,Object> settings =  Config.getConfig().getSettings();  
+		Map<String,Object> settings = Config.getOptions();
 		if (settings==null) {
 			return;
 		}
@@ -112,7 +121,7 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		if (value!=null) {
 			setKeepAllReads(value);
 		} else {
-			settings.put(Config.KEEP_ALL_READS,new Boolean(mKeepAllReads));
+			Config.setDefaultOption(Config.KEEP_ALL_READS,new Boolean(mKeepAllReads));
 		}
 		
 		// ignore regions outside of segment when comparing reads (or not)
@@ -120,7 +129,7 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		if (value!=null) {
 			setRestrictMatchesToSegment(value);
 		} else {
-			settings.put(Config.RESTRICT_TO_SEGMENT,new Boolean(mRestrictMatchesToSegment));
+			Config.setDefaultOption(Config.RESTRICT_TO_SEGMENT,new Boolean(mRestrictMatchesToSegment));
 		}
 
 		// how much do reads have to overlap by?
@@ -128,7 +137,7 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		if (value!=null) {
 			setMinimumOverlap(value);
 		} else {
-			settings.put(MINIMUM_OVERLAP,new Integer(mMinimumOverlap));
+			Config.setDefaultOption(MINIMUM_OVERLAP,new Integer(mMinimumOverlap));
 		}
 
 		// how much difference between overlapping reads will be tolerated?
@@ -136,7 +145,15 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		if (value!=null) {
 			setCompletionDiff(value);
 		} else {
-			settings.put(COMPLETION_DIFF,new Double(mCompletionDiff));
+			Config.setDefaultOption(COMPLETION_DIFF,new Double(mCompletionDiff));
+		}
+
+		// how many chains can be extended through each read? (0 for no limit)
+		value = settings.get(MAXIMUM_PATHS_PER_READ);
+		if (value!=null) {
+			setMaximumPathsPerRead(value);
+		} else {
+			Config.setDefaultOption(MAXIMUM_PATHS_PER_READ,Integer.valueOf(mMaximumPathsPerRead));
 		}
 	}
 
@@ -148,6 +165,10 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 	 * Constant used to indicate the completionDiff option in the settings hash map
 	 */
 	public static final String COMPLETION_DIFF = "Maximum percent divergence of variants used to fill in gaps.";
+	/**
+	 * Constant used to indicate the maximumPathsPerRead option in the settings hash map
+	 */
+	public static final String MAXIMUM_PATHS_PER_READ = "Maximum chains extended through each read (0 for no limit)";
 
 	private boolean mRestrictMatchesToSegment = true;
 	/**
@@ -176,6 +197,34 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		mCompletionDiff = Double.parseDouble(pValue.toString());
 	}
 	
+	private int mMaximumPathsPerRead = 0;
+	private void setMaximumPathsPerRead(Object pValue) {
+		mMaximumPathsPerRead = Integer.parseInt(pValue.toString());
+	}
+	
+	// chains that have already been extended (see PathKey)
+	private Set<PathKey> mExtendedPaths = new HashSet<PathKey>();
+	// reads currently flagged with setDontUse(true)
+	private Set<GCRead> mDontUseReads = new HashSet<GCRead>();
+	
+	private int mPathsExplored = 0;
+	/**
+	 * @return the number of chains of reads extended while finding strains
+	 */
+	public int getPathsExplored() { return mPathsExplored; }
+	
+	private int mPathsMerged = 0;
+	/**
+	 * @return the number of chains not extended because an identical chain already was
+	 */
+	public int getPathsMerged() { return mPathsMerged; }
+
+	private int mPathsCut = 0;
+	/**
+	 * @return the number of chains ended early because of the maximum paths per read setting
+	 */
+	public int getPathsCut() { return mPathsCut; }
+	
 	/**
 	 * Variable to hold final result
 	 */
@@ -260,6 +309,10 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 			mTask.setLengthOfTask(0);
 		}
 		
+		// the merged paths aren't needed any more
+		mExtendedPaths.clear();
+		mDontUseReads.clear();
+		
 		// extend incomplete strains 
 		extendIncompleteStrains(incompleteStrains,completeStrains);
 		
@@ -286,28 +339,25 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 				if (intersectsEndOfSegment(read)) {
 					r.intersectsEndOfSegment = true;
 				}
-				// find all reads intersecting this read on the right
-				findIntersectionsOnRight(r,reads);
-				
 				// add this read to list
 				reads.add(r);
 			}
 		}
+
+		// find all reads intersecting each read on the right
+		findIntersectionsOnRight(reads);
 		return reads;
 	}
 	
-	private void findIntersectionsOnRight(GCRead pRead, Collection<GCRead> pReads) {
-		for (GCRead read : pReads) {
-			if (intersectsEndOfAlignedSequence(pRead, read)) {
-				if (compareAlignedSequences(read, pRead)) {
-					read.intersections.add(pRead);
-				}
-			} else if (intersectsEndOfAlignedSequence(read, pRead)) {
-				if (compareAlignedSequences(pRead, read)) {
-					pRead.intersections.add(read);
-				}
+	private void findIntersectionsOnRight(List<GCRead> pReads) {
+		new IntersectionFinder<GCRead>() {
+			protected boolean isCompatible(GCRead pLeft, GCRead pRight) {
+				return compareAlignedSequences(pLeft, pRight);
 			}
-		}
+			protected void addIntersection(GCRead pLeft, GCRead pRight) {
+				pLeft.intersections.add(pRight);
+			}
+		}.findIntersections(pReads,mMinimumOverlap);
 	}
 	
 	private void sortIntersectionListsByEndPos(Collection<GCRead> pReads) {
@@ -351,8 +401,9 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		}
 		
 		// create strain alignment from copied read diffs
-		SequenceSegment ss = (SequenceSegment) pRead.getAlignment().getSequenceSegment1().clone();
-		pStrain.setAlignment(new Alignment(ss,null,true,diffs));
+		SequenceSegment ss1 = (SequenceSegment) pRead.getAlignment().getSequenceSegment1().clone();
+		SequenceSegment ss2 = new SequenceSegment(pStrain,1,ss1.getLength());
+		pStrain.setAlignment(new Alignment(ss1,ss2,true,diffs));
 	}
 
 	private boolean intersectsEndOfSegment(Read pRead) {
@@ -454,6 +505,8 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		//  it would be redundant to use it as a starting point for 
 		//  future strains, so tag it as used
 		pRead.setUsed(true);
+		pRead.pathCount++;
+		mPathsExplored++;
 		
 		// get list of reads used by pPrevRead that are intersections of pRead
 		//  we don't want to use these to extend this strain, because
@@ -550,6 +603,22 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 					} else {
 						pIncompleteStrains.add(newStrain);
 					}
+				} else if (mMaximumPathsPerRead>0 && !mKeepAllReads 
+						&& !mExtendedPaths.add(new PathKey(newStrain,read,pRead))) {
+					// an equivalent chain has already been extended from here, 
+					//  so this one should only produce duplicate strains
+					//  (unless we're keeping all reads, in which case its reads are still needed).
+					//  The key doesn't capture everything that decides the outcome, so this is 
+					//  only done when a limit is set (and the result is approximate anyway)
+					mPathsMerged++;
+					// later chains look for strains through their reads (see the dontUse case above),
+					//  so list this chain in place of the strains it would have built
+					setStrainForReads(newStrain,newStrain.getReadIterator());
+				} else if (mMaximumPathsPerRead>0 && read.pathCount>=mMaximumPathsPerRead) {
+					// too many chains through this read already, stop here and fill in the rest later
+					mPathsCut++;
+					pIncompleteStrains.add(newStrain);
+					setStrainForReads(newStrain,newStrain.getReadIterator());
 				} else {
 					extendStrainRight(newStrain,read,pRead,pStrains,pIncompleteStrains);
 				}
@@ -587,13 +656,6 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		}
 	}
 	
-	private boolean intersectsEndOfAlignedSequence(AlignedSequence p1, 
-			AlignedSequence p2) {
-		// use strict > (not >=) to prevent read from matching self
-		return (p1.getStart()<=(p2.getEnd()-(mMinimumOverlap-1)) && 
-				p1.getEnd()>p2.getEnd());
-	}
-	
 	private boolean compareAlignedSequences(AlignedSequence p1, 
 			AlignedSequence p2) {
 		int ovStart = Math.max(p2.getStart(), p1.getStart());
@@ -984,7 +1046,21 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 		
 		private boolean dontUse = false;
 		public boolean dontUse() { return dontUse; }
-		public void setDontUse(boolean pDontUse) { dontUse = pDontUse; }
+		public void setDontUse(boolean pDontUse) { 
+			dontUse = pDontUse;
+			if (mMaximumPathsPerRead<=0) {
+				// (only needed for PathKey)
+				return;
+			}
+			if (pDontUse) {
+				mDontUseReads.add(this);
+			} else {
+				mDontUseReads.remove(this);
+			}
+		}
+		
+		// number of chains extended from this read
+		int pathCount = 0;
 		
 		public void close() {
 			setAlignment(null);
@@ -993,4 +1069,67 @@ public class GeneCrawler extends AbstractSegmentStrainer implements SegmentStrai
 			setClone(null);
 		}
 	}
+
+	/**
+	 * Identifies a chain of reads by the main things that decide how it will be extended: its last two 
+	 * reads, where it starts, its diffs, and which reads to the right are flagged as dontUse. Two chains 
+	 * with the same key usually produce the same variants (the used flags and strain lists of the reads 
+	 * also matter), so chains are only merged this way when a limit is set.
+	 */
+	private class PathKey {
+		private final int mReadId;
+		private final int mPrevReadId;
+		private final int mStart;
+		// position1 and bases (base1<<16 | base2) of each diff
+		private final int [] mDiffs;
+		// sorted ids of flagged reads that could be reached from pRead
+		private final int [] mDontUseIds;
+		private final int mHash;
+		
+		PathKey(GCStrain pStrain, GCRead pRead, GCRead pPrevRead) {
+			mReadId = pRead.getId();
+			mPrevReadId = pPrevRead==null ? -1 : pPrevRead.getId();
+			// with restrictMatchesToSegment, nothing before the segment matters
+			mStart = mRestrictMatchesToSegment 
+					? Math.max(pStrain.getStart(),mSegment.getStart()) 
+					: pStrain.getStart();
+			
+			PackedDiffList diffs = pStrain.getAlignment().getPackedDiffs();
+			mDiffs = new int [2*diffs.size()];
+			for (int i = 0; i < diffs.size(); i++) {
+				mDiffs[2*i] = diffs.getPosition1(i);
+				mDiffs[2*i+1] = (diffs.getBase1(i) << 16) | diffs.getBase2(i);
+			}
+			
+			int count = 0;
+			int [] ids = new int [mDontUseReads.size()];
+			for (GCRead read : mDontUseReads) {
+				if (read.getEnd()>pRead.getEnd()) {
+					ids[count++] = read.getId();
+				}
+			}
+			mDontUseIds = Arrays.copyOf(ids,count);
+			Arrays.sort(mDontUseIds);
+			
+			mHash = 31 * (31 * (31 * (31 * mReadId + mPrevReadId) + mStart) + Arrays.hashCode(mDiffs))
+				+ Arrays.hashCode(mDontUseIds);
+		}
+		
+		public int hashCode() {
+			return mHash;
+		}
+		
+		public boolean equals(Object pObject) {
+			if (!(pObject instanceof PathKey)) {
+				return false;
+			}
+			PathKey key = (PathKey) pObject;
+			return mHash==key.mHash
+				&& mReadId==key.mReadId 
+				&& mPrevReadId==key.mPrevReadId
+				&& mStart==key.mStart 
+				&& Arrays.equals(mDiffs,key.mDiffs)
+				&& Arrays.equals(mDontUseIds,key.mDontUseIds);
+		}
+	}
 }
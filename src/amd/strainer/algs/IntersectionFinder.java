@@ -0,0 +1,127 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.algs;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import amd.strainer.objects.AlignedSequence;
+
+/**
+ * Builds the "intersections on the right" graph used by GeneCrawler and SimpleGeneCrawler.
+ * <P>
+ * Read B is on the right of read A if B ends after A and starts at least minimumOverlap bases before
+ * the end of A. Instead of testing every pair of reads, the reads are sorted by end position once and, for
+ * each read B, the reads A that B can be on the right of (those ending in [B.start+minimumOverlap-1, B.end-1])
+ * are found with a binary search. Only those pairs are passed to isCompatible().
+ * <P>
+ * Each read's intersections are added in the order the reads appear in the input list, so the lists
+ * are the same as the ones built by comparing every pair.
+ *
+ * @author jmeppley
+ *
+ * @param <T> the read wrapper class of the strainer
+ */
+public abstract class IntersectionFinder<T extends AlignedSequence> {
+
+	private static final Comparator<AlignedSequence> END_COMPARATOR = new Comparator<AlignedSequence>() {
+		public int compare(AlignedSequence p1, AlignedSequence p2) {
+			return p1.getEnd() - p2.getEnd();
+		}
+	};
+
+	/**
+	 * @param pLeft a read
+	 * @param pRight a read that ends after pLeft and overlaps it by at least the minimum
+	 * @return true if pRight can extend pLeft (ie: they agree in the overlap)
+	 */
+	protected abstract boolean isCompatible(T pLeft, T pRight);
+
+	/**
+	 * Record that pRight intersects pLeft on the right
+	 */
+	protected abstract void addIntersection(T pLeft, T pRight);
+
+	/**
+	 * Find all pairs of reads that overlap by pMinimumOverlap and call addIntersection() for each
+	 * compatible pair.
+	 * @param pReads the reads to link
+	 * @param pMinimumOverlap the minimum number of overlapping bases
+	 */
+	@SuppressWarnings("unchecked")
+	public void findIntersections(List<T> pReads, int pMinimumOverlap) {
+		// sort reads by end
+		AlignedSequence [] byEnd = pReads.toArray(new AlignedSequence [pReads.size()]);
+		Arrays.sort(byEnd,END_COMPARATOR);
+		int [] ends = new int [byEnd.length];
+		for (int i = 0; i < byEnd.length; i++) {
+			ends[i] = byEnd[i].getEnd();
+		}
+
+		// go through reads in the original order
+		for (T right : pReads) {
+			// the left read must end before this one does...
+			int last = firstIndexAtOrAfter(ends,right.getEnd());
+			// ...but not before the minimum overlap
+			int first = firstIndexAtOrAfter(ends,right.getStart() + pMinimumOverlap - 1);
+
+			for (int i = first; i < last; i++) {
+				T left = (T) byEnd[i];
+				if (isCompatible(left,right)) {
+					addIntersection(left,right);
+				}
+			}
+		}
+	}
+
+	// index of the first value in pValues greater than or equal to pValue
+	private static int firstIndexAtOrAfter(int [] pValues, int pValue) {
+		int low = 0;
+		int high = pValues.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (pValues[mid] < pValue) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -41,6 +41,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import amd.strainer.objects.Read;
@@ -75,7 +76,7 @@ public class ManualStrainer extends AbstractSegmentStrainer implements SegmentSt
 
 	private void readSettings() {
 		// Get the settings hash map
-		HashMap<String,Object> settings =  Config.getConfig().getSettings();  
+		Map<String,Object> settings = Config.getOptions();
 		if (settings==null) {
 			return;
 		}
@@ -85,7 +86,7 @@ public class ManualStrainer extends AbstractSegmentStrainer implements SegmentSt
 		if (value!=null) {
 			setMinimumOverlap(value);
 		} else {
-			settings.put(MINIMUM_OVERLAP,new Double(mMinimumOverlap));
+			Config.setDefaultOption(MINIMUM_OVERLAP,new Double(mMinimumOverlap));
 		}
 
 		// how much do strains have to overlap by?
@@ -93,7 +94,7 @@ public class ManualStrainer extends AbstractSegmentStrainer implements SegmentSt
 		if (value!=null) {
 			setSkipClosedStrains(value);
 		} else {
-			settings.put(SKIP_CLOSED_STRAINS,new Boolean(mSkipClosedStrains));
+			Config.setDefaultOption(SKIP_CLOSED_STRAINS,new Boolean(mSkipClosedStrains));
 		}
 	}
 
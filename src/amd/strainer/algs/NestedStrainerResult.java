@@ -40,6 +40,7 @@ package amd.strainer.algs;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -61,7 +62,8 @@ import amd.strainer.objects.Strain;
  *
  */
 public class NestedStrainerResult implements StrainerResult {
-	private Map<Strain,StrainerResult> results = new HashMap<Strain,StrainerResult>();
+	// kept in the order added, so output doesn't depend on hash codes
+	private Map<Strain,StrainerResult> results = new LinkedHashMap<Strain,StrainerResult>();
 	private int size = 0;
 	public int size() { return size; }
 	public Iterator<Strain> getStrainIterator() {
@@ -103,12 +105,12 @@ public class NestedStrainerResult implements StrainerResult {
 		// should we compress strains to AA sequences (it means re-checking for uniqueness)
 		//  the setting is global and it would be faster to require the algorithms to deal with this, but
 		//  this set up is more flexible and doesn't slow things down TOO much
-		boolean convertToAA = ((Boolean)Config.getConfig().getSettings().get(Config.CONVERT_TO_AA)).booleanValue();
+		boolean convertToAA = ((Boolean)Config.getOptions().get(Config.CONVERT_TO_AA)).booleanValue();
 		Map<String,Strain> usedSeqs = new HashMap<String,Strain>();
 		Map<Strain,Strain> duplicates = new HashMap<Strain,Strain>();
 
 		// do we want to fill in gaps using the ReferenceSequence
-		boolean fillFromComposite = ((Boolean)Config.getConfig().getSettings().get(Config.FILL_FROM_COMPOSITE)).booleanValue();
+		boolean fillFromComposite = ((Boolean)Config.getOptions().get(Config.FILL_FROM_COMPOSITE)).booleanValue();
 
 		// figure out if we need to reverse complement
 		boolean direction = true;
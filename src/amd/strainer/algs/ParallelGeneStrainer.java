@@ -0,0 +1,320 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.algs;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import amd.strainer.display.actions.Task;
+import amd.strainer.objects.Gene;
+import amd.strainer.objects.Read;
+
+/**
+ * Strains a list of genes using a pool of threads (one per processor by default). Each gene gets its 
+ * own SegmentStrainer instance. All strainers use the same immutable copy of the options (taken
+ * from Config when the run starts), so changes to the settings during the run don't affect it.
+ * <P>
+ * Results are returned (and written to the FASTA file) in the same order as the genes were given, 
+ * no matter which order they finish in. The Task (if any) is used to report how many genes are done and 
+ * to cancel the run.
+ * <P>
+ * The strainers only read the ReferenceSequence, so it must not be changed while the run is in progress.
+ * Anything the strainers build on demand from shared objects (read and clone diffs, gap lists, strain 
+ * consensus counts) is built under a lock, so threads can share reads and strains.
+ * <P>
+ * Algorithms that start from the existing strains (Substrainer, ManualStrainer) are run one gene at a 
+ * time on the calling thread instead (see isParallel()), as are all algorithms if there is only one thread.
+ * 
+ * @author jmeppley
+ *
+ */
+public class ParallelGeneStrainer {
+	// how often to check if the task was cancelled (in milliseconds)
+	private static final long CANCEL_CHECK_INTERVAL = 250;
+	
+	private Class<? extends SegmentStrainer> mAlgClass = null;
+	private int mThreadCount = 1;
+	private Task mTask = null;
+	private Collection<Read> mReads = null;
+	private Map<String,Object> mOptions = null;
+	private Map<Gene,SegmentStrainerException> mFailures = new LinkedHashMap<Gene,SegmentStrainerException>();
+	
+	/**
+	 * Create a strainer using one thread for each available processor
+	 * @param pAlgClass the SegmentStrainer implementation to use for each gene
+	 */
+	public ParallelGeneStrainer(Class<? extends SegmentStrainer> pAlgClass) {
+		this(pAlgClass,Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param pAlgClass the SegmentStrainer implementation to use for each gene
+	 * @param pThreadCount the number of genes to strain at once
+	 */
+	public ParallelGeneStrainer(Class<? extends SegmentStrainer> pAlgClass, int pThreadCount) {
+		mAlgClass = pAlgClass;
+		mThreadCount = Math.max(1,pThreadCount);
+	}
+	
+	/**
+	 * @param pAlgClass a SegmentStrainer implementation
+	 * @return false if the algorithm works from the existing strains, so each gene should be strained
+	 * (and the results applied) before the next one is started
+	 */
+	public static boolean isParallel(Class<? extends SegmentStrainer> pAlgClass) {
+		return !Substrainer.class.isAssignableFrom(pAlgClass)
+				&& !ManualStrainer.class.isAssignableFrom(pAlgClass);
+	}
+	
+	/**
+	 * @param pTask the Task to update with the number of genes finished (may be null)
+	 */
+	public void setTask(Task pTask) {
+		mTask = pTask;
+	}
+	
+	/**
+	 * @param pReads the reads to strain (null => all reads in each gene's ReferenceSequence)
+	 */
+	public void setReads(Collection<Read> pReads) {
+		mReads = pReads;
+	}
+	
+	/**
+	 * @param pOptions the options to run the strainers with (see Config.snapshotOptions()). If not set,
+	 * the current options are copied when the run starts.
+	 */
+	public void setOptions(Map<String,Object> pOptions) {
+		mOptions = pOptions;
+	}
+	
+	/**
+	 * @return the genes from the last run that could not be strained, with the reason
+	 */
+	public Map<Gene,SegmentStrainerException> getFailures() {
+		return mFailures;
+	}
+	
+	/**
+	 * Strain each of the given genes.
+	 * @param pGenes the genes to strain
+	 * @param pFastaFileWriter if not null, the strains for each gene are written here (in gene order)
+	 * @param pGenePrefix a string to prepend to gene names in the FASTA file (may be null)
+	 * @return the StrainerResult for each gene in the same order as pGenes (null for any gene in getFailures())
+	 * @throws InterruptedException if the task is cancelled
+	 */
+	public List<StrainerResult> strainGenes(List<Gene> pGenes, PrintWriter pFastaFileWriter, String pGenePrefix) throws InterruptedException, InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+		if (pGenePrefix==null) { pGenePrefix = ""; }
+		mFailures.clear();
+		
+		// make sure the algorithm can be created before starting threads
+		Config.getSegmentStrainer(mAlgClass);
+		
+		final Map<String,Object> options = mOptions==null ? Config.snapshotOptions(null) : mOptions;
+		Map<String,Object> oldOptions = Config.setRunOptions(options);
+		
+		int geneCount = pGenes.size();
+		if (mTask!=null) {
+			mTask.setLengthOfTask(geneCount);
+			mTask.setCurrent(0);
+		}
+		
+		if (mThreadCount==1 || !isParallel(mAlgClass)) {
+			try {
+				return strainGenesInOrder(pGenes,pFastaFileWriter,pGenePrefix);
+			} finally {
+				Config.setRunOptions(oldOptions);
+			}
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(mThreadCount,Math.max(1,geneCount)), new StrainerThreadFactory());
+		try {
+			CompletionService<Integer> completions = new ExecutorCompletionService<Integer>(pool);
+			final StrainerResult [] results = new StrainerResult [geneCount];
+			final SegmentStrainerException [] errors = new SegmentStrainerException [geneCount];
+			for (int i = 0; i < geneCount; i++) {
+				final int index = i;
+				final Gene gene = pGenes.get(i);
+				completions.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						Map<String,Object> previous = Config.setRunOptions(options);
+						try {
+							results[index] = strainGene(gene);
+						} catch (SegmentStrainerException e) {
+							errors[index] = e;
+						} finally {
+							Config.setRunOptions(previous);
+						}
+						return Integer.valueOf(index);
+					}
+				});
+			}
+			
+			boolean [] finished = new boolean [geneCount];
+			int finishedCount = 0;
+			int nextToWrite = 0;
+			while (finishedCount < geneCount) {
+				if (mTask!=null && mTask.isInterrupted()) {
+					throw new InterruptedException("Autostraining Cancelled");
+				}
+				
+				Future<Integer> done = completions.poll(CANCEL_CHECK_INTERVAL,TimeUnit.MILLISECONDS);
+				if (done==null) {
+					continue;
+				}
+				
+				try {
+					finished[done.get().intValue()] = true;
+				} catch (ExecutionException e) {
+					// anything other than a SegmentStrainerException is unexpected
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+				finishedCount++;
+				if (mTask!=null) {
+					mTask.setCurrent(finishedCount);
+				}
+				
+				// write out any results that are next in line
+				while (nextToWrite < geneCount && finished[nextToWrite]) {
+					Gene gene = pGenes.get(nextToWrite);
+					if (errors[nextToWrite]!=null) {
+						mFailures.put(gene,errors[nextToWrite]);
+					} else if (pFastaFileWriter!=null) {
+						Util.writeStrainerResultsToFastaFile(pFastaFileWriter,gene,results[nextToWrite],pGenePrefix);
+					}
+					nextToWrite++;
+				}
+			}
+			
+			List<StrainerResult> resultList = new ArrayList<StrainerResult>(geneCount);
+			for (int i = 0; i < geneCount; i++) {
+				resultList.add(results[i]);
+			}
+			return resultList;
+		} finally {
+			pool.shutdownNow();
+			Config.setRunOptions(oldOptions);
+		}
+	}
+	
+	/*
+	 * Strain the genes one at a time on this thread
+	 */
+	private List<StrainerResult> strainGenesInOrder(List<Gene> pGenes, PrintWriter pFastaFileWriter, String pGenePrefix) throws InterruptedException {
+		List<StrainerResult> resultList = new ArrayList<StrainerResult>(pGenes.size());
+		for (Gene gene : pGenes) {
+			if (mTask!=null && mTask.isInterrupted()) {
+				throw new InterruptedException("Autostraining Cancelled");
+			}
+			
+			StrainerResult result = null;
+			try {
+				result = strainGene(gene);
+				if (pFastaFileWriter!=null) {
+					Util.writeStrainerResultsToFastaFile(pFastaFileWriter,gene,result,pGenePrefix);
+				}
+			} catch (SegmentStrainerException e) {
+				mFailures.put(gene,e);
+			}
+			resultList.add(result);
+			
+			if (mTask!=null) {
+				mTask.setCurrent(resultList.size());
+			}
+		}
+		return resultList;
+	}
+	
+	private StrainerResult strainGene(Gene pGene) throws SegmentStrainerException {
+		SegmentStrainer ss;
+		try {
+			ss = Config.getSegmentStrainer(mAlgClass);
+		} catch (InstantiationException e) {
+			throw new SegmentStrainerConfigurationException(e);
+		} catch (IllegalAccessException e) {
+			throw new SegmentStrainerConfigurationException(e);
+		} catch (InvocationTargetException e) {
+			throw new SegmentStrainerConfigurationException(e);
+		} catch (NoSuchMethodException e) {
+			throw new SegmentStrainerConfigurationException(e);
+		}
+		
+		ss.setSegment(pGene);
+		// progress is reported per gene, not from inside each strainer
+		ss.setTask(null);
+		ss.setReads(mReads==null ? null : mReads.iterator());
+		
+		return ss.getStrains();
+	}
+	
+	/*
+	 * Names the worker threads and makes them daemons so a stuck strainer can't keep the app running
+	 */
+	static class StrainerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger poolCount = new AtomicInteger(0);
+		private final int mPoolNumber = poolCount.incrementAndGet();
+		private final AtomicInteger mThreadCount = new AtomicInteger(0);
+		
+		public Thread newThread(Runnable pRunnable) {
+			Thread t = new Thread(pRunnable, "strainer-" + mPoolNumber + "-" + mThreadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
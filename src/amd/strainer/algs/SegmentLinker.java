@@ -41,14 +41,26 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import amd.strainer.display.actions.Task;
 import amd.strainer.objects.Read;
+import amd.strainer.objects.ReadHolder;
+import amd.strainer.objects.ReadIntervalIndex;
 import amd.strainer.objects.ReadStartComparator;
 import amd.strainer.objects.Readable;
 import amd.strainer.objects.ReferenceSequence;
@@ -57,12 +69,15 @@ import amd.strainer.objects.Strain;
 
 /**
  * Used for very long segments. Splits the segment up into pieces and calls GeneCrawler for each piece. Splits can be done on number of reads
- * or number of bases. 
+ * or number of bases. The pieces are strained in parallel and linked in order.
  * 
  * @author jmeppley
  *
  */
 public class SegmentLinker implements SegmentStrainer {
+	// how often to check if the task was cancelled (in milliseconds)
+	private static final long CANCEL_CHECK_INTERVAL = 250;
+
 	// segment to autostrin
 	private SequenceSegment segment = null;
 	public void setSegment(SequenceSegment pSegment) { 
@@ -106,7 +121,7 @@ public class SegmentLinker implements SegmentStrainer {
 	}
 
 	private void readSettings() {
-		HashMap<String,Object> settings = Config.getConfig().getSettings();
+		Map<String,Object> settings = Config.getOptions();
 		if (settings==null) {
 			return;
 		}
@@ -114,13 +129,13 @@ public class SegmentLinker implements SegmentStrainer {
 		try {
 			setSegmentMethod(settings.get(SEGMENT_METHOD).toString());
 		} catch (NullPointerException e) {
-			settings.put(SEGMENT_METHOD,mSegmentMethod);
+			Config.setDefaultOption(SEGMENT_METHOD,mSegmentMethod);
 		}
 		
 		try {
 			setSegmentSize(Integer.parseInt(settings.get(SEGMENT_SIZE).toString()));
 		} catch (NullPointerException e) {
-			settings.put(SEGMENT_SIZE,new Integer(mSegmentSize));
+			Config.setDefaultOption(SEGMENT_SIZE,Integer.valueOf(mSegmentSize));
 		}
 		
 		try {
@@ -129,7 +144,7 @@ public class SegmentLinker implements SegmentStrainer {
 			try {
 				setSegmentStrainer(Class.forName(settings.get(Config.INTERNAL_SEGMENT_STRAINER).toString()));
 			} catch (Exception ex) {
-				settings.put(Config.INTERNAL_SEGMENT_STRAINER,mSegmentStrainer);
+				Config.setDefaultOption(Config.INTERNAL_SEGMENT_STRAINER,mSegmentStrainer);
 			}
 		}
 		
@@ -184,10 +199,27 @@ public class SegmentLinker implements SegmentStrainer {
 	private void findStrains() throws SegmentStrainerException {
 		//////////////
 		// override settings so nested calls work correctly
-		Map<String,Object> settings = Config.getConfig().getSettings();
-		Object oldKeepAllReads = settings.put(Config.KEEP_ALL_READS,Boolean.TRUE);
-		Object oldRestrictToSegment = settings.put(Config.RESTRICT_TO_SEGMENT,Boolean.FALSE);
+		//  (only in this thread, other strainers still see the original values)
+		Map<String,Object> overrides = new HashMap<String,Object>();
+		overrides.put(Config.KEEP_ALL_READS,Boolean.TRUE);
+		overrides.put(Config.RESTRICT_TO_SEGMENT,Boolean.FALSE);
+		Map<String,Object> runOptions = Config.snapshotOptions(overrides);
+		Map<String,Object> oldOptions = Config.setRunOptions(runOptions);
 		
+		try {
+			linkSegments(runOptions);
+		} finally {
+			// reset settings to pre-override values
+			Config.setRunOptions(oldOptions);
+		}
+	}
+	
+	/*
+	 * Strains the segments in a pool of threads (one per processor) and links each one to the 
+	 * strains so far as soon as it and all the segments before it are done. Each segment's strainer
+	 * is only given the reads that overlap it. 
+	 */
+	private void linkSegments(final Map<String,Object> pRunOptions) throws SegmentStrainerException {
 		//System.out.println("Starting SL");
 		Collection<Read> reads;
 		if (mReadIterator==null) {
@@ -202,7 +234,8 @@ public class SegmentLinker implements SegmentStrainer {
 			}
 		}
 		
-		ArrayList<SequenceSegment> segments = getSegments(reads);
+		final ArrayList<SequenceSegment> segments = getSegments(reads);
+		final SegmentReads segmentReads = new SegmentReads(reads);
 		
 		if (mTask!=null) {
 			mTask.setLengthOfTask(segments.size());
@@ -210,28 +243,77 @@ public class SegmentLinker implements SegmentStrainer {
 		
 		System.out.println("Straining " + segments.size() + " segments.");
 		
-		StrainerResult sr1 = doSegment(segments.get(0),reads.iterator());
+		final int segmentCount = segments.size();
+		int threadCount = Math.min(Runtime.getRuntime().availableProcessors(),segmentCount);
+		StrainerResult sr1 = null;
 		
-		//System.out.println("Result 1: " + sr1.toString());
-		
-		// link segments by reads
-		for (int i = 1; i < segments.size(); i++) {
-			if (mTask!=null) {
-				mTask.setCurrent(i);
+		if (threadCount<=1) {
+			// not worth starting threads
+			for (int i = 0; i < segmentCount; i++) {
+				checkCancelled();
+				SequenceSegment ss = segments.get(i);
+				StrainerResult sr2 = doSegment(ss,segmentReads.getReadsOverlapping(ss).iterator());
+				sr1 = linkNextResult(sr1,sr2,segments,i);
+			}
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(threadCount, new ParallelGeneStrainer.StrainerThreadFactory());
+			try {
+				CompletionService<Integer> completions = new ExecutorCompletionService<Integer>(pool);
+				final StrainerResult [] results = new StrainerResult [segmentCount];
+				for (int i = 0; i < segmentCount; i++) {
+					final int index = i;
+					completions.submit(new Callable<Integer>() {
+						public Integer call() throws Exception {
+							Map<String,Object> previous = Config.setRunOptions(pRunOptions);
+							try {
+								SequenceSegment ss = segments.get(index);
+								results[index] = doSegment(ss,segmentReads.getReadsOverlapping(ss).iterator());
+							} finally {
+								Config.setRunOptions(previous);
+							}
+							return Integer.valueOf(index);
+						}
+					});
+				}
+				
+				boolean [] finished = new boolean [segmentCount];
+				int nextToLink = 0;
+				while (nextToLink < segmentCount) {
+					checkCancelled();
+					
+					Future<Integer> done;
+					try {
+						done = completions.poll(CANCEL_CHECK_INTERVAL,TimeUnit.MILLISECONDS);
+						if (done==null) {
+							continue;
+						}
+						finished[done.get().intValue()] = true;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SegmentStrainerException("Segment linking cancelled",e);
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						if (cause instanceof SegmentStrainerException) {
+							throw (SegmentStrainerException) cause;
+						} else if (cause instanceof RuntimeException) {
+							throw (RuntimeException) cause;
+						} else if (cause instanceof Error) {
+							throw (Error) cause;
+						}
+						throw new SegmentStrainerException(cause);
+					}
+					
+					// link any segments that are next in line
+					while (nextToLink < segmentCount && finished[nextToLink]) {
+						sr1 = linkNextResult(sr1,results[nextToLink],segments,nextToLink);
+						// (let the finished result be collected once it's linked)
+						results[nextToLink] = null;
+						nextToLink++;
+					}
+				}
+			} finally {
+				pool.shutdownNow();
 			}
-
-			//System.out.println("Straining segment " + (i+1));
-			SequenceSegment ss = segments.get(i);
-			StrainerResult sr2 = doSegment(ss,reads.iterator());
-
-			//System.out.println("Result " + (i+1) + ": " + sr2.toString());
-
-			/*System.out.println("Strainer combining " + 
-				       sr2.getStrains().size() +
-				       " new strains to previous " +
-				       sr1.getStrains().size());*/
-			sr1 = combineResults(sr1,sr2,ss.getStart());
-			
 		}
 
 		if (mTask!=null) {
@@ -239,56 +321,68 @@ public class SegmentLinker implements SegmentStrainer {
 		}
 
 		result = new DefaultStrainerResult(getSegment(),sr1.getStrains()); 
+	}
+	
+	private void checkCancelled() throws SegmentStrainerException {
+		if (mTask!=null && mTask.isInterrupted()) {
+			throw new SegmentStrainerException("Segment linking cancelled");
+		}
+	}
+	
+	/*
+	 * Link the results for segment pIndex to the linked results of all the segments before it
+	 */
+	private StrainerResult linkNextResult(StrainerResult pLinked, StrainerResult pNext, List<SequenceSegment> pSegments, int pIndex) {
+		if (pIndex==0) {
+			return pNext;
+		}
 		
-		// reset settings to pre-override values
-		settings.put(Config.KEEP_ALL_READS,oldKeepAllReads);
-		settings.put(Config.RESTRICT_TO_SEGMENT,oldRestrictToSegment);
+		if (mTask!=null) {
+			mTask.setCurrent(pIndex);
+		}
+
+		/*System.out.println("Strainer combining " + 
+			       pNext.getStrains().size() +
+			       " new strains to previous " +
+			       pLinked.getStrains().size());*/
+		return combineResults(pLinked,pNext,pSegments.get(pIndex).getStart());
 	}
 	
+	/*
+	 * Links each strain on the right to every strain on the left that has exactly the same reads at 
+	 * pPos. The read set of each strain at pPos is turned into a ReadSetKey, so matching strains are 
+	 * found with one hash lookup.
+	 */
 	private StrainerResult combineResults(StrainerResult p1,
 			StrainerResult p2, int pPos) {
 		HashSet<Strain> linkedStrains = new HashSet<Strain>();
 		HashSet<Strain> newStrains = new HashSet<Strain>();
 
+		// index strains on the left by the reads at the link position
+		Map<ReadSetKey,List<Strain>> enders = new HashMap<ReadSetKey,List<Strain>>();
+		for (Strain strain1 : p1.getStrains()) {
+			ReadSetKey key = findReadsAtPosition(strain1,pPos);
+			if (key!=null) {
+				List<Strain> matches = enders.get(key);
+				if (matches==null) {
+					matches = new ArrayList<Strain>(1);
+					enders.put(key,matches);
+				}
+				matches.add(strain1);
+			}
+		}
+
 		Iterator<Strain> sit2 = p2.getStrains().iterator();
-		//System.out.println("looping over " + p2.getStrains().size() + " strains");
-		int i2 = 0;
 		while (sit2.hasNext()) {
-			i2++;
 			Strain strain2 = sit2.next();
-			boolean linked = false;
-			HashSet<Integer> starters = findReadsAtPosition(strain2,pPos);
-			//System.out.print("starters for " + i2 + " are: ");
-			//printSet(starters);
-			if (starters.size()>0) {
-				Iterator<Strain> sit1 = p1.getStrains().iterator();
-				//System.out.println("looping over " + p1.getStrains().size() + " strains");
-				int i1 = 0;
-				while (sit1.hasNext()) {
-					i1++;
-					Strain strain1 = sit1.next();
-					HashSet<Integer> enders = findReadsAtPosition(strain1,pPos);
-					//System.out.print("enders for " + i1 + " are: ");
-					//printSet(enders);
-					if (enders.size()>0) {
-					
-						//System.out.println("comparing s" + i1 + " to s" + i2);
-						
-						boolean link = compareReadSets(starters,enders); 
-						
-						if (link) {
-							//link strains
-							//System.out.println("linking strains");
-							linkedStrains.add(strain1);
-							newStrains.add(linkStrains(strain1,strain2));
-							linked = true;
-						}
-					}
+			ReadSetKey starters = findReadsAtPosition(strain2,pPos);
+			List<Strain> matches = starters==null ? null : enders.get(starters);
+			if (matches!=null) {
+				for (Strain strain1 : matches) {
+					//link strains
+					linkedStrains.add(strain1);
+					newStrains.add(linkStrains(strain1,strain2));
 				}
-			}
-			//System.out.println("linked is : " + linked);
-			if (linked) {
-				//System.out.println("removing");
 				sit2.remove();
 			}
 		}
@@ -299,65 +393,94 @@ public class SegmentLinker implements SegmentStrainer {
 			p1.getStrains().remove(linkedStrain);
 		}
 
-		//System.out.println(" there are " + p1.getStrains().size() + " strains in p1.");
-		//System.out.println(" adding " + newStrains.size() + " new strains");
 		p1.getStrains().addAll(newStrains);
-		//System.out.println(" adding " + p2.getStrains().size() + " strains from p2");
 		p1.getStrains().addAll(p2.getStrains());
-		//System.out.println(" there are now " + p1.getStrains().size() + " strains in p1.");
 		return p1;
 	}
 	
-	private HashSet<Integer> findReadsAtPosition(Strain pS, int pPos) {
+	/*
+	 * returns the key for the reads in pS covering pPos (null if there are none)
+	 */
+	private ReadSetKey findReadsAtPosition(Strain pS, int pPos) {
 		//System.out.println("looking for reads at " + pPos);
-		HashSet<Integer> reads = new HashSet<Integer>();
-		Iterator<Read> rit = pS.getReadIterator();
-		while (rit.hasNext()) {
-			Read read = rit.next();
-			//System.out.println("Read " + read.toString() + " spans " + read.getStart() + "-" + read.getEnd());
-			if (read.intersectsRefereceSequenceAt(pPos)) {
-				reads.add(read.getIdInteger());
-			}
+		List<Read> reads = pS.readsCovering(pPos);
+		if (reads.size()==0) {
+			return null;
+		}
+		int [] ids = new int [reads.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = reads.get(i).getIdInteger().intValue();
 		}
-		return reads;
+		return new ReadSetKey(ids);
 	}
 
 	/*
-	private void printSet(Set s) {
-		System.out.print("[");
-		Iterator it = s.iterator();
-		while (it.hasNext()) {
-			System.out.print(it.next().toString());
-			if (it.hasNext()) System.out.print(",");
+	 * A set of read IDs in canonical (sorted, no duplicates) form, so equal sets have equal keys
+	 */
+	private static final class ReadSetKey {
+		private final int [] mIds;
+		private final int mHash;
+		
+		ReadSetKey(int [] pIds) {
+			Arrays.sort(pIds);
+			int count = 0;
+			for (int i = 0; i < pIds.length; i++) {
+				if (count==0 || pIds[i]!=pIds[count-1]) {
+					pIds[count++] = pIds[i];
+				}
+			}
+			mIds = count==pIds.length ? pIds : Arrays.copyOf(pIds,count);
+			mHash = Arrays.hashCode(mIds);
 		}
-		System.out.println("]");
-	}*/
-	
-	private boolean compareReadSets(HashSet<Integer> p1, HashSet<Integer> p2) {
 		
-		if (p1.size() != p2.size()) { return false; }
-
-		// copy Sets to new containers
-		HashSet<Integer> h1 = new HashSet<Integer>(p1);
-		//printSet(h1);
-		HashSet<Integer> h2 = new HashSet<Integer>(p2);
-		//printSet(h2);
+		public int hashCode() {
+			return mHash;
+		}
 		
-		Iterator<Integer> rit = h1.iterator();
-		while (rit.hasNext()) {
-			Integer read = rit.next();
-			if (h2.remove(read)) {
-				rit.remove();
+		public boolean equals(Object pOther) {
+			if (!(pOther instanceof ReadSetKey)) {
+				return false;
 			}
+			ReadSetKey other = (ReadSetKey) pOther;
+			return mHash==other.mHash && Arrays.equals(mIds,other.mIds);
+		}
+	}
+	
+	/*
+	 * Finds the reads overlapping each segment. They are returned in the same order as they were 
+	 * given, so the strainers see them in the same order as they would in the whole list.
+	 */
+	private static class SegmentReads implements ReadHolder {
+		private final Collection<Read> mReads;
+		private final Map<Read,Integer> mOrder;
+		private final ReadIntervalIndex mIndex;
+		private final Comparator<Read> mOrderComparator = new Comparator<Read>() {
+			public int compare(Read r1, Read r2) {
+				return mOrder.get(r1).intValue() - mOrder.get(r2).intValue();
+			}
+		};
+		
+		SegmentReads(Collection<Read> pReads) {
+			mReads = pReads;
+			mOrder = new HashMap<Read,Integer>(pReads.size()*2);
+			int i = 0;
+			for (Read read : pReads) {
+				mOrder.put(read,Integer.valueOf(i++));
+			}
+			mIndex = new ReadIntervalIndex(this);
 		}
 		
-		if ((h2.size()>0) || (h1.size()>0)) {
-			return false;
+		public Iterator<Read> getReadIterator() {
+			return mReads.iterator();
 		}
 		
-		return true;
+		List<Read> getReadsOverlapping(SequenceSegment pSS) {
+			List<Read> reads = mIndex.getReadsOverlapping(pSS.getStart(),pSS.getEnd());
+			Collections.sort(reads,mOrderComparator);
+			return reads;
+		}
 	}
-	
+
 	private Strain linkStrains(Strain p1, Strain p2) {
 		Strain strain = new Strain();
 		strain.stealReads = false;
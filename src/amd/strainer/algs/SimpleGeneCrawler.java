@@ -44,6 +44,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import amd.strainer.display.actions.Task;
@@ -53,6 +54,7 @@ import amd.strainer.objects.Difference;
 import amd.strainer.objects.Read;
 import amd.strainer.objects.ReadEndComparator;
 import amd.strainer.objects.ReadHolder;
+import amd.strainer.objects.ReferenceSequence;
 import amd.strainer.objects.SequenceSegment;
 import amd.strainer.objects.Strain;
 
@@ -117,7 +119,7 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 	 */
 	private void readSettings() {
 		// Get the settings hash map
-		HashMap<String,Object> settings =  Config.getConfig().getSettings();  
+		Map<String,Object> settings = Config.getOptions();
 		if (settings==null) {
 			return;
 		}
@@ -129,7 +131,7 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 		if (value!=null) {
 			setKeepAllReads(value);
 		} else {
-			settings.put(Config.KEEP_ALL_READS,new Boolean(mKeepAllReads));
+			Config.setDefaultOption(Config.KEEP_ALL_READS,new Boolean(mKeepAllReads));
 		}
 
 		// ignore regions outside of segment when comparing reads (or not)
@@ -137,7 +139,7 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 		if (value!=null) {
 			setRestrictMatchesToSegment(value);
 		} else {
-			settings.put(Config.RESTRICT_TO_SEGMENT,new Boolean(mRestrictMatchesToSegment));
+			Config.setDefaultOption(Config.RESTRICT_TO_SEGMENT,new Boolean(mRestrictMatchesToSegment));
 		}
 		
 		
@@ -146,7 +148,7 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 		if (value!=null) {
 			setMinimumOverlap(value);
 		} else {
-			settings.put(MINIMUM_OVERLAP,new Integer(mMinimumOverlap));
+			Config.setDefaultOption(MINIMUM_OVERLAP,new Integer(mMinimumOverlap));
 		}
 
 		// how much difference between overlapping reads will be tolerated?
@@ -154,7 +156,7 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 		if (value!=null) {
 			setMaximumDiff(value);
 		} else {
-			settings.put(MAXIMUM_DIFF,new Double(mMaximumDiff));
+			Config.setDefaultOption(MAXIMUM_DIFF,new Double(mMaximumDiff));
 		}
 	}
 
@@ -231,8 +233,14 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 
 		if (mReadIterator==null) {
 			// if no list of reads given...
-			// assume base sequence is an ReferenceSequence object (or at least implements ReadHolder)
-			mReadIterator = ((ReadHolder) segment.getSequence()).getReadIterator();
+			if (segment.getSequence() instanceof ReferenceSequence) {
+				// only look at the reads in the segment
+				mReadIterator = ((ReferenceSequence) segment.getSequence())
+					.readsOverlapping(segment.getStart(),segment.getEnd()).iterator();
+			} else {
+				// assume base sequence at least implements ReadHolder
+				mReadIterator = ((ReadHolder) segment.getSequence()).getReadIterator();
+			}
 		}
 		
 		while (mReadIterator.hasNext()) {
@@ -245,13 +253,13 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 				if (intersectsEndOfSegment(read)) {
 					r.intersectsEndOfSegment = true;
 				}
-				// find all reads intersecting this read on the right
-				findIntersectionsOnRight(r,reads);
-				
 				// add this read to list
 				reads.add(r);
 			}
 		}
+
+		// find all reads intersecting each read on the right
+		findIntersectionsOnRight(reads);
 		
 		// sort intersection lists by endPos
 		sortIntersectionListsByEndPos(reads);
@@ -298,18 +306,15 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 		result = new DefaultStrainerResult(getSegment(),strains);
 	}
 	
-	private void findIntersectionsOnRight(GCRead pRead, Collection<GCRead> pReads) {
-		for (GCRead read : pReads) {
-			if (intersectsEndOfAlignedSequence(pRead, read)) {
-				if (compareAlignedSequences(read, pRead)) {
-					read.intersections.add(pRead);
-				}
-			} else if (intersectsEndOfAlignedSequence(read, pRead)) {
-				if (compareAlignedSequences(pRead, read)) {
-					pRead.intersections.add(read);
-				}
+	private void findIntersectionsOnRight(List<GCRead> pReads) {
+		new IntersectionFinder<GCRead>() {
+			protected boolean isCompatible(GCRead pLeft, GCRead pRight) {
+				return compareAlignedSequences(pLeft, pRight);
 			}
-		}
+			protected void addIntersection(GCRead pLeft, GCRead pRight) {
+				pLeft.intersections.add(pRight);
+			}
+		}.findIntersections(pReads,mMinimumOverlap);
 	}
 	
 	private void sortIntersectionListsByEndPos(Collection<GCRead> pReads) {
@@ -543,13 +548,6 @@ public class SimpleGeneCrawler implements SegmentStrainer {
 		}
 	}
 	
-	private boolean intersectsEndOfAlignedSequence(AlignedSequence p1, 
-			AlignedSequence p2) {
-		// use strict > (not >=) to prevent read from matching self
-		return (p1.getStart()<=(p2.getEnd()-(mMinimumOverlap-1)) && 
-				p1.getEnd()>p2.getEnd());
-	}
-	
 	private boolean compareAlignedSequences(AlignedSequence p1, 
 			AlignedSequence p2) {
 		int ovStart = Math.max(p2.getStart(), p1.getStart());
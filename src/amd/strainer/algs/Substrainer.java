@@ -40,8 +40,19 @@ package amd.strainer.algs;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import amd.strainer.display.actions.Task;
 import amd.strainer.objects.Read;
@@ -56,6 +67,8 @@ import amd.strainer.objects.Strain;
  * @see amd.strainer.algs.NestedStrainerResult
  */
 public class Substrainer implements SegmentStrainer {
+	// how often to check if the task was cancelled (in milliseconds)
+	private static final long CANCEL_CHECK_INTERVAL = 250;
 
 	/**
 	 * Sub-sequence to be processed to find variants
@@ -114,19 +127,24 @@ public class Substrainer implements SegmentStrainer {
 	}
 	
 	/**
-	 * Generate the results.
+	 * Generate the results. Each strain is substrained independently, so they are run in a pool of 
+	 * threads (one per processor) with a snapshot of the current options. Results are added in the 
+	 * same order as the strains are stored in the ReferenceSequence, no matter which order they finish in.
 	 */
 	private void findStrains() throws SegmentStrainerException {
 		NestedStrainerResult allResults = new NestedStrainerResult();
 		
 		System.out.println("starting substrainer");
 		// get internal strainer class
-		Class ssClass = (Class) Config.getConfig().getSettings().get(Config.INTERNAL_SEGMENT_STRAINER);
+		Class<?> ssClass = (Class<?>) Config.getOptions().get(Config.INTERNAL_SEGMENT_STRAINER);
+		
+		// make sure the algorithm can be created before starting threads
+		createStrainer(ssClass);
 
-		// get list of selected reads (null => all)
-		List<Read> reads = null;
+		// get set of selected reads (null => all)
+		Set<Read> reads = null;
 		if (mReadIterator!=null) {
-			reads = new ArrayList<Read>();
+			reads = new HashSet<Read>();
 			while (mReadIterator.hasNext()) {
 				Read read = mReadIterator.next();
 				reads.add(read);
@@ -140,76 +158,178 @@ public class Substrainer implements SegmentStrainer {
 			mTask.setLengthOfTask(refSeq.strains.size());
 		}
 		
-		// find strains intersecting this segment
+		// find strains intersecting this segment (and the reads to use from each)
 		// assume base sequence is an ReferenceSequence object
+		List<Strain> strains = new ArrayList<Strain>();
+		List<List<Read>> strainReads = new ArrayList<List<Read>>();
 		for (Strain strain : refSeq.strains.values()) {
-			//System.out.println("Checking strain: " + strain.toString());
-			
 			// check read starts and ends against gene
-			if (strain.intersects(segment)) {
-				//System.out.println("region intesects: " + strain.toString());
-				
-				//create dummy segment with this strain as it's base sequence
-				SequenceSegment sseg = new SequenceSegment(strain,segment.getStart(),segment.getEnd());
+			if (!strain.intersects(segment)) {
+				count++;
+				continue;
+			}
+			
+			if (reads==null) {
+				// if no list of reads specified, use all in strain
+				strains.add(strain);
+				strainReads.add(null);
+				continue;
+			}
 
-				// run segment strainer
-				SegmentStrainer ss = null;
-				try {
-					ss = Config.getSegmentStrainer(ssClass);
-//						(SegmentStrainer) ssClass.getConstructor(new Class [0]).newInstance(new Object [0]);
-				} catch (InvocationTargetException ite) {
-					throw new SegmentStrainerConfigurationException(ite.toString());
-				} catch (InstantiationException ie) {
-					throw new SegmentStrainerConfigurationException(ie.toString());
-				} catch (IllegalAccessException iae) {
-					throw new SegmentStrainerConfigurationException(iae.toString());
-				} catch (NoSuchMethodException nsme) {
-					throw new SegmentStrainerConfigurationException(nsme.toString());
+			// otherwise make sure strain reads are in indicated list
+			List<Read> selected = new ArrayList<Read>();
+			Iterator<Read> srit = strain.getReadIterator();
+			while (srit.hasNext()) {
+				Read read = srit.next();
+				if (reads.contains(read)) {
+					selected.add(read);
 				}
-				ss.setSegment(sseg);
-				if (reads==null) {
-					// if no list of reads specified, use all in strain
-					ss.setReads(strain.getReadIterator());
-				} else {
-					// otherwise make sure strain reads are in indicated list
-					List<Read> strainerReads = new ArrayList<Read>();
-					Iterator<Read> srit = strain.getReadIterator();
-					while (srit.hasNext()) {
-						Read read = srit.next();
-						if (reads.contains(read)) {
-							strainerReads.add(read);
-						}
-					}
-					if (strainerReads.size()==0) {
-						// no reads, skip
+			}
+			if (selected.size()==0) {
+				// no reads, skip
+				count++;
+				continue;
+			}
+			strains.add(strain);
+			strainReads.add(selected);
+		}
+		if (mTask!=null) {
+			mTask.setCurrent(count);
+		}
 
-						if (mTask!=null) {
-							count++;
-							mTask.setCurrent(count);
-						}
+		// do straining
+		StrainerResult [] results = substrain(ssClass, strains, strainReads, count);
 
-						continue;
-					}
-					ss.setReads(strainerReads.iterator());
+		// combine results
+		for (int i = 0; i < results.length; i++) {
+			allResults.addResults(strains.get(i),results[i]);
+		}
+		result = allResults;
+//		System.out.println(result.toString());
+	}
+	
+	/*
+	 * Runs a new instance of the given strainer on each strain and returns the results in the same order.
+	 * pStrainReads holds the reads to use for each strain (null => all). pCount is the number of 
+	 * strains already done, for progress.
+	 */
+	private StrainerResult [] substrain(Class<?> pSSClass, List<Strain> pStrains, List<List<Read>> pStrainReads, int pCount) throws SegmentStrainerException {
+		final int strainCount = pStrains.size();
+		final StrainerResult [] results = new StrainerResult [strainCount];
+		int threadCount = Math.min(Runtime.getRuntime().availableProcessors(),strainCount);
+		
+		if (threadCount<=1) {
+			// not worth starting threads
+			for (int i = 0; i < strainCount; i++) {
+				checkCancelled();
+				results[i] = substrainStrain(pSSClass,pStrains.get(i),pStrainReads.get(i));
+				if (mTask!=null) {
+					mTask.setCurrent(++pCount);
 				}
-
-				// do straining
-				StrainerResult sr = ss.getStrains();
-
-//				System.out.println("Got " + sr.size() + " strains");
-//				System.out.println(sr.toString());
+			}
+			return results;
+		}
+		
+		final Map<String,Object> options = Config.snapshotOptions(null);
+		final Class<?> ssClass = pSSClass;
+		ExecutorService pool = Executors.newFixedThreadPool(threadCount, new ParallelGeneStrainer.StrainerThreadFactory());
+		try {
+			CompletionService<Integer> completions = new ExecutorCompletionService<Integer>(pool);
+			for (int i = 0; i < strainCount; i++) {
+				final int index = i;
+				final Strain strain = pStrains.get(i);
+				final List<Read> reads = pStrainReads.get(i);
+				completions.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						Map<String,Object> previous = Config.setRunOptions(options);
+						try {
+							results[index] = substrainStrain(ssClass,strain,reads);
+						} finally {
+							Config.setRunOptions(previous);
+						}
+						return Integer.valueOf(index);
+					}
+				});
+			}
+			
+			for (int finishedCount = 0; finishedCount < strainCount;) {
+				checkCancelled();
 				
-				// combine results
-				allResults.addResults(strain,sr);
+				Future<Integer> done;
+				try {
+					done = completions.poll(CANCEL_CHECK_INTERVAL,TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SegmentStrainerException("Substraining Cancelled",e);
+				}
+				if (done==null) {
+					continue;
+				}
 				
+				try {
+					done.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SegmentStrainerException("Substraining Cancelled",e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof SegmentStrainerException) {
+						throw (SegmentStrainerException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new SegmentStrainerException(cause);
+				}
+				finishedCount++;
+				if (mTask!=null) {
+					mTask.setCurrent(pCount + finishedCount);
+				}
 			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private void checkCancelled() throws SegmentStrainerException {
+		if (mTask!=null && mTask.isInterrupted()) {
+			throw new SegmentStrainerException("Substraining Cancelled");
+		}
+	}
+	
+	/*
+	 * Runs a new instance of the given strainer on the part of pStrain in the segment. (pReads null => all
+	 * reads in the strain)
+	 */
+	private StrainerResult substrainStrain(Class<?> pSSClass, Strain pStrain, List<Read> pReads) throws SegmentStrainerException {
+		//create dummy segment with this strain as it's base sequence
+		SequenceSegment sseg = new SequenceSegment(pStrain,segment.getStart(),segment.getEnd());
 
-			if (mTask!=null) {
-				count++;
-				mTask.setCurrent(count);
-			}
+		// run segment strainer
+		SegmentStrainer ss = createStrainer(pSSClass);
+		ss.setSegment(sseg);
+		if (pReads==null) {
+			ss.setReads(pStrain.getReadIterator());
+		} else {
+			ss.setReads(pReads.iterator());
+		}
+
+		return ss.getStrains();
+	}
+	
+	private static SegmentStrainer createStrainer(Class<?> pSSClass) throws SegmentStrainerConfigurationException {
+		try {
+			return Config.getSegmentStrainer(pSSClass);
+		} catch (InvocationTargetException ite) {
+			throw new SegmentStrainerConfigurationException(ite.toString());
+		} catch (InstantiationException ie) {
+			throw new SegmentStrainerConfigurationException(ie.toString());
+		} catch (IllegalAccessException iae) {
+			throw new SegmentStrainerConfigurationException(iae.toString());
+		} catch (NoSuchMethodException nsme) {
+			throw new SegmentStrainerConfigurationException(nsme.toString());
 		}
-		result = allResults;
-//		System.out.println(result.toString());
 	}
 }
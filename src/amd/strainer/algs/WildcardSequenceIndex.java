@@ -0,0 +1,222 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+
+package amd.strainer.algs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds sequences that match one of the sequences added so far, where 'X' (in either sequence) matches 
+ * any character and case is ignored. (Uncovered bases, which are 'n', become 'X' when translated to
+ * amino acids.) Sequences of different lengths never match.
+ * <P>
+ * The sequences are kept in a radix tree (one per length), so a sequence only has to be compared to the
+ * ones that share each prefix with it. A wildcard in the query follows every branch, and a wildcard in a 
+ * stored sequence is just another branch, so most lookups only touch a few paths through the tree.
+ * 
+ * @author jmeppley
+ *
+ * @param <T> the type of object stored with each sequence
+ */
+public class WildcardSequenceIndex<T> {
+	private static final char WILDCARD = 'X';
+	
+	// one tree for each sequence length
+	private Map<Integer,Node<T>> mRoots = new HashMap<Integer,Node<T>>();
+	private int mCount = 0;
+	// the first empty sequence's value (they don't fit in a tree)
+	private T mEmptyValue = null;
+	
+	/**
+	 * @param pSequence a sequence
+	 * @return the object stored with the first sequence added that matches pSequence (null if none do)
+	 */
+	public T findMatch(String pSequence) {
+		if (pSequence.length()==0) {
+			return mEmptyValue;
+		}
+		Node<T> root = mRoots.get(pSequence.length());
+		if (root==null) {
+			return null;
+		}
+		Node<T> match = findMatch(root,normalize(pSequence),0,null);
+		return match==null ? null : match.value;
+	}
+	
+	/**
+	 * Add a sequence. If the same sequence (ignoring case) was already added, the old one is kept.
+	 * @param pSequence the sequence
+	 * @param pValue the object to return when this sequence is matched
+	 */
+	public void add(String pSequence, T pValue) {
+		if (pSequence.length()==0) {
+			if (mEmptyValue==null) {
+				mEmptyValue = pValue;
+			}
+			return;
+		}
+		char [] sequence = normalize(pSequence);
+		int order = mCount++;
+		
+		Node<T> node = mRoots.get(sequence.length);
+		if (node==null) {
+			node = new Node<T>(null,0,0,order);
+			mRoots.put(sequence.length,node);
+		}
+		
+		int depth = 0;
+		while (true) {
+			int childIndex = node.findChild(sequence[depth]);
+			if (childIndex<0) {
+				Node<T> leaf = new Node<T>(sequence,depth,sequence.length,order);
+				leaf.value = pValue;
+				node.addChild(leaf);
+				return;
+			}
+			
+			Node<T> child = node.children.get(childIndex);
+			int length = child.to - child.from;
+			int common = 0;
+			while (common<length && child.label[child.from+common]==sequence[depth+common]) {
+				common++;
+			}
+			
+			if (common==length) {
+				if (depth+common==sequence.length) {
+					// already have this one
+					return;
+				}
+				node = child;
+				depth += common;
+				continue;
+			}
+			
+			// split the child's label where it differs from the new sequence
+			Node<T> branch = new Node<T>(child.label,child.from,child.from+common,child.first);
+			child.from += common;
+			branch.addChild(child);
+			node.children.set(childIndex,branch);
+			
+			Node<T> leaf = new Node<T>(sequence,depth+common,sequence.length,order);
+			leaf.value = pValue;
+			branch.addChild(leaf);
+			return;
+		}
+	}
+	
+	/*
+	 * Returns the earliest leaf under pNode (which is at pDepth in pSequence) that matches pSequence and 
+	 * was added before pBest (or pBest if there are none)
+	 */
+	private Node<T> findMatch(Node<T> pNode, char [] pSequence, int pDepth, Node<T> pBest) {
+		for (Node<T> child : pNode.children) {
+			if (pBest!=null && child.first>=pBest.first) {
+				// children are in the order they were added, so the rest are all later
+				break;
+			}
+			
+			int length = child.to - child.from;
+			boolean matches = true;
+			for (int i = 0; i < length; i++) {
+				char stored = child.label[child.from+i];
+				char query = pSequence[pDepth+i];
+				if (stored!=query && stored!=WILDCARD && query!=WILDCARD) {
+					matches = false;
+					break;
+				}
+			}
+			if (!matches) {
+				continue;
+			}
+			
+			if (child.children==null) {
+				pBest = child;
+			} else {
+				pBest = findMatch(child,pSequence,pDepth+length,pBest);
+			}
+		}
+		return pBest;
+	}
+	
+	private static char [] normalize(String pSequence) {
+		char [] chars = new char [pSequence.length()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toUpperCase(pSequence.charAt(i));
+		}
+		return chars;
+	}
+	
+	/*
+	 * A node in the tree. Its label is the part of a stored sequence (from, to) leading to it from its
+	 * parent. Leaves (which have no list of children) hold the value for one sequence.
+	 */
+	private static class Node<T> {
+		final char [] label;
+		int from;
+		final int to;
+		// the order the first sequence under this node was added in
+		final int first;
+		ArrayList<Node<T>> children = null;
+		T value = null;
+		
+		Node(char [] pLabel, int pFrom, int pTo, int pFirst) {
+			label = pLabel;
+			from = pFrom;
+			to = pTo;
+			first = pFirst;
+			if (pLabel==null || pTo<pLabel.length) {
+				children = new ArrayList<Node<T>>(2);
+			}
+		}
+		
+		int findChild(char pFirstChar) {
+			for (int i = 0; i < children.size(); i++) {
+				Node<T> child = children.get(i);
+				if (child.label[child.from]==pFirstChar) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		void addChild(Node<T> pChild) {
+			children.add(pChild);
+		}
+	}
+}
@@ -156,7 +156,7 @@ public class CanvasPrinter implements Printable {
 				mCanvas.recalcShapes = true;
 			}
 			// make sure objects are adjusted to paper settings	
-			mCanvas.doNecessaryCalculations();
+			mCanvas.doAllCalculationsNow();
 			// draw the canvas to the printer
 			mCanvas.paint(g2d);
 
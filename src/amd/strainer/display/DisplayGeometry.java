@@ -46,8 +46,10 @@ import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import amd.strainer.objects.AlignedSequence;
+import amd.strainer.objects.Alignment;
 import amd.strainer.objects.Difference;
 import amd.strainer.objects.SequenceFragment;
 
@@ -78,8 +80,17 @@ public abstract class DisplayGeometry {
 
 	boolean recalcColor = true;
 
+	// counts calls to recalcColors(), so cached images of the canvas can tell
+	// when any object's colors have changed (called from any thread)
+	private static final AtomicInteger colorChanges = new AtomicInteger();
+
+	static int getColorChanges() {
+		return colorChanges.get();
+	}
+
 	public void recalcColors() {
 		recalcColor = true;
+		colorChanges.incrementAndGet();
 	}
 
 	private int row = 0;
@@ -191,6 +202,36 @@ public abstract class DisplayGeometry {
 				+ (pData.rowHeight + pData.rowSpacing) * pRow;
 	}
 
+	/**
+	 * utility method to get the row number given a y position (the inverse of
+	 * getY())
+	 * 
+	 * @param pY
+	 *            the y position on the canvas
+	 * @param pData
+	 *            the global display state (zoom level, etc)
+	 * @return the row number (may be negative above the first row)
+	 */
+	public static int getRowFromY(double pY, DisplayData pData) {
+		return (int) Math.floor((pY - pData.refSeqAreaHeight - pData.geneAreaHeight)
+				/ (pData.rowHeight + pData.rowSpacing));
+	}
+
+	/**
+	 * utility method to get the base position in the reference sequence given
+	 * the x position (the inverse of getX())
+	 * 
+	 * @param pX
+	 *            the x position on the canvas
+	 * @param pData
+	 *            the global display state (zoom level, etc)
+	 * @return the position in the reference sequence
+	 */
+	public static int getPositionFromX(double pX, DisplayData pData) {
+		return pData.getStart()
+				+ (int) Math.floor((pX - pData.border) / pData.scaleFactor);
+	}
+
 	/**
 	 * utility method to get the object height in pixels given the number of
 	 * rows it spans
@@ -234,10 +275,10 @@ public abstract class DisplayGeometry {
 
 		// get diffs from aligment
 		List<Difference> diffs = null;
-		AlignedSequence parent = null;
+		Alignment alignment = null;
 		if (mParent instanceof AlignedSequence) {
-			parent = (AlignedSequence) mParent;
-			diffs = parent.getAlignment().getDiffs();
+			alignment = ((AlignedSequence) mParent).getAlignment();
+			diffs = alignment.getDiffs();
 		} else {
 			diffs = new ArrayList<Difference>();
 		}
@@ -258,11 +299,11 @@ public abstract class DisplayGeometry {
 
 				// will only be here if there are diffs (i.e. parent is an
 				// AlignedSequence and not null)
-				if (parent.getAlignment().isUncovered(pos)) {
+				if (alignment.isUncovered(pos)) {
 					// if there is no sequence data here
 					// (e.g. unsequenced space between mate pairs)
 					// just use average ID of entire sequence
-					identity = parent.getAlignment().getIdentity();
+					identity = alignment.getIdentity();
 				} else {
 					// over the window centered at this position
 					double halfWidth = pWindowSize / 2.0;
@@ -273,8 +314,9 @@ public abstract class DisplayGeometry {
 							mParent.getEnd(),
 							(int) (pos + halfWidth));
 
-					// count the diffs
-					int diffCount = parent.getAlignment().countDiffsInRange(
+					// count the diffs (a lookup in the alignment's running
+					// diff counts, so wide windows cost the same as narrow ones)
+					int diffCount = alignment.countDiffsInRange(
 							startPos,
 							endPos);
 
@@ -465,6 +465,28 @@ public class PaneledReferenceSequenceDisplay implements
 		infoArea.setCaretPosition(0);
 	}
 
+	public void showLayoutProgress(String pMessage, int pCurrent, int pTotal) {
+		if (SequenceDataLoader.getProgressCancelAction().isEnabled()) {
+			// a task is already using the progress bar
+			return;
+		}
+		progressBar.setIndeterminate(false);
+		progressBar.setMinimum(0);
+		progressBar.setMaximum(pTotal);
+		progressBar.setValue(pCurrent);
+		progressBar.setString(pMessage);
+		progressBar.setStringPainted(true);
+	}
+
+	public void clearLayoutProgress() {
+		if (SequenceDataLoader.getProgressCancelAction().isEnabled()) {
+			// a task is already using the progress bar
+			return;
+		}
+		progressBar.setValue(progressBar.getMinimum());
+		progressBar.setStringPainted(false);
+	}
+
 	public void disableAllActions() {
 		disableAll = true;
 		enableActions(false);
@@ -72,6 +72,17 @@ public interface ReferenceSequenceDisplay {
 	 * @param pData called by ReferenceSequenceDisplayComponent when set of enabled actions needs to be updated
 	 */
 	public void updateActions();
+	/**
+	 * Called by ReferenceSequenceDisplayComponent while it lays out strains and reads in the background
+	 * @param pMessage what is being done
+	 * @param pCurrent the number of strains laid out so far
+	 * @param pTotal the total number of strains
+	 */
+	public void showLayoutProgress(String pMessage, int pCurrent, int pTotal);
+	/**
+	 * Called by ReferenceSequenceDisplayComponent when a background layout is finished or cancelled
+	 */
+	public void clearLayoutProgress();
 	/**
 	 * @param pData called by ReferenceSequenceDisplayComponent 
 	 * to figure out what size it should be.
@@ -42,17 +42,25 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
+import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -60,6 +68,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JViewport;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -69,6 +78,7 @@ import amd.strainer.algs.DefaultStrainerResult;
 import amd.strainer.algs.SegmentLinker;
 import amd.strainer.algs.SegmentStrainer;
 import amd.strainer.algs.StrainerResult;
+import amd.strainer.display.util.RowIndex;
 import amd.strainer.display.util.Stacker;
 import amd.strainer.display.util.Util;
 import amd.strainer.objects.AlignedSequence;
@@ -157,6 +167,35 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 	public boolean restack = false;
 	public boolean recalcShapes = false;
 
+	// set when the view is scrolled: shapes need to be recalculated for the
+	// new rows, but nothing already drawn has changed
+	boolean scrolled = false;
+
+	// strains by row and position (rebuilt on restack)
+	private RowIndex<Strain> strainIndex = null;
+
+	/*
+	 * Offscreen images of everything but the drag overlays, in bands of
+	 * TILE_HEIGHT pixels across the full canvas width (the canvas is always as
+	 * wide as the viewport). Panning, zooming, restacking and color changes
+	 * throw them all away; scrolling and dragging just copy them back.
+	 */
+	private static final int TILE_HEIGHT = 256;
+	private static final int MAX_TILES = 32;
+	private final LinkedHashMap<Integer, BufferedImage> tiles = new LinkedHashMap<Integer, BufferedImage>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Integer, BufferedImage> pEldest) {
+			return size() > MAX_TILES;
+		}
+	};
+	private boolean tilesStale = true;
+	private int tileColorChanges = 0;
+	private int tileWidth = 0;
+
 	String toolTipBaseText = "No data: open something!";
 
 	int lastCanvasWidth = 0;
@@ -213,6 +252,7 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 		} else {
 			// reset display data and save ReferenceSequnce object
 			dData = new DisplayData(this, pRefSeq);
+			strainIndex = null;
 
 			recalcGenes = true;
 			restack = true;
@@ -1077,69 +1117,309 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 			 * best to fit rectangles on canvas It only needs to be done once
 			 * per ReferenceSequence, unless strain groupings are changed
 			 */
+			restack = false;
 
-			List<Strain> strains = null;
-
-			// strains = Strain.sortStrainsBySize(strains);
-			if (settings.getStrainSorting() == DisplaySettings.SORT_BY_SIZE) {
-				strains = Strain
-						.sortStrainsBySize(dData.referenceSequence.strains
-								.values());
-			} else if (settings.getStrainSorting() == DisplaySettings.SORT_BY_IDENTITY) {
-				strains = Strain
-						.sortStrainsByIdentity(dData.referenceSequence.strains
-								.values());
-			} else if (settings.getStrainSorting() == DisplaySettings.SORT_BY_LENGTH) {
-				strains = Strain
-						.sortStrainsByLength(dData.referenceSequence.strains
-								.values());
+			// work it out in the background, dropping any layout in progress
+			LayoutWorker previous = layoutWorker;
+			if (previous != null) {
+				previous.cancel();
 			}
+			layoutWorker = new LayoutWorker();
+			layoutWorker.start();
+			layoutTimer.start();
+		}
+	}
 
-			// get row placements
-			for (Strain strain : dData.referenceSequence.strains.values()) {
+	/*
+	 * Strain and read rows are worked out by a LayoutWorker off the event
+	 * thread. Everything the layout needs (positions, heights, sort keys and
+	 * the display settings) is copied into a LayoutSnapshot on the event
+	 * thread first, so the worker never touches strains, reads or their
+	 * display geometries. The rows and heights it finds are set in the
+	 * display geometries by layoutFinished(), back on the event thread.
+	 */
+	private LayoutWorker layoutWorker = null;
+
+	// shows the progress of the current layout
+	private final Timer layoutTimer = new Timer(200, new ActionListener() {
+		public void actionPerformed(ActionEvent e) {
+			LayoutWorker worker = layoutWorker;
+			if (worker != null) {
+				parent.showLayoutProgress("Stacking strains", worker.stacked,
+						worker.snapshot.strains.size());
+			}
+		}
+	});
 
-				// stack reads within strain
-				List<Readable> reads = null;
-
-				if (settings.getReadSorting() == DisplaySettings.SORT_BY_SIZE) {
-					reads = strain.getReadablesSortedByLength(); // reads don't
-					// have a
-					// size, use
-					// length
-				} else if (settings.getReadSorting() == DisplaySettings.SORT_BY_IDENTITY) {
-					reads = strain.getReadablesSortedByIdentity();
-				} else if (settings.getReadSorting() == DisplaySettings.SORT_BY_LENGTH) {
-					reads = strain.getReadablesSortedByLength();
+	/*
+	 * A copy of what the layout needs to know about a strain or readable. The
+	 * placement (inherited) gets the row (and, for strains, the height) that
+	 * the layout finds.
+	 */
+	private static class SequenceSnapshot<U extends AlignedSequence> extends
+			Stacker.Placement {
+		final U sequence;
+		// only set if needed for sorting
+		final int length;
+		final double identity;
+
+		SequenceSnapshot(U pSequence, int pSorting) {
+			super(pSequence);
+			sequence = pSequence;
+			length = pSorting == DisplaySettings.SORT_BY_LENGTH ? pSequence
+					.getAlignment().getLength() : 0;
+			identity = pSorting == DisplaySettings.SORT_BY_IDENTITY ? pSequence
+					.getAlignment().getIdentity() : 0.0;
+		}
+	}
+
+	private static class StrainSnapshot extends SequenceSnapshot<Strain> {
+		final int size;
+		// readables in the strain if it is open (otherwise null)
+		final List<SequenceSnapshot<Readable>> readables;
+
+		StrainSnapshot(Strain pStrain, int pStrainSorting, int pReadSorting) {
+			super(pStrain, pStrainSorting);
+			size = pStrain.getSize();
+			if (pStrain.isOpen()) {
+				// reads don't have a size, use length
+				int readSorting = pReadSorting == DisplaySettings.SORT_BY_SIZE ? DisplaySettings.SORT_BY_LENGTH
+						: pReadSorting;
+				readables = new ArrayList<SequenceSnapshot<Readable>>(pStrain
+						.getSize());
+				Iterator<Readable> rit = pStrain.getReadableIterator();
+				while (rit.hasNext()) {
+					readables.add(new SequenceSnapshot<Readable>(rit.next(),
+							readSorting));
 				}
+			} else {
+				readables = null;
+			}
+		}
+	}
 
-				StrainDisplayGeometry sdg = (StrainDisplayGeometry) strain
-						.getDisplayGeometry();
-				if (strain.isOpen()) {
-					if (settings.getReadStacking() == DisplaySettings.STACK_COMPACTLY) {
-						sdg.setHeight(Stacker.stackPositions(reads));
-					} else if (settings.getReadStacking() == DisplaySettings.STACK_STRICTLY) {
-						sdg.setHeight(Stacker.stackPositionsStrictly(reads));
-					} else {
-						sdg.setHeight(Stacker.stackReadables(reads));
-					}
-				} else {
-					sdg.setHeight(1);
+	/*
+	 * Everything a layout works from, copied on the event thread
+	 */
+	private class LayoutSnapshot {
+		final int readSorting = settings.getReadSorting();
+		final int readStacking = settings.getReadStacking();
+		final int strainSorting = settings.getStrainSorting();
+		final int strainStacking = settings.getStrainStacking();
+		final List<StrainSnapshot> strains = new ArrayList<StrainSnapshot>();
+
+		LayoutSnapshot(Collection<Strain> pStrains) {
+			for (Strain strain : pStrains) {
+				strains.add(new StrainSnapshot(strain, strainSorting,
+						readSorting));
+			}
+		}
+	}
+
+	/*
+	 * The results of a layout: row indexes and the total number of rows, plus
+	 * the snapshot holding the rows and heights to set in the display
+	 * geometries.
+	 */
+	private static class Layout {
+		LayoutSnapshot snapshot = null;
+		HashMap<Strain, RowIndex<Readable>> readIndexes = new HashMap<Strain, RowIndex<Readable>>();
+		RowIndex<Strain> strainIndex = null;
+		int totalRows = 0;
+	}
+
+	private class LayoutWorker extends SwingWorker {
+		final DisplayData data = dData;
+		// taken here, on the event thread
+		final LayoutSnapshot snapshot = new LayoutSnapshot(
+				dData.referenceSequence.strains.values());
+		volatile boolean cancelled = false;
+		volatile int stacked = 0;
+
+		void cancel() {
+			cancelled = true;
+		}
+
+		@Override
+		public Object construct() {
+			return layout(snapshot, this);
+		}
+
+		@Override
+		public void finished() {
+			layoutFinished(this);
+		}
+	}
+
+	/*
+	 * Sorts and stacks the given strains and the reads in any open ones. Only
+	 * the snapshot is used, so this can run on any thread. If pWorker is not
+	 * null, it is checked for cancellation (returning null) and updated with
+	 * progress.
+	 */
+	private static Layout layout(LayoutSnapshot pSnapshot, LayoutWorker pWorker) {
+		Layout layout = new Layout();
+		layout.snapshot = pSnapshot;
+
+		// get row placements
+		for (StrainSnapshot strain : pSnapshot.strains) {
+			if (pWorker != null) {
+				if (pWorker.cancelled) {
+					return null;
 				}
+				pWorker.stacked++;
 			}
 
-			// stack strains on canvas
-			if (settings.getStrainStacking() == DisplaySettings.STACK_COMPACTLY) {
-				dData.totalRows = Stacker.stackPositions(strains);
+			if (strain.readables != null) {
+				// stack reads within strain
+				List<SequenceSnapshot<Readable>> reads = sort(strain.readables,
+						pSnapshot.readSorting);
+
+				if (pSnapshot.readStacking == DisplaySettings.STACK_COMPACTLY) {
+					strain.height = Stacker.stackPlacements(reads);
+				} else if (pSnapshot.readStacking == DisplaySettings.STACK_STRICTLY) {
+					strain.height = Stacker.stackPlacementsStrictly(reads);
+				} else {
+					strain.height = Stacker.stackReadablePlacements(reads);
+				}
+				// index reads by (strain relative) row for culling and
+				// hit-testing
+				layout.readIndexes.put(strain.sequence, new RowIndex<Readable>(
+						getSequences(reads), reads));
 			} else {
-				dData.totalRows = Stacker.stackPositionsStrictly(strains);
+				strain.height = 1;
 			}
+		}
 
-			// adjust canvas size
-			dData.height = Util.getTotalHeight(dData);
-			setPreferredSize(new Dimension(dData.getWidth(), dData.height));
-			// setSize(new Dimension(dData.width,dData.height));
+		if (pWorker != null && pWorker.cancelled) {
+			return null;
+		}
 
-			restack = false;
+		List<StrainSnapshot> strains = sort(pSnapshot.strains,
+				pSnapshot.strainSorting);
+
+		// stack strains on canvas
+		if (pSnapshot.strainStacking == DisplaySettings.STACK_COMPACTLY) {
+			layout.totalRows = Stacker.stackPlacements(strains);
+		} else {
+			layout.totalRows = Stacker.stackPlacementsStrictly(strains);
+		}
+		layout.strainIndex = new RowIndex<Strain>(getSequences(strains),
+				strains);
+
+		return layout;
+	}
+
+	/*
+	 * Sorts a copy of the list the same way as the Strain.sort...() and
+	 * Strain.getReadablesSortedBy...() methods, but using the copied values.
+	 */
+	private static <S extends SequenceSnapshot<?>> List<S> sort(
+			List<S> pSnapshots, int pSorting) {
+		List<S> sorted = new ArrayList<S>(pSnapshots);
+		Comparator<SequenceSnapshot<?>> comparator = null;
+		if (pSorting == DisplaySettings.SORT_BY_SIZE) {
+			// (only strains are sorted by size)
+			comparator = new Comparator<SequenceSnapshot<?>>() {
+				public int compare(SequenceSnapshot<?> p1, SequenceSnapshot<?> p2) {
+					return ((StrainSnapshot) p2).size
+							- ((StrainSnapshot) p1).size;
+				}
+			};
+		} else if (pSorting == DisplaySettings.SORT_BY_IDENTITY) {
+			comparator = new Comparator<SequenceSnapshot<?>>() {
+				public int compare(SequenceSnapshot<?> p1, SequenceSnapshot<?> p2) {
+					return (int) (1000000.0 * (p2.identity - p1.identity));
+				}
+			};
+		} else if (pSorting == DisplaySettings.SORT_BY_LENGTH) {
+			comparator = new Comparator<SequenceSnapshot<?>>() {
+				public int compare(SequenceSnapshot<?> p1, SequenceSnapshot<?> p2) {
+					return p2.length - p1.length;
+				}
+			};
+		}
+		if (comparator != null) {
+			Collections.sort(sorted, comparator);
+		}
+		return sorted;
+	}
+
+	private static <U extends AlignedSequence> List<U> getSequences(
+			List<? extends SequenceSnapshot<U>> pSnapshots) {
+		List<U> sequences = new ArrayList<U>(pSnapshots.size());
+		for (SequenceSnapshot<U> snapshot : pSnapshots) {
+			sequences.add(snapshot.sequence);
+		}
+		return sequences;
+	}
+
+	/*
+	 * Called on the event thread when a LayoutWorker is done. Applies its
+	 * layout unless it has been superseded.
+	 */
+	private void layoutFinished(LayoutWorker pWorker) {
+		if (pWorker != layoutWorker) {
+			// superseded (or already applied)
+			return;
+		}
+		layoutWorker = null;
+		layoutTimer.stop();
+		parent.clearLayoutProgress();
+
+		if (dData == null || pWorker.data != dData) {
+			// a different reference sequence is being shown
+			return;
+		}
+
+		Layout layout = (Layout) pWorker.get();
+		if (layout == null) {
+			// background layout failed, do it here
+			layout = layout(new LayoutSnapshot(dData.referenceSequence.strains
+					.values()), null);
+		}
+
+		// set the rows and heights found
+		for (StrainSnapshot strain : layout.snapshot.strains) {
+			StrainDisplayGeometry sdg = (StrainDisplayGeometry) strain.sequence
+					.getDisplayGeometry();
+			sdg.setHeight(strain.height);
+			sdg.setRow(strain.row);
+			if (strain.readables != null) {
+				for (SequenceSnapshot<Readable> read : strain.readables) {
+					read.sequence.getDisplayGeometry().setRow(read.row);
+				}
+			}
+		}
+		for (Strain strain : dData.referenceSequence.strains.values()) {
+			((StrainDisplayGeometry) strain.getDisplayGeometry())
+					.setReadIndex(layout.readIndexes.get(strain));
+		}
+		strainIndex = layout.strainIndex;
+		dData.totalRows = layout.totalRows;
+
+		// adjust canvas size
+		dData.height = Util.getTotalHeight(dData);
+		setPreferredSize(new Dimension(dData.getWidth(), dData.height));
+		// setSize(new Dimension(dData.width,dData.height));
+		revalidate();
+
+		recalcShapes = true;
+		repaint();
+	}
+
+	/**
+	 * Like doNecessaryCalculations(), but waits for any layout being done in
+	 * the background, so everything is ready to draw when it returns (e.g.
+	 * for printing).
+	 */
+	public void doAllCalculationsNow() {
+		doNecessaryCalculations();
+		LayoutWorker worker = layoutWorker;
+		if (worker != null) {
+			worker.get();
+			layoutFinished(worker);
+			doNecessaryCalculations();
 		}
 	}
 
@@ -1214,9 +1494,16 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 	}
 
 	private void recalculateShapes() {
-		if (recalcShapes) {
-
-			// clear visible strains
+		// wait for a pending layout, since rows may be half done
+		if (recalcShapes && layoutWorker == null) {
+
+			// clear visible strains (and flag them as hidden, since only
+			// those still in view get updated below)
+			for (Strain strain : dData.visibleStrains) {
+				strain.getDisplayGeometry().visible = false;
+				((StrainDisplayGeometry) strain.getDisplayGeometry())
+						.clearVisibleReads();
+			}
 			dData.clearVisible();
 			// dData.printRecombinantMap("should be clear");
 
@@ -1224,12 +1511,17 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 			// so we don't recreate them on each redraw
 
 			// create strains and reads
-			for (Strain strain : dData.referenceSequence.strains.values()) {
+			for (Strain strain : getStrainsInView()) {
 				if (strain.getDisplayGeometry().update(dData)) {
 					dData.visibleStrains.add(strain);
 					// strain.recalcColors();
-					strain.getDisplayGeometry().outline = strain
-							.getDisplayGeometry().fill;
+					if (strain.getDisplayGeometry().outline != strain
+							.getDisplayGeometry().fill) {
+						strain.getDisplayGeometry().outline = strain
+								.getDisplayGeometry().fill;
+						// cached tiles have the old outline
+						invalidateTiles();
+					}
 
 					// reset list of visible reads
 					((StrainDisplayGeometry) strain.getDisplayGeometry())
@@ -1257,9 +1549,8 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 						continue;
 					}
 
-					Iterator<Readable> rit = strain.getReadableIterator();
-					while (rit.hasNext()) {
-						Readable read = rit.next();
+					for (Readable read : ((StrainDisplayGeometry) strain
+							.getDisplayGeometry()).getReadsInView(dData)) {
 						if (read.getDisplayGeometry().update(dData)) {
 							((StrainDisplayGeometry) strain
 									.getDisplayGeometry()).addVisibleRead(read);
@@ -1444,6 +1735,7 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 			dData.selectedGene.getDisplayGeometry().outline = GENE_OUTLINE_COLOR;
 			// remove selection object
 			dData.selectedGene = null;
+			invalidateTiles();
 		}
 	}
 
@@ -1525,6 +1817,14 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 
 			// public void run() {
 			synchronized (dData.referenceSequence) {
+				if (isSceneChanged()) {
+					tilesStale = true;
+				}
+				if (scrolled) {
+					// only need shapes for newly visible rows
+					recalcShapes = true;
+					scrolled = false;
+				}
 				recalculateGenes();
 				stackSequences();
 				recalculateShapes();
@@ -1538,6 +1838,82 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 		}
 	}
 
+	/*
+	 * true if anything other than scrolling has been flagged for recalculation
+	 */
+	private boolean isSceneChanged() {
+		return recalcRefSeq || recalcRegion || recalcGenes || recalcGeneWindow
+				|| restack || recalcShapes;
+	}
+
+	/**
+	 * Forces the canvas to be completely redrawn on the next paint()
+	 */
+	void invalidateTiles() {
+		tilesStale = true;
+	}
+
+	/*
+	 * Draws the canvas from cached tiles, drawing any tiles that are missing
+	 */
+	private void drawTiles(Graphics2D pG2d) {
+		int width = getWidth();
+		if (tilesStale || tileWidth != width
+				|| tileColorChanges != DisplayGeometry.getColorChanges()) {
+			tiles.clear();
+			tilesStale = false;
+			tileWidth = width;
+			tileColorChanges = DisplayGeometry.getColorChanges();
+		}
+
+		Rectangle clip = pG2d.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, width, getHeight());
+		}
+		int firstTile = Math.max(0, clip.y / TILE_HEIGHT);
+		int lastTile = (clip.y + clip.height - 1) / TILE_HEIGHT;
+
+		// shapes have only been calculated for the visible range
+		double[] range = dData.getVerticalVisibleRange();
+
+		int tile = firstTile;
+		while (tile <= lastTile) {
+			if (tiles.containsKey(tile)) {
+				pG2d.drawImage(tiles.get(tile), 0, tile * TILE_HEIGHT, null);
+				tile++;
+				continue;
+			}
+
+			// draw a run of missing tiles in one pass
+			int runEnd = tile;
+			while (runEnd < lastTile && !tiles.containsKey(runEnd + 1)) {
+				runEnd++;
+			}
+			int y = tile * TILE_HEIGHT;
+			int h = (runEnd - tile + 1) * TILE_HEIGHT;
+			BufferedImage image = new BufferedImage(width, h,
+					BufferedImage.TYPE_INT_RGB);
+			Graphics2D g2d = image.createGraphics();
+			g2d.setPaint(BACKGROUND_COLOR);
+			g2d.fillRect(0, 0, width, h);
+			g2d.translate(0, -y);
+			g2d.setClip(0, y, width, h);
+			drawReads(g2d);
+			g2d.dispose();
+			pG2d.drawImage(image, 0, y, null);
+
+			// keep tiles whose shapes were all calculated
+			for (int t = tile; t <= runEnd; t++) {
+				int tileY = t * TILE_HEIGHT;
+				if (tileY >= range[0] && tileY + TILE_HEIGHT <= range[1]) {
+					tiles.put(t, image.getSubimage(0, tileY - y, width,
+							TILE_HEIGHT));
+				}
+			}
+			tile = runEnd + 1;
+		}
+	}
+
 	private void drawReads(Graphics2D pG2d) {
 		// set default line width
 		pG2d.setStroke(DEFAULT_STROKE);
@@ -1601,7 +1977,12 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 
 		// draw reference sequence letters over genes
 		refSeqLetters.draw(pG2d, dData);
+	}
 
+	/*
+	 * draws anything that changes while the mouse is dragged
+	 */
+	private void drawOverlays(Graphics2D pG2d) {
 		// draw user drag area (with a wide border)
 		pG2d.setStroke(WIDE_STROKE);
 
@@ -1635,7 +2016,18 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 				lastCanvasWidth = canvasWidth;
 			}
 
-			drawReads(g2d);
+			boolean printing = g2d.getDeviceConfiguration().getDevice()
+					.getType() == GraphicsDevice.TYPE_PRINTER;
+			if (printing || dData.entireRefSeq == null
+					|| dData.getVerticalVisibleRange() == null
+					|| isSceneChanged() || scrolled) {
+				// draw directly: shapes aren't ready to be cached or we want
+				// full resolution
+				drawReads(g2d);
+			} else {
+				drawTiles(g2d);
+			}
+			drawOverlays(g2d);
 		}
 
 		// System.out.println("done painting");
@@ -1660,14 +2052,41 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 	}
 
 	private Strain findIndicatedStrain(int x, int y) {
-		for (Strain strain : dData.visibleStrains) {
-			if (strain.getDisplayGeometry().shape.contains(x, y)) {
+		for (Strain strain : getStrainsInBox(x, y, x, y)) {
+			if (strain.getDisplayGeometry().visible
+					&& strain.getDisplayGeometry().shape.contains(x, y)) {
 				return strain;
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * Gets strains that could fall in the given box using the index built
+	 * when strains were stacked. Falls back to all strains if the index is
+	 * missing or out of date.
+	 */
+	private Collection<Strain> getStrainsInBox(double x1, double y1,
+			double x2, double y2) {
+		if (strainIndex == null
+				|| strainIndex.size() != dData.referenceSequence.strains.size()) {
+			return dData.referenceSequence.strains.values();
+		}
+		return strainIndex.find(
+				DisplayGeometry.getRowFromY(y1, dData),
+				DisplayGeometry.getRowFromY(y2, dData),
+				DisplayGeometry.getPositionFromX(x1, dData) - 1,
+				DisplayGeometry.getPositionFromX(x2, dData) + 1);
+	}
+
+	private Collection<Strain> getStrainsInView() {
+		double[] vertRange = dData.getVerticalVisibleRange();
+		if (vertRange == null) {
+			return Collections.emptyList();
+		}
+		return getStrainsInBox(0, vertRange[0], dData.getWidth(), vertRange[1]);
+	}
+
 	/*
 	 * Look for objects completely surrounded by selection box and select them
 	 */
@@ -1692,7 +2111,7 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 					// if only part of strain boxed, look inside for boxed reads
 					Iterator<Readable> rit = ((StrainDisplayGeometry) strain
 							.getDisplayGeometry())
-							.getBoxedReadsIterator(selectionBox);
+							.getBoxedReadsIterator(selectionBox, dData);
 					while (rit.hasNext()) {
 						// System.out.println("add to selected objects");
 						rit.next().addToSelectedList(dData);
@@ -1772,7 +2191,7 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 				if (strain != null) {
 					// check reads
 					read = ((StrainDisplayGeometry) strain.getDisplayGeometry())
-							.findIndicatedRead(x, y);
+							.findIndicatedRead(x, y, dData);
 
 					if (read instanceof Clone) {
 						Clone clone = (Clone) read;
@@ -1871,7 +2290,7 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 				if (strain != null) {
 					// check reads
 					read = ((StrainDisplayGeometry) strain.getDisplayGeometry())
-							.findIndicatedRead(x, y);
+							.findIndicatedRead(x, y, dData);
 
 					if (read != null) {
 						updateSelectedObjects(read);
@@ -2059,7 +2478,7 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 
 						// check reads
 						read = ((StrainDisplayGeometry) strain
-								.getDisplayGeometry()).findIndicatedRead(x, y);
+								.getDisplayGeometry()).findIndicatedRead(x, y, dData);
 						if (read != null) {
 							if (dData.drawDiffTicks) {
 								// instead of calling
@@ -2135,9 +2554,15 @@ public class ReferenceSequenceDisplayComponent extends JPanel implements
 			try {
 				JViewport port = (JViewport) e.getSource();
 				// re-draw objects
-				recalcShapes = true;
-				double y1 = port.getViewRect().getMinY();
-				double y2 = port.getViewRect().getMaxY();
+				scrolled = true;
+				// round out to whole tiles, so any tile in view has all of its
+				// shapes calculated
+				double y1 = Math.floor(port.getViewRect().getMinY()
+						/ TILE_HEIGHT)
+						* TILE_HEIGHT;
+				double y2 = Math.ceil(port.getViewRect().getMaxY()
+						/ TILE_HEIGHT)
+						* TILE_HEIGHT;
 				double[] range = { y1, y2 };
 				dData.setVerticalVisibleRange(range);
 				repaint();
@@ -40,10 +40,13 @@ package amd.strainer.display;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+import amd.strainer.display.util.RowIndex;
 import amd.strainer.display.util.Util;
 import amd.strainer.objects.Clone;
 import amd.strainer.objects.Readable;
@@ -68,12 +71,89 @@ public class StrainDisplayGeometry extends AlignedSequenceDisplayGeometry {
 	}
 
 	/**
-	 * Clears the visible Read hash
+	 * Clears the visible Read hash. The Readables in it are flagged as not
+	 * visible, since update() will only be called again on those still in view.
 	 */
 	public void clearVisibleReads() {
+		for (Readable read : visibleReads.values()) {
+			read.getDisplayGeometry().visible = false;
+			if (read instanceof Clone) {
+				((Clone) read).reads[0].getDisplayGeometry().visible = false;
+				((Clone) read).reads[1].getDisplayGeometry().visible = false;
+			}
+		}
 		visibleReads.clear();
 	}
 
+	private RowIndex<Readable> readIndex = null;
+	// the strain's row when the index was set (the row may change while a new
+	// layout is computed)
+	private int indexRow = 0;
+
+	/**
+	 * Sets the index used to find Readables by row and position. This should
+	 * be called whenever the Readables in the strain are restacked.
+	 * 
+	 * @param pIndex
+	 *            index of this strain's Readables (rows relative to the strain)
+	 *            or null to search all Readables
+	 */
+	public void setReadIndex(RowIndex<Readable> pIndex) {
+		readIndex = pIndex;
+		indexRow = getRow();
+	}
+
+	/**
+	 * Gets the Readables that could fall in the given box. Without a current
+	 * index, all of the strain's Readables are returned.
+	 * 
+	 * @param pX1
+	 *            left edge of box
+	 * @param pY1
+	 *            top edge of box
+	 * @param pX2
+	 *            right edge of box
+	 * @param pY2
+	 *            bottom edge of box
+	 * @param pData
+	 *            the global display state (zoom level, etc)
+	 * @return Collection of Readables (a superset of those in the box)
+	 */
+	public Collection<Readable> getReadsInBox(double pX1, double pY1,
+			double pX2, double pY2, DisplayData pData) {
+		Strain strain = (Strain) mParent;
+		if (readIndex == null
+				|| readIndex.size() != strain.getReadables().size()) {
+			// strain has changed since it was stacked
+			return strain.getReadables();
+		}
+
+		int row = indexRow;
+		return readIndex.find(
+				getRowFromY(pY1, pData) - row,
+				getRowFromY(pY2, pData) - row,
+				getPositionFromX(pX1, pData) - 1,
+				getPositionFromX(pX2, pData) + 1);
+	}
+
+	/**
+	 * @param pData
+	 *            the global display state (zoom level, etc)
+	 * @return the Readables that could be visible in the current view
+	 */
+	public Collection<Readable> getReadsInView(DisplayData pData) {
+		double[] vertRange = pData.getVerticalVisibleRange();
+		if (vertRange == null) {
+			return Collections.emptyList();
+		}
+		return getReadsInBox(
+				0,
+				vertRange[0],
+				pData.getWidth(),
+				vertRange[1],
+				pData);
+	}
+
 	/**
 	 * Adds the given Readable to the list of visible Readables
 	 * 
@@ -190,10 +270,8 @@ public class StrainDisplayGeometry extends AlignedSequenceDisplayGeometry {
 		return settings.getStrainTintLowCutoffValue();
 	}
 
-	public Readable findIndicatedRead(int x, int y) {
-		Iterator<Readable> rit = getVisibleReadsIterator();
-		while (rit.hasNext()) {
-			Readable read = rit.next();
+	public Readable findIndicatedRead(int x, int y, DisplayData pData) {
+		for (Readable read : getReadsInBox(x, y, x, y, pData)) {
 			try {
 				if (read.getDisplayGeometry().visible
 						&& read.getDisplayGeometry().getBounds2D().contains(
@@ -214,25 +292,35 @@ public class StrainDisplayGeometry extends AlignedSequenceDisplayGeometry {
 	 * 
 	 * @param pBox
 	 *            Rectangle2D indicating search space
+	 * @param pData
+	 *            the global display state (zoom level, etc)
 	 * @return Iterator that will loop over reads that are completely within
 	 *         pBox. Objects in iterator are Readable (i.e. Read or Clone).
 	 */
-	public Iterator<Readable> getBoxedReadsIterator(Rectangle2D pBox) {
-		return new BoxedReadsIterator(pBox);
+	public Iterator<Readable> getBoxedReadsIterator(Rectangle2D pBox,
+			DisplayData pData) {
+		return new BoxedReadsIterator(pBox, pData);
 	}
 
 	private class BoxedReadsIterator implements Iterator<Readable> {
-		// use visible reads iterator as the core of this object
-		private final Iterator<Readable> rit = getVisibleReadsIterator();
+		// use the reads indexed under the box as the core of this object
+		private final Iterator<Readable> rit;
 		private Readable next = null;
 		private Rectangle2D box = null;
 
-		BoxedReadsIterator(Rectangle2D pBox) {
+		BoxedReadsIterator(Rectangle2D pBox, DisplayData pData) {
 			box = pBox;
+			rit = getReadsInBox(
+					pBox.getMinX(),
+					pBox.getMinY(),
+					pBox.getMaxX(),
+					pBox.getMaxY(),
+					pData).iterator();
 		}
 
 		public void remove() {
-			rit.remove();
+			// the underlying collection may be the strain itself
+			throw new UnsupportedOperationException();
 		}
 
 		public boolean hasNext() {
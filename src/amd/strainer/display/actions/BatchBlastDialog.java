@@ -123,6 +123,8 @@ public class BatchBlastDialog extends JDialog {
 
 	private JCheckBox jQualityFileCheck;
 
+	private JCheckBox jSpillCheck;
+
 	public static void showDialog(PaneledReferenceSequenceDisplay pParent) {
 		BatchBlastDialog dialog = new BatchBlastDialog(pParent);
 		dialog.setVisible(true);
@@ -326,10 +328,20 @@ public class BatchBlastDialog extends JDialog {
 					BorderFactory.createEmptyBorder(5, 5, 5, 5)));
 			jOutputDirPanel.add(getJOutputDirTextField(), null);
 			jOutputDirPanel.add(getJOutputDirButton(), null);
+			jOutputDirPanel.add(getJSpillCheck(), null);
 		}
 		return jOutputDirPanel;
 	}
 
+	private JCheckBox getJSpillCheck() {
+		if (jSpillCheck == null) {
+			jSpillCheck = new JCheckBox("Use temporary files");
+			jSpillCheck
+					.setToolTipText("Keep alignments on disk until each reference sequence is written (for very large BLAST files)");
+		}
+		return jSpillCheck;
+	}
+
 	private JButton getJOutputDirButton() {
 		if (jOutputDirButton == null) {
 			jOutputDirButton = new JButton();
@@ -460,7 +472,7 @@ public class BatchBlastDialog extends JDialog {
 		}
 
 		Task task = new BatchBlastTask(blastFile, outputDir, qualityFile,
-				minClone, maxClone);
+				minClone, maxClone, getJSpillCheck().isSelected());
 
 		SequenceDataLoader loader = new SequenceDataLoader(mParent, task);
 		loader.load();
@@ -72,8 +72,9 @@ public class GetReferenceFromFileTask extends AbstractTask {
 	public static final String BLAST_READS_DB = "BLAST: reads in database";
 	public static final String BLAST_READS_QUERY = "BLAST: reads as query";
 	public static final String SAM = "SAM";
+	public static final String BAM = "BAM";
 	public static final String[] ALIGNMENT_TYPE_LIST = { BLAST_READS_DB,
-			BLAST_READS_QUERY, SAM };
+			BLAST_READS_QUERY, SAM, BAM };
 	private File refSeqFile = null;
 	private File readsFile = null;
 	private File strainsFile = null;
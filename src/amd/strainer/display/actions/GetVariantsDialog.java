@@ -46,9 +46,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -70,8 +74,10 @@ import javax.swing.Timer;
 
 import amd.strainer.GlobalSettings;
 import amd.strainer.algs.Config;
+import amd.strainer.algs.ParallelGeneStrainer;
 import amd.strainer.algs.SegmentStrainer;
 import amd.strainer.algs.SegmentStrainerException;
+import amd.strainer.algs.StrainerResult;
 import amd.strainer.algs.Util;
 import amd.strainer.display.PaneledReferenceSequenceDisplay;
 import amd.strainer.display.ReferenceSequenceDisplayComponent;
@@ -873,19 +879,77 @@ public class GetVariantsDialog extends JDialog {
 	void strainAllGenes(Task pTask) throws InterruptedException,
 			InstantiationException, IllegalAccessException,
 			InvocationTargetException, NoSuchMethodException {
-		if (pTask != null)
-			pTask.setLengthOfTask(mParent.getReferenceSequence().genes.size());
-		for (Gene gene : mParent.getReferenceSequence().genes.values()) {
+		// get algorithm class: an instance of SegmentStrainer
+		Class<? extends SegmentStrainer> algClass = ((AlgBoxOption) getJAlgorithmComboBox()
+				.getSelectedItem()).getAlg();
+
+		// strain genes in order of position so output is always the same
+		List<Gene> genes = new ArrayList<Gene>(mParent.getReferenceSequence().genes
+				.values());
+		Collections.sort(genes, new Comparator<Gene>() {
+			public int compare(Gene g1, Gene g2) {
+				if (g1.getStart() != g2.getStart()) {
+					return g1.getStart() - g2.getStart();
+				}
+				return g1.getName().compareTo(g2.getName());
+			}
+		});
+
+		if (!ParallelGeneStrainer.isParallel(algClass)) {
+			// each gene has to see the strains from the ones before it, so
+			// strain and update the display one gene at a time
 			if (pTask != null)
-				pTask.setCurrent(pTask.getCurrent() + 1);
-			try {
-				strainOneGene(gene, null);
-			} catch (SegmentStrainerException e) {
-				amd.strainer.display.util.Util.displayErrorMessage(
-						PaneledReferenceSequenceDisplay.frame,
-						"Can't strain gene " + gene.getName() + ": "
-								+ e.toString());
+				pTask.setLengthOfTask(genes.size());
+			for (Gene gene : genes) {
+				if (pTask != null)
+					pTask.setCurrent(pTask.getCurrent() + 1);
+				try {
+					strainOneGene(gene, null);
+				} catch (SegmentStrainerException e) {
+					amd.strainer.display.util.Util.displayErrorMessage(
+							PaneledReferenceSequenceDisplay.frame,
+							"Can't strain gene " + gene.getName() + ": "
+									+ e.toString());
+				}
+			}
+			return;
+		}
+
+		List<Read> reads = null;
+		if (getJSelectedReadsButton().isSelected()) {
+			reads = new ArrayList<Read>();
+			Iterator<Read> rit = mCanvas.dData.selectedReadList
+					.getReadIterator();
+			while (rit.hasNext()) {
+				reads.add(rit.next());
+			}
+		}
+
+		// strain all genes at once, then update the display one gene at a
+		// time
+		ParallelGeneStrainer strainer = new ParallelGeneStrainer(algClass);
+		strainer.setTask(pTask);
+		strainer.setReads(reads);
+		List<StrainerResult> results = strainer.strainGenes(genes,
+				(writeToFasta ? fastaFile : null), null);
+
+		for (Map.Entry<Gene, SegmentStrainerException> failure : strainer
+				.getFailures().entrySet()) {
+			amd.strainer.display.util.Util.displayErrorMessage(
+					PaneledReferenceSequenceDisplay.frame,
+					"Can't strain gene " + failure.getKey().getName() + ": "
+							+ failure.getValue().toString());
+		}
+
+		for (StrainerResult sr : results) {
+			if (sr == null) {
+				continue;
+			}
+			if (updateDisplay) {
+				// (false=>don't save backup info, it's done for all genes)
+				mCanvas.updateStrainsFromStrainerResults(sr, false);
 			}
+			System.out.println(sr.toString());
 		}
 	}
 
@@ -906,7 +970,7 @@ public class GetVariantsDialog extends JDialog {
 		}
 
 		// get algorithm class: an instance of SegmentStrainer
-		Class algClass = ((AlgBoxOption) getJAlgorithmComboBox()
+		Class<? extends SegmentStrainer> algClass = ((AlgBoxOption) getJAlgorithmComboBox()
 				.getSelectedItem()).getAlg();
 
 		Iterator<Read> reads = null;
@@ -1031,10 +1095,10 @@ public class GetVariantsDialog extends JDialog {
 	}
 
 	static class AlgBoxOption {
-		private final Class mAlg;
+		private final Class<? extends SegmentStrainer> mAlg;
 		private final String mText;
 
-		AlgBoxOption(String pText, Class pAlg) {
+		AlgBoxOption(String pText, Class<? extends SegmentStrainer> pAlg) {
 			mText = pText;
 			mAlg = pAlg;
 		}
@@ -1044,7 +1108,7 @@ public class GetVariantsDialog extends JDialog {
 			return mText;
 		}
 
-		Class getAlg() {
+		Class<? extends SegmentStrainer> getAlg() {
 			return mAlg;
 		}
 
@@ -1070,7 +1134,8 @@ public class GetVariantsDialog extends JDialog {
 		for (Class alg : algs) {
 			try {
 				String algName = Config.getAlgorithmName(alg);
-				pBox.addItem(new AlgBoxOption(algName, alg));
+				pBox.addItem(new AlgBoxOption(algName, alg
+						.asSubclass(SegmentStrainer.class)));
 				if (alg.equals(defaultStrainer)) {
 					pBox.setSelectedItem(alg);
 				}
@@ -70,6 +70,7 @@ import amd.strainer.display.util.Util;
 import amd.strainer.file.AceFileReader;
 import amd.strainer.file.CAFFileReader;
 import amd.strainer.file.ReferenceSequenceLoader;
+import amd.strainer.file.StrainSessionFile;
 import amd.strainer.objects.QualifiedDifference;
 
 // 
@@ -185,6 +186,7 @@ public class LoadDataDialog extends JDialog {
 
 	private JCheckBox jAceTrimCheck;
 	private JCheckBox jKeepQualCheck;
+	private JCheckBox jLazyDiffsCheck;
 
 	private JPanel jMSAFileTabPanel;
 
@@ -493,6 +495,11 @@ public class LoadDataDialog extends JDialog {
 			return false;
 		}
 
+		// session files can leave the diffs on disk
+		int diffCacheSize = getJLazyDiffsCheck().isSelected() ? StrainSessionFile.DEFAULT_DIFF_CACHE_SIZE
+				: 0;
+		GlobalSettings.setDiffCacheSize(diffCacheSize);
+
 		// load data
 		Task task = new GetReferenceFromFileTask(mParent, refSeqFile,
 				strainerFile, refSeqFileType, qualityFile);
@@ -945,6 +952,7 @@ public class LoadDataDialog extends JDialog {
 			jStrainerFileTabPanel.add(getJRefSeq2FilePanel(), null);
 			jStrainerFileTabPanel.add(getJRefSeq2FormatPanel(), null);
 			jStrainerFileTabPanel.add(getJStrainerFilePanel(), null);
+			jStrainerFileTabPanel.add(getJLazyDiffsPanel(), null);
 		}
 		return jStrainerFileTabPanel;
 	}
@@ -1547,6 +1555,21 @@ public class LoadDataDialog extends JDialog {
 		return jAceRealignCheck;
 	}
 
+	private JPanel getJLazyDiffsPanel() {
+		JPanel panel = new JPanel();
+		panel.add(getJLazyDiffsCheck(), null);
+		return panel;
+	}
+
+	private JCheckBox getJLazyDiffsCheck() {
+		if (jLazyDiffsCheck == null) {
+			jLazyDiffsCheck = new JCheckBox(
+					"Leave diffs on disk (session files only)");
+			jLazyDiffsCheck.setSelected(false);
+		}
+		return jLazyDiffsCheck;
+	}
+
 	private JCheckBox getJAceTrimCheck() {
 		if (jAceTrimCheck == null) {
 			jAceTrimCheck = new JCheckBox("Trim alignments");
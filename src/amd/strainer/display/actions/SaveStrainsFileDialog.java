@@ -59,6 +59,7 @@ import javax.swing.KeyStroke;
 import amd.strainer.GlobalSettings;
 import amd.strainer.display.PaneledReferenceSequenceDisplay;
 import amd.strainer.display.util.Util;
+import amd.strainer.file.StrainSessionFile;
 
 public class SaveStrainsFileDialog extends JDialog {
 
@@ -81,6 +82,7 @@ public class SaveStrainsFileDialog extends JDialog {
 	private JPanel jStrainsFormatPanel;
 	private JCheckBox jStrainsFormatACECheck;
 	private JCheckBox jStrainsFormatXMLCheck;
+	private JCheckBox jStrainsFormatSessionCheck;
 
 	JFileChooser fc = null;
 
@@ -111,6 +113,12 @@ public class SaveStrainsFileDialog extends JDialog {
 				if (dialog.getJStrainsFormatXMLButton().isSelected()) {
 					amd.strainer.file.Util.writeStrainsToXML(pParent
 							.getReferenceSequence(), strainsFile, null, true);
+				} else if (dialog.getJStrainsFormatSessionButton()
+						.isSelected()) {
+					StrainSessionFile.write(
+							pParent.getReferenceSequence(),
+							strainsFile,
+							null);
 				} else {
 					amd.strainer.file.Util.writeStrainsToAce(pParent
 							.getReferenceSequence(), strainsFile);
@@ -145,7 +153,7 @@ public class SaveStrainsFileDialog extends JDialog {
 		// set up filee chooser
 		try {
 			fc = new JFileChooser();
-			fc.setDialogTitle("Choose file to save strain data as XML");
+			fc.setDialogTitle("Choose file to save strain data");
 		} catch (java.security.AccessControlException ace) {
 			System.out
 					.println("Cannot initialize file chooser, there may be a permissions problem: "
@@ -167,6 +175,10 @@ public class SaveStrainsFileDialog extends JDialog {
 		ButtonGroup group = new ButtonGroup();
 		group.add(getJStrainsFormatACEButton());
 		group.add(getJStrainsFormatXMLButton());
+		group.add(getJStrainsFormatSessionButton());
+		if (strainsFile.getName().endsWith(StrainSessionFile.EXTENSION)) {
+			getJStrainsFormatSessionButton().setSelected(true);
+		}
 
 		this.setContentPane(getJContentPane());
 		this.setLocationRelativeTo(PaneledReferenceSequenceDisplay.frame);
@@ -407,6 +419,7 @@ public class SaveStrainsFileDialog extends JDialog {
 			jStrainsFormatPanel = new JPanel();
 			jStrainsFormatPanel.add(getJStrainsFormatXMLButton());
 			jStrainsFormatPanel.add(getJStrainsFormatACEButton());
+			jStrainsFormatPanel.add(getJStrainsFormatSessionButton());
 		}
 		return jStrainsFormatPanel;
 	}
@@ -439,4 +452,17 @@ public class SaveStrainsFileDialog extends JDialog {
 		return jStrainsFormatXMLCheck;
 	}
 
+	/**
+	 * This method initializes jStrainsFormatSessionButton
+	 * 
+	 * @return javax.swing.JCheckBox
+	 */
+	private JCheckBox getJStrainsFormatSessionButton() {
+		if (jStrainsFormatSessionCheck == null) {
+			jStrainsFormatSessionCheck = new JCheckBox();
+			jStrainsFormatSessionCheck.setText("Session (binary)");
+		}
+		return jStrainsFormatSessionCheck;
+	}
+
 }
@@ -0,0 +1,203 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.display.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import amd.strainer.objects.AlignedSequence;
+
+/**
+ * Looks up sequences by row and position once Stacker has placed them. Each
+ * sequence is filed under its first row; within a row the sequences are
+ * sorted by start with a running maximum of their ends, so finding what
+ * overlaps a window is a halving search followed by a walk over the hits.
+ * <p>
+ * Rows, heights and extents are copied when the index is built, so it keeps
+ * describing that layout even if the sequences are restacked later.
+ * 
+ * @author jmeppley
+ * @see Stacker
+ */
+public class RowIndex<U extends AlignedSequence> {
+	private final ArrayList<List<U>> seqsByRow = new ArrayList<List<U>>();
+	private final ArrayList<int[]> startsByRow = new ArrayList<int[]>();
+	private final ArrayList<int[]> endsByRow = new ArrayList<int[]>();
+	private final ArrayList<int[]> heightsByRow = new ArrayList<int[]>();
+	private final ArrayList<int[]> maxEndsByRow = new ArrayList<int[]>();
+	private int maxHeight = 1;
+	private int size = 0;
+
+	/**
+	 * Indexes the given sequences using the rows and heights currently set in
+	 * their DisplayGeometry objects (so call this after stacking)
+	 * 
+	 * @param pSeqs
+	 *            a Collection of AlignedSequence objects
+	 */
+	public RowIndex(Iterable<? extends U> pSeqs) {
+		List<U> seqs = new ArrayList<U>();
+		List<Stacker.Placement> placements = new ArrayList<Stacker.Placement>();
+		for (U seq : pSeqs) {
+			seqs.add(seq);
+			placements.add(new Stacker.Placement(seq));
+		}
+		index(seqs, placements);
+	}
+
+	/**
+	 * Indexes the given sequences using copies of their positions (eg: from
+	 * Stacker.stackPlacements()). The sequences themselves are not touched.
+	 * 
+	 * @param pSeqs
+	 *            a List of AlignedSequence objects
+	 * @param pPlacements
+	 *            the position, height and row of each sequence (in the same
+	 *            order)
+	 */
+	public RowIndex(List<? extends U> pSeqs,
+			List<? extends Stacker.Placement> pPlacements) {
+		index(pSeqs, pPlacements);
+	}
+
+	private void index(List<? extends U> pSeqs,
+			final List<? extends Stacker.Placement> pPlacements) {
+		// indexes into pSeqs by row
+		ArrayList<List<Integer>> indexesByRow = new ArrayList<List<Integer>>();
+		for (int i = 0; i < pSeqs.size(); i++) {
+			Stacker.Placement placement = pPlacements.get(i);
+			while (indexesByRow.size() <= placement.row) {
+				indexesByRow.add(new ArrayList<Integer>());
+			}
+			indexesByRow.get(placement.row).add(Integer.valueOf(i));
+			maxHeight = Math.max(maxHeight, placement.height);
+			size++;
+		}
+
+		Comparator<Integer> byStart = new Comparator<Integer>() {
+			public int compare(Integer p1, Integer p2) {
+				int start1 = pPlacements.get(p1.intValue()).start;
+				int start2 = pPlacements.get(p2.intValue()).start;
+				return start1 < start2 ? -1 : (start1 == start2 ? 0 : 1);
+			}
+		};
+		for (List<Integer> indexes : indexesByRow) {
+			Collections.sort(indexes, byStart);
+			List<U> seqs = new ArrayList<U>(indexes.size());
+			int[] starts = new int[indexes.size()];
+			int[] ends = new int[indexes.size()];
+			int[] heights = new int[indexes.size()];
+			int[] maxEnds = new int[indexes.size()];
+			int maxEnd = Integer.MIN_VALUE;
+			for (int i = 0; i < maxEnds.length; i++) {
+				int index = indexes.get(i).intValue();
+				Stacker.Placement placement = pPlacements.get(index);
+				seqs.add(pSeqs.get(index));
+				starts[i] = placement.start;
+				ends[i] = placement.end;
+				heights[i] = placement.height;
+				maxEnd = Math.max(maxEnd, ends[i]);
+				maxEnds[i] = maxEnd;
+			}
+			seqsByRow.add(seqs);
+			startsByRow.add(starts);
+			endsByRow.add(ends);
+			heightsByRow.add(heights);
+			maxEndsByRow.add(maxEnds);
+		}
+	}
+
+	/**
+	 * @return the number of sequences indexed
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds sequences that occupy any of the given rows and overlap the given
+	 * positions
+	 * 
+	 * @param pFirstRow
+	 *            the first row to look in
+	 * @param pLastRow
+	 *            the last row to look in
+	 * @param pStart
+	 *            the first position of the window
+	 * @param pEnd
+	 *            the last position of the window
+	 * @return a List (possibly empty) of the sequences found
+	 */
+	public List<U> find(int pFirstRow, int pLastRow, int pStart, int pEnd) {
+		List<U> found = new ArrayList<U>();
+		// sequences taller than one row may start above the first row
+		int firstRow = Math.max(0, pFirstRow - maxHeight + 1);
+		int lastRow = Math.min(seqsByRow.size() - 1, pLastRow);
+		for (int row = firstRow; row <= lastRow; row++) {
+			List<U> seqs = seqsByRow.get(row);
+			int[] starts = startsByRow.get(row);
+			int[] ends = endsByRow.get(row);
+			int[] heights = heightsByRow.get(row);
+			int[] maxEnds = maxEndsByRow.get(row);
+
+			// find first sequence that (or one before it) reaches pStart
+			int low = 0;
+			int high = maxEnds.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (maxEnds[mid] < pStart) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			for (int i = low; i < starts.length; i++) {
+				if (starts[i] > pEnd) {
+					// the rest are further right
+					break;
+				}
+				if (ends[i] >= pStart && row + heights[i] > pFirstRow) {
+					found.add(seqs.get(i));
+				}
+			}
+		}
+		return found;
+	}
+}
@@ -37,7 +37,10 @@
 package amd.strainer.display.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import amd.strainer.objects.AlignedSequence;
 import amd.strainer.objects.Clone;
@@ -46,6 +49,9 @@ import amd.strainer.objects.Readable;
 /**
  * Contains static methods for figuring out how to place reads and strains on
  * the screen
+ * <p>
+ * Two sequences can't share a row if they overlap, that is if each one starts
+ * before the other ends. (So sequences that just touch can share a row.)
  * 
  * @author jmeppley
  */
@@ -60,13 +66,28 @@ public class Stacker {
 	 * @return the number of rows used
 	 */
 	public static <U extends AlignedSequence> int stackPositions(List<U> pAS) {
-		ArrayList<List<U>> posByRow = new ArrayList<List<U>>();
+		List<Placement> placements = getPlacements(pAS);
+		int size = stackPlacements(placements);
+		setRows(pAS, placements);
+		return size;
+	}
+
+	/**
+	 * Like stackPositions(), but for copies of the sequences' positions. The
+	 * row is set in each Placement.
+	 * 
+	 * @param pPlacements
+	 *            the sequences to stack, in order
+	 * @return the number of rows used
+	 */
+	public static int stackPlacements(List<? extends Placement> pPlacements) {
+		Rows rows = new Rows(pPlacements, false);
 
-		for (U seq : pAS) {
-			placeInOpenRow(seq, posByRow);
+		for (Placement placement : pPlacements) {
+			rows.placeInOpenRow(placement);
 		}
 
-		return posByRow.size();
+		return rows.size();
 	}
 
 	/**
@@ -80,65 +101,33 @@ public class Stacker {
 	 * @return the number of rows used
 	 */
 	public static int stackReadables(List<Readable> pReadables) {
-		ArrayList<List<AlignedSequence>> posByRow = new ArrayList<List<AlignedSequence>>();
-
-		for (Readable readable : pReadables) {
-			if (readable instanceof Clone) {
-				placeInOpenRow(readable, posByRow);
-			} else {
-				placeInOpenRowStrictly(readable, posByRow);
-			}
-		}
-
-		return posByRow.size();
+		List<Placement> placements = getPlacements(pReadables);
+		int size = stackReadablePlacements(placements);
+		setRows(pReadables, placements);
+		return size;
 	}
 
-	private static <U extends AlignedSequence> void placeInOpenRow(U seq,
-			ArrayList<List<U>> posByRow) {
-		// System.out.println(pos);
-		int row = 0;
-		int height = seq.getDisplayGeometry().getHeight();
-		int[] indexes = new int[height];
-		while (true) {
-			// System.out.print("row: ");
-			// System.out.println(row);
-
-			// make sure row list is long enough
-			while (posByRow.size() < row + height) {
-				posByRow.add(new ArrayList<U>());
-			}
-
-			// check for conflicts
-			boolean conflict = false;
-			for (int h = 0; h < height; h++) {
-				try {
-					indexes[h] = placePosInRow(seq, posByRow.get(row + h));
-				} catch (SequenceOverlapException e) {
-					// skip ahead to next row that occupying sequence isn't
-					// in...
-					row = e.conflictingSequence.getDisplayGeometry().getRow()
-							+ e.conflictingSequence.getDisplayGeometry()
-									.getHeight();
-					conflict = true;
-
-					// get out of for loop
-					break;
-				}
-			}
+	/**
+	 * Like stackReadables(), but for copies of the readables' positions. The
+	 * row is set in each Placement.
+	 * 
+	 * @param pPlacements
+	 *            the readables to stack, in order
+	 * @return the number of rows used
+	 */
+	public static int stackReadablePlacements(
+			List<? extends Placement> pPlacements) {
+		Rows rows = new Rows(pPlacements, true);
 
-			if (!conflict) {
-				// we found an open row,
-				// get out of while loop
-				break;
+		for (Placement placement : pPlacements) {
+			if (placement.isClone) {
+				rows.placeInOpenRow(placement);
+			} else {
+				rows.placeInOpenRowStrictly(placement);
 			}
 		}
 
-		for (int h = 0; h < height; h++) {
-			List<U> posInRow = posByRow.get(row + h);
-			posInRow.add(indexes[h], seq);
-		}
-		seq.getDisplayGeometry().setRow(row);
-
+		return rows.size();
 	}
 
 	/**
@@ -152,128 +141,265 @@ public class Stacker {
 	 */
 	public static <U extends AlignedSequence> int stackPositionsStrictly(
 			List<U> pAS) {
-		ArrayList<List<U>> posByRow = new ArrayList<List<U>>();
+		List<Placement> placements = getPlacements(pAS);
+		int size = stackPlacementsStrictly(placements);
+		setRows(pAS, placements);
+		return size;
+	}
+
+	/**
+	 * Like stackPositionsStrictly(), but for copies of the sequences'
+	 * positions. The row is set in each Placement.
+	 * 
+	 * @param pPlacements
+	 *            the sequences to stack, in order
+	 * @return the number of rows used
+	 */
+	public static int stackPlacementsStrictly(
+			List<? extends Placement> pPlacements) {
+		Rows rows = new Rows(pPlacements, true);
 
-		for (U seq : pAS) {
-			placeInOpenRowStrictly(seq, posByRow);
+		for (Placement placement : pPlacements) {
+			rows.placeInOpenRowStrictly(placement);
 		}
 
-		return posByRow.size();
+		return rows.size();
 	}
 
-	// find lowest row which this seq fits in but don't let it fall under a
-	// previously placed seq.
-	// return array of indexes indicating where in each row this seq goes. Last
-	// element is the
-	// starting row number. Index is -1 if there is a connflict
-	private static <U extends AlignedSequence> void placeInOpenRowStrictly(
-			U seq, ArrayList<List<U>> posByRow) {
-		// System.out.println(pos);
-		int rows = posByRow.size();
-		int[] indexes = new int[rows];
-		int bestRow = 0;
-		for (int row = 0; row < rows; row++) {
-
-			// CHECK THIS ROW FOR CONFLICTS
-			try {
-				indexes[row] = placePosInRow(seq, posByRow.get(row));
-			} catch (SequenceOverlapException e) {
-				// flag this row as bad
-				indexes[row] = -1;
-				// skip ahead to next row that conflicting sequence isn't in...
-				row = e.conflictingSequence.getDisplayGeometry().getRow()
-						+ e.conflictingSequence.getDisplayGeometry()
-								.getHeight() - 1;
-				// set best row (+/- 1 becuse loop autamatically increments
-				// once)
-				bestRow = row + 1;
-			}
+	/**
+	 * A copy of a sequence's position and height (and whether it is a Clone,
+	 * see stackReadables()), so it can be stacked without touching the
+	 * sequence itself, eg: off the event thread.
+	 */
+	public static class Placement {
+		public final int start;
+		public final int end;
+		public final boolean isClone;
+		public int height;
+		/** set by the stack...Placements() methods */
+		public int row = 0;
 
+		public Placement(int pStart, int pEnd, int pHeight, boolean pIsClone) {
+			start = pStart;
+			end = pEnd;
+			height = pHeight;
+			isClone = pIsClone;
 		}
 
-		int height = seq.getDisplayGeometry().getHeight();
-		int row = bestRow;
-
-		for (int h = row; h < row + height; h++) {
-			try {
-				// get list for this row
-				List<U> posInRow = posByRow.get(h);
-				// add seq at indicated index
-				posInRow.add(indexes[h], seq);
-			} catch (IndexOutOfBoundsException e) {
-				// if row hasn't been reached before, initialize it
-				List<U> l = new ArrayList<U>();
-				l.add(seq);
-				posByRow.add(l);
-			}
+		/**
+		 * Copies the sequence's position and its current height and row
+		 * 
+		 * @param pSeq
+		 *            the sequence to copy
+		 */
+		public Placement(AlignedSequence pSeq) {
+			this(pSeq.getStart(), pSeq.getEnd(), pSeq.getDisplayGeometry()
+					.getHeight(), pSeq instanceof Clone);
+			row = pSeq.getDisplayGeometry().getRow();
 		}
-		seq.getDisplayGeometry().setRow(row);
 	}
 
-	/**
-	 * Searches list to see if any positions intersect the given position. Uses
-	 * a halving algorithm to reduce the number of comparisons needed
+	private static List<Placement> getPlacements(
+			List<? extends AlignedSequence> pAS) {
+		List<Placement> placements = new ArrayList<Placement>(pAS.size());
+		for (AlignedSequence seq : pAS) {
+			placements.add(new Placement(seq));
+		}
+		return placements;
+	}
+
+	private static void setRows(List<? extends AlignedSequence> pAS,
+			List<Placement> pPlacements) {
+		for (int i = 0; i < pAS.size(); i++) {
+			pAS.get(i).getDisplayGeometry().setRow(pPlacements.get(i).row);
+		}
+	}
+
+	/*
+	 * The sequences placed so far. Each row maps starts to the furthest end of
+	 * the sequences with that start. Sequences in a row don't overlap, so ends
+	 * only increase with starts, and whether a new sequence fits is a single
+	 * lookup of the last start before its end.
 	 * 
-	 * @param pos
-	 *            new sequence position (AlignedSequence object) to place in row
-	 * @param posInRow
-	 *            list of positions (ALignedSEquence objects) already in row
-	 * @return the index pos should be placed in list
-	 * @throws SequenceOverlapException
-	 *             if pos intersects any existing positions
+	 * For strict placement there is also a segment tree over positions that
+	 * holds the lowest row used (row + height) by anything covering each
+	 * position. To follow the overlap rule exactly, positions are doubled: a
+	 * sequence from s to e covers 2s+1 to 2e-1, while one that starts and ends
+	 * at x covers just 2x and is kept in a separate tree, since two of those
+	 * never overlap each other.
 	 */
-	private static <U extends AlignedSequence> int placePosInRow(U pos,
-			List<U> posInRow) throws SequenceOverlapException {
-		int high = posInRow.size();
-		if (high == 0) {
-			// empty list, pos will fit, return 0 as index
-			return 0;
+	private static class Rows {
+		private final ArrayList<TreeMap<Integer, Integer>> endsByRow = new ArrayList<TreeMap<Integer, Integer>>();
+		private int size = 0;
+
+		// for strict placement (null if not needed)
+		private int[] points = null;
+		private RowTree spans = null;
+		private RowTree dots = null;
+
+		Rows(List<? extends Placement> pPlacements, boolean pStrict) {
+			if (pStrict) {
+				int[] allPoints = new int[2 * pPlacements.size()];
+				int count = 0;
+				for (Placement placement : pPlacements) {
+					int start = placement.start;
+					int end = placement.end;
+					if (start == end) {
+						allPoints[count++] = 2 * start;
+					} else if (start < end) {
+						allPoints[count++] = 2 * start + 1;
+						allPoints[count++] = 2 * end - 1;
+					}
+				}
+				Arrays.sort(allPoints, 0, count);
+				int unique = 0;
+				for (int i = 0; i < count; i++) {
+					if (unique == 0 || allPoints[i] != allPoints[unique - 1]) {
+						allPoints[unique++] = allPoints[i];
+					}
+				}
+				points = Arrays.copyOf(allPoints, unique);
+				spans = new RowTree(unique);
+				dots = new RowTree(unique);
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		// true if seq overlaps anything in the given row
+		private boolean conflicts(int pRow, int pStart, int pEnd) {
+			if (pRow >= endsByRow.size()) {
+				return false;
+			}
+			Map.Entry<Integer, Integer> last = endsByRow.get(pRow).lowerEntry(
+					pEnd);
+			return last != null && last.getValue() > pStart;
 		}
 
-		// set up variables
-		int low = -1;
-		int step = (high) / 2;
-		int index = step;
-
-		// recursively look at middle position
-		while (true) {
-			AlignedSequence current = posInRow.get(index);
-			if (pos.getStart() < current.getEnd()) {
-				if (pos.getEnd() > current.getStart()) {
-					// sequences overlap... throw exception
-					throw new SequenceOverlapException(current);
+		// Puts seq in the lowest row where it fits
+		void placeInOpenRow(Placement seq) {
+			int start = seq.start;
+			int end = seq.end;
+			int height = seq.height;
+
+			int row = 0;
+			int h = 0;
+			while (h < height) {
+				if (conflicts(row + h, start, end)) {
+					// none of the rows from here through row+h will work
+					row = row + h + 1;
+					h = 0;
 				} else {
-					// pos lies to the left of current, go down
-					high = index;
-					step = (high - low) / 2;
-					index = low + step;
+					h++;
 				}
-			} else {
-				// pos lies to the right go up
-				low = index;
-				step = (high - low) / 2;
-				index = low + step;
 			}
 
-			// high and low indexes have already been checked, we're done.
-			if (index == low) {
-				index++;
-				break;
-			} else if (index == high) {
-				break;
+			place(seq, row, height);
+		}
+
+		// find lowest row which this seq fits in but don't let it fall under a
+		// previously placed seq.
+		void placeInOpenRowStrictly(Placement seq) {
+			int start = seq.start;
+			int end = seq.end;
+
+			int row = 0;
+			if (start == end) {
+				int point = Arrays.binarySearch(points, 2 * start);
+				row = spans.max(point, point);
+			} else if (start < end) {
+				int first = Arrays.binarySearch(points, 2 * start + 1);
+				int last = Arrays.binarySearch(points, 2 * end - 1);
+				row = Math.max(spans.max(first, last), dots.max(first, last));
 			}
+
+			place(seq, row, seq.height);
 		}
 
-		return index;
+		private void place(Placement seq, int pRow, int pHeight) {
+			int start = seq.start;
+			int end = seq.end;
+
+			for (int row = pRow; row < pRow + pHeight; row++) {
+				while (endsByRow.size() <= row) {
+					endsByRow.add(new TreeMap<Integer, Integer>());
+				}
+				TreeMap<Integer, Integer> ends = endsByRow.get(row);
+				Integer oldEnd = ends.get(start);
+				if (oldEnd == null || oldEnd < end) {
+					ends.put(start, end);
+				}
+			}
+
+			if (points != null) {
+				if (start == end) {
+					int point = Arrays.binarySearch(points, 2 * start);
+					dots.raise(point, point, pRow + pHeight);
+				} else if (start < end) {
+					spans.raise(
+							Arrays.binarySearch(points, 2 * start + 1),
+							Arrays.binarySearch(points, 2 * end - 1),
+							pRow + pHeight);
+				}
+			}
+
+			size = Math.max(size, pRow + pHeight);
+			seq.row = pRow;
+		}
 	}
 
-}
+	/*
+	 * Segment tree that raises ranges to a value and finds the largest value
+	 * in a range. tag[] is the value given to a node's whole range, best[] the
+	 * largest value given to any part of it.
+	 */
+	private static class RowTree {
+		private final int n;
+		private final int[] tag;
+		private final int[] best;
 
-class SequenceOverlapException extends Exception {
-	private static final long serialVersionUID = -100918163938278078L;
-	public AlignedSequence conflictingSequence = null;
+		RowTree(int pSize) {
+			n = Math.max(pSize, 1);
+			tag = new int[4 * n];
+			best = new int[4 * n];
+		}
+
+		void raise(int pFirst, int pLast, int pValue) {
+			raise(1, 0, n - 1, pFirst, pLast, pValue);
+		}
 
-	public SequenceOverlapException(AlignedSequence pPos) {
-		conflictingSequence = pPos;
+		int max(int pFirst, int pLast) {
+			return max(1, 0, n - 1, pFirst, pLast);
+		}
+
+		private void raise(int pNode, int pLow, int pHigh, int pFirst,
+				int pLast, int pValue) {
+			if (pLast < pLow || pHigh < pFirst) {
+				return;
+			}
+			best[pNode] = Math.max(best[pNode], pValue);
+			if (pFirst <= pLow && pHigh <= pLast) {
+				tag[pNode] = Math.max(tag[pNode], pValue);
+				return;
+			}
+			int mid = (pLow + pHigh) >>> 1;
+			raise(2 * pNode, pLow, mid, pFirst, pLast, pValue);
+			raise(2 * pNode + 1, mid + 1, pHigh, pFirst, pLast, pValue);
+		}
+
+		private int max(int pNode, int pLow, int pHigh, int pFirst, int pLast) {
+			if (pLast < pLow || pHigh < pFirst) {
+				return 0;
+			}
+			if (pFirst <= pLow && pHigh <= pLast) {
+				return best[pNode];
+			}
+			int mid = (pLow + pHigh) >>> 1;
+			return Math.max(tag[pNode], Math.max(
+					max(2 * pNode, pLow, mid, pFirst, pLast),
+					max(2 * pNode + 1, mid + 1, pHigh, pFirst, pLast)));
+		}
 	}
 }
@@ -55,6 +55,17 @@ public class AceContigHeader {
 	private AceContigHeader() {
 	}
 
+	/**
+	 * Creates a header from values that have already been parsed (eg: from an
+	 * AceFileIndex)
+	 */
+	AceContigHeader(String pName, long pNumber, int pLength, int pReadCount) {
+		mName = pName;
+		mNumber = pNumber;
+		mLength = pLength;
+		mReadCount = pReadCount;
+	}
+
 	/**
 	 * Parses a contig header line ("CO ...") from and ACE file and returns an
 	 * instance of ContigHeader loaded with name, number, length, and number of
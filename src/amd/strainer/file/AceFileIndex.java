@@ -0,0 +1,398 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */package amd.strainer.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import amd.strainer.display.actions.Task;
+
+/**
+ * The byte offset of every contig (CO) record in an ACE file, so that a contig
+ * can be loaded without reading the file from the top.
+ * <p/>
+ * The index is built with one pass over the file and saved next to it (as
+ * FILE.ace.idx). The saved index records the size and modification time of the
+ * ACE file and is ignored (and rebuilt) if either has changed. If the index
+ * can't be saved (eg: a read only directory), it is just kept in memory.
+ * <p/>
+ * The index file is plain text: a header line, the size and modification time
+ * of the ACE file, then one line per contig with the offset of the CO line,
+ * the contig number, name, length, and read count (separated by tabs).
+ * 
+ * @author jmeppley
+ * 
+ */
+public class AceFileIndex {
+	/**
+	 * Appended to the ACE file name to get the name of the index file
+	 */
+	public static final String SUFFIX = ".idx";
+
+	private static final String HEADER = "# strainer ACE index v1";
+	private static final String SIZE_TAG = "size";
+	private static final String MODIFIED_TAG = "modified";
+	private static final int BUFFER_SIZE = 1 << 16;
+	// progress is reported in megabytes so the length fits in an int
+	private static final int PROGRESS_UNIT = 1 << 20;
+
+	private final File mAceFile;
+	private final long mFileSize;
+	private final long mModified;
+
+	// contigs in file order
+	private final List<Entry> mEntries = new ArrayList<Entry>();
+	// if two contigs share a number or name, the first one is used
+	private final HashMap<Long, Entry> mEntriesByNumber = new HashMap<Long, Entry>();
+	private final HashMap<String, Entry> mEntriesByName = new HashMap<String, Entry>();
+
+	/**
+	 * The location and header of one contig
+	 */
+	public static class Entry {
+		private final long mOffset;
+		private final AceContigHeader mHeader;
+		// set when the next contig (or the end of the file) is known
+		private long mEnd;
+
+		Entry(long pOffset, AceContigHeader pHeader) {
+			mOffset = pOffset;
+			mHeader = pHeader;
+		}
+
+		/**
+		 * @return the byte offset of the contig's CO line
+		 */
+		public long getOffset() {
+			return mOffset;
+		}
+
+		/**
+		 * @return the byte offset just past the end of the contig (the next
+		 *         contig's CO line or the end of the file)
+		 */
+		public long getEnd() {
+			return mEnd;
+		}
+
+		/**
+		 * @return the parsed CO line
+		 */
+		public AceContigHeader getHeader() {
+			return mHeader;
+		}
+	}
+
+	private AceFileIndex(File pAceFile, long pFileSize, long pModified) {
+		mAceFile = pAceFile;
+		mFileSize = pFileSize;
+		mModified = pModified;
+	}
+
+	/**
+	 * Returns the index for the given ACE file. The saved index is used if it
+	 * is up to date, otherwise the file is scanned and the new index is saved.
+	 * 
+	 * @param pAceFile
+	 *            the ACE file
+	 * @param pTask
+	 *            a Task to be updated with the progress of the scan and
+	 *            checked for cancellation (may be null)
+	 * @return the index
+	 * @throws IOException
+	 *             if the ACE file can't be read
+	 * @throws InterruptedException
+	 *             if the task is cancelled while the file is scanned
+	 */
+	public static AceFileIndex getIndex(File pAceFile, Task pTask)
+			throws IOException, InterruptedException {
+		File indexFile = getIndexFile(pAceFile);
+		if (indexFile.exists()) {
+			try {
+				AceFileIndex index = read(pAceFile, indexFile);
+				if (index != null) {
+					return index;
+				}
+			} catch (IOException e) {
+				System.err.println("Ignoring unreadable index "
+						+ indexFile.getAbsolutePath() + ": " + e.getMessage());
+			} catch (RuntimeException e) {
+				System.err.println("Ignoring unreadable index "
+						+ indexFile.getAbsolutePath() + ": " + e.toString());
+			}
+		}
+
+		AceFileIndex index = build(pAceFile, pTask);
+		try {
+			index.write(indexFile);
+		} catch (IOException e) {
+			System.err.println("Could not save index to "
+					+ indexFile.getAbsolutePath() + ": " + e.getMessage());
+		}
+		return index;
+	}
+
+	/**
+	 * @param pAceFile
+	 *            an ACE file
+	 * @return the location of the saved index for that file
+	 */
+	public static File getIndexFile(File pAceFile) {
+		return new File(pAceFile.getPath() + SUFFIX);
+	}
+
+	/**
+	 * @return true if the ACE file still has the size and modification time it
+	 *         had when this index was built
+	 */
+	public boolean isCurrent() {
+		return mAceFile.length() == mFileSize
+				&& mAceFile.lastModified() == mModified;
+	}
+
+	/**
+	 * @return all contigs in the order they appear in the file
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(mEntries);
+	}
+
+	/**
+	 * @param pContigNumber
+	 *            a contig number
+	 * @return the (first) contig with the given number or null if there is
+	 *         none
+	 */
+	public Entry getEntry(long pContigNumber) {
+		return mEntriesByNumber.get(Long.valueOf(pContigNumber));
+	}
+
+	/**
+	 * @param pContigName
+	 *            a contig name
+	 * @return the (first) contig with the given name or null if there is none
+	 */
+	public Entry getEntry(String pContigName) {
+		return mEntriesByName.get(pContigName);
+	}
+
+	/*
+	 * Entries must be added in file order
+	 */
+	private void addEntry(Entry pEntry) {
+		if (mEntries.size() > 0) {
+			mEntries.get(mEntries.size() - 1).mEnd = pEntry.getOffset();
+		}
+		pEntry.mEnd = mFileSize;
+		mEntries.add(pEntry);
+		Long number = Long.valueOf(pEntry.getHeader().getNumber());
+		if (!mEntriesByNumber.containsKey(number)) {
+			mEntriesByNumber.put(number, pEntry);
+		}
+		if (!mEntriesByName.containsKey(pEntry.getHeader().getName())) {
+			mEntriesByName.put(pEntry.getHeader().getName(), pEntry);
+		}
+	}
+
+	/*
+	 * Scan the ACE file for CO lines. Only lines starting with "C" are
+	 * collected, everything else is skipped byte by byte.
+	 */
+	private static AceFileIndex build(File pAceFile, Task pTask)
+			throws IOException, InterruptedException {
+		long size = pAceFile.length();
+		AceFileIndex index = new AceFileIndex(pAceFile, size,
+				pAceFile.lastModified());
+
+		if (pTask != null) {
+			pTask.setMessage("Indexing ACE file...");
+			pTask.setLengthOfTask((int) (size / PROGRESS_UNIT) + 1);
+			pTask.setCurrent(0);
+		}
+
+		InputStream in = new FileInputStream(pAceFile);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			StringBuffer line = new StringBuffer();
+			long bufferStart = 0;
+			long lineStart = 0;
+			boolean atLineStart = true;
+			boolean collecting = false;
+
+			int count = in.read(buffer);
+			while (count > 0) {
+				for (int i = 0; i < count; i++) {
+					byte b = buffer[i];
+					if (b == '\n') {
+						if (collecting) {
+							index.addLine(line, lineStart);
+							collecting = false;
+						}
+						atLineStart = true;
+						lineStart = bufferStart + i + 1;
+					} else {
+						if (atLineStart) {
+							atLineStart = false;
+							collecting = (b == 'C');
+							line.setLength(0);
+						}
+						if (collecting && b != '\r') {
+							line.append((char) b);
+						}
+					}
+				}
+				bufferStart += count;
+
+				if (pTask != null) {
+					if (pTask.isInterrupted()) {
+						throw new InterruptedException("Cancelled");
+					}
+					pTask.setCurrent((int) (bufferStart / PROGRESS_UNIT));
+				}
+
+				count = in.read(buffer);
+			}
+
+			// last line may not end with a newline
+			if (collecting) {
+				index.addLine(line, lineStart);
+			}
+		} finally {
+			in.close();
+		}
+
+		return index;
+	}
+
+	private void addLine(StringBuffer pLine, long pOffset) {
+		if (pLine.length() > 3 && pLine.substring(0, 3).equals("CO ")) {
+			addEntry(new Entry(pOffset,
+					AceContigHeader.parseHeaderLine(pLine.toString())));
+		}
+	}
+
+	/*
+	 * Load a saved index. Returns null if it is out of date.
+	 */
+	private static AceFileIndex read(File pAceFile, File pIndexFile)
+			throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(pIndexFile));
+		try {
+			if (!HEADER.equals(br.readLine())) {
+				return null;
+			}
+			long size = Long.parseLong(getTagValue(br.readLine(), SIZE_TAG));
+			long modified = Long.parseLong(getTagValue(br.readLine(),
+					MODIFIED_TAG));
+			AceFileIndex index = new AceFileIndex(pAceFile, size, modified);
+			if (!index.isCurrent()) {
+				return null;
+			}
+
+			String line = br.readLine();
+			while (line != null) {
+				if (line.length() > 0) {
+					StringTokenizer st = new StringTokenizer(line, "\t");
+					long offset = Long.parseLong(st.nextToken());
+					long number = Long.parseLong(st.nextToken());
+					String name = st.nextToken();
+					int length = Integer.parseInt(st.nextToken());
+					int readCount = Integer.parseInt(st.nextToken());
+					index.addEntry(new Entry(offset, new AceContigHeader(name,
+							number, length, readCount)));
+				}
+				line = br.readLine();
+			}
+			return index;
+		} finally {
+			br.close();
+		}
+	}
+
+	private static String getTagValue(String pLine, String pTag)
+			throws IOException {
+		if (pLine == null || !pLine.startsWith(pTag + "\t")) {
+			throw new IOException("Expected " + pTag + " line, found: "
+					+ pLine);
+		}
+		return pLine.substring(pTag.length() + 1);
+	}
+
+	/*
+	 * Save the index. It is written to a temporary file first so a partly
+	 * written index is never used.
+	 */
+	private void write(File pIndexFile) throws IOException {
+		File tempFile = new File(pIndexFile.getPath() + ".tmp");
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(
+				tempFile)));
+		try {
+			out.println(HEADER);
+			out.println(SIZE_TAG + "\t" + mFileSize);
+			out.println(MODIFIED_TAG + "\t" + mModified);
+			for (Entry entry : mEntries) {
+				AceContigHeader header = entry.getHeader();
+				out.println(entry.getOffset() + "\t" + header.getNumber()
+						+ "\t" + header.getName() + "\t" + header.getLength()
+						+ "\t" + header.getReadCount());
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			tempFile.delete();
+			throw new IOException("Error writing " + tempFile.getAbsolutePath());
+		}
+
+		pIndexFile.delete();
+		if (!tempFile.renameTo(pIndexFile)) {
+			tempFile.delete();
+			throw new IOException("Could not rename " + tempFile.getAbsolutePath());
+		}
+	}
+}
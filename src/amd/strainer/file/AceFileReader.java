@@ -38,10 +38,8 @@ package amd.strainer.file;
 
 import jaligner.SmithWatermanGotoh;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -100,6 +98,13 @@ public class AceFileReader implements AssemblyFileReader {
 	private boolean mRealign = false;
 	private boolean mTrimEnds = true;
 	private int contigCount = 0;
+	private AceFileIndex mIndex = null;
+	private boolean mMemoryMapped = true;
+
+	private static final byte[] CO_TAG = { 'C', 'O', ' ' };
+	private static final byte[] AF_TAG = { 'A', 'F', ' ' };
+	private static final byte[] RD_TAG = { 'R', 'D', ' ' };
+	private static final byte[] QA_TAG = { 'Q', 'A', ' ' };
 
 	/**
 	 * @return the full path to the ace file
@@ -133,6 +138,16 @@ public class AceFileReader implements AssemblyFileReader {
 		mTrimEnds = pTrimEnds;
 	}
 
+	/**
+	 * @param pMemoryMapped
+	 *            if true (the default), the MappedLineScanner maps the file
+	 *            into memory. Otherwise it reads the file into the heap one
+	 *            block at a time.
+	 */
+	public void setMemoryMapped(boolean pMemoryMapped) {
+		mMemoryMapped = pMemoryMapped;
+	}
+
 	/**
 	 * Scans file for contig headers and returns a hashmap of positions and
 	 * ContigHeader objects
@@ -148,26 +163,27 @@ public class AceFileReader implements AssemblyFileReader {
 			throws FileNotFoundException, IOException {
 		HashMap<Integer, AceContigHeader> contigs = new HashMap<Integer, AceContigHeader>();
 
-		// Open file reader
-		BufferedReader br = new BufferedReader(new FileReader(mAceFile));
-
-		// loop over lines
-		int linesRead = 0;
-		String line = br.readLine();
-		while (line != null) {
-			linesRead++;
-			// if line starts with CO,
-			if (line.length() > 3 && line.substring(0, 3).equals("CO ")) {
-				// this line is a contig header line
-				// parse line into ContigHeader object
-				AceContigHeader contigHeader = AceContigHeader
-						.parseHeaderLine(line);
-				// add to map
-				contigs.put(new Integer(linesRead), contigHeader);
+		// Open file scanner
+		MappedLineScanner scanner = new MappedLineScanner(mAceFile,
+				mMemoryMapped);
+		try {
+			// loop over lines
+			int linesRead = 0;
+			while (scanner.nextLine()) {
+				linesRead++;
+				// if line starts with CO,
+				if (scanner.length() > 3 && scanner.startsWith(CO_TAG)) {
+					// this line is a contig header line
+					// parse line into ContigHeader object
+					AceContigHeader contigHeader = AceContigHeader
+							.parseHeaderLine(scanner.getLine());
+					// add to map
+					contigs.put(new Integer(linesRead), contigHeader);
+				}
 			}
-			line = br.readLine();
+		} finally {
+			scanner.close();
 		}
-		br.close();
 		return contigs;
 	}
 
@@ -176,7 +192,8 @@ public class AceFileReader implements AssemblyFileReader {
 	 * Sequence object.
 	 * 
 	 * @param pLocation
-	 *            line number of contig header
+	 *            line number of contig header (not used, the contig is found by
+	 *            name in the index)
 	 * @param pContig
 	 *            The ContigHeader object parsed from indicated line
 	 * @return A ReferenceSequecne object representing the contig with aligned
@@ -189,15 +206,13 @@ public class AceFileReader implements AssemblyFileReader {
 	public amd.strainer.objects.ReferenceSequence getContigDetails(
 			int pLocation, AceContigHeader pContig)
 			throws FileNotFoundException, IOException {
-		// Open file reader
-		BufferedReader br = new BufferedReader(new FileReader(mAceFile));
-		// seek to location
-		for (int i = 0; i < pLocation; i++) {
-			br.readLine();
+		AceFileIndex.Entry entry = getIndex().getEntry(pContig.getName());
+		if (entry == null) {
+			throw new ContigNotFoundException("Contig " + pContig.getName()
+					+ " not found in " + mAceFile.getAbsolutePath());
 		}
 
-		br.close();
-		return createContigFromReader(br, pContig);
+		return createContigAt(entry, null, nextContigId());
 	}
 
 	/**
@@ -219,64 +234,22 @@ public class AceFileReader implements AssemblyFileReader {
 	 */
 	public ReferenceSequence getContigDetailsFromNumber(long pContigNumber,
 			Task pTask) throws IOException, InterruptedException {
-		// Open file reader
-		BufferedReader br = new BufferedReader(new FileReader(mAceFile));
-
-		int lineCount = 0;
-		if (pTask != null) {
-			pTask.setMessage("Scanning ACE file...");
-			// pTask.setLengthOfTask(pContigNumber);
-			pTask.setCurrent(lineCount);
-			// pTask.setCurrent(0);
+		// find contig in index (this scans the file if there is no index yet)
+		AceFileIndex.Entry entry = getIndex(pTask).getEntry(pContigNumber);
+		if (entry == null) {
+			throw new ContigNotFoundException("Contig " + pContigNumber
+					+ " not found in " + mAceFile.getAbsolutePath());
 		}
 
-		// loop over lines
-		String line = br.readLine();
-		while (line != null) {
-			lineCount++;
-			// if line starts with CO,
-			if (line.length() > 3 && line.substring(0, 3).equals("CO ")) {
-
-				if (pTask != null && pTask.isInterrupted()) {
-					br.close();
-					throw new InterruptedException("Cancelled");
-				}
-
-				// this line is a contig header line
-				// parse line into ContigHeader object
-				AceContigHeader contigHeader = AceContigHeader
-						.parseHeaderLine(line);
-
-				if (pTask != null) {
-					// contigs should mostly be in order...skip the occasional
-					// oddity
-					if (contigHeader.getNumber() <= pContigNumber) {
-						pTask.setCurrent(lineCount);
-					}
-				}
-
-				// DEBUG
-				// int nu = contigHeader.getNumber();
-				// if (nu%500==0) {
-				// System.out.println("Contig number: " + nu);
-				// }
-				// end DEBUG
-
-				// check if it's the correct contig
-				if (contigHeader.getNumber() == pContigNumber) {
-					if (pTask != null) {
-						// set to zero for next phase
-						pTask.setCurrent(0);
-					}
-					return createContigFromReader(br, contigHeader, pTask);
-				}
+		if (pTask != null) {
+			if (pTask.isInterrupted()) {
+				throw new InterruptedException("Cancelled");
 			}
-			line = br.readLine();
+			// set to zero for next phase
+			pTask.setCurrent(0);
 		}
 
-		br.close();
-		throw new ContigNotFoundException("Contig " + pContigNumber
-				+ " not found in " + mAceFile.getAbsolutePath());
+		return createContigAt(entry, pTask, nextContigId());
 	}
 
 	/**
@@ -294,39 +267,139 @@ public class AceFileReader implements AssemblyFileReader {
 	 */
 	public ReferenceSequence getFirstContigWithNReads(int pNReads)
 			throws IOException {
-		// Open file reader
-		BufferedReader br = new BufferedReader(new FileReader(mAceFile));
-
-		// loop over lines
-		String line = br.readLine();
-		while (line != null) {
-			// if line starts with CO,
-			if (line.length() > 3 && line.substring(0, 3).equals("CO ")) {
-				// this line is a contig header line
-				// parse line into ContigHeader object
-				AceContigHeader contigHeader = AceContigHeader
-						.parseHeaderLine(line);
-
-				// DEBUG
-				// int nu = contigHeader.getNumber();
-				// if (nu%500==0) {
-				// System.out.println("Contig number: " + nu);
-				// }
-				// end DEBUG
-
-				// check if it's the correct contig
-				if (contigHeader.getReadCount() >= pNReads) {
-					return createContigFromReader(br, contigHeader);
-				}
+		for (AceFileIndex.Entry entry : getIndex().getEntries()) {
+			// check if it's the correct contig
+			if (entry.getHeader().getReadCount() >= pNReads) {
+				return createContigAt(entry, null, nextContigId());
 			}
-			line = br.readLine();
 		}
 
-		br.close();
 		throw new IOException("No Contigs found with " + pNReads + " in "
 				+ mAceFile.getAbsolutePath());
 	}
 
+	/**
+	 * Returns the index of contig positions in the ACE file, building it if
+	 * necessary.
+	 * 
+	 * @param pTask
+	 *            a Task to be updated if the file has to be scanned (may be
+	 *            null)
+	 * @return the index
+	 * @throws IOException
+	 *             if ACE file unreadable
+	 * @throws InterruptedException
+	 *             if the task is cancelled while the file is scanned
+	 */
+	public synchronized AceFileIndex getIndex(Task pTask) throws IOException,
+			InterruptedException {
+		if (mIndex == null || !mIndex.isCurrent()) {
+			mIndex = AceFileIndex.getIndex(mAceFile, pTask);
+		}
+		return mIndex;
+	}
+
+	private AceFileIndex getIndex() throws IOException {
+		try {
+			return getIndex(null);
+		} catch (InterruptedException e) {
+			// can't happen without a task
+			throw new IOException("Indexing of " + mAceFile.getAbsolutePath()
+					+ " was interrupted");
+		}
+	}
+
+	private synchronized int nextContigId() {
+		return contigCount++;
+	}
+
+	/**
+	 * Splits the file into contigs that can be parsed independently (eg: by
+	 * several threads). The contig ids are assigned here, in file order.
+	 * 
+	 * @param pNums
+	 *            the contig numbers to return (empty or null for all)
+	 * @param pTask
+	 *            a Task that can be notified with status updates while the
+	 *            file is indexed (may be null)
+	 * @return an Iterator of ContigChunks in file order
+	 * @throws IOException
+	 *             if ACE file unreadable
+	 * @throws InterruptedException
+	 *             if the task is cancelled while indexing
+	 */
+	Iterator<ContigChunk> getContigChunks(Set<Long> pNums, Task pTask)
+			throws IOException, InterruptedException {
+		List<ContigChunk> chunks = new ArrayList<ContigChunk>();
+		for (AceFileIndex.Entry entry : getIndex(pTask).getEntries()) {
+			if (pNums == null || pNums.size() == 0
+					|| pNums.contains(Long.valueOf(entry.getHeader().getNumber()))) {
+				chunks.add(new AceContigChunk(entry));
+			}
+		}
+		return chunks.iterator();
+	}
+
+	private class AceContigChunk extends ContigChunk {
+		private final AceFileIndex.Entry mEntry;
+
+		AceContigChunk(AceFileIndex.Entry pEntry) {
+			super(pEntry.getHeader().getName(), nextContigId());
+			mEntry = pEntry;
+		}
+
+		@Override
+		ReferenceSequence parse(Task pTask) throws IOException {
+			return createContigAt(mEntry, pTask, getId());
+		}
+	}
+
+	/*
+	 * Parses the indexed contig. Only the contig's part of the file is mapped
+	 * (several threads may be doing this at once).
+	 */
+	private ReferenceSequence createContigAt(AceFileIndex.Entry pEntry,
+			Task pTask, int pId) throws IOException {
+		MappedLineScanner scanner = new MappedLineScanner(mAceFile,
+				mMemoryMapped, pEntry.getOffset(), pEntry.getEnd());
+		try {
+			seekToContig(scanner, pEntry);
+			return createContigFromScanner(scanner, pEntry.getHeader(), pTask,
+					pId);
+		} finally {
+			scanner.close();
+		}
+	}
+
+	/*
+	 * Moves the scanner to the CO line of the given contig.
+	 */
+	private void seekToContig(MappedLineScanner pScanner,
+			AceFileIndex.Entry pEntry) throws IOException {
+		pScanner.seek(pEntry.getOffset());
+		if (!pScanner.nextLine()
+				|| !isContigLine(pScanner.getLine(), pEntry)) {
+			throw indexOutOfDate();
+		}
+	}
+
+	private boolean isContigLine(String pLine, AceFileIndex.Entry pEntry) {
+		return pLine != null
+				&& pLine.startsWith("CO " + pEntry.getHeader().getName() + " ");
+	}
+
+	/*
+	 * If the line at the indexed position is not the expected CO line the
+	 * index is deleted so that it will be rebuilt on the next try.
+	 */
+	private synchronized IOException indexOutOfDate() {
+		mIndex = null;
+		AceFileIndex.getIndexFile(mAceFile).delete();
+		return new IOException("The contig index for "
+				+ mAceFile.getAbsolutePath()
+				+ " is out of date. It has been deleted, please try again.");
+	}
+
 	/**
 	 * @return Iterator where each returned object is a ReferenceSequence object
 	 *         created from a contig record in the ace file
@@ -358,58 +431,29 @@ public class AceFileReader implements AssemblyFileReader {
 	/**
 	 * Creates a ReferenceSequence, complete with reads and alignments, based on
 	 * the next Contig in the ace (created by PhredPhrap) file that is currently
-	 * being read by the passed FileReader.
-	 * <p>
-	 * The reader is assumed to have just read the contig header line. The next
-	 * line should be the start of the contig sequence. This method counts reads
-	 * and stops after the last QA line, leaving some lines left o read before
-	 * the next contig.
-	 * 
-	 * @param br
-	 *            BufferedReader connected to AceFile just after a contig header
-	 * @param pContig
-	 *            The ContigHeader object from the last line read
-	 * @return a ReferenceSequence object with aligned reads
-	 * @throws IOException
-	 *             if file can't be read from
-	 */
-	ReferenceSequence createContigFromReader(BufferedReader br,
-			AceContigHeader pContig) throws IOException {
-		return createContigFromReader(br, pContig, null);
-	}
-
-	/**
-	 * Creates a ReferenceSequence, complete with reads and alignments, based on
-	 * the next Contig in the ace (created by PhredPhrap) file that is currently
-	 * being read by the passed FileReader.
+	 * being read by the passed MappedLineScanner. Lines are parsed in place,
+	 * without creating Strings for each line.
 	 * <p>
-	 * The reader is assumed to have just read the contig header line. The next
-	 * line should be the start of the contig sequence. This method counts reads
-	 * and stops after the last QA line, leaving some lines left o read before
-	 * the next contig.
+	 * The scanner is assumed to be on the contig header line. The next line
+	 * should be the start of the contig sequence. This method counts reads and
+	 * stops after the last QA line, leaving some lines left to read before the
+	 * next contig.
 	 * 
-	 * @param br
-	 *            BufferedReader connected to AceFile just after a contig header
+	 * @param pScanner
+	 *            MappedLineScanner positioned on a contig header line
 	 * @param pContig
-	 *            The ContigHeader object from the last line read
+	 *            The ContigHeader object from the current line
 	 * @param pTask
 	 *            a Task object to recieve status updates (may be null for no
 	 *            updates)
+	 * @param pId
+	 *            the id to give the ReferenceSequence
 	 * @return a ReferenceSequence object with aligned reads
 	 * @throws IOException
 	 *             if file can't be read from
 	 */
-	ReferenceSequence createContigFromReader(BufferedReader br,
-			AceContigHeader pContig, Task pTask) throws IOException {
-		/*
-		 * This is a complicated method, here's the outline: 1) contig a) read
-		 * contig sequence b) create contig object 2) read headers (AF): simply
-		 * read these (unprocessed) into an array 3) reads (one at a time) a)
-		 * read sequence (RD) and trimmunt (QA) data b) combine with headers
-		 * (AF) c) create read objects 4) clean up: make some final
-		 * initializations
-		 */
-
+	ReferenceSequence createContigFromScanner(MappedLineScanner pScanner,
+			AceContigHeader pContig, Task pTask, int pId) throws IOException {
 		// set up task with stating info
 		if (pTask != null) {
 			pTask.setCurrent(0);
@@ -420,241 +464,222 @@ public class AceFileReader implements AssemblyFileReader {
 		// //////////////
 		// CONTIG
 
-		// loop over following lines
-		String line = br.readLine();
-
-		// set up variables for capturing data while looping
-		boolean inContigSequence = true;
+		// contig sequence ends with an empty line
 		StringBuffer contigSequence = new StringBuffer(pContig.getLength());
-
-		// loop over lines to get contig sequence
-		while (line != null && inContigSequence) {
-			// get contig sequence
-			if (line.length() > 0) {
-				contigSequence.append(line);
-			} else {
-				// once we hit an empty line, the contig sequence is done
-				inContigSequence = false;
+		boolean more = pScanner.nextLine();
+		while (more) {
+			boolean empty = pScanner.length() == 0;
+			if (!empty) {
+				pScanner.appendTo(contigSequence);
+			}
+			more = pScanner.nextLine();
+			if (empty) {
+				break;
 			}
-			// read next line before next trip through loop
-			line = br.readLine();
 		}
 
 		// create contig
-		// read and contig sequences have a "*" for any gap. these have to be
-		// removed.
-
-		// get array of gaps in Contig sequence
-		// also remove them from sequence string and adjust length
-		ArrayList<Integer> contigGaps = new ArrayList<Integer>();
-		String newContigSequence = removeContigGaps(contigSequence.toString(),
-				contigGaps);
-
-		// if (mRealign) {
-		// // create re-usable object for computing alignments if we'll need it
-		// mAlignableContigSequence = new jaligner.Sequence(newContigSequence);
-		// }
-
-		// create ReferenceSequence object to represent contig
-		ReferenceSequence contig = new ReferenceSequence();
-		contig.setName(pContig.getName());
-		contig.setId(contigCount++);
-		contig.setBases(newContigSequence);
-		contig.setLength(newContigSequence.length());
-
-		// for now all reads grouped in one strain
-		Strain strain = new Strain();
+		AceContigBuilder builder = new AceContigBuilder(pContig,
+				contigSequence, pId);
 
 		// ////////////////////
 		// READ HEADERS
 
-		// AF lines are next (but sometimes there is a BQ quality section, just
-		// skip to first AF
-		while (line != null) {
-			if (line.length() > 2 && line.substring(0, 3).equals("AF ")) {
-				break;
-			}
-			// read next line before next trip through loop
-			line = br.readLine();
+		// skip to first AF line
+		while (more && !(pScanner.length() > 2 && pScanner.startsWith(AF_TAG))) {
+			more = pScanner.nextLine();
 		}
 
-		// Map<String, Boolean> readDirs = new HashMap<String, Boolean>();
-		// Map<String, Integer> readStarts = new HashMap<String, Integer>();
-		List<Boolean> afDirs = new ArrayList<Boolean>();
-		List<Integer> afStarts = new ArrayList<Integer>();
-		// String readName;
-		boolean dir;
-		int rawStart;
 		// loop over lines until we hit something that is not AF
-		while (line != null) {
-			if (line.length() > 2) {
-				String first3 = line.substring(0, 3);
-				// AF line indicates where the read is placed in the contig
-				if (first3.equals("AF ")) {
-					/*
-					 * AF XYD11111.y1 U -67 AF XYG24419.g1 C 1106
-					 */
+		while (more) {
+			if (pScanner.length() > 2) {
+				if (pScanner.startsWith(AF_TAG)) {
 					if (pTask != null) {
-						// pTask.setCurrent(readDirs.size());
-						pTask.setCurrent(afDirs.size());
+						pTask.setCurrent(builder.getHeaderCount());
 						pTask.setMessage("Getting read headers");
 					}
 
+					// AF name dir start
+					boolean dir;
+					int rawStart;
 					try {
-						// parse AF line
-						StringTokenizer st = new StringTokenizer(line, " ");
-						st.nextToken(); // skip "AF"
-						// get read object using name (second token)
-						st.nextToken();
-						// get direction and start of alignment.
-						dir = st.nextToken().charAt(0) == 'U';
-						rawStart = Integer.parseInt(st.nextToken());
+						dir = pScanner.getFieldChar(2) == 'U';
+						rawStart = pScanner.getIntField(3);
 					} catch (Exception e) {
-						System.err.println("Could not parse AF line: " + line);
-						System.err.println(e.toString());
-						throw new RuntimeException("Unable to parse ACE file");
+						throw parseError("AF", pScanner.getLine(), e);
 					}
-					// save line to be processed later
-					// readDirs.put(readName, dir);
-					// readStarts.put(readName, rawStart);
-					afDirs.add(dir);
-					afStarts.add(rawStart);
-				} else if (first3.equals("RD ")) {
+					builder.addHeader(dir, rawStart);
+				} else if (pScanner.startsWith(RD_TAG)) {
 					// we made it to the RD lines, switch modes
 					break;
 				}
 			}
-			// read next line before next trip through loop
-			line = br.readLine();
+			more = pScanner.nextLine();
 		}
 
 		// ///////////////////
 		// READS
 
-		// RD and QA lines are last, process these as we go
 		boolean inReadSequence = false;
 		StringBuffer readSequence = null;
 		Read currentRead = null;
-		int readCount = 0;
-		// hashmap used to find matepairs
-		HashMap<String, Read> soloReads = new HashMap<String, Read>();
 
-		// loop over lines
-		while (line != null) {
-			// CASE1: reading sequence for a read.
+		while (more) {
 			if (inReadSequence) {
-				// get read sequence
-				if (line.length() > 0) {
-					readSequence.append(line);
+				// an empty line marks the end of the sequence
+				if (pScanner.length() > 0) {
+					pScanner.appendTo(readSequence);
 				} else {
-					// an empty line marks the end of the sequence, do some
-					// clean up
 					inReadSequence = false;
 				}
-
-				// CASE2: look for specific lines with 2 character tags (RD, QA)
-			} else if (line.length() > 2) {
-				String first3 = line.substring(0, 3);
-
-				// CASE 2.1: header line for read sequence data
-				if (first3.equals("RD ")) {
-
-					// update Task status (if a Task was supplied)
+			} else if (pScanner.length() > 2) {
+				if (pScanner.startsWith(RD_TAG)) {
 					if (pTask != null) {
-						pTask.setCurrent(readCount);
+						pTask.setCurrent(builder.getReadCount());
 						pTask.setMessage("Getting read sequences");
 					}
 
-					/*
-					 * RD XYG4009.g2 748 0 4
-					 * nnnggttggctggaccgtgatcgccattcttatGACGGATACCCATGCAT
-					 * GTTCCAGCACATCCATTCTCTGTATCTTGTCGTACAGGGAATGAAATCTT ...
-					 * CGGTCATATCTGTTACCAGTACGACCTTGACCCTCGCTTCATAgttcc
-					 */
-
-					// get info for read and store in currentRead variable
+					// RD name length ...
 					currentRead = new Read();
 					try {
-						StringTokenizer st = new StringTokenizer(line, " ");
-						st.nextToken();
-						currentRead.setName(st.nextToken());
-						currentRead.setLength(Integer.parseInt(st.nextToken()));
+						currentRead.setName(pScanner.getField(1));
+						currentRead.setLength(pScanner.getIntField(2));
 					} catch (Exception e) {
-						System.err.println("Could not parse RD line: " + line);
-						System.err.println(e.toString());
-						throw new RuntimeException("Unable to parse ACE file");
+						throw parseError("RD", pScanner.getLine(), e);
 					}
-					// make sure we recognize the next few lines as sequence
 					inReadSequence = true;
-					readSequence = new StringBuffer();
-					// CASE 2.2 QA line tells us where to trim the read
-				} else if (first3.equals("QA ")) {
-					// get trim positions from QA line
-					// QA 32 744 32 746
-
-					// QA line is the last bit of data for a read.
-					// send read and QA line for processing
-					try {
-						boolean crdir = afDirs.get(readCount);
-						int crstart = afStarts.get(readCount);
-						readCount++;
-						// boolean crdir =
-						// readDirs.remove(currentRead.getName());
-						// int crstart =
-						// readStarts.remove(currentRead.getName());
-						if (processAceFileRead(currentRead,
-								readSequence.toString(), line, crdir, crstart,
-								contigGaps, contig, contigSequence)) {
-
-							// add read to contig
-							currentRead.setId(readCount);
-							contig.reads.put(currentRead.getIdInteger(),
-									currentRead);
-
-							// check for matePair
-							Util.lookForMatePair(soloReads, currentRead);
-
-							// add to strain
-							strain.putRead(currentRead.getIdInteger(),
-									currentRead);
+					readSequence = new StringBuffer(currentRead.getLength());
+				} else if (pScanner.startsWith(QA_TAG)) {
+					// QA start end ...
+					int qStart = 0;
+					int qEnd = 0;
+					if (mTrimEnds) {
+						try {
+							qStart = pScanner.getIntField(1);
+							qEnd = pScanner.getIntField(2);
+						} catch (Exception e) {
+							throw parseError("QA", pScanner.getLine(), e);
 						}
-					} catch (NullPointerException npe) {
-						System.err.println("Error: Skipping read: "
-								+ currentRead.getName());
-						npe.printStackTrace();
 					}
-					// if (readDirs.size() == 0) {
-					if (afDirs.size() <= readCount) {
+
+					if (builder.addRead(currentRead, readSequence, qStart, qEnd)) {
 						// we've used all the AF lines...the contig is over
 						break;
 					}
 				}
 			}
+			more = pScanner.nextLine();
+		}
+
+		return builder.finish();
+	}
 
-			// read next line before next trip through loop
-			line = br.readLine();
+	private static RuntimeException parseError(String pTag, String pLine,
+			Exception e) {
+		System.err.println("Could not parse " + pTag + " line: " + pLine);
+		System.err.println(e.toString());
+		return new RuntimeException("Unable to parse ACE file");
+	}
+
+	/*
+	 * Builds a contig from the records parsed by createContigFromScanner().
+	 */
+	private class AceContigBuilder {
+		private final StringBuffer mContigSequence;
+		private final ArrayList<Integer> mContigGaps = new ArrayList<Integer>();
+		private final ReferenceSequence mContig = new ReferenceSequence();
+		private final Strain mStrain;
+		private final List<Boolean> mAFDirs = new ArrayList<Boolean>();
+		private final List<Integer> mAFStarts = new ArrayList<Integer>();
+		// hashmap used to find matepairs
+		private final HashMap<String, Read> mSoloReads = new HashMap<String, Read>();
+		private int mReadCount = 0;
+
+		AceContigBuilder(AceContigHeader pContig,
+				StringBuffer pContigSequence, int pId) {
+			mContigSequence = pContigSequence;
+
+			// read and contig sequences have a "*" for any gap. these have to
+			// be removed.
+
+			// get array of gaps in Contig sequence
+			// also remove them from sequence string and adjust length
+			String newContigSequence = removeContigGaps(
+					pContigSequence.toString(), mContigGaps);
+
+			// create ReferenceSequence object to represent contig
+			mContig.setName(pContig.getName());
+			mContig.setId(pId);
+			mContig.setBases(newContigSequence);
+			mContig.setLength(newContigSequence.length());
+
+			// for now all reads grouped in one strain
+			mStrain = new Strain();
 		}
 
-		// //////////
-		// CLEAN UP
+		/**
+		 * Save the direction and position from an AF line
+		 */
+		void addHeader(boolean pDir, int pRawStart) {
+			mAFDirs.add(pDir);
+			mAFStarts.add(pRawStart);
+		}
 
-		// initialize strain object for display
-		// strain.initializeGraphics();
-		strain.setAlignmentFromReads();
-		contig.addStrainWithNoId(strain);
+		int getHeaderCount() {
+			return mAFDirs.size();
+		}
 
-		// // set quality threshold:
-		// // quality data is faked to be 10->low 40->good since ace file data
-		// is yes or no
-		// QualifiedDifference.setQualityThreshold((short)20);
-		// contig.hasQualityData = true;
+		int getReadCount() {
+			return mReadCount;
+		}
 
-		// return ReferenceSequence object
-		return contig;
+		/**
+		 * Process a read once its QA line has been found
+		 * 
+		 * @return true if there is an RD record for every AF line (the contig
+		 *         is done)
+		 */
+		boolean addRead(Read pRead, StringBuffer pReadSequence, int pQStart,
+				int pQEnd) {
+			try {
+				boolean crdir = mAFDirs.get(mReadCount);
+				int crstart = mAFStarts.get(mReadCount);
+				mReadCount++;
+				if (processAceFileRead(pRead, pReadSequence.toString(),
+						pQStart, pQEnd, crdir, crstart, mContigGaps, mContig,
+						mContigSequence)) {
+
+					// add read to contig
+					pRead.setId(mReadCount);
+					mContig.reads.put(pRead.getIdInteger(), pRead);
+
+					// check for matePair
+					Util.lookForMatePair(mSoloReads, pRead);
+
+					// add to strain
+					mStrain.putRead(pRead.getIdInteger(), pRead);
+				}
+			} catch (NullPointerException npe) {
+				System.err.println("Error: Skipping read: " + pRead.getName());
+				npe.printStackTrace();
+			}
+			return mAFDirs.size() <= mReadCount;
+		}
+
+		ReferenceSequence finish() {
+			// initialize strain object for display
+			mStrain.setAlignmentFromReads();
+			mContig.addStrainWithNoId(mStrain);
+			return mContig;
+		}
 	}
 
+	/*
+	 * pQAStart and pQAEnd are the trim positions from the QA line (ignored if
+	 * mTrimEnds is false)
+	 */
 	private boolean processAceFileRead(Read read, String readSeq,
-			String pQALine, boolean dir, int rawStart,
+			int pQAStart, int pQAEnd, boolean dir, int rawStart,
 			List<Integer> contigGaps, ReferenceSequence contig,
 			StringBuffer contigSequence) {
 
@@ -662,23 +687,12 @@ public class AceFileReader implements AssemblyFileReader {
 		int trimmedStart, gappedStart, qStart, qEnd;
 		StringBuffer cleanedSequence;
 
-		try {
-			if (mTrimEnds) {
-				// parse QA line
-				StringTokenizer st = new StringTokenizer(pQALine);
-				st.nextToken(); // skip the "QA" token that identifies the line
-
-				// take first reasonable pair of values
-				qStart = Integer.parseInt(st.nextToken());
-				qEnd = Integer.parseInt(st.nextToken());
-			} else {
-				qStart = 1;
-				qEnd = readSeq.length();
-			}
-		} catch (Exception e) {
-			System.err.println("Could not parse QA line: " + pQALine);
-			System.err.println(e.toString());
-			throw new RuntimeException("Unable to parse ACE file");
+		if (mTrimEnds) {
+			qStart = pQAStart;
+			qEnd = pQAEnd;
+		} else {
+			qStart = 1;
+			qEnd = readSeq.length();
 		}
 
 		if (mRealign) {
@@ -753,7 +767,7 @@ public class AceFileReader implements AssemblyFileReader {
 				System.err.println("Error getting alignment for: "
 						+ read.getName() + " skipping...");
 				System.err.println(sioobe.toString());
-				System.err.println(pQALine);
+				System.err.println("QA " + pQAStart + " " + pQAEnd);
 				System.err.println("Contig length:" + contigSequence.length());
 				System.err.println("Read length:" + readSeq.length());
 				System.err.println("last start:" + trimmedStart);
@@ -990,16 +1004,17 @@ public class AceFileReader implements AssemblyFileReader {
 
 	private class AceFileContigIterator implements Iterator<ReferenceSequence> {
 		private AceContigHeader nextContig = null;
-		private BufferedReader br = null;
+		private MappedLineScanner scanner = null;
 		private final File mAceFile;
-		private Set<Long> nums = null;
+		// the indexed contigs to return (if only some contigs were requested)
+		private Iterator<AceFileIndex.Entry> entries = null;
 
 		AceFileContigIterator(File pAceFile) throws IOException,
 				FileNotFoundException {
 			mAceFile = pAceFile;
 
 			// Open file reader
-			br = new BufferedReader(new FileReader(mAceFile));
+			open();
 
 			// set up first contig
 			queueNextContig();
@@ -1008,15 +1023,21 @@ public class AceFileReader implements AssemblyFileReader {
 		AceFileContigIterator(File pAceFile, Set<Long> pNums)
 				throws IOException, FileNotFoundException {
 			mAceFile = pAceFile;
-			nums = pNums;
 
-			// set to null to indicate all contigs if no nums given
-			if (nums.size() == 0) {
-				nums = null;
+			// an empty set indicates all contigs
+			if (pNums.size() > 0) {
+				// use the index to jump to the requested contigs
+				List<AceFileIndex.Entry> requested = new ArrayList<AceFileIndex.Entry>();
+				for (AceFileIndex.Entry entry : getIndex().getEntries()) {
+					if (pNums.contains(Long.valueOf(entry.getHeader().getNumber()))) {
+						requested.add(entry);
+					}
+				}
+				entries = requested.iterator();
 			}
 
 			// Open file reader
-			br = new BufferedReader(new FileReader(mAceFile));
+			open();
 
 			System.out.println("finding next contig");
 
@@ -1024,30 +1045,40 @@ public class AceFileReader implements AssemblyFileReader {
 			queueNextContig();
 		}
 
+		private void open() throws IOException {
+			scanner = new MappedLineScanner(mAceFile, mMemoryMapped);
+		}
+
+		private void close() throws IOException {
+			if (scanner != null) {
+				scanner.close();
+				scanner = null;
+			}
+		}
+
 		private void queueNextContig() throws IOException {
-			// loop to next contig
-			String line = br.readLine();
-			while (line != null) {
-				if (line.length() > 3 && line.substring(0, 3).equals("CO ")) {
-					nextContig = AceContigHeader.parseHeaderLine(line);
-
-					if (nums != null) {
-						// if there is alist of numbers only stop if this contig
-						// is in the list
-						if (nums.contains(new Long(nextContig.getNumber()))) {
-							return;
-						}
-					} else {
-						// otherwise, we'll take any contig
+			if (entries != null) {
+				// seek to the next requested contig
+				if (entries.hasNext()) {
+					AceFileIndex.Entry entry = entries.next();
+					seekToContig(scanner, entry);
+					nextContig = entry.getHeader();
+					return;
+				}
+			} else {
+				// loop to next contig
+				while (scanner.nextLine()) {
+					if (scanner.length() > 3 && scanner.startsWith(CO_TAG)) {
+						nextContig = AceContigHeader.parseHeaderLine(scanner
+								.getLine());
 						return;
 					}
 				}
-				line = br.readLine();
 			}
 
 			// if we get here, we didn't find another contig line
 			nextContig = null;
-			br.close();
+			close();
 		}
 
 		public boolean hasNext() {
@@ -1059,8 +1090,8 @@ public class AceFileReader implements AssemblyFileReader {
 				// get contig from file (skip if it breaks)
 				while (true) {
 					try {
-						ReferenceSequence ret = createContigFromReader(br,
-								nextContig);
+						ReferenceSequence ret = createContigFromScanner(
+								scanner, nextContig, null, nextContigId());
 						// before we leave, queue up next contig
 						queueNextContig();
 
@@ -0,0 +1,723 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import amd.strainer.display.actions.Task;
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.PackedDiffList;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
+
+/**
+ * Reads alignments from a BAM file straight into Read and Alignment objects.
+ * <p/>
+ * The BGZF blocks are inflated on a pool of threads by BGZFInputStream and the
+ * binary records are decoded on the calling thread. Records are handled as in
+ * SAMFileReader: consecutive records with the same name (and the same end of
+ * a pair) are one read, and mate pairs and strains are set up by
+ * BlastEventHandler.
+ * <p/>
+ * Only records aligned to the ReferenceSequence being loaded (matched by name
+ * to the BAM header) are used, so unlike SAM files, alignments to other
+ * references are not weighed against each other. If there is an index (the
+ * BAM file name plus ".bai" or with ".bam" replaced by ".bai") only the parts
+ * of the file that overlap the requested region are read. Otherwise the whole
+ * file is scanned.
+ * 
+ * @author jmeppley
+ * 
+ */
+public class BAMFileReader {
+	private static final byte[] BAM_MAGIC = { 'B', 'A', 'M', 1 };
+	private static final byte[] BAI_MAGIC = { 'B', 'A', 'I', 1 };
+
+	// operation codes in binary CIGARs and base codes in binary sequences
+	private static final String CIGAR_OPS = "MIDNSHP=X";
+	private static final String SEQ_BASES = "=ACMGRSVTWYHKDBN";
+
+	// index bins (bin 37450 holds metadata, not chunks)
+	private static final int BIN_COUNT = 37450;
+	// size of the linear index windows
+	private static final int LINEAR_SHIFT = 14;
+
+	// fixed length part of each record
+	private static final int RECORD_HEADER_SIZE = 32;
+
+	private final File mBamFile;
+	private final int mThreadCount;
+
+	// from the header
+	private String[] mRefNames = null;
+
+	// current record
+	private byte[] mRecord = new byte[1024];
+	private int mRecordLength = 0;
+	private final byte[] mInt = new byte[4];
+
+	// reads being built
+	private BlastEventHandler mHandler = null;
+	private Read mRead = null;
+	private int mReadEnd = 0;
+	private String mMateKey = null;
+	private Map<String, Alignment> mAlignments = null;
+
+	/**
+	 * @param pBamFile
+	 *            the BAM file to read
+	 */
+	public BAMFileReader(File pBamFile) {
+		this(pBamFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param pBamFile
+	 *            the BAM file to read
+	 * @param pThreadCount
+	 *            number of threads to inflate blocks with
+	 */
+	public BAMFileReader(File pBamFile, int pThreadCount) {
+		mBamFile = pBamFile;
+		mThreadCount = Math.max(1, pThreadCount);
+	}
+
+	/**
+	 * @return the index file for this BAM file (or null if there isn't one)
+	 */
+	public File getIndexFile() {
+		File index = new File(mBamFile.getPath() + ".bai");
+		if (index.isFile()) {
+			return index;
+		}
+		String path = mBamFile.getPath();
+		if (path.toLowerCase().endsWith(".bam")) {
+			index = new File(path.substring(0, path.length() - 4) + ".bai");
+			if (index.isFile()) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds Reads aligned to the ReferenceSequence. Initial strains are formed
+	 * by joining mate-pairs together into strains with 2 Reads in them. Reads
+	 * without a mate-pair are left in solo strains.
+	 * 
+	 * @param pRefSeq
+	 *            the ReferenceSequence object to add reads to
+	 * @param pSmallClone
+	 *            smallest expected clone size
+	 * @param pBigClone
+	 *            largest expected clone size (mate pairs are ignored if this
+	 *            is not positive)
+	 * @param pTask
+	 *            Task to take progress updates, may be null
+	 * @throws IOException
+	 *             if the file can't be read or the reference is not in it
+	 */
+	public void addReadsToReferenceSequence(ReferenceSequence pRefSeq,
+			int pSmallClone, int pBigClone, Task pTask) throws IOException {
+		addReadsToReferenceSequence(pRefSeq, 1, Integer.MAX_VALUE,
+				pSmallClone, pBigClone, pTask);
+	}
+
+	/**
+	 * Adds Reads that overlap part of the ReferenceSequence. Initial strains
+	 * are formed by joining mate-pairs together into strains with 2 Reads in
+	 * them. Reads without a mate-pair (or whose mate is outside the region)
+	 * are left in solo strains.
+	 * 
+	 * @param pRefSeq
+	 *            the ReferenceSequence object to add reads to
+	 * @param pStart
+	 *            first position of the region (1 based)
+	 * @param pEnd
+	 *            last position of the region
+	 * @param pSmallClone
+	 *            smallest expected clone size
+	 * @param pBigClone
+	 *            largest expected clone size (mate pairs are ignored if this
+	 *            is not positive)
+	 * @param pTask
+	 *            Task to take progress updates, may be null
+	 * @throws IOException
+	 *             if the file can't be read or the reference is not in it
+	 */
+	public void addReadsToReferenceSequence(ReferenceSequence pRefSeq,
+			int pStart, int pEnd, int pSmallClone, int pBigClone, Task pTask)
+			throws IOException {
+		mHandler = new BlastEventHandler(pRefSeq, pSmallClone, pBigClone,
+				null, pTask);
+		mRead = null;
+		mAlignments = null;
+
+		BGZFInputStream in = new BGZFInputStream(mBamFile, mThreadCount);
+		try {
+			readHeader(in);
+			int refId = -1;
+			for (int i = 0; i < mRefNames.length; i++) {
+				if (mRefNames[i].equals(pRefSeq.getName())) {
+					refId = i;
+					break;
+				}
+			}
+			if (refId < 0) {
+				throw new IOException("Reference sequence "
+						+ pRefSeq.getName() + " is not in " + mBamFile);
+			}
+
+			// 0 based, end exclusive
+			int start = Math.max(0, pStart - 1);
+			int end = pEnd;
+
+			File index = getIndexFile();
+			if (index != null) {
+				for (long[] chunk : getChunks(index, refId, start, end)) {
+					in.seek(chunk[0]);
+					while (in.getVirtualOffset() < chunk[1] && readRecord(in)) {
+						if (!loadRecord(pRefSeq, refId, start, end, pBigClone,
+								pTask)) {
+							// past the region
+							break;
+						}
+					}
+				}
+			} else {
+				while (readRecord(in)) {
+					loadRecord(pRefSeq, refId, start, end, pBigClone, pTask);
+				}
+			}
+
+			if (mRead != null) {
+				mHandler.addRead(mRead, mAlignments, mMateKey);
+			}
+			mHandler.finishReads();
+		} finally {
+			in.close();
+			mHandler = null;
+			mRead = null;
+			mAlignments = null;
+		}
+	}
+
+	/*
+	 * Check the magic number and get the reference names
+	 */
+	private void readHeader(BGZFInputStream pIn) throws IOException {
+		byte[] magic = new byte[BAM_MAGIC.length];
+		pIn.readFully(magic, 0, magic.length);
+		for (int i = 0; i < magic.length; i++) {
+			if (magic[i] != BAM_MAGIC[i]) {
+				throw new IOException(mBamFile + " is not a BAM file");
+			}
+		}
+
+		// skip SAM header text
+		long textLength = readInt(pIn) & 0xffffffffL;
+		while (textLength > 0) {
+			long skipped = pIn.skip(textLength);
+			if (skipped <= 0) {
+				throw new IOException("BAM header is truncated");
+			}
+			textLength -= skipped;
+		}
+
+		int refCount = readInt(pIn);
+		mRefNames = new String[refCount];
+		for (int i = 0; i < refCount; i++) {
+			int nameLength = readInt(pIn);
+			byte[] name = new byte[nameLength];
+			pIn.readFully(name, 0, nameLength);
+			// (drop the NUL)
+			mRefNames[i] = new String(name, 0, Math.max(0, nameLength - 1),
+					"ISO-8859-1");
+			// reference length
+			readInt(pIn);
+		}
+	}
+
+	private int readInt(BGZFInputStream pIn) throws IOException {
+		pIn.readFully(mInt, 0, 4);
+		return getInt(mInt, 0);
+	}
+
+	/*
+	 * Read the next record into mRecord, returns false at the end of the file
+	 */
+	private boolean readRecord(BGZFInputStream pIn) throws IOException {
+		int first = pIn.read();
+		if (first < 0) {
+			return false;
+		}
+		mInt[0] = (byte) first;
+		pIn.readFully(mInt, 1, 3);
+		int length = getInt(mInt, 0);
+		if (length < RECORD_HEADER_SIZE) {
+			throw new IOException("Bad BAM record length: " + length);
+		}
+		if (length > mRecord.length) {
+			mRecord = new byte[Math.max(length, 2 * mRecord.length)];
+		}
+		pIn.readFully(mRecord, 0, length);
+		mRecordLength = length;
+		return true;
+	}
+
+	/*
+	 * Add the alignment in mRecord to the current read (or start a new read).
+	 * Returns false if the record is past the end of the region (records in
+	 * a sorted file are in order of position).
+	 */
+	private boolean loadRecord(ReferenceSequence pRefSeq, int pRefId,
+			int pStart, int pEnd, int pBigClone, Task pTask) throws IOException {
+		if (pTask != null && pTask.isInterrupted()) {
+			throw new RuntimeException("Interrupted!");
+		}
+
+		byte[] b = mRecord;
+		int refId = getInt(b, 0);
+		int pos = getInt(b, 4);
+		int flag = getShort(b, 14);
+		if ((flag & SAMFileReader.FLAG_UNMAPPED) != 0 || refId < 0) {
+			// there was no match
+			return true;
+		}
+		if (refId != pRefId) {
+			return refId < pRefId;
+		}
+		if (pos >= pEnd) {
+			return false;
+		}
+
+		int nameLength = b[8] & 0xff;
+		int cigarStart = RECORD_HEADER_SIZE + nameLength;
+		int cigarCount = getShort(b, 12);
+		int seqLength = getInt(b, 16);
+		int seqStart = cigarStart + 4 * cigarCount;
+		int tagStart = seqStart + (seqLength + 1) / 2 + seqLength;
+		if (tagStart > mRecordLength) {
+			throw new IOException("BAM record is truncated");
+		}
+
+		if (cigarCount == 2 && getCigarOp(b, cigarStart) == 'S'
+				&& getCigarLength(b, cigarStart) == seqLength
+				&& getCigarOp(b, cigarStart + 4) == 'N') {
+			// CIGARs too long for the record are stored in the CG tag
+			int tag = findTag(b, tagStart, 'C', 'G');
+			if (tag >= 0 && b[tag + 2] == 'B' && b[tag + 3] == 'I') {
+				cigarCount = getInt(b, tag + 4);
+				cigarStart = tag + 8;
+			}
+		}
+
+		// skip alignments that end before the region
+		int span = 0;
+		for (int i = 0; i < cigarCount; i++) {
+			switch (getCigarOp(b, cigarStart + 4 * i)) {
+			case 'M':
+			case 'D':
+			case 'N':
+			case '=':
+			case 'X':
+				span += getCigarLength(b, cigarStart + 4 * i);
+			}
+		}
+		if (pos + Math.max(1, span) <= pStart) {
+			return true;
+		}
+
+		// which end of a pair this is (0 if not paired)
+		int end = 0;
+		if ((flag & SAMFileReader.FLAG_PAIRED) != 0) {
+			end = flag & (SAMFileReader.FLAG_FIRST | SAMFileReader.FLAG_LAST);
+		}
+
+		if (mRead == null || end != mReadEnd
+				|| !nameEquals(b, nameLength, mRead.getName())) {
+			// start new read
+			if (mRead != null) {
+				mHandler.addRead(mRead, mAlignments, mMateKey);
+			}
+			mRead = mHandler.newRead();
+			mRead.setName(new String(b, RECORD_HEADER_SIZE, Math.max(0,
+					nameLength - 1), "ISO-8859-1"));
+			mReadEnd = end;
+			mAlignments = new HashMap<String, Alignment>();
+			boolean mateMapped = getInt(b, 20) >= 0;
+			mMateKey = SAMFileReader.getMateKey(flag, mateMapped, mRead
+					.getName(), pBigClone);
+		}
+
+		mAlignments.put(mRefNames[refId], buildAlignment(pRefSeq, pos + 1,
+				flag, cigarStart, cigarCount, seqStart, seqLength, tagStart));
+		return true;
+	}
+
+	private static boolean nameEquals(byte[] pRecord, int pNameLength,
+			String pName) {
+		int length = pNameLength - 1;
+		if (pName.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if ((char) (pRecord[RECORD_HEADER_SIZE + i] & 0xff) != pName
+					.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Decode the CIGAR into an Alignment (the same way SAMFileReader does)
+	 */
+	private Alignment buildAlignment(ReferenceSequence pRefSeq, int pStart,
+			int pFlag, int pCigarStart, int pCigarCount, int pSeqStart,
+			int pSeqLength, int pTagStart) throws IOException {
+		byte[] b = mRecord;
+		String refBases = pRefSeq.getBases();
+		int mapQual = b[9] & 0xff;
+
+		PackedDiffList diffs = new PackedDiffList();
+		int astart = pStart - 1;
+		int qpos = 0;
+		int apos = 0;
+		int qstart = 0;
+
+		for (int i = 0; i < pCigarCount; i++) {
+			int bitLen = getCigarLength(b, pCigarStart + 4 * i);
+			switch (getCigarOp(b, pCigarStart + 4 * i)) {
+			case 'H':
+				// hard clipping can be ignored
+				break;
+			case 'S':
+				// clip bases from start
+				if (qpos == 0 && apos == 0) {
+					qstart += bitLen;
+				}
+				break;
+			case 'M':
+			case 'X':
+				// check each base
+				if (qstart + qpos + bitLen > pSeqLength) {
+					throw new IOException("CIGAR is longer than the sequence");
+				}
+				for (int j = 0; j < bitLen; j++) {
+					qpos++;
+					apos++;
+					char qChar = getBase(b, pSeqStart, qstart + qpos - 1);
+					char rChar = refBases.charAt(astart + apos - 1);
+					if (!Util.isNucleotideMatch(qChar, rChar)) {
+						diffs.add(astart + apos, rChar, qstart + qpos, qChar);
+					}
+				}
+				break;
+			case '=':
+				qpos += bitLen;
+				apos += bitLen;
+				break;
+			case 'I':
+				if (qstart + qpos + bitLen > pSeqLength) {
+					throw new IOException("CIGAR is longer than the sequence");
+				}
+				for (int j = 0; j < bitLen; j++) {
+					qpos++;
+					char qChar = getBase(b, pSeqStart, qstart + qpos - 1);
+					diffs.add(astart + apos, '-', qstart + qpos, qChar);
+				}
+				break;
+			case 'N':
+			case 'D':
+				// skipped regions are treated like deletions
+				for (int j = 0; j < bitLen; j++) {
+					apos++;
+					char rChar = refBases.charAt(astart + apos - 1);
+					diffs.add(astart + apos, rChar, qstart + qpos, '-');
+				}
+				break;
+			case 'P':
+				// silent
+			default:
+				break;
+			}
+		}
+
+		SequenceSegment ess = new SequenceSegment(pRefSeq, pStart, pStart
+				+ apos - 1);
+		SequenceSegment rss = new SequenceSegment(mRead, qstart + 1, qstart
+				+ qpos);
+		Alignment a = new Alignment(ess, rss,
+				(pFlag & SAMFileReader.FLAG_REVERSE) == 0, diffs);
+		a.score = getScore(b, pTagStart, mapQual);
+		a.eValue = Util.getEvalueFromMapQual(mapQual);
+		return a;
+	}
+
+	private static char getCigarOp(byte[] pRecord, int pPos) {
+		int op = pRecord[pPos] & 0xf;
+		return op < CIGAR_OPS.length() ? CIGAR_OPS.charAt(op) : '?';
+	}
+
+	private static int getCigarLength(byte[] pRecord, int pPos) {
+		return getInt(pRecord, pPos) >>> 4;
+	}
+
+	private static char getBase(byte[] pRecord, int pSeqStart, int pIndex) {
+		int packed = pRecord[pSeqStart + (pIndex >> 1)];
+		int code = (pIndex & 1) == 0 ? (packed >> 4) & 0xf : packed & 0xf;
+		return SEQ_BASES.charAt(code);
+	}
+
+	/*
+	 * Get the score from the AS tag (if there is one) or the mapping quality
+	 */
+	private int getScore(byte[] pRecord, int pTagStart, int pMapQual) {
+		int tag = findTag(pRecord, pTagStart, 'A', 'S');
+		if (tag < 0) {
+			return pMapQual;
+		}
+		int value = tag + 3;
+		switch (pRecord[tag + 2]) {
+		case 'c':
+			return pRecord[value];
+		case 'C':
+			return pRecord[value] & 0xff;
+		case 's':
+			return (short) getShort(pRecord, value);
+		case 'S':
+			return getShort(pRecord, value);
+		case 'i':
+		case 'I':
+			return getInt(pRecord, value);
+		case 'f':
+			return (int) Float.intBitsToFloat(getInt(pRecord, value));
+		}
+		return pMapQual;
+	}
+
+	/*
+	 * Find a tag in the current record. Returns the position of the tag name
+	 * (followed by the type and value) or -1.
+	 */
+	private int findTag(byte[] pRecord, int pTagStart, char pName1,
+			char pName2) {
+		int pos = pTagStart;
+		while (pos + 3 <= mRecordLength) {
+			if (pRecord[pos] == pName1 && pRecord[pos + 1] == pName2) {
+				return pos;
+			}
+			char type = (char) pRecord[pos + 2];
+			pos += 3;
+			switch (type) {
+			case 'A':
+			case 'c':
+			case 'C':
+				pos += 1;
+				break;
+			case 's':
+			case 'S':
+				pos += 2;
+				break;
+			case 'i':
+			case 'I':
+			case 'f':
+				pos += 4;
+				break;
+			case 'Z':
+			case 'H':
+				while (pos < mRecordLength && pRecord[pos] != 0) {
+					pos++;
+				}
+				pos++;
+				break;
+			case 'B':
+				char subtype = (char) pRecord[pos];
+				int count = getInt(pRecord, pos + 1);
+				int size = subtype == 'c' || subtype == 'C' ? 1
+						: subtype == 's' || subtype == 'S' ? 2 : 4;
+				pos += 5 + count * size;
+				break;
+			default:
+				// can't go any further
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the parts of the BAM file that may have alignments in a region.
+	 * 
+	 * @param pIndex
+	 *            the BAM index file
+	 * @param pRefId
+	 *            position of the reference in the BAM header
+	 * @param pStart
+	 *            start of the region (0 based)
+	 * @param pEnd
+	 *            end of the region (exclusive)
+	 * @return sorted, non-overlapping pairs of virtual offsets (start and end)
+	 * @throws IOException
+	 *             if the index can't be read
+	 */
+	static List<long[]> getChunks(File pIndex, int pRefId, int pStart, int pEnd)
+			throws IOException {
+		List<long[]> chunks = new ArrayList<long[]>();
+		RandomAccessFile file = new RandomAccessFile(pIndex, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			index.order(ByteOrder.LITTLE_ENDIAN);
+
+			for (int i = 0; i < BAI_MAGIC.length; i++) {
+				if (index.get() != BAI_MAGIC[i]) {
+					throw new IOException(pIndex + " is not a BAM index");
+				}
+			}
+			int refCount = index.getInt();
+			if (pRefId >= refCount) {
+				return chunks;
+			}
+
+			// skip earlier references
+			for (int ref = 0; ref < pRefId; ref++) {
+				int binCount = index.getInt();
+				for (int i = 0; i < binCount; i++) {
+					index.getInt();
+					int chunkCount = index.getInt();
+					index.position(index.position() + 16 * chunkCount);
+				}
+				int intervalCount = index.getInt();
+				index.position(index.position() + 8 * intervalCount);
+			}
+
+			boolean[] bins = getBins(pStart, pEnd);
+			int binCount = index.getInt();
+			for (int i = 0; i < binCount; i++) {
+				int bin = index.getInt();
+				int chunkCount = index.getInt();
+				if (bin >= 0 && bin < BIN_COUNT && bins[bin]) {
+					for (int j = 0; j < chunkCount; j++) {
+						chunks.add(new long[] { index.getLong(),
+								index.getLong() });
+					}
+				} else {
+					index.position(index.position() + 16 * chunkCount);
+				}
+			}
+
+			// nothing before the first alignment in this window can overlap
+			// the region
+			long minOffset = 0;
+			int intervalCount = index.getInt();
+			int window = pStart >> LINEAR_SHIFT;
+			if (window < intervalCount) {
+				minOffset = index.getLong(index.position() + 8 * window);
+			}
+
+			// drop chunks that end too early, sort and merge the rest
+			List<long[]> merged = new ArrayList<long[]>();
+			Collections.sort(chunks, new Comparator<long[]>() {
+				public int compare(long[] pA, long[] pB) {
+					return pA[0] < pB[0] ? -1 : (pA[0] == pB[0] ? 0 : 1);
+				}
+			});
+			long[] last = null;
+			for (long[] chunk : chunks) {
+				if (chunk[1] <= minOffset) {
+					continue;
+				}
+				if (last != null && chunk[0] <= last[1]) {
+					last[1] = Math.max(last[1], chunk[1]);
+				} else {
+					last = new long[] { Math.max(chunk[0], minOffset), chunk[1] };
+					merged.add(last);
+				}
+			}
+			return merged;
+		} finally {
+			file.close();
+		}
+	}
+
+	/*
+	 * Mark the bins that overlap a region (from the SAM spec)
+	 */
+	private static boolean[] getBins(int pStart, int pEnd) {
+		boolean[] bins = new boolean[BIN_COUNT];
+		// (positions in a BAM file are less than 2^29)
+		int end = Math.min(pEnd, 1 << 29) - 1;
+		bins[0] = true;
+		markBins(bins, 1, 26, pStart, end);
+		markBins(bins, 9, 23, pStart, end);
+		markBins(bins, 73, 20, pStart, end);
+		markBins(bins, 585, 17, pStart, end);
+		markBins(bins, 4681, 14, pStart, end);
+		return bins;
+	}
+
+	private static void markBins(boolean[] pBins, int pOffset, int pShift,
+			int pStart, int pEnd) {
+		int last = Math.min(pOffset + (pEnd >> pShift), BIN_COUNT - 1);
+		for (int k = pOffset + (pStart >> pShift); k <= last; k++) {
+			pBins[k] = true;
+		}
+	}
+
+	private static int getShort(byte[] pBytes, int pPos) {
+		return (pBytes[pPos] & 0xff) | (pBytes[pPos + 1] & 0xff) << 8;
+	}
+
+	private static int getInt(byte[] pBytes, int pPos) {
+		return getShort(pBytes, pPos) | getShort(pBytes, pPos + 2) << 16;
+	}
+}
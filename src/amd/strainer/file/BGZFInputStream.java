@@ -0,0 +1,410 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a BGZF file (the blocked gzip format used by BAM files) as one
+ * uncompressed stream.
+ * <p/>
+ * A BGZF file is a series of gzip members of at most 64K each, with the size
+ * of each member in its header. That means the compressed blocks can be found
+ * without decompressing anything, so they are read ahead in order by the
+ * calling thread and inflated on a pool of worker threads. Blocks are handed
+ * back in file order.
+ * <p/>
+ * Positions in the stream are "virtual offsets" (as used in BAM indexes): the
+ * file offset of a block shifted left 16 bits plus the offset into the
+ * uncompressed block.
+ * 
+ * @author jmeppley
+ * 
+ */
+class BGZFInputStream extends InputStream {
+	// gzip header with the BC extra field that holds the block size
+	private static final int HEADER_SIZE = 12;
+	private static final int FOOTER_SIZE = 8;
+	private static final int MAX_BLOCK_SIZE = 1 << 16;
+
+	private final RandomAccessFile mFile;
+	private final long mFileSize;
+	private final ExecutorService mPool;
+	private final int mMaxPending;
+
+	// blocks being inflated, in file order
+	private final ArrayDeque<PendingBlock> mPending = new ArrayDeque<PendingBlock>();
+	// file offset of the next block to queue
+	private long mNextAddress = 0;
+
+	// the block being read
+	private long mBlockAddress = 0;
+	private byte[] mBlock = new byte[0];
+	private int mBlockPos = 0;
+
+	private final byte[] mHeader = new byte[HEADER_SIZE];
+
+	/**
+	 * @param pFile
+	 *            the BGZF file
+	 * @param pThreadCount
+	 *            the number of blocks to inflate at once (no worker threads
+	 *            are used if this is 1)
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	BGZFInputStream(File pFile, int pThreadCount) throws IOException {
+		mFile = new RandomAccessFile(pFile, "r");
+		mFileSize = mFile.length();
+		if (pThreadCount > 1) {
+			mPool = Executors.newFixedThreadPool(pThreadCount,
+					new ContigImportPipeline.ImportThreadFactory());
+			mMaxPending = 2 * pThreadCount;
+		} else {
+			mPool = null;
+			mMaxPending = 1;
+		}
+	}
+
+	/**
+	 * @return the virtual offset of the next byte to be read (the first byte
+	 *         of the next block if the current one is used up)
+	 * @throws IOException
+	 *             if the next block can't be read
+	 */
+	long getVirtualOffset() throws IOException {
+		if (mBlockPos >= mBlock.length && !nextBlock()) {
+			return mFileSize << 16;
+		}
+		return (mBlockAddress << 16) | mBlockPos;
+	}
+
+	/**
+	 * Move to the given virtual offset
+	 * 
+	 * @param pVirtualOffset
+	 *            block address << 16 | position in the uncompressed block
+	 * @throws IOException
+	 *             if the block can't be read
+	 */
+	void seek(long pVirtualOffset) throws IOException {
+		long address = pVirtualOffset >>> 16;
+		int pos = (int) (pVirtualOffset & 0xffff);
+
+		if (address != mBlockAddress || mBlock.length == 0) {
+			// skip queued blocks before the target (reading forward through a
+			// list of index chunks usually lands in the read ahead)
+			while (!mPending.isEmpty() && mPending.peek().address < address) {
+				mPending.poll().cancel();
+			}
+			if (mPending.isEmpty() || mPending.peek().address != address) {
+				clearPending();
+				mNextAddress = address;
+			}
+			if (!nextBlock()) {
+				throw new EOFException("No BGZF block at " + address);
+			}
+		}
+		if (pos > mBlock.length) {
+			throw new IOException("Virtual offset " + pVirtualOffset
+					+ " is past the end of its block");
+		}
+		mBlockPos = pos;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (mBlockPos >= mBlock.length && !nextBlock()) {
+			return -1;
+		}
+		return mBlock[mBlockPos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] pBuffer, int pOffset, int pLength)
+			throws IOException {
+		if (pLength == 0) {
+			return 0;
+		}
+		if (mBlockPos >= mBlock.length && !nextBlock()) {
+			return -1;
+		}
+		int length = Math.min(pLength, mBlock.length - mBlockPos);
+		System.arraycopy(mBlock, mBlockPos, pBuffer, pOffset, length);
+		mBlockPos += length;
+		return length;
+	}
+
+	/**
+	 * Fill the buffer
+	 * 
+	 * @throws EOFException
+	 *             if the stream ends first
+	 */
+	void readFully(byte[] pBuffer, int pOffset, int pLength)
+			throws IOException {
+		while (pLength > 0) {
+			int count = read(pBuffer, pOffset, pLength);
+			if (count < 0) {
+				throw new EOFException("Unexpected end of BGZF file");
+			}
+			pOffset += count;
+			pLength -= count;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		clearPending();
+		if (mPool != null) {
+			mPool.shutdownNow();
+		}
+		mFile.close();
+	}
+
+	/*
+	 * Move to the next block with any data in it
+	 */
+	private boolean nextBlock() throws IOException {
+		do {
+			fillPending();
+			PendingBlock next = mPending.poll();
+			if (next == null) {
+				mBlock = new byte[0];
+				mBlockPos = 0;
+				return false;
+			}
+			mBlockAddress = next.address;
+			mBlock = next.getData();
+			mBlockPos = 0;
+		} while (mBlock.length == 0);
+		return true;
+	}
+
+	/*
+	 * Read compressed blocks and queue them to be inflated
+	 */
+	private void fillPending() throws IOException {
+		while (mPending.size() < mMaxPending && mNextAddress < mFileSize) {
+			long address = mNextAddress;
+			byte[] raw = readRawBlock(address);
+			mNextAddress += raw.length;
+
+			Inflate inflate = new Inflate(address, raw);
+			if (mPool == null) {
+				mPending.add(new PendingBlock(address, inflate.call()));
+			} else {
+				mPending.add(new PendingBlock(address, mPool.submit(inflate)));
+			}
+		}
+	}
+
+	private void clearPending() {
+		while (!mPending.isEmpty()) {
+			mPending.poll().cancel();
+		}
+	}
+
+	/*
+	 * Read one whole gzip member (header, deflated data and footer)
+	 */
+	private byte[] readRawBlock(long pAddress) throws IOException {
+		mFile.seek(pAddress);
+		mFile.readFully(mHeader);
+		if ((mHeader[0] & 0xff) != 31 || (mHeader[1] & 0xff) != 139
+				|| mHeader[2] != 8 || (mHeader[3] & 4) == 0) {
+			throw new IOException("Not a BGZF block at " + pAddress);
+		}
+		int extraLength = getShort(mHeader, 10);
+		byte[] extra = new byte[extraLength];
+		mFile.readFully(extra);
+
+		// find the BC subfield
+		int blockSize = -1;
+		int pos = 0;
+		while (pos + 4 <= extraLength) {
+			int fieldLength = getShort(extra, pos + 2);
+			if (extra[pos] == 'B' && extra[pos + 1] == 'C' && fieldLength == 2) {
+				blockSize = getShort(extra, pos + 4) + 1;
+				break;
+			}
+			pos += 4 + fieldLength;
+		}
+		if (blockSize < HEADER_SIZE + extraLength + FOOTER_SIZE
+				|| blockSize > MAX_BLOCK_SIZE) {
+			throw new IOException("Missing or bad BGZF block size at "
+					+ pAddress);
+		}
+
+		byte[] raw = new byte[blockSize];
+		System.arraycopy(mHeader, 0, raw, 0, HEADER_SIZE);
+		System.arraycopy(extra, 0, raw, HEADER_SIZE, extraLength);
+		mFile.readFully(raw, HEADER_SIZE + extraLength, blockSize
+				- HEADER_SIZE - extraLength);
+		return raw;
+	}
+
+	private static int getShort(byte[] pBytes, int pPos) {
+		return (pBytes[pPos] & 0xff) | (pBytes[pPos + 1] & 0xff) << 8;
+	}
+
+	private static int getInt(byte[] pBytes, int pPos) {
+		return getShort(pBytes, pPos) | getShort(pBytes, pPos + 2) << 16;
+	}
+
+	// each worker thread keeps its own Inflater
+	private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	/*
+	 * Inflates one block and checks it against the gzip footer
+	 */
+	private static class Inflate implements Callable<byte[]> {
+		private final long mAddress;
+		private final byte[] mRaw;
+
+		Inflate(long pAddress, byte[] pRaw) {
+			mAddress = pAddress;
+			mRaw = pRaw;
+		}
+
+		public byte[] call() throws IOException {
+			int extraLength = getShort(mRaw, 10);
+			int start = HEADER_SIZE + extraLength;
+			int end = mRaw.length - FOOTER_SIZE;
+			int crc = getInt(mRaw, end);
+			int size = getInt(mRaw, end + 4);
+			if (size < 0 || size > MAX_BLOCK_SIZE) {
+				throw new IOException("Bad BGZF block size at " + mAddress);
+			}
+
+			byte[] data = new byte[size];
+			Inflater inflater = INFLATERS.get();
+			inflater.reset();
+			inflater.setInput(mRaw, start, end - start);
+			try {
+				int count = 0;
+				while (count < size && !inflater.finished()) {
+					int n = inflater.inflate(data, count, size - count);
+					if (n == 0 && inflater.needsInput()) {
+						break;
+					}
+					count += n;
+				}
+				if (count != size) {
+					throw new IOException("BGZF block at " + mAddress
+							+ " is truncated");
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt BGZF block at " + mAddress
+						+ ": " + e.getMessage());
+			}
+
+			CRC32 check = new CRC32();
+			check.update(data, 0, size);
+			if ((int) check.getValue() != crc) {
+				throw new IOException("CRC mismatch in BGZF block at "
+						+ mAddress);
+			}
+			return data;
+		}
+	}
+
+	/*
+	 * A block that is (or will be) inflated
+	 */
+	private static class PendingBlock {
+		final long address;
+		private byte[] mData = null;
+		private Future<byte[]> mFuture = null;
+
+		PendingBlock(long pAddress, byte[] pData) {
+			address = pAddress;
+			mData = pData;
+		}
+
+		PendingBlock(long pAddress, Future<byte[]> pFuture) {
+			address = pAddress;
+			mFuture = pFuture;
+		}
+
+		byte[] getData() throws IOException {
+			if (mData != null) {
+				return mData;
+			}
+			try {
+				return mFuture.get();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while inflating BGZF block at "
+						+ address);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+
+		void cancel() {
+			if (mFuture != null) {
+				mFuture.cancel(false);
+			}
+		}
+	}
+}
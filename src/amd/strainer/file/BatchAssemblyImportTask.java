@@ -47,15 +47,23 @@ import java.util.Set;
 
 import amd.strainer.display.PaneledReferenceSequenceDisplay;
 import amd.strainer.display.actions.AbstractTask;
-import amd.strainer.display.actions.AssemblyFileReader;
 import amd.strainer.display.actions.LoadDataDialog;
 import amd.strainer.objects.ReferenceSequence;
 
+/**
+ * Converts the contigs in an ACE or CAF file to strainer files (FASTA and
+ * XML). Contigs are parsed by several threads at once (see
+ * ContigImportPipeline) and written out as they finish.
+ * 
+ * @author jmeppley
+ * 
+ */
 public class BatchAssemblyImportTask extends AbstractTask {
 	private String assemblyFileName = null;
 	private String outputPrefix = null;
 	private Set<Long> contigNumbers = null;
 	private String qualityFileName = null;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
 
 	public BatchAssemblyImportTask(String pAssemblyFileName,
 			String pOutputPrefix, Set<Long> pContigNumbers) {
@@ -74,6 +82,15 @@ public class BatchAssemblyImportTask extends AbstractTask {
 		message = "Initializing...";
 	}
 
+	/**
+	 * @param pThreadCount
+	 *            the number of contigs to parse at once (defaults to the
+	 *            number of processors)
+	 */
+	public void setThreadCount(int pThreadCount) {
+		threadCount = pThreadCount;
+	}
+
 	@Override
 	protected Object doStuff() {
 		File assemblyFile = new File(assemblyFileName);
@@ -91,12 +108,8 @@ public class BatchAssemblyImportTask extends AbstractTask {
 		}
 
 		int assemblyFileType = LoadDataDialog.getAssemblyFileType(assemblyFile);
-		AssemblyFileReader afr;
-		if (assemblyFileType == LoadDataDialog.ACE) {
-			afr = new AceFileReader(assemblyFile);
-		} else if (assemblyFileType == LoadDataDialog.CAF) {
-			afr = new CAFFileReader(assemblyFile);
-		} else {
+		if (assemblyFileType != LoadDataDialog.ACE
+				&& assemblyFileType != LoadDataDialog.CAF) {
 			current = -1;
 			message = "Unknown file type: "
 					+ Integer.toString(assemblyFileType);
@@ -108,41 +121,46 @@ public class BatchAssemblyImportTask extends AbstractTask {
 		System.out.println("Creating iterator...");
 		Iterator<ReferenceSequence> cit;
 		try {
-			cit = afr.getContigIterator(contigNumbers);
+			Iterator<ContigChunk> chunks;
+			if (assemblyFileType == LoadDataDialog.ACE) {
+				message = "indexing ace file";
+				chunks = new AceFileReader(assemblyFile).getContigChunks(
+						contigNumbers, this);
+			} else {
+				chunks = new CAFFileReader(assemblyFile)
+						.getContigChunks(contigNumbers);
+			}
+
+			ContigImportPipeline pipeline = new ContigImportPipeline(
+					threadCount);
+			pipeline.setTask(this);
+			current = 0;
 
 			if (qualityFileName == null || qualityFileName.trim().length() == 0) {
 				message = "reading ace file";
 
 				// if there is no quality data to load, don't save data as we
-				// go, just write
-				// out each contig when it's finished
-				while (cit.hasNext()) {
-					if (isInterrupted()) {
-						throw new InterruptedException("Load Canceled");
+				// go, just write out each contig when it's finished
+				pipeline.run(chunks, new ContigImportPipeline.ContigHandler() {
+					public void handleContig(ReferenceSequence pRefSeq)
+							throws IOException {
+						System.out.println("Writing contig: "
+								+ pRefSeq.getName());
+						writeStrainerFiles(pRefSeq, outputPrefix);
 					}
-
-					ReferenceSequence refSeq = cit.next();
-
-					if (isInterrupted()) {
-						throw new InterruptedException("Load Canceled");
-					}
-
-					System.out.println("Writing contig: " + refSeq.getName());
-					writeStrainerFiles(refSeq, outputPrefix);
-				}
+				});
 			} else {
 				// The quality data is the big memory hog, so when requested, it
 				// should be
 				// better to save all the contigs and run through all the
 				// quality data in one go
 				message = "reading ace file";
-				Set<ReferenceSequence> refSeqs = new HashSet<ReferenceSequence>();
-				while (cit.hasNext()) {
-					if (isInterrupted()) {
-						throw new InterruptedException("Load Canceled");
+				final Set<ReferenceSequence> refSeqs = new HashSet<ReferenceSequence>();
+				pipeline.run(chunks, new ContigImportPipeline.ContigHandler() {
+					public void handleContig(ReferenceSequence pRefSeq) {
+						refSeqs.add(pRefSeq);
 					}
-					refSeqs.add(cit.next());
-				}
+				});
 
 				if (isInterrupted()) {
 					throw new InterruptedException("Load Canceled");
@@ -36,9 +36,19 @@
  ***** END LICENSE BLOCK ***** */
 package amd.strainer.file;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.xml.sax.Attributes;
@@ -47,8 +57,11 @@ import org.xml.sax.helpers.DefaultHandler;
 import amd.strainer.NoGoodClonePlacementException;
 import amd.strainer.display.actions.Task;
 import amd.strainer.objects.Alignment;
+import amd.strainer.objects.Difference;
+import amd.strainer.objects.PackedDiffList;
 import amd.strainer.objects.Read;
 import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
 import amd.strainer.objects.Strain;
 
 /**
@@ -63,6 +76,12 @@ import amd.strainer.objects.Strain;
  * Batch.java Using the blast ouput to generate a strainer XML file for each
  * reference sequence. XML files will be named [REF_SEQ_NAME].strains.xml in the
  * working directory.
+ * <p>
+ * In spill mode, the diffs of each alignment are written to a temporary file
+ * for its reference sequence as soon as it is parsed, and only its position
+ * and score are kept for choosing where reads (and mate pairs) go. Each
+ * reference sequence gets its diffs back just before it is written out, so
+ * only one reference sequence's diffs are in memory at a time.
  * 
  * @author jmeppley
  * 
@@ -102,6 +121,12 @@ public class BatchBlastEventHandler extends DefaultHandler {
 	private String cigar = null;
 	private Task task = null;
 
+	// spill mode: alignment diffs and quality data by reference sequence id
+	private ReferenceSpillFiles alignmentSpill = null;
+	private ReferenceSpillFiles qualitySpill = null;
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+
 	/**
 	 * Creates the event handler.
 	 * 
@@ -116,6 +141,26 @@ public class BatchBlastEventHandler extends DefaultHandler {
 		this.task = pTask;
 	}
 
+	/**
+	 * Creates an event handler that keeps alignment diffs in temporary files
+	 * until each reference sequence is written.
+	 * 
+	 * @param pSmallClone
+	 *            the smallest clone size (separation of matepairs) expected
+	 * @param pBigClone
+	 *            the largest clone size expected
+	 * @param pSpillDir
+	 *            where to put the temporary files (the system temp dir if
+	 *            null)
+	 * @throws IOException
+	 *             if the temporary files cannot be created
+	 */
+	public BatchBlastEventHandler(int pSmallClone, int pBigClone, Task pTask,
+			File pSpillDir) throws IOException {
+		this(pSmallClone, pBigClone, pTask);
+		alignmentSpill = new ReferenceSpillFiles(pSpillDir, ".hsp");
+	}
+
 	/**
 	 * Receive notification of the beginning of a document. (ignored)
 	 */
@@ -200,6 +245,9 @@ public class BatchBlastEventHandler extends DefaultHandler {
 
 			// look through leftover reads and add to entry with best alignments
 			processSoloReads(readAlignmentsMap);
+			// (the placed reads are held by their reference sequences now)
+			readAlignmentsMap.clear();
+			soloReads.clear();
 
 		} else if (currentRead != null) {
 			if (qName.equals("biojava:BlastLikeDataSet")) {
@@ -272,6 +320,9 @@ public class BatchBlastEventHandler extends DefaultHandler {
 					throw new RuntimeException(
 							"Did not get a match string or cigar string. This file is not readable.");
 				}
+				if (alignmentSpill != null) {
+					a = spill(a, referenceSequence);
+				}
 				currentReadAlignments.put(subjectId, a);
 			} else if (qName.equals("biojava:QuerySequence")) {
 				query = chars.toString();
@@ -332,13 +383,19 @@ public class BatchBlastEventHandler extends DefaultHandler {
 
 		// write out XML files
 
-		for (Map.Entry<String, ReferenceSequence> e : refSeqs.entrySet()) {
+		Iterator<Map.Entry<String, ReferenceSequence>> it = refSeqs.entrySet()
+				.iterator();
+		while (it.hasNext()) {
 			if (task != null && task.isInterrupted()) {
 				throw new InterruptedException("Interrupted!");
 			}
 
+			Map.Entry<String, ReferenceSequence> e = it.next();
 			String referenceSequenceName = e.getKey();
 			ReferenceSequence referenceSequence = e.getValue();
+			if (alignmentSpill != null) {
+				loadSpilledData(referenceSequence);
+			}
 
 			String fileName = fileNamePrefix + referenceSequenceName
 					+ ".strains.xml";
@@ -352,6 +409,167 @@ public class BatchBlastEventHandler extends DefaultHandler {
 				System.err.println("Could not write " + fileName + ": "
 						+ ex.toString());
 			}
+
+			if (alignmentSpill != null) {
+				// done with this one, let it go
+				it.remove();
+				alignmentSpill.delete(referenceSequence.getId());
+				if (qualitySpill != null) {
+					qualitySpill.delete(referenceSequence.getId());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds quality data to the diffs of all reads. In spill mode, the quality
+	 * file is split by reference sequence and each part is loaded when its
+	 * reference sequence is written.
+	 * 
+	 * @param pQualFile
+	 *            a FASTA formatted quality file for the reads
+	 * @throws IOException
+	 *             if the quality file cannot be read
+	 * @throws InterruptedException
+	 */
+	void loadQualityData(File pQualFile) throws IOException,
+			InterruptedException {
+		if (alignmentSpill == null) {
+			QualityData.bulkLoadQualityData(refSeqs.values().iterator(),
+					pQualFile, task);
+			return;
+		}
+
+		if (qualitySpill == null) {
+			qualitySpill = new ReferenceSpillFiles(null, ".qual");
+		}
+		Map<String, Read> reads = Util.getReadNameMap(refSeqs.values()
+				.iterator());
+
+		// copy each record to the file for its read's reference sequence
+		BufferedReader br = new BufferedReader(new FileReader(pQualFile),
+				1 << 16);
+		try {
+			int refSeqId = -1;
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.startsWith(">")) {
+					if (task != null && task.isInterrupted()) {
+						throw new InterruptedException("Interrupted!");
+					}
+
+					// name ends at the first whitespace (as in QualityData)
+					int end = 1;
+					while (end < line.length() && line.charAt(end) > ' ') {
+						end++;
+					}
+					Read read = reads.get(line.substring(1, end));
+					refSeqId = read == null ? -1 : read.getAlignment()
+							.getSequenceSegment1().getSequence().getId();
+				}
+
+				if (refSeqId >= 0) {
+					record.reset();
+					recordOut.writeBytes(line);
+					recordOut.write('\n');
+					qualitySpill.append(refSeqId, record);
+				}
+			}
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Removes any temporary files (spill mode)
+	 */
+	void deleteSpillFiles() {
+		if (alignmentSpill != null) {
+			alignmentSpill.delete();
+		}
+		if (qualitySpill != null) {
+			qualitySpill.delete();
+		}
+	}
+
+	/*
+	 * Writes the diffs of a new alignment to the file for its reference
+	 * sequence and returns an alignment without them
+	 */
+	private Alignment spill(Alignment pAlignment,
+			ReferenceSequence pReferenceSequence) {
+		PackedDiffList diffs = pAlignment.getPackedDiffs();
+		int size = diffs == null ? 0 : diffs.size();
+		int index;
+		try {
+			record.reset();
+			recordOut.writeInt(currentRead.getId());
+			recordOut.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				recordOut.writeInt(diffs.getPosition1(i));
+				recordOut.writeChar(diffs.getBase1(i));
+				recordOut.writeInt(diffs.getPosition2(i));
+				recordOut.writeChar(diffs.getBase2Actual(i));
+				recordOut.writeShort(diffs.getQuality(i));
+			}
+			index = alignmentSpill.append(pReferenceSequence.getId(), record);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write temporary file: "
+					+ e.getMessage(), e);
+		}
+		return new SpilledAlignment(pAlignment, index);
+	}
+
+	/*
+	 * Gives the reads placed on this reference sequence their diffs (and
+	 * quality data) back from the spill files
+	 */
+	private void loadSpilledData(ReferenceSequence pReferenceSequence)
+			throws IOException, InterruptedException {
+		int refSeqId = pReferenceSequence.getId();
+		int count = alignmentSpill.getCount(refSeqId);
+		if (count > 0) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(alignmentSpill.getFile(refSeqId)),
+					1 << 16));
+			try {
+				for (int index = 0; index < count; index++) {
+					Read read = pReferenceSequence.reads.get(Integer
+							.valueOf(in.readInt()));
+					int size = in.readInt();
+
+					// skip alignments that were not chosen
+					Alignment a = read == null ? null : read.getAlignment();
+					boolean keep = a instanceof SpilledAlignment
+							&& ((SpilledAlignment) a).index == index;
+					PackedDiffList diffs = keep ? new PackedDiffList(size)
+							: null;
+					for (int i = 0; i < size; i++) {
+						int position1 = in.readInt();
+						char base1 = in.readChar();
+						int position2 = in.readInt();
+						char base2 = in.readChar();
+						short quality = in.readShort();
+						if (keep) {
+							diffs.add(position1, base1, position2, base2);
+							if (quality != PackedDiffList.NO_QUALITY) {
+								diffs.setQuality(i, quality);
+							}
+						}
+					}
+					if (keep) {
+						a.setDiffs(diffs);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		if (qualitySpill != null && qualitySpill.getCount(refSeqId) > 0) {
+			QualityData.bulkLoadQualityData(Collections.singletonList(
+					pReferenceSequence).iterator(), qualitySpill
+					.getFile(refSeqId), task);
 		}
 	}
 
@@ -475,4 +693,33 @@ public class BatchBlastEventHandler extends DefaultHandler {
 		referenceSequence.maxStrainId = Math.max(referenceSequence.maxStrainId,
 				strainIndex);
 	}
+
+	/*
+	 * An alignment whose diffs were written to the spill file of its reference
+	 * sequence (as record number index). Until they are read back, it has
+	 * none.
+	 */
+	private static class SpilledAlignment extends Alignment {
+		final int index;
+		private boolean loaded;
+
+		SpilledAlignment(Alignment pAlignment, int pIndex) {
+			super(pAlignment.getSequenceSegment1(), pAlignment
+					.getSequenceSegment2(), pAlignment.isForward(), null);
+			score = pAlignment.score;
+			index = pIndex;
+			loaded = false;
+		}
+
+		@Override
+		public boolean areDiffsLoaded() {
+			return loaded;
+		}
+
+		@Override
+		public void setDiffs(List<Difference> pDiffs) {
+			super.setDiffs(pDiffs);
+			loaded = true;
+		}
+	}
 }
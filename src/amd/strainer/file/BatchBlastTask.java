@@ -39,7 +39,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.biojava.bio.program.sax.BlastLikeSAXParser;
 import org.xml.sax.InputSource;
@@ -48,7 +49,6 @@ import org.xml.sax.SAXException;
 import amd.strainer.display.PaneledReferenceSequenceDisplay;
 import amd.strainer.display.actions.AbstractTask;
 import amd.strainer.display.actions.BatchBlastDialog;
-import amd.strainer.objects.ReferenceSequence;
 
 /**
  * Turns a BLAST output into a collection of strainer XML files.<p>
@@ -59,6 +59,8 @@ import amd.strainer.objects.ReferenceSequence;
  * Arguments 3 and 4 indicate how far apart mate pairs are expected to
  * be. (average insert size). They are (in order) the min and max size.
  * The fifth argument is optional and points to a quality file for the reads.
+ * Add --spill anywhere in the arguments to keep alignments in temporary files until each
+ * reference sequence is written (for BLAST outputs too big to hold in memory).
  * 
  * @author jmeppley
  *
@@ -69,18 +71,29 @@ public class BatchBlastTask extends AbstractTask {
 	private String qualityFile;
 	private int minClone = 0;
 	private int maxClone = 10000;
+	private boolean spill = false;
 
 	public BatchBlastTask(String pBlastOutputFile, String pOutputDir, String pQualityFile, int pMinClone, int pMaxClone) {
+		this(pBlastOutputFile,pOutputDir,pQualityFile,pMinClone,pMaxClone,false);
+	}
+
+	/**
+	 * @param pSpill if true, alignment diffs are kept in temporary files until each reference 
+	 *  sequence is written, so only one reference sequence's alignments are in memory at a time
+	 */
+	public BatchBlastTask(String pBlastOutputFile, String pOutputDir, String pQualityFile, int pMinClone, int pMaxClone, boolean pSpill) {
 		alignmentsFile = pBlastOutputFile;
 		outputDir = pOutputDir;
 		qualityFile = pQualityFile;
 		minClone = pMinClone;
 		maxClone = pMaxClone;
+		spill = pSpill;
 		message="Initializing...";
 	}
 	
 	@Override
 	protected Object doStuff() {
+		BatchBlastEventHandler handler = null;
 		try {
 			//get the Blast input as a Stream
 			InputStream is = new FileInputStream(alignmentsFile);
@@ -89,7 +102,11 @@ public class BatchBlastTask extends AbstractTask {
 			parser.setModeLazy();
 
 			//create handler to turn events into read alignments
-			BatchBlastEventHandler handler = new BatchBlastEventHandler(minClone,maxClone,this);
+			if (spill) {
+				handler = new BatchBlastEventHandler(minClone,maxClone,this,null);
+			} else {
+				handler = new BatchBlastEventHandler(minClone,maxClone,this);
+			}
 
 			//set the parsers SAX event adapter
 			parser.setContentHandler(handler);
@@ -103,8 +120,7 @@ public class BatchBlastTask extends AbstractTask {
 			// import quality
 			if (qualityFile!=null) {
 				System.out.println("loading quality data");
-				Iterator<ReferenceSequence> rit = handler.refSeqs.values().iterator();
-				QualityData.bulkLoadQualityData(rit,new File(qualityFile),this);
+				handler.loadQualityData(new File(qualityFile));
 			}
 			
 			System.out.println("writing to XML");
@@ -138,6 +154,10 @@ public class BatchBlastTask extends AbstractTask {
 			message = e.getMessage();
 			errorTitle = "Out of memory";
 			current = -1;
+		} finally {
+			if (handler!=null) {
+				handler.deleteSpillFiles();
+			}
 		}
 		
 		// return something
@@ -151,6 +171,18 @@ public class BatchBlastTask extends AbstractTask {
 	public static void main(String [] args) {
 		// argument 0 is location of blast file
 		
+		// pull out flags
+		boolean spill = false;
+		List<String> argList = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals("--spill")) {
+				spill = true;
+			} else {
+				argList.add(arg);
+			}
+		}
+		args = argList.toArray(new String[argList.size()]);
+
 		// set up vars
 		String alignmentsFile = args[0];
 		String outputDir = args[1];
@@ -170,7 +202,7 @@ public class BatchBlastTask extends AbstractTask {
 			qualityFile = args[4];
 		}
 
-		BatchBlastTask task = new BatchBlastTask(alignmentsFile,outputDir,qualityFile,minClone,maxClone);
+		BatchBlastTask task = new BatchBlastTask(alignmentsFile,outputDir,qualityFile,minClone,maxClone,spill);
 		task.doStuff();
 	}
 }
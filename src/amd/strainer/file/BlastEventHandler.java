@@ -163,14 +163,8 @@ public class BlastEventHandler extends DefaultHandler {
 		// System.out.println("Start " + qName);
 
 		if (qName.equals("biojava:BlastLikeDataSet")) {
-			// notify task of status update
-			if (mTask != null) {
-				mTask.setCurrent(readIndex - 1);
-			}
-
 			// initialize read
-			currentRead = new Read();
-			currentRead.setId(readIndex++);
+			currentRead = newRead();
 		} else if (currentRead != null) {
 			if (qName.equals("biojava:QueryId")) {
 				// get the read name
@@ -233,12 +227,7 @@ public class BlastEventHandler extends DefaultHandler {
 
 		if (qName.equals("biojava:BlastLikeDataSetCollection")) {
 			// End of data
-			if (bigClone > 0) {
-				// look through leftover reads and add to reference seq with
-				// best alignments
-				addSoloReadsToReferenceSequence(readAlignmentsMap,
-						referenceSequence);
-			}
+			finishReads();
 		} else if (currentRead != null) {
 			if (qName.equals("biojava:BlastLikeDataSet")) {
 				// end of read. Clean up and save
@@ -249,120 +238,13 @@ public class BlastEventHandler extends DefaultHandler {
 					return;
 				}
 
-				// get id of read as nteger for convienience
-				Integer readId = currentRead.getIdInteger();
-
-				// check if we've seen it's matepair...
-				Read matePair = null;
-				// (don't bother unless user specified clone size for mate pair
-				// linking)
+				// (don't bother looking for mate pairs unless user specified
+				// clone size for mate pair linking)
+				String mateKey = null;
 				if (bigClone > 0) {
-					matePair = Util.lookForMatePair(soloReads, currentRead,
-							false);
-				}
-
-				// if so ...
-				if (matePair != null) {
-					// if we've seen the mate pair...
-					// choose which alignment is best for this pair
-
-					// start by getting alig data for mp
-					Map<String, Alignment> mpAligs = readAlignmentsMap
-							.remove(matePair);
-					try {
-						if (findBestAlignments(referenceSequence.getName(),
-								currentRead, currentReadAlignments, matePair,
-								mpAligs)) {
-							// we'll only get here if the findBestAlignment
-							// method deemed this reference sequence to be the
-							// best match for the mate pair
-
-							// add to referenceSequence
-							referenceSequence.reads.put(readId, currentRead);
-							referenceSequence.reads.put(
-									matePair.getIdInteger(), matePair);
-
-							// link pair and create clone
-							currentRead.setMatepair(matePair);
-
-							// build clone based strain
-							Strain cloneStrain = new Strain();
-							Integer strainId = currentRead.getClone()
-									.getIdInteger();
-							cloneStrain.setId(strainId.intValue());
-							cloneStrain.putRead(readId, currentRead);
-							cloneStrain.putRead(matePair.getIdInteger(),
-									matePair);
-							cloneStrain.setAlignmentFromReads();
-							referenceSequence.putStrain(strainId, cloneStrain);
-
-							currentRead.initializeGraphics();
-							matePair.initializeGraphics();
-						} else {
-							// we get here if the best alignment was not to this
-							// reference sequence.
-							// do nothing
-						}
-					} catch (NoGoodClonePlacementException e) {
-						// if nothing fell within tolerances, choose the best
-						// individual scores
-						Alignment rA = findBestAlignment(
-								referenceSequence.getName(),
-								currentReadAlignments);
-						Alignment mpA = findBestAlignment(
-								referenceSequence.getName(), mpAligs);
-						// mark both reads from matePair ass poorly aligned
-						if (rA != null) {
-							referenceSequence.reads.put(readId, currentRead);
-							if (mpA != null)
-								currentRead.setBadClone(true);
-							currentRead.setAlignment(rA);
-							currentRead.setLength(rA.getSequenceSegment2()
-									.getLength());
-							Strain strain = new Strain();
-							strain.setId(strainIndex++);
-							strain.putRead(currentRead.getIdInteger(),
-									currentRead);
-							strain.setAlignmentFromReads();
-							referenceSequence.putStrain(strain.getIdInteger(),
-									strain);
-							referenceSequence.maxStrainId = Math.max(
-									referenceSequence.maxStrainId, strainIndex);
-						}
-						if (mpA != null) {
-							referenceSequence.reads.put(
-									matePair.getIdInteger(), matePair);
-							if (rA != null)
-								matePair.setBadClone(true);
-							matePair.setAlignment(mpA);
-							matePair.setLength(mpA.getSequenceSegment2()
-									.getLength());
-							Strain strain = new Strain();
-							strain.setId(strainIndex++);
-							strain.putRead(matePair.getIdInteger(), matePair);
-							strain.setAlignmentFromReads();
-							referenceSequence.putStrain(strain.getIdInteger(),
-									strain);
-							referenceSequence.maxStrainId = Math.max(
-									referenceSequence.maxStrainId, strainIndex);
-						}
-						if (rA != null && mpA != null) {
-							currentRead.setMatepair(matePair);
-						}
-					}
-				} else {
-					if (bigClone > 0) {
-						// if we haven't seen the mate pair yet...
-						// save alignments for later and wait for mate pair to
-						// come around
-						readAlignmentsMap.put(currentRead,
-								currentReadAlignments);
-					} else {
-						// we're not tracking matepairs, so just add read
-						alignSoloReadToReferenceSequence(currentRead,
-								currentReadAlignments, referenceSequence);
-					}
+					mateKey = Util.getReadNameBase(currentRead.getName());
 				}
+				addRead(currentRead, currentReadAlignments, mateKey);
 
 				currentRead = null;
 				currentReadAlignments = new HashMap<String, Alignment>();
@@ -406,6 +288,155 @@ public class BlastEventHandler extends DefaultHandler {
 	public void endDocument() {
 	}
 
+	/**
+	 * Creates the next Read (with a new ID number) and notifies the task
+	 */
+	Read newRead() {
+		// notify task of status update
+		if (mTask != null) {
+			mTask.setCurrent(readIndex - 1);
+		}
+
+		Read read = new Read();
+		read.setId(readIndex++);
+		return read;
+	}
+
+	/**
+	 * Adds a finished read to the reference sequence. If a mate pair key is
+	 * given, the read is held until a read with the same key comes along and
+	 * the pair's alignments are chosen together. Any reads still waiting for
+	 * a mate are added by finishReads().
+	 * 
+	 * @param pRead
+	 *            the read
+	 * @param pAlignments
+	 *            the read's alignments keyed on the subject sequence name
+	 * @param pMateKey
+	 *            key shared by the read and its mate pair (null if the read
+	 *            has no mate pair to wait for)
+	 */
+	void addRead(Read pRead, Map<String, Alignment> pAlignments,
+			String pMateKey) {
+		// get id of read as nteger for convienience
+		Integer readId = pRead.getIdInteger();
+
+		// check if we've seen it's matepair...
+		Read matePair = null;
+		if (pMateKey != null) {
+			matePair = soloReads.remove(pMateKey);
+			if (matePair == null) {
+				soloReads.put(pMateKey, pRead);
+			}
+		}
+
+		// if so ...
+		if (matePair != null) {
+			// if we've seen the mate pair...
+			// choose which alignment is best for this pair
+
+			// start by getting alig data for mp
+			Map<String, Alignment> mpAligs = readAlignmentsMap.remove(matePair);
+			try {
+				if (findBestAlignments(referenceSequence.getName(), pRead,
+						pAlignments, matePair, mpAligs)) {
+					// we'll only get here if the findBestAlignment
+					// method deemed this reference sequence to be the
+					// best match for the mate pair
+
+					// add to referenceSequence
+					referenceSequence.reads.put(readId, pRead);
+					referenceSequence.reads.put(matePair.getIdInteger(),
+							matePair);
+
+					// link pair and create clone
+					pRead.setMatepair(matePair);
+
+					// build clone based strain
+					Strain cloneStrain = new Strain();
+					Integer strainId = pRead.getClone().getIdInteger();
+					cloneStrain.setId(strainId.intValue());
+					cloneStrain.putRead(readId, pRead);
+					cloneStrain.putRead(matePair.getIdInteger(), matePair);
+					cloneStrain.setAlignmentFromReads();
+					referenceSequence.putStrain(strainId, cloneStrain);
+
+					pRead.initializeGraphics();
+					matePair.initializeGraphics();
+				} else {
+					// we get here if the best alignment was not to this
+					// reference sequence.
+					// do nothing
+				}
+			} catch (NoGoodClonePlacementException e) {
+				// if nothing fell within tolerances, choose the best
+				// individual scores
+				Alignment rA = findBestAlignment(referenceSequence.getName(),
+						pAlignments);
+				Alignment mpA = findBestAlignment(referenceSequence.getName(),
+						mpAligs);
+				// mark both reads from matePair ass poorly aligned
+				if (rA != null) {
+					referenceSequence.reads.put(readId, pRead);
+					if (mpA != null)
+						pRead.setBadClone(true);
+					pRead.setAlignment(rA);
+					pRead.setLength(rA.getSequenceSegment2().getLength());
+					Strain strain = new Strain();
+					strain.setId(strainIndex++);
+					strain.putRead(pRead.getIdInteger(), pRead);
+					strain.setAlignmentFromReads();
+					referenceSequence.putStrain(strain.getIdInteger(),
+							strain);
+					referenceSequence.maxStrainId = Math.max(
+							referenceSequence.maxStrainId, strainIndex);
+				}
+				if (mpA != null) {
+					referenceSequence.reads.put(matePair.getIdInteger(),
+							matePair);
+					if (rA != null)
+						matePair.setBadClone(true);
+					matePair.setAlignment(mpA);
+					matePair.setLength(mpA.getSequenceSegment2().getLength());
+					Strain strain = new Strain();
+					strain.setId(strainIndex++);
+					strain.putRead(matePair.getIdInteger(), matePair);
+					strain.setAlignmentFromReads();
+					referenceSequence.putStrain(strain.getIdInteger(),
+							strain);
+					referenceSequence.maxStrainId = Math.max(
+							referenceSequence.maxStrainId, strainIndex);
+				}
+				if (rA != null && mpA != null) {
+					pRead.setMatepair(matePair);
+				}
+			}
+		} else {
+			if (pMateKey != null) {
+				// if we haven't seen the mate pair yet...
+				// save alignments for later and wait for mate pair to
+				// come around
+				readAlignmentsMap.put(pRead, pAlignments);
+			} else {
+				// we're not tracking matepairs, so just add read
+				alignSoloReadToReferenceSequence(pRead, pAlignments,
+						referenceSequence);
+			}
+		}
+	}
+
+	/**
+	 * Adds any reads that are still waiting for their mate pairs
+	 */
+	void finishReads() {
+		if (bigClone > 0) {
+			// look through leftover reads and add to reference seq with
+			// best alignments
+			addSoloReadsToReferenceSequence(readAlignmentsMap,
+					referenceSequence);
+		}
+	}
+
 	/**
 	 * put each reamaining read in its own strain and add to refrenceSEquence
 	 * object
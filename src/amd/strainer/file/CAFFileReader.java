@@ -38,10 +38,8 @@ package amd.strainer.file;
 
 import jaligner.SmithWatermanGotoh;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -49,6 +47,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.StringTokenizer;
 
@@ -112,6 +111,26 @@ public class CAFFileReader implements AssemblyFileReader {
 	private boolean mTrimEnds = true;
 	private boolean mSaveQualityData = false;
 	private int contigCount = 0;
+	private boolean mMemoryMapped = true;
+
+	private static final byte[] DNA_TAG = { 'D', 'N', 'A', ' ' };
+	private static final byte[] BASE_QUALITY_TAG = { 'B', 'a', 's', 'e', 'Q',
+			'u', 'a', 'l', 'i', 't', 'y', ' ' };
+	private static final byte[] SEQUENCE_TAG = { 'S', 'e', 'q', 'u', 'e', 'n',
+			'c', 'e', ' ' };
+	private static final byte[] ASSEMBLED_FROM_TAG = { 'A', 's', 's', 'e',
+			'm', 'b', 'l', 'e', 'd', '_', 'f', 'r', 'o', 'm', ' ' };
+	private static final byte[] TEMPLATE_TAG = { 'T', 'e', 'm', 'p', 'l', 'a',
+			't', 'e', ' ' };
+	private static final byte[] STRAND_TAG = { 'S', 't', 'r', 'a', 'n', 'd',
+			' ' };
+	private static final byte[] SEQ_VEC_TAG = { 'S', 'e', 'q', '_', 'v', 'e',
+			'c', ' ' };
+	private static final byte[] CLIPPING_TAG = { 'C', 'l', 'i', 'p', 'p', 'i',
+			'n', 'g', ' ' };
+	private static final byte[] IS_READ = { 'I', 's', '_', 'r', 'e', 'a', 'd' };
+	private static final byte[] IS_CONTIG = { 'I', 's', '_', 'c', 'o', 'n',
+			't', 'i', 'g' };
 
 	/**
 	 * @return the full path to the ace file
@@ -147,6 +166,16 @@ public class CAFFileReader implements AssemblyFileReader {
 		mSaveQualityData = pSaveQualityData;
 	}
 
+	/**
+	 * @param pMemoryMapped
+	 *            if true (the default), the MappedLineScanner maps the file.
+	 *            Otherwise it reads the file into the heap one block at a
+	 *            time.
+	 */
+	public void setMemoryMapped(boolean pMemoryMapped) {
+		mMemoryMapped = pMemoryMapped;
+	}
+
 	/**
 	 * Retrieves the specified contig from an ace file and returns a Reference
 	 * Sequence object.
@@ -165,14 +194,18 @@ public class CAFFileReader implements AssemblyFileReader {
 	public amd.strainer.objects.ReferenceSequence getContigDetails(
 			int pLocation, CAFContigHeader pContig)
 			throws FileNotFoundException, IOException {
-		// Open file reader
-		BufferedReader br = new BufferedReader(new FileReader(mCafFile));
-		// seek to location
-		for (int i = 0; i < pLocation; i++) {
-			br.readLine();
-		}
+		MappedLineScanner scanner = new MappedLineScanner(mCafFile,
+				mMemoryMapped);
+		try {
+			// seek to location
+			for (int i = 0; i < pLocation; i++) {
+				scanner.nextLine();
+			}
 
-		return createContigFromReader(br, pContig, null);
+			return readContigChunk(scanner, pContig, null, null).parse(null);
+		} finally {
+			scanner.close();
+		}
 	}
 
 	/**
@@ -311,38 +344,23 @@ public class CAFFileReader implements AssemblyFileReader {
 		// + " not found in " + mCafFile.getAbsolutePath());
 	}
 
-	private String getSequenceNameFromLine(String line) {
-		// get sequence name from line
-		StringTokenizer st = new StringTokenizer(line, " ");
-		st.nextToken(); // skip "Sequence"
-		st.nextToken(); // skip ":"
-		return st.nextToken();
-	}
-
-	private int[] getQualScores(BufferedReader br, int sequenceLength)
+	private int[] getQualScores(MappedLineScanner pScanner, int sequenceLength)
 			throws IOException {
 		// loop over Quality score lines
-		String line = br.readLine().trim();
 		int[] qualityData = new int[sequenceLength];
 		int index = 0;
-		while (line.length() > 0) {
-			StringTokenizer st = new StringTokenizer(line);
-			while (st.hasMoreTokens()) {
-				qualityData[index] = Integer.parseInt(st.nextToken());
-				index++;
-			}
-			line = br.readLine();
+		while (pScanner.nextLine() && pScanner.trimmedLength() > 0) {
+			index = pScanner.getIntFields(qualityData, index);
 		}
 		return qualityData;
 	}
 
-	private String getSequenceDNA(BufferedReader br) throws IOException {
+	private String getSequenceDNA(MappedLineScanner pScanner)
+			throws IOException {
 		// loop over DNA lines
-		String line = br.readLine().trim();
 		StringBuffer dna = new StringBuffer(151);
-		while (line.length() > 0) {
-			dna.append(line);
-			line = br.readLine().trim();
+		while (pScanner.nextLine() && pScanner.trimmedLength() > 0) {
+			pScanner.appendTrimmedTo(dna);
 		}
 		return dna.toString();
 	}
@@ -376,91 +394,58 @@ public class CAFFileReader implements AssemblyFileReader {
 	}
 
 	/**
-	 * Creates a ReferenceSequence, complete with reads and alignments, based on
-	 * the next Contig in the ace (created by PhredPhrap) file that is currently
-	 * being read by the passed FileReader.
-	 * <p>
-	 * The reader is assumed to have just read the contig header line. The next
-	 * line should be the start of the contig sequence. This method counts reads
-	 * and stops after the last QA line, leaving some lines left o read before
-	 * the next contig.
+	 * Splits the file into contigs that can be parsed independently (eg: by
+	 * several threads). The file is read (and the contig ids are assigned) as
+	 * the Iterator is used. Only building the alignments is left for
+	 * ContigChunk.parse().
 	 * 
-	 * @param br
-	 *            BufferedReader connected to CAFFile just after a contig header
-	 * @param pContig
-	 *            The ContigHeader object from the last line read
-	 * @param contigDNAsequence
-	 *            if known, otherwise send null
-	 * @return a ReferenceSequence object with aligned reads
+	 * @param pNums
+	 *            the contig numbers to return (empty or null for all)
+	 * @return an Iterator of ContigChunks in file order
+	 * @throws FileNotFoundException
+	 *             if CAF file not found
 	 * @throws IOException
-	 *             if file can't be read from
+	 *             if CAF file unreadable
 	 */
-	ReferenceSequence createContigFromReader(BufferedReader br,
-			CAFContigHeader pContig, String pContigDNAsequence)
-			throws IOException {
-		return createContigFromReader(br, pContig, pContigDNAsequence, null);
+	Iterator<ContigChunk> getContigChunks(Set<Long> pNums)
+			throws FileNotFoundException, IOException {
+		if (pNums == null) {
+			return new CAFContigChunkIterator(new CAFFileContigIterator(
+					mCafFile));
+		} else {
+			return new CAFContigChunkIterator(new CAFFileContigIterator(
+					mCafFile, pNums));
+		}
 	}
 
-	/**
-	 * Creates a ReferenceSequence, complete with reads and alignments, based on
-	 * the next Contig in the ace (created by PhredPhrap) file that is currently
-	 * being read by the passed FileReader.
-	 * <p>
-	 * The reader is assumed to have just read the contig header line. The next
-	 * line should be the start of the contig sequence. This method counts reads
-	 * and stops after the last QA line, leaving some lines left o read before
-	 * the next contig.
-	 * 
-	 * @param br
-	 *            BufferedReader connected to CAFFile just after a contig header
-	 * @param pContig
-	 *            The ContigHeader object from the last line read
-	 * @param contigDNAsequence
-	 *            if known, otherwise send null
-	 * @param pTask
-	 *            a Task object to recieve status updates (may be null for no
-	 *            updates)
-	 * @return a ReferenceSequence object with aligned reads
-	 * @throws IOException
-	 *             if file can't be read from
+	/*
+	 * Reads the contig's read positions and sequence. The alignments are built
+	 * by CAFContigChunk.parse(). The scanner is assumed to be on the
+	 * "Is_contig" line of the contig's Sequence block.
 	 */
-	ReferenceSequence createContigFromReader(BufferedReader br,
+	private CAFContigChunk readContigChunk(MappedLineScanner pScanner,
 			CAFContigHeader pContig, String contigDNAsequence, Task pTask)
 			throws IOException {
-		/*
-		 * This is a complicated method, here's the outline: 1) read tags into
-		 * list of reads and alignments 2) read contig sequence and create
-		 * ReferenceSequence object 3) create read objects and alignments 4)
-		 * clean up: make some final initializations
-		 */
-
 		// set up task with starting info
 		if (pTask != null) {
 			pTask.setCurrent(0);
 			pTask.setMessage("Parsing Read Positions");
-			// pTask.setLengthOfTask(pContig.getReadCount());
 		}
 
 		// //////////////
 		// READ POSITOINS
 
-		// set up variables for capturing data while looping
 		HashMap<String, int[]> readPositions = new HashMap<String, int[]>();
-		// loop over following lines
-		String line = br.readLine().trim();
-		while (line.length() > 0) {
-			if (line.length() > 15
-					&& line.substring(0, 15).equals("Assembled_from ")) {
-				StringTokenizer st = new StringTokenizer(line.substring(15)
-						.trim());
-				String readName = st.nextToken();
+		while (pScanner.nextLine() && pScanner.trimmedLength() > 0) {
+			if (pScanner.startsWith(ASSEMBLED_FROM_TAG)
+					&& pScanner.length() > ASSEMBLED_FROM_TAG.length) {
+				String readName = pScanner.getField(1);
 				int[] positions = new int[4];
 				for (int i = 0; i < positions.length; i++) {
-					positions[i] = Integer.parseInt(st.nextToken());
+					positions[i] = pScanner.getIntField(i + 2);
 				}
 				readPositions.put(readName, positions);
 			}
-			line = br.readLine().trim();
 		}
 		int numReads = readPositions.size();
 
@@ -474,26 +459,60 @@ public class CAFFileReader implements AssemblyFileReader {
 		// //////////////////
 		// CONTIG SEQUENCE
 
-		// find DNA lines after contig "Sequence" block if we didn't see it
-		// before
 		if (contigDNAsequence == null) {
-			while (true) {
-				if (line.length() > 4 && line.substring(0, 4).equals("DNA ")) {
-					break;
+			while (!pScanner.startsWith(DNA_TAG)
+					|| pScanner.length() <= DNA_TAG.length) {
+				if (!pScanner.nextLine()) {
+					throw new IOException("No DNA found for "
+							+ pContig.getName());
 				}
-				line = br.readLine();
 			}
+			contigDNAsequence = getSequenceDNA(pScanner);
+		}
+
+		return new CAFContigChunk(pContig, readPositions, contigDNAsequence);
+	}
+
+	private synchronized int nextContigId() {
+		return contigCount++;
+	}
 
-			// loop over DNA lines
-			line = br.readLine().trim();
-			StringBuffer contigDNAbuffer = new StringBuffer(151);
-			while (line.length() > 0) {
-				contigDNAbuffer.append(line);
-				line = br.readLine().trim();
+	/**
+	 * A contig whose read positions and sequence have been read from the
+	 * file. The reads it needs are moved out of the iterator's read map when
+	 * it is created, so parse() can run on any thread.
+	 */
+	private class CAFContigChunk extends ContigChunk {
+		private final Map<String, int[]> mReadPositions;
+		private final Map<String, RawRead> mRawReads = new HashMap<String, RawRead>();
+		private final String mContigDNASequence;
+
+		CAFContigChunk(CAFContigHeader pContig,
+				Map<String, int[]> pReadPositions, String pContigDNASequence) {
+			super(pContig.getName(), nextContigId());
+			mReadPositions = pReadPositions;
+			mContigDNASequence = pContigDNASequence;
+			for (String readName : pReadPositions.keySet()) {
+				mRawReads.put(readName, pContig.popRawRead(readName));
 			}
-			contigDNAsequence = contigDNAbuffer.toString();
 		}
 
+		@Override
+		ReferenceSequence parse(Task pTask) {
+			return buildContig(getName(), getId(), mReadPositions, mRawReads,
+					mContigDNASequence, pTask);
+		}
+	}
+
+	/*
+	 * Creates the ReferenceSequence, reads, and alignments from the parsed
+	 * contig data.
+	 */
+	private ReferenceSequence buildContig(String pName, int pId,
+			Map<String, int[]> readPositions, Map<String, RawRead> pRawReads,
+			String contigDNAsequence, Task pTask) {
+		int numReads = readPositions.size();
+
 		// create contig
 		// read and contig sequences have a "-" for any gap. these have to be
 		// removed.
@@ -511,8 +530,8 @@ public class CAFFileReader implements AssemblyFileReader {
 
 		// create ReferenceSequence object to represent contig
 		ReferenceSequence contig = new ReferenceSequence();
-		contig.setName(pContig.getName());
-		contig.setId(contigCount++);
+		contig.setName(pName);
+		contig.setId(pId);
 		contig.setBases(newContigSequence);
 		contig.setLength(newContigSequence.length());
 
@@ -541,7 +560,7 @@ public class CAFFileReader implements AssemblyFileReader {
 		for (Map.Entry<String, int[]> entry : readPositions.entrySet()) {
 			String readName = entry.getKey();
 			int[] positions = entry.getValue();
-			RawRead rawRead = pContig.popRawRead(readName);
+			RawRead rawRead = pRawReads.get(readName);
 
 			// update task progress
 			readCount++;
@@ -1037,7 +1056,7 @@ public class CAFFileReader implements AssemblyFileReader {
 		private final Map<String, RawRead> mReadMap = new HashMap<String, RawRead>();
 		private final Map<String, String> mDNASequenceMap = new HashMap<String, String>();
 		private final Map<String, int[]> mQualScoreMap = new HashMap<String, int[]>();
-		private BufferedReader br = null;
+		private MappedLineScanner scanner = null;
 		private final File mCAFFile;
 		private Set<Long> nums = null;
 
@@ -1045,8 +1064,8 @@ public class CAFFileReader implements AssemblyFileReader {
 				FileNotFoundException {
 			mCAFFile = pCAFFile;
 
-			// Open file reader
-			br = new BufferedReader(new FileReader(mCAFFile));
+			// Open file
+			open();
 
 			// set up first contig
 			queueNextContig();
@@ -1062,8 +1081,8 @@ public class CAFFileReader implements AssemblyFileReader {
 				nums = null;
 			}
 
-			// Open file reader
-			br = new BufferedReader(new FileReader(mCAFFile));
+			// Open file
+			open();
 
 			System.out.println("finding next contig");
 
@@ -1071,122 +1090,150 @@ public class CAFFileReader implements AssemblyFileReader {
 			queueNextContig();
 		}
 
-		private void queueNextContig() throws IOException {
-			// loop over lines
-			int lineCount = 0;
-			String line = br.readLine();
-			while (line != null) {
-				lineCount++;
+		private void open() throws IOException {
+			scanner = new MappedLineScanner(mCAFFile, mMemoryMapped);
+		}
+
+		private void close() throws IOException {
+			scanner.close();
+		}
 
+		private void queueNextContig() throws IOException {
+			while (scanner.nextLine()) {
 				// find DNA lines
-				if (line.length() > 4 && line.substring(0, 4).equals("DNA ")) {
-					String sequenceName = getSequenceNameFromLine(line);
-					String dnaSequence = getSequenceDNA(br);
-					if (mReadMap.containsKey(sequenceName)) {
-						mReadMap.get(sequenceName).setSequence(dnaSequence);
-					} else {
-						mDNASequenceMap.put(sequenceName, dnaSequence);
-					}
-				} else if (line.length() > 12
-						&& line.substring(0, 12).equals("BaseQuality ")
-						&& mSaveQualityData) {
-					String sequenceName = getSequenceNameFromLine(line);
+				if (scanner.startsWith(DNA_TAG)
+						&& scanner.length() > DNA_TAG.length) {
+					String sequenceName = scanner.getField(2);
+					String dnaSequence = getSequenceDNA(scanner);
+					addDNA(sequenceName, dnaSequence);
+				} else if (mSaveQualityData
+						&& scanner.startsWith(BASE_QUALITY_TAG)
+						&& scanner.length() > BASE_QUALITY_TAG.length) {
+					String sequenceName = scanner.getField(2);
 					if (!mDNASequenceMap.containsKey(sequenceName)) {
 						System.err.println("Cannot find DNA for "
 								+ sequenceName + ". Skipping Quality scores");
-						line = br.readLine();
 						continue;
 					}
-					int[] qualScores = getQualScores(br,
+					int[] qualScores = getQualScores(scanner,
 							mDNASequenceMap.get(sequenceName).length());
-					if (mReadMap.containsKey(sequenceName)) {
-						mReadMap.get(sequenceName).setQuality(qualScores);
-					} else {
-						mQualScoreMap.put(sequenceName, qualScores);
-					}
-				} else if (line.length() > 9
-						&& line.substring(0, 9).equals("Sequence ")) {
+					addQualScores(sequenceName, qualScores);
+				} else if (scanner.startsWith(SEQUENCE_TAG)
+						&& scanner.length() > SEQUENCE_TAG.length) {
 					// this line is a sequence header line
-					StringTokenizer st = new StringTokenizer(line, " ");
-					st.nextToken(); // skip "Sequence"
-					st.nextToken(); // skip ":"
-
-					// get name (second token)
-					String sequenceName = st.nextToken().toString();
+					String sequenceName = scanner.getField(2);
 
 					// read or contig
-					String type = br.readLine().trim();
-					if (type.equals("Is_read")) {
-						RawRead rawRead = parseCAFRead(sequenceName, br,
-								mSaveQualityData);
-						String dna = mDNASequenceMap.remove(sequenceName);
-						if (dna != null) {
-							rawRead.setSequence(dna);
-						}
-						int[] qualityScores = mQualScoreMap.remove(rawRead
-								.getName());
-						if (qualityScores != null) {
-							rawRead.setQuality(qualityScores);
-						}
-						mReadMap.put(sequenceName, rawRead);
-					} else if (type.equals("Is_contig")) {
-						nextContig = CAFContigHeader.parseHeaderLine(line,
-								mReadMap);
-						if (nums != null) {
-							// if there is a list of numbers only stop if this
-							// contig
-							// is in the list
-							if (nums.contains(new Long(nextContig.getNumber()))) {
-								return;
-							} else {
-								// clear DNA and qual arrays
-								mDNASequenceMap.clear();
-								mQualScoreMap.clear();
-							}
-						} else {
-							// otherwise, we'll take any contig
+					if (!scanner.nextLine()) {
+						break;
+					}
+					if (scanner.trimmedEquals(IS_READ)) {
+						addRead(sequenceName, parseCAFRead(sequenceName,
+								scanner));
+					} else if (scanner.trimmedEquals(IS_CONTIG)) {
+						if (isWanted(CAFContigHeader.parseHeaderLine(
+								"Sequence : " + sequenceName, mReadMap))) {
 							return;
 						}
 					}
 				}
-				line = br.readLine();
 			}
 
 			// if we get here, we didn't find another contig line
 			nextContig = null;
-			br.close();
+			close();
+		}
+
+		private void addDNA(String pSequenceName, String pDNASequence) {
+			if (mReadMap.containsKey(pSequenceName)) {
+				mReadMap.get(pSequenceName).setSequence(pDNASequence);
+			} else {
+				mDNASequenceMap.put(pSequenceName, pDNASequence);
+			}
+		}
+
+		private void addQualScores(String pSequenceName, int[] pQualScores) {
+			if (mReadMap.containsKey(pSequenceName)) {
+				mReadMap.get(pSequenceName).setQuality(pQualScores);
+			} else {
+				mQualScoreMap.put(pSequenceName, pQualScores);
+			}
+		}
+
+		private void addRead(String pSequenceName, RawRead pRawRead) {
+			String dna = mDNASequenceMap.remove(pSequenceName);
+			if (dna != null) {
+				pRawRead.setSequence(dna);
+			}
+			int[] qualityScores = mQualScoreMap.remove(pRawRead.getName());
+			if (qualityScores != null) {
+				pRawRead.setQuality(qualityScores);
+			}
+			mReadMap.put(pSequenceName, pRawRead);
+		}
+
+		/*
+		 * Sets nextContig and returns true if we should stop here (otherwise
+		 * clears the stored DNA and quality data)
+		 */
+		private boolean isWanted(CAFContigHeader pContig) {
+			nextContig = pContig;
+			if (nums != null) {
+				// if there is a list of numbers only stop if this contig
+				// is in the list
+				if (nums.contains(new Long(nextContig.getNumber()))) {
+					return true;
+				} else {
+					// clear DNA and qual arrays
+					mDNASequenceMap.clear();
+					mQualScoreMap.clear();
+					return false;
+				}
+			} else {
+				// otherwise, we'll take any contig
+				return true;
+			}
 		}
 
 		public boolean hasNext() {
 			return nextContig != null;
 		}
 
-		public ReferenceSequence next() {
+		/*
+		 * Reads the current contig's data from the file and queues up the
+		 * next contig. The alignments are not built until the chunk is parsed.
+		 */
+		CAFContigChunk nextChunk() throws IOException {
+			String contigName = nextContig.getName();
+			String contigDNASequence = mDNASequenceMap.remove(contigName);
 			try {
-				// get contig from file (skip if it breaks)
-				while (true) {
-					try {
-						String contigName = nextContig.getName();
-						String contigDNASequence = mDNASequenceMap
-								.remove(contigName);
-						ReferenceSequence ret = createContigFromReader(br,
-								nextContig, contigDNASequence);
-						// before we leave, queue up next contig
-						queueNextContig();
-
-						// return current contig
-						return ret;
-					} catch (Exception e) {
-						System.err.println("Could not parse "
-								+ nextContig.getName());
-						e.printStackTrace();
-						queueNextContig();
-						continue;
+				return readContigChunk(scanner, nextContig, contigDNASequence,
+						null);
+			} finally {
+				// before we leave, queue up next contig
+				queueNextContig();
+			}
+		}
+
+		public ReferenceSequence next() {
+			// get contig from file (skip if it breaks)
+			while (true) {
+				String contigName = nextContig.getName();
+				try {
+					// return current contig
+					return nextChunk().parse(null);
+				} catch (IOException ex) {
+					throw new RuntimeException(
+							"Suddenly can't read from ace file: " + mCAFFile);
+				} catch (Exception e) {
+					System.err.println("Could not parse " + contigName);
+					e.printStackTrace();
+					if (nextContig == null) {
+						throw new NoSuchElementException(
+								"No more contigs could be parsed from "
+										+ mCAFFile);
 					}
 				}
-			} catch (IOException ex) {
-				throw new RuntimeException(
-						"Suddenly can't read from ace file: " + mCAFFile);
 			}
 		}
 
@@ -1196,6 +1243,51 @@ public class CAFFileReader implements AssemblyFileReader {
 		}
 	}
 
+	private class CAFContigChunkIterator implements Iterator<ContigChunk> {
+		private final CAFFileContigIterator mContigs;
+		private CAFContigChunk mNextChunk = null;
+
+		CAFContigChunkIterator(CAFFileContigIterator pContigs) {
+			mContigs = pContigs;
+			queueNextChunk();
+		}
+
+		private void queueNextChunk() {
+			// read the next contig's data (skip if it breaks)
+			mNextChunk = null;
+			while (mNextChunk == null && mContigs.hasNext()) {
+				String contigName = mContigs.nextContig.getName();
+				try {
+					mNextChunk = mContigs.nextChunk();
+				} catch (IOException ex) {
+					throw new RuntimeException(
+							"Suddenly can't read from ace file: " + mCafFile);
+				} catch (RuntimeException e) {
+					System.err.println("Could not parse " + contigName);
+					e.printStackTrace();
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return mNextChunk != null;
+		}
+
+		public ContigChunk next() {
+			if (mNextChunk == null) {
+				throw new NoSuchElementException();
+			}
+			ContigChunk chunk = mNextChunk;
+			queueNextChunk();
+			return chunk;
+		}
+
+		public void remove() throws UnsupportedOperationException {
+			throw new UnsupportedOperationException(
+					"We're not modifying files here.");
+		}
+	}
+
 	private static final String PROGRAM_NAME = "CAFFileReader";
 	private static final String ARGUMENT_USAGE = "[CONTIG_NUM_LIST]";
 
@@ -1272,93 +1364,41 @@ public class CAFFileReader implements AssemblyFileReader {
 	 * 
 	 * @param sequenceName
 	 *            The name of the entry
-	 * @param br
-	 *            The buffered file reader
-	 * @return a RawRead object with sequence, quality, trim data, and direction
+	 * @param pScanner
+	 *            the file, on the "Is_read" line of the entry
+	 * @return a RawRead object with trim data and direction
 	 * @throws IOException
 	 *             if unable to read file
 	 */
-	private RawRead parseCAFRead(String sequenceName, BufferedReader br,
-			boolean storeQualityData) throws IOException {
-		// Parse the essential data from a REad entry in a CAF file
-		//
-
+	private RawRead parseCAFRead(String sequenceName,
+			MappedLineScanner pScanner) throws IOException {
 		RawRead rawRead = new RawRead();
 		rawRead.setName(sequenceName);
 
 		// loop over tag lines
-		String line = br.readLine();
-		while (line.trim().length() > 0) {
-			if (line.length() > 9 && line.substring(0, 9).equals("Template ")) {
-				rawRead.setTemplate(line.substring(9).trim());
-			} else if (line.length() > 7
-					&& line.substring(0, 7).equals("Strand ")) {
-				rawRead.setForward(line.substring(7).trim().equals("Forward"));
-			} else if (line.length() > 8
-					&& line.substring(0, 8).equals("Seq_vec ")) {
-				StringTokenizer st = new StringTokenizer(line.substring(9));
-				st.nextToken(); // skip vector type
+		while (pScanner.nextLine() && pScanner.trimmedLength() > 0) {
+			if (pScanner.startsWith(TEMPLATE_TAG)
+					&& pScanner.length() > TEMPLATE_TAG.length) {
+				rawRead.setTemplate(pScanner.getLine().substring(
+						TEMPLATE_TAG.length).trim());
+			} else if (pScanner.startsWith(STRAND_TAG)
+					&& pScanner.length() > STRAND_TAG.length) {
+				rawRead.setForward(pScanner.getField(1).equals("Forward"));
+			} else if (pScanner.startsWith(SEQ_VEC_TAG)
+					&& pScanner.length() > SEQ_VEC_TAG.length) {
 				int[] vectorPositions = new int[2];
-				vectorPositions[0] = Integer.parseInt(st.nextToken());
-				vectorPositions[1] = Integer.parseInt(st.nextToken());
+				vectorPositions[0] = pScanner.getIntField(2);
+				vectorPositions[1] = pScanner.getIntField(3);
 				rawRead.setVectorPositions(vectorPositions);
-			} else if (line.length() > 9
-					&& line.substring(0, 9).equals("Clipping ")) {
-				StringTokenizer st = new StringTokenizer(line.substring(9));
-				st.nextToken(); // skip "QUAL"
+			} else if (pScanner.startsWith(CLIPPING_TAG)
+					&& pScanner.length() > CLIPPING_TAG.length) {
 				int[] trimPositions = new int[2];
-				trimPositions[0] = Integer.parseInt(st.nextToken());
-				trimPositions[1] = Integer.parseInt(st.nextToken());
+				trimPositions[0] = pScanner.getIntField(2);
+				trimPositions[1] = pScanner.getIntField(3);
 				rawRead.setTrimPositions(trimPositions);
 			}
-			line = br.readLine();
 		}
 
-		// // find DNA lines
-		// while (true) {
-		// if (line.length() > 4 && line.substring(0, 4).equals("DNA ")) {
-		// break;
-		// }
-		// line = br.readLine();
-		// }
-		//
-		// // loop over DNA lines
-		// line = br.readLine().trim();
-		// StringBuffer dna = new StringBuffer(151);
-		// while (line.length() > 0) {
-		// dna.append(line);
-		// line = br.readLine().trim();
-		// }
-		// rawRead.setSequence(dna.toString());
-		//
-		// if (storeQualityData) {
-		//
-		// // find Quality lines
-		// line = br.readLine();
-		// while (true) {
-		// if (line.length() > 12
-		// && line.substring(0, 12).equals("BaseQuality ")) {
-		// break;
-		// }
-		// line = br.readLine();
-		// }
-		//
-		// // loop over Quality score lines
-		// line = br.readLine().trim();
-		// int[] qualityData = new int[dna.length()];
-		// int index = 0;
-		// while (line.length() > 0) {
-		// StringTokenizer st = new StringTokenizer(line);
-		// while (st.hasMoreTokens()) {
-		// qualityData[index] = Integer.parseInt(st.nextToken());
-		// index++;
-		// }
-		// line = br.readLine();
-		// }
-		// rawRead.setQuality(qualityData);
-		// }
-
-		// return read object
 		return rawRead;
 	}
 
@@ -0,0 +1,93 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.IOException;
+
+import amd.strainer.display.actions.Task;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * A contig that has been located in an assembly file but not yet turned into
+ * a ReferenceSequence. Finding the contigs has to be done in file order, but
+ * the chunks can then be parsed independently (and in parallel) by calling
+ * parse().
+ * 
+ * @author jmeppley
+ * 
+ */
+abstract class ContigChunk {
+	private final String mName;
+	private final int mId;
+
+	/**
+	 * @param pName
+	 *            the contig name
+	 * @param pId
+	 *            the id to give the ReferenceSequence (assigned in file order)
+	 */
+	ContigChunk(String pName, int pId) {
+		mName = pName;
+		mId = pId;
+	}
+
+	/**
+	 * @return the name of the contig
+	 */
+	String getName() {
+		return mName;
+	}
+
+	/**
+	 * @return the id the ReferenceSequence will get
+	 */
+	int getId() {
+		return mId;
+	}
+
+	/**
+	 * Creates the ReferenceSequence with aligned reads.
+	 * 
+	 * @param pTask
+	 *            a Task object to recieve status updates (may be null for no
+	 *            updates)
+	 * @return a ReferenceSequence object with aligned reads
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	abstract ReferenceSequence parse(Task pTask) throws IOException;
+}
@@ -0,0 +1,263 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import amd.strainer.display.actions.Task;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * Turns the contigs of an assembly file into ReferenceSequences with several
+ * threads. There are three stages:
+ * <ul>
+ * <li>one reader thread takes ContigChunks from the chunk Iterator (this is
+ * the only stage that has to go through the file in order)
+ * <li>a pool of parser threads calls ContigChunk.parse() to build the reads and
+ * alignments
+ * <li>the calling thread passes each finished contig to a ContigHandler (eg:
+ * to write it out)
+ * </ul>
+ * The queues between the stages are bounded so that the reader can't get far
+ * ahead of the parsers and the parsers can't get far ahead of the handler (a
+ * large assembly won't fit in memory all at once).
+ * <P>
+ * Contigs reach the handler in the order they finish, not in file order.
+ * Contigs that can't be parsed are skipped with a message (as the contig
+ * iterators do). The Task (if any) is updated with the number of contigs
+ * handled and is used to cancel the run.
+ * 
+ * @author jmeppley
+ * 
+ */
+class ContigImportPipeline {
+	// how often to check if the task was cancelled (in milliseconds)
+	private static final long CANCEL_CHECK_INTERVAL = 250;
+
+	// put on a queue to indicate that the stage feeding it is finished
+	private static final Object END = new Object();
+
+	/**
+	 * The last stage of the pipeline. Always called from the thread that
+	 * called run().
+	 */
+	interface ContigHandler {
+		void handleContig(ReferenceSequence pContig) throws IOException;
+	}
+
+	private final int mThreadCount;
+	private final int mQueueSize;
+	private Task mTask = null;
+	private final AtomicReference<Throwable> mFailure = new AtomicReference<Throwable>();
+
+	/**
+	 * @param pThreadCount
+	 *            the number of contigs to parse at once
+	 */
+	ContigImportPipeline(int pThreadCount) {
+		mThreadCount = Math.max(1, pThreadCount);
+		mQueueSize = 2 * mThreadCount;
+	}
+
+	/**
+	 * @param pTask
+	 *            the Task to update with the number of contigs finished (may
+	 *            be null)
+	 */
+	void setTask(Task pTask) {
+		mTask = pTask;
+	}
+
+	/**
+	 * Parse all the chunks and pass the contigs to the handler
+	 * 
+	 * @param pChunks
+	 *            the contigs to parse (from getContigChunks() in AceFileReader
+	 *            or CAFFileReader)
+	 * @param pHandler
+	 *            called with each parsed contig
+	 * @return the number of contigs handled
+	 * @throws IOException
+	 *             if the handler fails
+	 * @throws InterruptedException
+	 *             if the task is cancelled
+	 */
+	int run(final Iterator<ContigChunk> pChunks, ContigHandler pHandler)
+			throws IOException, InterruptedException {
+		mFailure.set(null);
+		final BlockingQueue<Object> chunkQueue = new ArrayBlockingQueue<Object>(
+				mQueueSize);
+		final BlockingQueue<Object> contigQueue = new ArrayBlockingQueue<Object>(
+				mQueueSize);
+
+		ExecutorService pool = Executors.newFixedThreadPool(mThreadCount + 1,
+				new ImportThreadFactory());
+		try {
+			// reader
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						while (pChunks.hasNext()) {
+							chunkQueue.put(pChunks.next());
+						}
+					} catch (InterruptedException e) {
+						// cancelled
+						return;
+					} catch (Throwable t) {
+						mFailure.compareAndSet(null, t);
+					}
+
+					// tell each parser to stop
+					try {
+						for (int i = 0; i < mThreadCount; i++) {
+							chunkQueue.put(END);
+						}
+					} catch (InterruptedException e) {
+						// cancelled
+					}
+				}
+			});
+
+			// parsers
+			for (int i = 0; i < mThreadCount; i++) {
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							while (true) {
+								Object next = chunkQueue.take();
+								if (next == END) {
+									break;
+								}
+								ContigChunk chunk = (ContigChunk) next;
+								ReferenceSequence contig;
+								try {
+									contig = chunk.parse(null);
+								} catch (Exception e) {
+									System.err.println("Could not parse "
+											+ chunk.getName());
+									e.printStackTrace();
+									continue;
+								}
+								contigQueue.put(contig);
+							}
+							contigQueue.put(END);
+						} catch (InterruptedException e) {
+							// cancelled
+						} catch (Throwable t) {
+							mFailure.compareAndSet(null, t);
+						}
+					}
+				});
+			}
+
+			// handle contigs as they finish
+			int finishedParsers = 0;
+			int contigCount = 0;
+			while (finishedParsers < mThreadCount) {
+				if (mTask != null && mTask.isInterrupted()) {
+					throw new InterruptedException("Load Canceled");
+				}
+				checkForFailure();
+
+				Object next = contigQueue.poll(CANCEL_CHECK_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				if (next == null) {
+					continue;
+				} else if (next == END) {
+					finishedParsers++;
+					continue;
+				}
+
+				ReferenceSequence contig = (ReferenceSequence) next;
+				pHandler.handleContig(contig);
+				contigCount++;
+				if (mTask != null) {
+					mTask.setCurrent(contigCount);
+					mTask.setMessage("Imported " + contig.getName());
+				}
+			}
+			checkForFailure();
+
+			return contigCount;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/*
+	 * Re-throw anything that went wrong in the reader or parser threads
+	 */
+	private void checkForFailure() throws IOException {
+		Throwable t = mFailure.get();
+		if (t == null) {
+			return;
+		} else if (t instanceof IOException) {
+			throw (IOException) t;
+		} else if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new RuntimeException(t);
+	}
+
+	/*
+	 * Names the threads and makes them daemons so a stuck parser can't keep
+	 * the app running (also used for BGZFInputStream's inflater threads)
+	 */
+	static class ImportThreadFactory implements ThreadFactory {
+		private static final AtomicInteger poolCount = new AtomicInteger(0);
+		private final int mPoolNumber = poolCount.incrementAndGet();
+		private final AtomicInteger mThreadCount = new AtomicInteger(0);
+
+		public Thread newThread(Runnable pRunnable) {
+			Thread t = new Thread(pRunnable, "import-" + mPoolNumber + "-"
+					+ mThreadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
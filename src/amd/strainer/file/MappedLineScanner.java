@@ -0,0 +1,639 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a text file one line at a time from a memory mapped buffer without
+ * creating a String for each line. Used by the ACE, CAF and SAM readers.
+ * <p/>
+ * The current line is examined in place: prefixes are compared byte by byte,
+ * whitespace separated fields are located by index and integers are parsed
+ * straight from the bytes. Strings are only created for the fields that
+ * are kept (eg: read names), and sequence lines are appended directly to a
+ * StringBuffer.
+ * <p/>
+ * A MappedByteBuffer can't be larger than 2GB, so large files are mapped one
+ * window at a time. When a line runs past the end of the window, the window is
+ * moved to start at that line. Bytes are copied out of the window in 64K blocks
+ * since single byte reads from a MappedByteBuffer are slow.
+ * <p/>
+ * If the file can't be mapped (or the scanner is created with memoryMapped
+ * false), the blocks are read from the file into the heap instead. Everything
+ * else works the same way.
+ * <p/>
+ * A scanner can also be limited to a range of the file (eg: one contig), in
+ * which case only that range is ever mapped or read.
+ * <p/>
+ * Lines end with "\n" or "\r\n". Bytes are converted to chars one to one
+ * (ISO-8859-1), which is all ACE, CAF and SAM files use.
+ * 
+ * @author jmeppley
+ * 
+ */
+public class MappedLineScanner {
+	private static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private final RandomAccessFile mFile;
+	private final FileChannel mChannel;
+	private final long mFileSize;
+	// nothing at or after this offset is read (the file size unless a range
+	// was given)
+	private final long mEnd;
+	private final long mWindowSize;
+
+	// false to read blocks into the heap instead of mapping the file
+	private boolean mMapped = true;
+	private MappedByteBuffer mBuffer = null;
+	private long mWindowStart = 0;
+	private long mWindowEnd = 0;
+
+	// bytes copied out of the mapped buffer (reading a MappedByteBuffer one
+	// byte at a time is slow)
+	private byte[] mBlock = new byte[BLOCK_SIZE];
+	private long mBlockStart = 0;
+	private int mBlockLength = 0;
+
+	// current line (position in mBlock and length without the line
+	// terminator)
+	private int mLinePos = 0;
+	private int mLineLength = -1;
+	// file offset of the start of the next line
+	private long mNextLine = 0;
+
+	// for converting bytes to chars
+	private char[] mChars = new char[256];
+
+	/**
+	 * @param pFile
+	 *            the file to read
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public MappedLineScanner(File pFile) throws IOException {
+		this(pFile, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param pFile
+	 *            the file to read
+	 * @param pMemoryMapped
+	 *            if false, the file is read into the heap one block at a time
+	 *            instead of being mapped
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public MappedLineScanner(File pFile, boolean pMemoryMapped)
+			throws IOException {
+		this(pFile, DEFAULT_WINDOW_SIZE, 0, Long.MAX_VALUE);
+		mMapped = pMemoryMapped;
+	}
+
+	/**
+	 * Creates a scanner that only sees part of the file. Offsets (for seek()
+	 * and getLineOffset()) are still relative to the start of the file.
+	 * 
+	 * @param pFile
+	 *            the file to read
+	 * @param pMemoryMapped
+	 *            if false, the range is read into the heap one block at a
+	 *            time instead of being mapped
+	 * @param pStart
+	 *            the offset of the first line to read
+	 * @param pEnd
+	 *            the offset just past the last byte to read
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public MappedLineScanner(File pFile, boolean pMemoryMapped, long pStart,
+			long pEnd) throws IOException {
+		this(pFile, DEFAULT_WINDOW_SIZE, pStart, pEnd);
+		mMapped = pMemoryMapped;
+	}
+
+	/**
+	 * @param pFile
+	 *            the file to read
+	 * @param pWindowSize
+	 *            the most bytes to map at once (no line can be longer)
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	MappedLineScanner(File pFile, long pWindowSize) throws IOException {
+		this(pFile, pWindowSize, 0, Long.MAX_VALUE);
+	}
+
+	private MappedLineScanner(File pFile, long pWindowSize, long pStart,
+			long pEnd) throws IOException {
+		mFile = new RandomAccessFile(pFile, "r");
+		mChannel = mFile.getChannel();
+		mFileSize = mChannel.size();
+		mEnd = Math.min(pEnd, mFileSize);
+		mWindowSize = Math.min(pWindowSize, Integer.MAX_VALUE);
+		mNextLine = pStart;
+	}
+
+	/**
+	 * Release the file. (The mapped memory is released when the buffer is
+	 * garbage collected.)
+	 */
+	public void close() throws IOException {
+		mBuffer = null;
+		mFile.close();
+	}
+
+	/**
+	 * @return the number of bytes in the file
+	 */
+	public long getFileSize() {
+		return mFileSize;
+	}
+
+	/**
+	 * Move to the given position. The next call to nextLine() will return the
+	 * line starting there.
+	 * 
+	 * @param pOffset
+	 *            a byte offset in the file
+	 */
+	public void seek(long pOffset) {
+		mNextLine = pOffset;
+		mLineLength = -1;
+	}
+
+	/**
+	 * Move to the next line
+	 * 
+	 * @return false if there are no more lines
+	 * @throws IOException
+	 *             if the file can't be mapped
+	 */
+	public boolean nextLine() throws IOException {
+		if (mNextLine >= mEnd) {
+			mLineLength = -1;
+			return false;
+		}
+
+		if (mNextLine < mBlockStart || mNextLine > mBlockStart + mBlockLength) {
+			fill(mNextLine);
+		}
+		int start = (int) (mNextLine - mBlockStart);
+
+		// look for the end of the line
+		int pos = start;
+		while (true) {
+			if (pos >= mBlockLength) {
+				if (mBlockStart + mBlockLength >= mEnd) {
+					// last line has no terminator
+					mNextLine = mEnd;
+					break;
+				}
+				// line crosses end of block, refill starting at this line
+				long lineStart = mBlockStart + start;
+				fill(lineStart);
+				pos -= start;
+				start = 0;
+				continue;
+			}
+			if (mBlock[pos] == '\n') {
+				mNextLine = mBlockStart + pos + 1;
+				break;
+			}
+			pos++;
+		}
+
+		mLinePos = start;
+		mLineLength = pos - start;
+		if (mLineLength > 0 && mBlock[mLinePos + mLineLength - 1] == '\r') {
+			mLineLength--;
+		}
+		return true;
+	}
+
+	/*
+	 * Copy bytes starting at pStart into mBlock, growing it if the line at
+	 * pStart doesn't fit
+	 */
+	private void fill(long pStart) throws IOException {
+		if (pStart == mBlockStart && mBlockLength > 0) {
+			// the current line already fills the block
+			if (mBlockLength == mBlock.length && mBlock.length < mWindowSize) {
+				mBlock = new byte[(int) Math.min(2L * mBlock.length,
+						mWindowSize)];
+			} else if (mBlockLength == mBlock.length
+					|| (mMapped && pStart == mWindowStart)) {
+				throw new IOException("Line at " + pStart + " is longer than "
+						+ mWindowSize + " bytes");
+			}
+		}
+
+		if (mMapped
+				&& (pStart < mWindowStart || (pStart + mBlock.length > mWindowEnd && mWindowEnd < mEnd))) {
+			try {
+				map(pStart);
+			} catch (IOException e) {
+				// (eg: out of address space) fall back to reading the blocks
+				mMapped = false;
+				mBuffer = null;
+			}
+		}
+
+		int length;
+		if (mMapped) {
+			length = (int) Math.min(mBlock.length, mWindowEnd - pStart);
+			mBuffer.position((int) (pStart - mWindowStart));
+			mBuffer.get(mBlock, 0, length);
+		} else {
+			length = (int) Math.min(mBlock.length, mEnd - pStart);
+			read(pStart, length);
+		}
+		mBlockStart = pStart;
+		mBlockLength = length;
+	}
+
+	/*
+	 * Read pLength bytes starting at pStart into mBlock
+	 */
+	private void read(long pStart, int pLength) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(mBlock, 0, pLength);
+		while (buffer.hasRemaining()) {
+			if (mChannel.read(buffer, pStart + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file at "
+						+ (pStart + buffer.position()));
+			}
+		}
+	}
+
+	private void map(long pStart) throws IOException {
+		mWindowStart = pStart;
+		long size = Math.min(mWindowSize, mEnd - pStart);
+		mBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY, pStart, size);
+		mWindowEnd = pStart + size;
+	}
+
+	/**
+	 * @return the byte offset of the current line
+	 */
+	public long getLineOffset() {
+		return mLineLength < 0 ? -1 : mBlockStart + mLinePos;
+	}
+
+	/**
+	 * @return the length of the current line (without the line terminator)
+	 */
+	public int length() {
+		return mLineLength;
+	}
+
+	/**
+	 * @param pIndex
+	 *            position in the current line
+	 * @return the byte at that position
+	 */
+	public byte byteAt(int pIndex) {
+		return mBlock[mLinePos + pIndex];
+	}
+
+	/**
+	 * @param pPrefix
+	 *            ASCII bytes to look for
+	 * @return true if the current line starts with the given bytes
+	 */
+	public boolean startsWith(byte[] pPrefix) {
+		if (length() < pPrefix.length) {
+			return false;
+		}
+		for (int i = 0; i < pPrefix.length; i++) {
+			if (byteAt(i) != pPrefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the length of the current line with leading and trailing
+	 *         whitespace removed (as with String.trim())
+	 */
+	public int trimmedLength() {
+		int start = trimmedStart();
+		int end = length();
+		while (end > start && (byteAt(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+		return end - start;
+	}
+
+	/**
+	 * @param pValue
+	 *            ASCII bytes to compare to
+	 * @return true if the trimmed line is the given value
+	 */
+	public boolean trimmedEquals(byte[] pValue) {
+		if (trimmedLength() != pValue.length) {
+			return false;
+		}
+		int start = trimmedStart();
+		for (int i = 0; i < pValue.length; i++) {
+			if (byteAt(start + i) != pValue[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int trimmedStart() {
+		int start = 0;
+		int end = length();
+		while (start < end && (byteAt(start) & 0xff) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * @param pByte
+	 *            the byte to look for
+	 * @param pFrom
+	 *            position in the current line to start looking at
+	 * @return the position of the first matching byte at or after pFrom, or -1
+	 *         if there is none
+	 */
+	public int indexOf(byte pByte, int pFrom) {
+		int length = length();
+		for (int i = pFrom; i < length; i++) {
+			if (mBlock[mLinePos + i] == pByte) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param pStart
+	 *            first position in the current line
+	 * @param pEnd
+	 *            position after the last character
+	 * @param pValue
+	 *            String to compare to
+	 * @return true if the given part of the line is the same as pValue
+	 */
+	public boolean regionEquals(int pStart, int pEnd, String pValue) {
+		if (pValue.length() != pEnd - pStart) {
+			return false;
+		}
+		for (int i = pStart; i < pEnd; i++) {
+			if ((char) (byteAt(i) & 0xff) != pValue.charAt(i - pStart)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param pStart
+	 *            first position in the current line
+	 * @param pEnd
+	 *            position after the last character
+	 * @return the given part of the line as a String
+	 */
+	public String substring(int pStart, int pEnd) {
+		StringBuffer value = new StringBuffer(pEnd - pStart);
+		appendTo(value, pStart, pEnd);
+		return value.toString();
+	}
+
+	/**
+	 * Append the current line to a buffer
+	 * 
+	 * @param pBuffer
+	 *            the buffer to add to
+	 */
+	public void appendTo(StringBuffer pBuffer) {
+		appendTo(pBuffer, 0, length());
+	}
+
+	/**
+	 * Append the current line without leading or trailing whitespace to a
+	 * buffer
+	 * 
+	 * @param pBuffer
+	 *            the buffer to add to
+	 */
+	public void appendTrimmedTo(StringBuffer pBuffer) {
+		int start = trimmedStart();
+		appendTo(pBuffer, start, start + trimmedLength());
+	}
+
+	private void appendTo(StringBuffer pBuffer, int pStart, int pEnd) {
+		int length = pEnd - pStart;
+		if (mChars.length < length) {
+			mChars = new char[Math.max(length, 2 * mChars.length)];
+		}
+		for (int i = 0; i < length; i++) {
+			mChars[i] = (char) (mBlock[mLinePos + pStart + i] & 0xff);
+		}
+		pBuffer.append(mChars, 0, length);
+	}
+
+	/**
+	 * @return the current line as a String (only for error messages and such)
+	 */
+	public String getLine() {
+		StringBuffer line = new StringBuffer(length());
+		appendTo(line);
+		return line.toString();
+	}
+
+	/*
+	 * Field handling. Fields are separated by any amount of whitespace (space,
+	 * tab, form feed). The start and end of the field found by findField() are
+	 * left in mFieldStart and mFieldEnd.
+	 */
+	private int mFieldStart = 0;
+	private int mFieldEnd = 0;
+
+	private static boolean isDelimiter(byte pByte) {
+		return pByte == ' ' || pByte == '\t' || pByte == '\f';
+	}
+
+	private void findField(int pIndex) {
+		int length = length();
+		int pos = 0;
+		for (int field = 0;; field++) {
+			while (pos < length && isDelimiter(byteAt(pos))) {
+				pos++;
+			}
+			if (pos >= length) {
+				throw new IllegalArgumentException("Line has only " + field
+						+ " fields: " + getLine());
+			}
+			int start = pos;
+			while (pos < length && !isDelimiter(byteAt(pos))) {
+				pos++;
+			}
+			if (field == pIndex) {
+				mFieldStart = start;
+				mFieldEnd = pos;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param pIndex
+	 *            which field (the first is 0)
+	 * @return the field as a String
+	 */
+	public String getField(int pIndex) {
+		findField(pIndex);
+		StringBuffer field = new StringBuffer(mFieldEnd - mFieldStart);
+		appendTo(field, mFieldStart, mFieldEnd);
+		return field.toString();
+	}
+
+	/**
+	 * @param pIndex
+	 *            which field (the first is 0)
+	 * @return the first character of the field
+	 */
+	public char getFieldChar(int pIndex) {
+		findField(pIndex);
+		return (char) (byteAt(mFieldStart) & 0xff);
+	}
+
+	/**
+	 * Parses an integer field without creating a String (same rules as
+	 * Integer.parseInt())
+	 * 
+	 * @param pIndex
+	 *            which field (the first is 0)
+	 * @return the integer value of the field
+	 * @throws NumberFormatException
+	 *             if the field is not an integer
+	 */
+	public int getIntField(int pIndex) {
+		findField(pIndex);
+		return parseInt(mFieldStart, mFieldEnd);
+	}
+
+	/**
+	 * Parses all the whitespace separated integers on the line into an array
+	 * 
+	 * @param pValues
+	 *            array to put values in
+	 * @param pIndex
+	 *            first position in pValues to fill
+	 * @return the position after the last value added
+	 * @throws NumberFormatException
+	 *             if a field is not an integer
+	 */
+	public int getIntFields(int[] pValues, int pIndex) {
+		int length = length();
+		int pos = 0;
+		while (true) {
+			while (pos < length && isDelimiter(byteAt(pos))) {
+				pos++;
+			}
+			if (pos >= length) {
+				return pIndex;
+			}
+			int start = pos;
+			while (pos < length && !isDelimiter(byteAt(pos))) {
+				pos++;
+			}
+			pValues[pIndex++] = parseInt(start, pos);
+		}
+	}
+
+	/**
+	 * Parses part of the current line as an integer without creating a String
+	 * (same rules as Integer.parseInt())
+	 * 
+	 * @param pStart
+	 *            first position in the current line
+	 * @param pEnd
+	 *            position after the last digit
+	 * @return the integer value
+	 * @throws NumberFormatException
+	 *             if the bytes are not an integer
+	 */
+	public int parseInt(int pStart, int pEnd) {
+		int pos = pStart;
+		boolean negative = false;
+		if (pos < pEnd && (byteAt(pos) == '-' || byteAt(pos) == '+')) {
+			negative = byteAt(pos) == '-';
+			pos++;
+		}
+		if (pos >= pEnd) {
+			throw numberFormatException(pStart, pEnd);
+		}
+		long value = 0;
+		while (pos < pEnd) {
+			int digit = byteAt(pos) - '0';
+			if (digit < 0 || digit > 9) {
+				throw numberFormatException(pStart, pEnd);
+			}
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				throw numberFormatException(pStart, pEnd);
+			}
+			pos++;
+		}
+		if (negative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE) {
+			throw numberFormatException(pStart, pEnd);
+		}
+		return (int) value;
+	}
+
+	private NumberFormatException numberFormatException(int pStart, int pEnd) {
+		StringBuffer field = new StringBuffer();
+		appendTo(field, pStart, pEnd);
+		return new NumberFormatException("For input string: \"" + field
+				+ "\"");
+	}
+}
@@ -37,9 +37,11 @@
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -50,6 +52,7 @@ import amd.strainer.display.actions.QualityDataDialog;
 import amd.strainer.display.actions.Task;
 import amd.strainer.display.util.Util;
 import amd.strainer.objects.Difference;
+import amd.strainer.objects.PackedDiffList;
 import amd.strainer.objects.QualifiedDifference;
 import amd.strainer.objects.Read;
 import amd.strainer.objects.ReferenceSequence;
@@ -135,142 +138,243 @@ public class QualityData {
 			pTask.setLengthOfTask(pReads.size());
 			pTask.setCurrent(readCount);
 		}
+		long startTime = System.currentTimeMillis();
 
-		//TODO:3 scan by line (instead of char by char) should be faster 
-		//  (can we fudge line break as in perl (use > instead of (crlf))
-		
 		// scan qual file
-		FileReader f = new FileReader(pQualFile);
-		int r = f.read();
-		Read read = null;
-		StringBuffer characters = new StringBuffer(20);
-		while (r>=0) {
-			char c = (char) r;
-			if (c=='>') {
+		QualFileScanner f = new QualFileScanner(pQualFile);
+		try {
+			StringBuffer name = new StringBuffer(20);
+			while (f.skipPastCaret()) {
 				if (pTask!=null && pTask.isInterrupted()) {
 					throw new InterruptedException("Interrupted!");
 				}
 				
-				// new record
-				characters.delete(0,characters.length());
-				
 				// get name
-				r = f.read();
-				while(r>=0 && !Character.isWhitespace((char)r)) {
-					characters.append((char)r);
+				name.setLength(0);
+				int r = f.read();
+				while(r>=0 && !isWhitespace(r)) {
+					name.append((char)r);
 					r=f.read();
 				}
 				
 				// get read from name
-				read = pReads.remove(characters.toString());
+				Read read = pReads.remove(name.toString());
 				
 				// if read is null (name doesn't match anything in this RefSeq)
-				//  stop and look for next caret (carat?)
+				//  skip to the next record without parsing this one
 				if (read==null) {
 					continue;
-//				} else {
-//					// DEBUG
-//					System.out.print("reading quals for " + read.getName() + ":");
-//					if (read.getName().equals("BGUC20047.g1")) {
-//						System.out.println("found BGUC20047.g1");
-//					}
-//
 				}
 
 				// skip to next line (we are currently still on the header line)
-				while (r>=0 && ((char)r)!='\n') {
+				while (r>=0 && r!='\n') {
 					r = f.read();
 				}
 				
-				// read diffs and update read as we go.
-				List<Difference> diffs = read.getAlignment().getDiffs();
-				int diffIndex = read.getAlignment().isForward() ? 0 : diffs.size()-1;
-
 				// skip read, if no diffs
+				List<Difference> diffs = read.getAlignment().getDiffs();
 				if (diffs.size()<=0) {
-					// DEBUG newline
-					System.out.println();
 					continue;
 				}
 
-				Difference diff = diffs.get(diffIndex);
-				int position = read.getAlignment().isForward() ? 0 : read.getLength()+1;
-				try {
+				boolean forward = read.getAlignment().isForward();
+				int position = forward ? 0 : read.getLength()+1;
+				Integer start = pStarts.remove(read.getName());
+				if (start!=null) {
 					// sync qual data (if there is a start for this read)
-					position = pStarts.remove(read.getName())-1;
-				} catch (NullPointerException e) {
-					// do nothing, let the default of 0 stand.
+					position = start.intValue()-1;
 				}
 				
-				// clear string buffer
-				characters.delete(0,characters.length());
-
-				r=f.read();
-				while (r>=0) {
-					c = (char)r;
-					// we're done at the next caret
-					if (c=='>') break;
-					
-					if (Character.isWhitespace(c)) {
-						if (characters.length()>0) {
-							// between values
-							short qual=-1;
-							try {
-								qual = Short.parseShort(characters.toString());
-								// next (or previous) position
-								if (read.getAlignment().isForward()) { position++; } else { position--; }
-								if (position==diff.getPosition2()) {
-									// DEBUG
-//									System.out.print(" d:" + position);
-									
-									// update diff
-									QualifiedDifference qd = new QualifiedDifference(diff,qual);
-									diffs.remove(diffIndex);
-									diffs.add(diffIndex,qd);
-									if (read.getAlignment().isForward()) { diffIndex++; } else { diffIndex--; }
-									if (diffIndex>=diffs.size() || diffIndex<0) break; 	// we're done, if no diffs left
-									diff = diffs.get(diffIndex);
-								}
-							} catch (NumberFormatException e) {
-								// not a value, skip
-							}
-							// clear string buffer
-							characters.delete(0,characters.length());
-						}
-					} else {
-						// if it's not white space, add to characters
-						characters.append(c);
-					}
-
-					r = f.read();
-				}
+				// read values and update diffs as we go.
+				addQualityToDiffs(f, diffs, forward, position);
 
 				// clear diffs of containing clone, so old Difference objecs don't stick around
 				if (read.getClone()!=null) {
 					read.getClone().getAlignment().setDiffs(null);
 				}
-				
+				// the containing strain's consensus may change, too
+				if (read.getStrain()!=null && read.getStrain().getAlignment()!=null) {
+					read.getStrain().getAlignment().setDiffs(null);
+				}
+
 				// update progress
 				if (pTask!=null) {
 					readCount++;
 					pTask.setCurrent(readCount);
-//					pTask.setCurrent(pTask.getLengthOfTask()-pReads.size());
 				}
-
-				// linefeed for DEBUG
-				System.out.println();
-				
-				// don't read next char, we're here because we (maybe) saw the ">" already
-				continue;
-			} else {
-				r = f.read();
 			}
+		} finally {
+			f.close();
 		}
 
+		double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+		double megabytes = f.getBytesRead() / 1e6;
+		System.out.println("Read " + Math.round(megabytes * 10) / 10.0 + " MB of quality data from " +
+				pQualFile.getName() + " in " + seconds + " s (" +
+				Math.round(megabytes / seconds * 10) / 10.0 + " MB/s)");
+
 		// did we miss any?
-		System.out.println("leftovers:");
-		System.out.println(pReads.keySet().toString());
+		if (pReads.size()>0) {
+			System.out.println("No quality data found for " + pReads.size() + " reads:");
+			System.out.println(pReads.keySet().toString());
+		}
+	}
+	
+	/*
+	 * Reads the quality values for one read (up to the next '>') and sets the quality of each diff in the
+	 * read at the matching position. Values are parsed straight from the file bytes. Anything that isn't
+	 * a number (that fits in a short) is skipped, as Short.parseShort() would.
+	 */
+	private static void addQualityToDiffs(QualFileScanner pFile, List<Difference> pDiffs, boolean pForward, int pPosition) throws IOException {
+		PackedDiffList packed = pDiffs instanceof PackedDiffList ? (PackedDiffList) pDiffs : null;
+		int diffIndex = pForward ? 0 : pDiffs.size()-1;
+		int diffPosition = getPosition2(pDiffs,packed,diffIndex);
+		int position = pPosition;
 		
+		// the value being parsed
+		int value = 0;
+		boolean inValue = false;
+		boolean negative = false;
+		boolean isNumber = true;
+		boolean hasDigits = false;
+
+		while (true) {
+			int r = pFile.read();
+			if (r>=0 && !isWhitespace(r) && r!='>') {
+				if (r>='0' && r<='9') {
+					value = value*10 + (r - '0');
+					hasDigits = true;
+					if (value > -Short.MIN_VALUE) {
+						isNumber = false;
+					}
+				} else if (!inValue && (r=='-' || r=='+')) {
+					negative = r=='-';
+				} else {
+					isNumber = false;
+				}
+				inValue = true;
+				continue;
+			}
+			
+			if (inValue) {
+				// end of a value
+				if (negative) { value = -value; }
+				if (isNumber && hasDigits && value<=Short.MAX_VALUE) {
+					// next (or previous) position
+					if (pForward) { position++; } else { position--; }
+					if (position==diffPosition) {
+						// update diff
+						setQuality(pDiffs,packed,diffIndex,(short)value);
+						if (pForward) { diffIndex++; } else { diffIndex--; }
+						if (diffIndex>=pDiffs.size() || diffIndex<0) break; 	// we're done, if no diffs left
+						diffPosition = getPosition2(pDiffs,packed,diffIndex);
+					}
+				}
+				value = 0;
+				inValue = false;
+				negative = false;
+				isNumber = true;
+				hasDigits = false;
+			}
+
+			if (r=='>') {
+				// leave the caret for the next record
+				pFile.unread();
+				break;
+			} else if (r<0) {
+				break;
+			}
+		}
+	}
+
+	private static int getPosition2(List<Difference> pDiffs, PackedDiffList pPacked, int pIndex) {
+		return pPacked!=null ? pPacked.getPosition2(pIndex) : pDiffs.get(pIndex).getPosition2();
+	}
+
+	private static void setQuality(List<Difference> pDiffs, PackedDiffList pPacked, int pIndex, short pQuality) {
+		if (pPacked!=null) {
+			// no need to create any objects
+			pPacked.setQuality(pIndex,pQuality);
+		} else {
+			pDiffs.set(pIndex,new QualifiedDifference(pDiffs.get(pIndex),pQuality));
+		}
+	}
+
+	// same as Character.isWhitespace() for the characters found in qual files
+	private static boolean isWhitespace(int pChar) {
+		return pChar<=' ';
+	}
+
+	/*
+	 * Reads a file through a large byte buffer. (FileReader.read() is unbuffered and very slow.)
+	 * Qual files are plain ASCII, so bytes are used as characters.
+	 */
+	private static class QualFileScanner {
+		private final InputStream mIn;
+		private final byte [] mBuffer = new byte [1 << 16];
+		private int mPos = 0;
+		private int mLimit = 0;
+		private long mBytesRead = 0;
+
+		QualFileScanner(File pFile) throws FileNotFoundException {
+			mIn = new FileInputStream(pFile);
+		}
+
+		/**
+		 * @return the next byte in the file (-1 at the end)
+		 */
+		int read() throws IOException {
+			if (mPos>=mLimit && !fill()) {
+				return -1;
+			}
+			return mBuffer[mPos++] & 0xff;
+		}
+
+		/**
+		 * Push back the last byte read (only one byte can be pushed back)
+		 */
+		void unread() {
+			mPos--;
+		}
+
+		/**
+		 * Move to the character after the next '>' (the start of a record)
+		 * @return false if there are no more records
+		 */
+		boolean skipPastCaret() throws IOException {
+			while (true) {
+				for (int i = mPos; i < mLimit; i++) {
+					if (mBuffer[i]=='>') {
+						mPos = i + 1;
+						return true;
+					}
+				}
+				mPos = mLimit;
+				if (!fill()) {
+					return false;
+				}
+			}
+		}
+
+		private boolean fill() throws IOException {
+			int count = mIn.read(mBuffer);
+			if (count<=0) {
+				mPos = mLimit = 0;
+				return false;
+			}
+			mPos = 0;
+			mLimit = count;
+			mBytesRead += count;
+			return true;
+		}
+
+		long getBytesRead() {
+			return mBytesRead;
+		}
+
+		void close() throws IOException {
+			mIn.close();
+		}
 	}
 	
 	/**
@@ -47,11 +47,9 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.biojava.bio.program.sax.BlastLikeSAXParser;
-import org.biojava.bio.program.sax.SAMSAXParser;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
 import amd.strainer.display.actions.GetReferenceFromFileTask;
@@ -106,10 +104,10 @@ public class ReadsLoader {
 	 * @param pRefSeq
 	 *            the ReferenceSequence object to add reads to
 	 * @param pReadsFileName
-	 *            The name of the BLAST/SAM alignment file
+	 *            The name of the BLAST/SAM/BAM alignment file
 	 * @param pAlignmentFileType
 	 *            The type of alignment file (BLAST with reads in DB, BLAST with
-	 *            reference in DB, SAM)
+	 *            reference in DB, SAM, BAM)
 	 * @param pSmallClone
 	 *            smallest expected clone size
 	 * @param pBigClone
@@ -143,7 +141,7 @@ public class ReadsLoader {
 	 *            the ReferenceSequence object to add reads to
 	 * @param pAlignmentFileType
 	 *            The type of alignment file (BLAST with reads in DB, BLAST with
-	 *            reference in DB, SAM)
+	 *            reference in DB, SAM, BAM)
 	 * @param pSmallClone
 	 *            smallest expected clone size
 	 * @param pBigClone
@@ -189,23 +187,29 @@ public class ReadsLoader {
 			int pSmallClone, int pBigClone, Task pTask) throws SAXException,
 			IOException {
 
-		// TODO: get score cutoff from user, for now, default to 0 for blast and
-		// no-cutoff for SAM
-		Integer scoreCutoff = null;
+		if (pAlignmentFileType.equals(GetReferenceFromFileTask.SAM)) {
+			// SAM files are read directly (no score cutoff)
+			new SAMFileReader(pAlignmentsFile).addReadsToReferenceSequence(
+					pRefSeq, pSmallClone, pBigClone, pTask);
+			return;
+		} else if (pAlignmentFileType.equals(GetReferenceFromFileTask.BAM)) {
+			// only alignments to this reference are read (using the index if
+			// there is one)
+			new BAMFileReader(pAlignmentsFile).addReadsToReferenceSequence(
+					pRefSeq, pSmallClone, pBigClone, pTask);
+			return;
+		}
+
+		// TODO: get score cutoff from user, for now, default to 0 for blast
+		Integer scoreCutoff = 0;
 
 		// get the Alignment input as a Stream
 		InputStream is = new FileInputStream(pAlignmentsFile);
 
-		XMLReader parser;
-		if (pAlignmentFileType.equals(GetReferenceFromFileTask.SAM)) {
-			parser = new SAMSAXParser();
-		} else {
-			// If it's not SAM, it's BLAST
-			// make a BlastLikeSAXParser
-			parser = new BlastLikeSAXParser();
-			((BlastLikeSAXParser) parser).setModeLazy();
-			scoreCutoff = 0;
-		}
+		// If it's not SAM, it's BLAST
+		// make a BlastLikeSAXParser
+		BlastLikeSAXParser parser = new BlastLikeSAXParser();
+		parser.setModeLazy();
 
 		// create handler to turn events into read alignments
 		ContentHandler handler;
@@ -254,14 +258,16 @@ public class ReadsLoader {
 	}
 
 	/**
-	 * Reads in the details of a Strainer XML file into a ReferenceSequence
-	 * object.
+	 * Reads in the details of a Strainer XML file or a binary strain session
+	 * file (see StrainSessionFile) into a ReferenceSequence object.
 	 * 
 	 * @param pRefSeq
 	 *            The ReferenceSequence bject to which Reads and Strains will be
 	 *            added
 	 * @param pStrainsFile
-	 *            Strainer XML file
+	 *            Strainer XML file or session file
+	 * @param pTask
+	 *            Task to take progress updates, may be null
 	 * @throws IOException
 	 *             if the Strainer file cannot be accessed
 	 * @throws SAXException
@@ -275,6 +281,11 @@ public class ReadsLoader {
 			ReferenceSequence pRefSeq, File pStrainsFile, Task pTask)
 			throws IOException, SAXException, ParserConfigurationException,
 			FactoryConfigurationError {
+		if (StrainSessionFile.isSessionFile(pStrainsFile)) {
+			StrainSessionFile.read(pRefSeq, pStrainsFile, pTask);
+			return;
+		}
+
 		SAXParserFactory factory = SAXParserFactory.newInstance();
 		SAXParser parser = factory.newSAXParser();
 		DefaultHandler handler = new StrainXMLHandler3(pRefSeq, pTask);
@@ -0,0 +1,213 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A set of temporary files, one per key (eg: a reference sequence id), that
+ * records are appended to in any order and read back one file at a time.
+ * <p/>
+ * Records are collected in a small buffer for each key and appended to its
+ * file when that buffer (or all of them together) get too big, so no files
+ * are held open however many keys there are. Call getFile() to flush a key's
+ * records and get its file, and delete() when done.
+ * 
+ * @author jmeppley
+ * 
+ */
+class ReferenceSpillFiles {
+	// append a key's records once it has this many bytes waiting
+	private static final int BUFFER_LIMIT = 1 << 15;
+	// append everything once this many bytes are waiting in all
+	private static final long TOTAL_LIMIT = 1 << 24;
+
+	private final File mDir;
+	private final String mSuffix;
+	private final Map<Integer, ByteArrayOutputStream> mBuffers = new HashMap<Integer, ByteArrayOutputStream>();
+	private final Map<Integer, int[]> mCounts = new HashMap<Integer, int[]>();
+	private long mBuffered = 0;
+
+	/**
+	 * Creates an empty directory for the files.
+	 * 
+	 * @param pParent
+	 *            where to create the directory (the system temp dir if null)
+	 * @param pSuffix
+	 *            the file name suffix for these files
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	ReferenceSpillFiles(File pParent, String pSuffix) throws IOException {
+		mDir = File.createTempFile("strainer", ".spill", pParent);
+		if (!mDir.delete() || !mDir.mkdir()) {
+			throw new IOException("Could not create directory: "
+					+ mDir.getAbsolutePath());
+		}
+		mSuffix = pSuffix;
+	}
+
+	/**
+	 * Appends a record to the file for the given key.
+	 * 
+	 * @param pKey
+	 *            the file to add to
+	 * @param pRecord
+	 *            the bytes of the record (the caller may reset it afterwards)
+	 * @return the index of this record in the file (0 for the first)
+	 * @throws IOException
+	 *             if buffered records cannot be written out
+	 */
+	int append(int pKey, ByteArrayOutputStream pRecord) throws IOException {
+		Integer key = Integer.valueOf(pKey);
+		ByteArrayOutputStream buffer = mBuffers.get(key);
+		if (buffer == null) {
+			buffer = new ByteArrayOutputStream(256);
+			mBuffers.put(key, buffer);
+		}
+		pRecord.writeTo(buffer);
+		mBuffered += pRecord.size();
+
+		int[] count = mCounts.get(key);
+		if (count == null) {
+			count = new int[1];
+			mCounts.put(key, count);
+		}
+
+		if (buffer.size() >= BUFFER_LIMIT) {
+			mBuffers.remove(key);
+			flush(key, buffer);
+		} else if (mBuffered >= TOTAL_LIMIT) {
+			flushAll();
+		}
+		return count[0]++;
+	}
+
+	/**
+	 * @param pKey
+	 *            a file key
+	 * @return the number of records appended for this key
+	 */
+	int getCount(int pKey) {
+		int[] count = mCounts.get(Integer.valueOf(pKey));
+		return count == null ? 0 : count[0];
+	}
+
+	/**
+	 * Writes out any buffered records for the given key.
+	 * 
+	 * @param pKey
+	 *            a file key
+	 * @return the file holding all the records for this key (it may not exist
+	 *         if there are none)
+	 * @throws IOException
+	 *             if buffered records cannot be written out
+	 */
+	File getFile(int pKey) throws IOException {
+		Integer key = Integer.valueOf(pKey);
+		ByteArrayOutputStream buffer = mBuffers.remove(key);
+		if (buffer != null) {
+			flush(key, buffer);
+		}
+		return fileFor(key);
+	}
+
+	/**
+	 * Drops the records for the given key and deletes its file
+	 * 
+	 * @param pKey
+	 *            a file key
+	 */
+	void delete(int pKey) {
+		Integer key = Integer.valueOf(pKey);
+		ByteArrayOutputStream buffer = mBuffers.remove(key);
+		if (buffer != null) {
+			mBuffered -= buffer.size();
+		}
+		mCounts.remove(key);
+		fileFor(key).delete();
+	}
+
+	/**
+	 * Drops all the records and deletes the directory
+	 */
+	void delete() {
+		mBuffers.clear();
+		mCounts.clear();
+		mBuffered = 0;
+		File[] files = mDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		mDir.delete();
+	}
+
+	private File fileFor(Integer pKey) {
+		return new File(mDir, pKey + mSuffix);
+	}
+
+	private void flushAll() throws IOException {
+		Iterator<Map.Entry<Integer, ByteArrayOutputStream>> it = mBuffers
+				.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, ByteArrayOutputStream> e = it.next();
+			it.remove();
+			flush(e.getKey(), e.getValue());
+		}
+	}
+
+	// (the buffer is dropped afterwards, so idle keys don't keep big ones)
+	private void flush(Integer pKey, ByteArrayOutputStream pBuffer)
+			throws IOException {
+		OutputStream out = new FileOutputStream(fileFor(pKey), true);
+		try {
+			pBuffer.writeTo(out);
+		} finally {
+			out.close();
+		}
+		mBuffered -= pBuffer.size();
+	}
+}
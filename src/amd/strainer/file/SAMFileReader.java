@@ -0,0 +1,404 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import amd.strainer.display.actions.Task;
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.PackedDiffList;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
+
+/**
+ * Reads alignments from a SAM file straight into Read and Alignment objects.
+ * <p/>
+ * This replaces running the file through SAMSAXParser and BlastEventHandler.
+ * Lines are scanned in place with a MappedLineScanner, the tab separated
+ * fields are located by byte offset and the CIGAR string is decoded into
+ * differences from the reference bases without creating any intermediate
+ * Strings. Mate pairs and the final choice of alignments are still handled by
+ * BlastEventHandler, so reads end up in the same strains either way.
+ * <p/>
+ * The following assumptions are made about file structure:
+ * <ul>
+ * <li/>Header lines begin with "@" and are skipped
+ * <li/>Records with FLAG 0x4 (unmapped) are skipped
+ * <li/>Consecutive records with the same QNAME (and the same 0x40/0x80 bits)
+ * are alignments of one read
+ * <li/>The AS:i: tag is used for the alignment score if it is there,
+ * otherwise the mapping quality is used
+ * </ul>
+ * Paired reads (FLAG 0x1) are matched to their mates by QNAME (ignoring any
+ * /1 or /2 suffix) unless the mate is unmapped (FLAG 0x8 or RNEXT is "*").
+ * Unpaired reads are matched by read name as with other alignment files (eg:
+ * Sanger names).
+ * 
+ * @author jmeppley
+ * 
+ */
+public class SAMFileReader {
+	// FLAG bits (also used by BAMFileReader)
+	static final int FLAG_PAIRED = 0x1;
+	static final int FLAG_UNMAPPED = 0x4;
+	static final int FLAG_MATE_UNMAPPED = 0x8;
+	static final int FLAG_REVERSE = 0x10;
+	static final int FLAG_FIRST = 0x40;
+	static final int FLAG_LAST = 0x80;
+
+	// mandatory fields
+	private static final int QNAME = 0;
+	private static final int FLAG = 1;
+	private static final int RNAME = 2;
+	private static final int POS = 3;
+	private static final int MAPQ = 4;
+	private static final int CIGAR = 5;
+	private static final int RNEXT = 6;
+	private static final int SEQ = 9;
+	private static final int FIELD_COUNT = 11;
+
+	private static final byte TAB = '\t';
+
+	private final File mSamFile;
+
+	// start and end of each mandatory field in the current line
+	private final int[] mFieldStarts = new int[FIELD_COUNT];
+	private final int[] mFieldEnds = new int[FIELD_COUNT];
+
+	// the last reference name seen (most records repeat it)
+	private String mRefName = null;
+
+	/**
+	 * @param pSamFile
+	 *            the SAM file to read
+	 */
+	public SAMFileReader(File pSamFile) {
+		mSamFile = pSamFile;
+	}
+
+	/**
+	 * Adds Reads to the ReferenceSequence. Initial strains are formed by
+	 * joining mate-pairs together into strains with 2 Reads in them. Reads
+	 * without a mate-pair are left in solo strains.
+	 * 
+	 * @param pRefSeq
+	 *            the ReferenceSequence object to add reads to
+	 * @param pSmallClone
+	 *            smallest expected clone size
+	 * @param pBigClone
+	 *            largest expected clone size (mate pairs are ignored if this
+	 *            is not positive)
+	 * @param pTask
+	 *            Task to take progress updates, may be null
+	 * @throws IOException
+	 *             if the file can't be read or a record is malformed
+	 */
+	public void addReadsToReferenceSequence(ReferenceSequence pRefSeq,
+			int pSmallClone, int pBigClone, Task pTask) throws IOException {
+		// the event handler takes care of IDs, mate pairs and strains
+		BlastEventHandler handler = new BlastEventHandler(pRefSeq,
+				pSmallClone, pBigClone, null, pTask);
+		String refBases = pRefSeq.getBases();
+
+		Read read = null;
+		String mateKey = null;
+		int readEnd = 0;
+		Map<String, Alignment> alignments = null;
+
+		MappedLineScanner scanner = new MappedLineScanner(mSamFile);
+		try {
+			while (scanner.nextLine()) {
+				if (pTask != null && pTask.isInterrupted()) {
+					throw new RuntimeException("Interrupted!");
+				}
+
+				if (scanner.length() == 0 || scanner.byteAt(0) == '@') {
+					// skip headers (and blank lines)
+					continue;
+				}
+
+				findFields(scanner);
+				int flag = parseField(scanner, FLAG);
+				if ((flag & FLAG_UNMAPPED) != 0) {
+					// there was no match
+					continue;
+				}
+
+				// which end of a pair this is (0 if not paired)
+				int end = 0;
+				if ((flag & FLAG_PAIRED) != 0) {
+					end = flag & (FLAG_FIRST | FLAG_LAST);
+				}
+
+				if (read == null
+						|| end != readEnd
+						|| !scanner.regionEquals(mFieldStarts[QNAME],
+								mFieldEnds[QNAME], read.getName())) {
+					// start new read
+					if (read != null) {
+						handler.addRead(read, alignments, mateKey);
+					}
+					read = handler.newRead();
+					read.setName(scanner.substring(mFieldStarts[QNAME],
+							mFieldEnds[QNAME]));
+					readEnd = end;
+					alignments = new HashMap<String, Alignment>();
+					boolean mateMapped = !scanner.regionEquals(
+							mFieldStarts[RNEXT], mFieldEnds[RNEXT], "*");
+					mateKey = getMateKey(flag, mateMapped, read.getName(),
+							pBigClone);
+				}
+
+				String refName = getRefName(scanner);
+				alignments.put(refName, buildAlignment(scanner, read, pRefSeq,
+						refBases, flag));
+			}
+
+			if (read != null) {
+				handler.addRead(read, alignments, mateKey);
+			}
+			handler.finishReads();
+		} finally {
+			scanner.close();
+		}
+	}
+
+	/*
+	 * Locate the mandatory fields in the current line
+	 */
+	private void findFields(MappedLineScanner pScanner) throws IOException {
+		int pos = 0;
+		for (int i = 0; i < FIELD_COUNT; i++) {
+			int tab = pScanner.indexOf(TAB, pos);
+			if (tab < 0) {
+				if (i < FIELD_COUNT - 1) {
+					throw new IOException("SAM record has only " + (i + 1)
+							+ " fields: " + pScanner.getLine());
+				}
+				tab = pScanner.length();
+			}
+			mFieldStarts[i] = pos;
+			mFieldEnds[i] = tab;
+			pos = tab + 1;
+		}
+	}
+
+	private int parseField(MappedLineScanner pScanner, int pField) {
+		return pScanner.parseInt(mFieldStarts[pField], mFieldEnds[pField]);
+	}
+
+	/**
+	 * @param pFlag
+	 *            the FLAG field of the read's first record
+	 * @param pMateMapped
+	 *            false if the record gives no position for the mate (RNEXT
+	 *            is "*")
+	 * @param pName
+	 *            the read name
+	 * @param pBigClone
+	 *            largest expected clone size
+	 * @return the key used to find this read's mate pair (null if we're not
+	 *         looking for one)
+	 */
+	static String getMateKey(int pFlag, boolean pMateMapped, String pName,
+			int pBigClone) {
+		if (pBigClone <= 0) {
+			// not linking mate pairs
+			return null;
+		}
+		if ((pFlag & FLAG_PAIRED) == 0) {
+			// fall back to read names
+			return Util.getReadNameBase(pName);
+		}
+		if ((pFlag & FLAG_MATE_UNMAPPED) != 0 || !pMateMapped) {
+			// the mate will never show up
+			return null;
+		}
+		// mates usually share a QNAME, but some tools leave the /1 and /2 on
+		return Util.getReadNameBase(pName);
+	}
+
+	private String getRefName(MappedLineScanner pScanner) {
+		int start = mFieldStarts[RNAME];
+		int end = mFieldEnds[RNAME];
+		if (mRefName == null || !pScanner.regionEquals(start, end, mRefName)) {
+			mRefName = pScanner.substring(start, end);
+		}
+		return mRefName;
+	}
+
+	/*
+	 * Get the score from the AS tag (if there is one) or the mapping quality
+	 */
+	private int getScore(MappedLineScanner pScanner, int pMapQual) {
+		int score = pMapQual;
+		int pos = mFieldEnds[FIELD_COUNT - 1] + 1;
+		int length = pScanner.length();
+		while (pos < length) {
+			int end = pScanner.indexOf(TAB, pos);
+			if (end < 0) {
+				end = length;
+			}
+			if (end - pos > 5 && pScanner.byteAt(pos) == 'A'
+					&& pScanner.byteAt(pos + 1) == 'S') {
+				// AS:i:##
+				try {
+					score = pScanner.parseInt(pos + 5, end);
+				} catch (NumberFormatException e) {
+					// some aligners write AS:f:##.#
+					score = (int) Float.parseFloat(pScanner.substring(pos + 5,
+							end));
+				}
+			}
+			pos = end + 1;
+		}
+		return score;
+	}
+
+	/*
+	 * Decode the CIGAR string into an Alignment. See
+	 * Util.buildAlignmentFromCigarString() for the meaning of each operation.
+	 * This works on the bytes of the current line and gives the same result.
+	 */
+	private Alignment buildAlignment(MappedLineScanner pScanner, Read pRead,
+			ReferenceSequence pRefSeq, String pRefBases, int pFlag)
+			throws IOException {
+		int start = parseField(pScanner, POS);
+		int mapQual = parseField(pScanner, MAPQ);
+		int seqStart = mFieldStarts[SEQ];
+		int seqLength = mFieldEnds[SEQ] - seqStart;
+
+		PackedDiffList diffs = new PackedDiffList();
+		int astart = start - 1;
+		int qpos = 0;
+		int apos = 0;
+		int qstart = 0;
+
+		int bitLen = 0;
+		boolean haveLength = false;
+		for (int i = mFieldStarts[CIGAR]; i < mFieldEnds[CIGAR]; i++) {
+			byte b = pScanner.byteAt(i);
+			if (b >= '0' && b <= '9') {
+				bitLen = bitLen * 10 + (b - '0');
+				haveLength = true;
+				continue;
+			}
+			if (!haveLength) {
+				// not an operation
+				continue;
+			}
+
+			switch (b) {
+			case 'H':
+				// hard clipping can be ignored
+				break;
+			case 'S':
+				// clip bases from start
+				if (qpos == 0 && apos == 0) {
+					qstart += bitLen;
+				}
+				break;
+			case 'M':
+			case 'X':
+				// check each base
+				if (qstart + qpos + bitLen > seqLength) {
+					throw cigarException(pScanner);
+				}
+				for (int j = 0; j < bitLen; j++) {
+					qpos++;
+					apos++;
+					char qChar = (char) (pScanner.byteAt(seqStart + qstart
+							+ qpos - 1) & 0xff);
+					char rChar = pRefBases.charAt(astart + apos - 1);
+					if (!Util.isNucleotideMatch(qChar, rChar)) {
+						diffs.add(astart + apos, rChar, qstart + qpos, qChar);
+					}
+				}
+				break;
+			case '=':
+				qpos += bitLen;
+				apos += bitLen;
+				break;
+			case 'I':
+				if (qstart + qpos + bitLen > seqLength) {
+					throw cigarException(pScanner);
+				}
+				for (int j = 0; j < bitLen; j++) {
+					qpos++;
+					char qChar = (char) (pScanner.byteAt(seqStart + qstart
+							+ qpos - 1) & 0xff);
+					diffs.add(astart + apos, '-', qstart + qpos, qChar);
+				}
+				break;
+			case 'N':
+			case 'D':
+				// skipped regions are treated like deletions
+				for (int j = 0; j < bitLen; j++) {
+					apos++;
+					char rChar = pRefBases.charAt(astart + apos - 1);
+					diffs.add(astart + apos, rChar, qstart + qpos, '-');
+				}
+				break;
+			case 'P':
+				// silent
+			default:
+				break;
+			}
+			bitLen = 0;
+			haveLength = false;
+		}
+
+		SequenceSegment ess = new SequenceSegment(pRefSeq, start, start + apos
+				- 1);
+		SequenceSegment rss = new SequenceSegment(pRead, qstart + 1, qstart
+				+ qpos);
+		Alignment a = new Alignment(ess, rss, (pFlag & FLAG_REVERSE) == 0,
+				diffs);
+		a.score = getScore(pScanner, mapQual);
+		a.eValue = Util.getEvalueFromMapQual(mapQual);
+		return a;
+	}
+
+	private IOException cigarException(MappedLineScanner pScanner) {
+		return new IOException("CIGAR string is longer than the sequence: "
+				+ pScanner.getLine());
+	}
+}
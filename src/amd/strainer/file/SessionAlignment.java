@@ -0,0 +1,161 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.util.List;
+
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.Difference;
+import amd.strainer.objects.PackedDiffList;
+import amd.strainer.objects.SequenceSegment;
+
+/**
+ * Alignment of a Read loaded from a session file that leaves its diffs in the
+ * file. getDiffs() gets them from a SessionDiffCache, so they are only in
+ * memory while they are being used. The gap positions (which are small and
+ * used constantly) are worked out when the read is loaded and kept.
+ * <p/>
+ * If the diffs are replaced (setDiffs()) or changed in place, this alignment
+ * keeps its own copy from then on.
+ * 
+ * @author jmeppley
+ * 
+ */
+class SessionAlignment extends Alignment {
+	// where the diffs come from (null once this alignment has its own)
+	private volatile SessionDiffCache mCache;
+	private final int mBlock;
+	private final int mIndex;
+	private final int mDiffCount;
+
+	/**
+	 * @param pSS1
+	 *            The portion of the reference sequence aligned
+	 * @param pSS2
+	 *            The portion of the read aligned
+	 * @param pDir
+	 *            false if sequences are from opposite strands
+	 * @param pDiffs
+	 *            the diffs as read from the file (used to find the gaps, then
+	 *            left to the cache)
+	 * @param pCache
+	 *            cache to get the diffs from later
+	 * @param pBlock
+	 *            the READS block the read is in
+	 * @param pIndex
+	 *            the position of the read in the block
+	 */
+	SessionAlignment(SequenceSegment pSS1, SequenceSegment pSS2,
+			boolean pDir, PackedDiffList pDiffs, SessionDiffCache pCache,
+			int pBlock, int pIndex) {
+		super(pSS1, pSS2, pDir, pDiffs);
+		super.setDiffs(null);
+		mCache = pCache;
+		mBlock = pBlock;
+		mIndex = pIndex;
+		mDiffCount = pDiffs.size();
+	}
+
+	/**
+	 * @return Returns the list of differences (from the cache unless this
+	 *         alignment has its own)
+	 */
+	public List<Difference> getDiffs() {
+		SessionDiffCache cache = mCache;
+		if (cache == null) {
+			return super.getDiffs();
+		}
+		return cache.getDiffs(mBlock, mIndex);
+	}
+
+	/**
+	 * @return true if this alignment has its own diffs (cached diffs may be
+	 *         dropped at any time)
+	 */
+	public boolean areDiffsLoaded() {
+		return mCache == null;
+	}
+
+	/**
+	 * After this is called, the alignment keeps its own diffs and stops using
+	 * the cache.
+	 * 
+	 * @see amd.strainer.objects.Alignment#setDiffs(java.util.List)
+	 */
+	public void setDiffs(List<Difference> pDiffs) {
+		super.setDiffs(pDiffs);
+		mCache = null;
+	}
+
+	/*
+	 * Called by the cache when it drops diffs that have been edited
+	 */
+	void keepDiffs(PackedDiffList pDiffs) {
+		setDiffs(pDiffs);
+	}
+
+	/**
+	 * Works out the identity from the number of diffs (without loading them)
+	 * 
+	 * @see amd.strainer.objects.Alignment#getIdentity()
+	 */
+	public double getIdentity() {
+		if (mCache == null) {
+			return super.getIdentity();
+		}
+		// reads have no unknown regions
+		int length = getEnd() - getStart();
+		return ((float) (length - mDiffCount)) / ((float) length);
+	}
+
+	/**
+	 * @return a plain Alignment with a copy of the diffs
+	 */
+	public Object clone() {
+		SequenceSegment css1 = (SequenceSegment) ss1.clone();
+		SequenceSegment css2 = null;
+		if (ss2 != null) {
+			css2 = (SequenceSegment) ss2.clone();
+		}
+
+		List<Difference> cDiffs = getDiffs();
+		if (cDiffs != null) {
+			cDiffs = new PackedDiffList(cDiffs);
+		}
+		return new Alignment(css1, css2, isForward(), cDiffs);
+	}
+}
@@ -0,0 +1,229 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+
+import amd.strainer.objects.PackedDiffList;
+
+/**
+ * Holds the diffs of recently used blocks of reads from a session file (see
+ * StrainSessionFile and SessionAlignment). Blocks are read back from the
+ * (memory mapped) file when needed, and the least recently used blocks are
+ * dropped once there are more than the given number of diffs in memory.
+ * <p/>
+ * When a block is dropped, any of its diff lists that were changed are handed
+ * to their alignments to keep.
+ * 
+ * @author jmeppley
+ * 
+ */
+class SessionDiffCache {
+	/*
+	 * Where to find a READS block in the file
+	 */
+	private static class BlockSource {
+		final ByteBuffer data;
+		final boolean compressed;
+		final int rawLength;
+		final SessionAlignment[] owners;
+
+		BlockSource(ByteBuffer pData, boolean pCompressed, int pRawLength,
+				SessionAlignment[] pOwners) {
+			data = pData;
+			compressed = pCompressed;
+			rawLength = pRawLength;
+			owners = pOwners;
+		}
+	}
+
+	/*
+	 * The diffs of one block and how many changes each list had when it was
+	 * read
+	 */
+	private static class Page {
+		final PackedDiffList[] diffs;
+		final int[] changes;
+		int weight;
+
+		Page(PackedDiffList[] pDiffs) {
+			diffs = pDiffs;
+			changes = new int[pDiffs.length];
+			// count the lists too, so blocks without diffs are not free
+			weight = pDiffs.length;
+			for (int i = 0; i < pDiffs.length; i++) {
+				changes[i] = pDiffs[i].getChangeCount();
+				weight += pDiffs[i].size();
+			}
+		}
+	}
+
+	private final int mMaxDiffs;
+	private final List<BlockSource> mBlocks = new ArrayList<BlockSource>();
+	// least recently used first
+	private final LinkedHashMap<Integer, Page> mPages = new LinkedHashMap<Integer, Page>(
+			16, 0.75f, true);
+	private int mCachedDiffs = 0;
+	private int mBlocksRead = 0;
+
+	private final StrainSessionFile.BlockReader mBlock = new StrainSessionFile.BlockReader();
+	private Inflater mInflater = null;
+
+	/**
+	 * @param pMaxDiffs
+	 *            about how many diffs to keep in memory
+	 */
+	SessionDiffCache(int pMaxDiffs) {
+		mMaxDiffs = pMaxDiffs;
+	}
+
+	/**
+	 * Registers a READS block
+	 * 
+	 * @param pData
+	 *            the mapped block payload
+	 * @param pCompressed
+	 *            true if the payload is deflated
+	 * @param pRawLength
+	 *            the length of the payload once inflated
+	 * @param pOwners
+	 *            the alignment of each read in the block (may be filled in
+	 *            later)
+	 * @param pDiffs
+	 *            the diffs of the block if they have already been read (eg:
+	 *            while loading), otherwise null
+	 * @return the block number to pass to getDiffs()
+	 */
+	synchronized int addBlock(ByteBuffer pData, boolean pCompressed,
+			int pRawLength, SessionAlignment[] pOwners, PackedDiffList[] pDiffs) {
+		int block = mBlocks.size();
+		mBlocks.add(new BlockSource(pData, pCompressed, pRawLength, pOwners));
+		if (pDiffs != null) {
+			cache(block, pDiffs);
+		}
+		return block;
+	}
+
+	/**
+	 * @param pBlock
+	 *            block number (from addBlock())
+	 * @param pIndex
+	 *            position of the read in the block
+	 * @return the diffs of the read
+	 */
+	synchronized PackedDiffList getDiffs(int pBlock, int pIndex) {
+		Integer key = Integer.valueOf(pBlock);
+		Page page = mPages.get(key);
+		if (page == null) {
+			try {
+				page = cache(pBlock, readBlock(pBlock));
+			} catch (IOException e) {
+				throw new UncheckedIOException(
+						"Cannot read diffs from session file", e);
+			}
+		}
+		return page.diffs[pIndex];
+	}
+
+	/**
+	 * @return the number of diffs in memory
+	 */
+	synchronized int getCachedDiffCount() {
+		return mCachedDiffs;
+	}
+
+	/**
+	 * @return the number of times a block has been read back from the file
+	 */
+	synchronized int getBlocksRead() {
+		return mBlocksRead;
+	}
+
+	private PackedDiffList[] readBlock(int pBlock) throws IOException {
+		BlockSource source = mBlocks.get(pBlock);
+		if (source.compressed && mInflater == null) {
+			mInflater = new Inflater();
+		}
+		StrainSessionFile.loadBlock(
+				source.data.duplicate(),
+				source.compressed,
+				source.rawLength,
+				mBlock,
+				mInflater);
+		StrainSessionFile.ReadTable table = new StrainSessionFile.ReadTable();
+		table.read(mBlock, false);
+		mBlocksRead++;
+		return table.readDiffs(mBlock);
+	}
+
+	private Page cache(int pBlock, PackedDiffList[] pDiffs) {
+		Page page = new Page(pDiffs);
+		mPages.put(Integer.valueOf(pBlock), page);
+		mCachedDiffs += page.weight;
+
+		// drop the least recently used blocks (but always keep the newest)
+		Iterator<Map.Entry<Integer, Page>> it = mPages.entrySet().iterator();
+		while (mCachedDiffs > mMaxDiffs && mPages.size() > 1) {
+			Map.Entry<Integer, Page> eldest = it.next();
+			it.remove();
+			mCachedDiffs -= eldest.getValue().weight;
+			release(eldest.getKey().intValue(), eldest.getValue());
+		}
+		return page;
+	}
+
+	/*
+	 * Lets the alignments keep any diffs that were changed while cached
+	 */
+	private void release(int pBlock, Page pPage) {
+		SessionAlignment[] owners = mBlocks.get(pBlock).owners;
+		for (int i = 0; i < pPage.diffs.length; i++) {
+			if (pPage.diffs[i].getChangeCount() != pPage.changes[i]
+					&& owners[i] != null) {
+				owners[i].keepDiffs(pPage.diffs[i]);
+			}
+		}
+	}
+}
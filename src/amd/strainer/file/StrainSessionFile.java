@@ -0,0 +1,1012 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */
+package amd.strainer.file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import amd.strainer.GlobalSettings;
+import amd.strainer.display.actions.Task;
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.Clone;
+import amd.strainer.objects.PackedDiffList;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.Readable;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
+import amd.strainer.objects.Strain;
+
+/**
+ * Saves and loads strain groupings in a compact binary format. This holds the
+ * same information as the Strainer XML file (see
+ * Util.writeStrainsToXML() and StrainXMLHandler3) and loads into the same
+ * objects, but is much smaller and faster to read and write. XML is still the
+ * format to use for exchanging data with other programs.
+ * <p/>
+ * The file starts with a magic number, the format version and a flags word
+ * followed by a series of blocks. Each block has a type, a compressed flag,
+ * the uncompressed length and the stored length, then the (optionally
+ * deflated) payload. Numbers inside a payload are variable length integers
+ * (signed values are zig-zag encoded).
+ * <ul>
+ * <li/>CONTIG: reference sequence id, name, label, quality flag, the number of
+ * strains and the number of reads
+ * <li/>STRAINS: open flag and read count for each strain. Reads are stored in
+ * strain order, so this is all that is needed for strain membership.
+ * <li/>READS: up to READS_PER_BLOCK entries of the read table (id, name,
+ * length, mate pair id, flags, alignment start, end, score and diff count)
+ * followed by the diffs of those reads. Diff positions are stored as the
+ * change from the previous diff in the same read.
+ * <li/>END: marks the end of the file
+ * </ul>
+ * Blocks are memory mapped one at a time when the file is read. Reads can
+ * also be loaded with their diffs left in the file, to be read back a block at
+ * a time when they are needed (see SessionAlignment and SessionDiffCache).
+ * 
+ * @author jmeppley
+ * 
+ */
+public class StrainSessionFile {
+	/**
+	 * suggested extension for session files
+	 */
+	public static final String EXTENSION = ".strainer";
+
+	/**
+	 * a reasonable number of diffs to keep in memory when they are left in
+	 * the file (see read())
+	 */
+	public static final int DEFAULT_DIFF_CACHE_SIZE = 1 << 21;
+
+	private static final byte[] MAGIC = { 'S', 'T', 'R', 'N' };
+	/**
+	 * the version written by this class (and the newest it can read)
+	 */
+	public static final int VERSION = 1;
+
+	// block types
+	private static final byte END = 0;
+	private static final byte CONTIG = 1;
+	private static final byte STRAINS = 2;
+	private static final byte READS = 3;
+
+	// type, compressed flag, raw length, stored length
+	private static final int BLOCK_HEADER_SIZE = 10;
+	private static final int FILE_HEADER_SIZE = 12;
+	static final int READS_PER_BLOCK = 4096;
+
+	// read flags
+	private static final int RECOMBINANT = 0x1;
+	private static final int BAD_CLONE = 0x2;
+	private static final int FORWARD = 0x4;
+	private static final int HAS_QUALITY = 0x8;
+
+	/**
+	 * Checks the first bytes of the given file for the session file magic
+	 * number
+	 * 
+	 * @param pFile
+	 *            file to check
+	 * @return true if the file looks like a strain session file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static boolean isSessionFile(File pFile) throws IOException {
+		FileInputStream in = new FileInputStream(pFile);
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			int n = in.readNBytes(magic, 0, magic.length);
+			if (n < magic.length) {
+				return false;
+			}
+			for (int i = 0; i < magic.length; i++) {
+				if (magic[i] != MAGIC[i]) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the reads and strains of the given reference sequence to a
+	 * session file. Blocks are not compressed (the file is already a fraction
+	 * of the size of the XML and deflating takes longer than everything else
+	 * put together).
+	 * 
+	 * @param pRefSeq
+	 *            The object to save
+	 * @param pFile
+	 *            the File to write to
+	 * @param pLabel
+	 *            a string identifying this version of the strain groupings
+	 *            (may be null)
+	 * @throws IOException
+	 *             if there is an error writing the file
+	 */
+	public static void write(ReferenceSequence pRefSeq, File pFile,
+			String pLabel) throws IOException {
+		write(pRefSeq, pFile, pLabel, false);
+	}
+
+	/**
+	 * Writes the reads and strains of the given reference sequence to a
+	 * session file.
+	 * 
+	 * @param pRefSeq
+	 *            The object to save
+	 * @param pFile
+	 *            the File to write to
+	 * @param pLabel
+	 *            a string identifying this version of the strain groupings
+	 *            (may be null)
+	 * @param pCompress
+	 *            true if blocks should be deflated
+	 * @throws IOException
+	 *             if there is an error writing the file
+	 */
+	public static void write(ReferenceSequence pRefSeq, File pFile,
+			String pLabel, boolean pCompress) throws IOException {
+		// The reads may have been loaded lazily from the file being replaced,
+		// so write to a new file and move it into place when done. (Blocks
+		// already mapped from the old file stay readable.)
+		File tempFile = File.createTempFile(pFile.getName(), ".tmp", pFile
+				.getAbsoluteFile().getParentFile());
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile, false), 1 << 16));
+		boolean done = false;
+		try {
+			BlockWriter writer = new BlockWriter(out, pCompress);
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(0);
+
+			// count what will be written (empty strains are skipped, as in
+			// the XML)
+			int strainCount = 0;
+			int readCount = 0;
+			for (Strain strain : pRefSeq.strains.values()) {
+				if (strain.getSize() == 0) {
+					System.err.println("Not writing empty strain to file. ID: "
+							+ strain.getId());
+					continue;
+				}
+				strainCount++;
+				readCount += strain.getSize();
+			}
+
+			BlockBuffer b = writer.buffer;
+			b.writeSignedVarint(pRefSeq.getId());
+			b.writeString(pRefSeq.getName());
+			b.write(pLabel == null ? 0 : 1);
+			if (pLabel != null) {
+				b.writeString(pLabel);
+			}
+			b.write(pRefSeq.hasQualityData ? 1 : 0);
+			b.writeVarint(strainCount);
+			b.writeVarint(readCount);
+			writer.flush(CONTIG);
+
+			// strain table
+			for (Strain strain : pRefSeq.strains.values()) {
+				if (strain.getSize() == 0) {
+					continue;
+				}
+				// only check open state if we are getting info from an active
+				// display
+				boolean open = !strain.areGraphicsInitialized()
+						|| strain.isOpen();
+				b.write(open ? 1 : 0);
+				b.writeVarint(strain.getSize());
+			}
+			writer.flush(STRAINS);
+
+			// reads in strain order
+			ReadBlockWriter reads = new ReadBlockWriter(writer);
+			for (Strain strain : pRefSeq.strains.values()) {
+				Iterator<Readable> rit = strain.getReadableIterator();
+				while (rit.hasNext()) {
+					Readable r = rit.next();
+					if (r instanceof Clone) {
+						Clone clone = (Clone) r;
+						reads.add(clone.reads[0]);
+						reads.add(clone.reads[1]);
+					} else {
+						reads.add((Read) r);
+					}
+				}
+			}
+			reads.flush();
+
+			writer.flush(END);
+			out.close();
+			try {
+				Files.move(tempFile.toPath(), pFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), pFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			done = true;
+		} finally {
+			out.close();
+			if (!done) {
+				tempFile.delete();
+			}
+		}
+		pRefSeq.strainsFile = pFile.getAbsolutePath();
+	}
+
+	/**
+	 * Reads the reads and strains from a session file into the given
+	 * ReferenceSequence. Strains are numbered from 1 in the order they were
+	 * saved.
+	 * 
+	 * @param pRefSeq
+	 *            The ReferenceSequence object to which Reads and Strains will
+	 *            be added
+	 * @param pFile
+	 *            session file
+	 * @param pTask
+	 *            Task to take progress updates, may be null
+	 * @throws IOException
+	 *             if the file cannot be read or is not a session file
+	 * @see GlobalSettings#getDiffCacheSize()
+	 */
+	public static void read(ReferenceSequence pRefSeq, File pFile, Task pTask)
+			throws IOException {
+		read(pRefSeq, pFile, pTask, GlobalSettings.getDiffCacheSize());
+	}
+
+	/**
+	 * Reads the reads and strains from a session file into the given
+	 * ReferenceSequence. Strains are numbered from 1 in the order they were
+	 * saved.
+	 * <p/>
+	 * If pDiffCacheSize is positive, the diffs of each read are left in the
+	 * file (which stays mapped into memory) and are read back when the Read's
+	 * Alignment is asked for them. Only the most recently used blocks of diffs
+	 * are kept, up to about pDiffCacheSize diffs in all. Diffs that are edited
+	 * are kept by their Alignment for good. The file must not be changed by
+	 * anything other than write() while the reads are in use.
+	 * 
+	 * @param pRefSeq
+	 *            The ReferenceSequence object to which Reads and Strains will
+	 *            be added
+	 * @param pFile
+	 *            session file
+	 * @param pTask
+	 *            Task to take progress updates, may be null
+	 * @param pDiffCacheSize
+	 *            the number of diffs to keep in memory (if zero or less, all
+	 *            diffs are loaded)
+	 * @throws IOException
+	 *             if the file cannot be read or is not a session file
+	 */
+	public static void read(ReferenceSequence pRefSeq, File pFile,
+			Task pTask, int pDiffCacheSize) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(pFile, "r");
+		try {
+			SessionDiffCache cache = null;
+			if (pDiffCacheSize > 0) {
+				cache = new SessionDiffCache(pDiffCacheSize);
+			}
+			new SessionReader(raf.getChannel(), pRefSeq, pTask, cache).read();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Copies the payload of a block into pBlock, inflating it if necessary
+	 * 
+	 * @param pData
+	 *            the stored bytes of the block
+	 * @param pCompressed
+	 *            true if the block is deflated
+	 * @param pRawLength
+	 *            length of the payload
+	 * @param pBlock
+	 *            takes the payload
+	 * @param pInflater
+	 *            used for compressed blocks
+	 * @throws IOException
+	 *             if the block cannot be inflated
+	 */
+	static void loadBlock(ByteBuffer pData, boolean pCompressed,
+			int pRawLength, BlockReader pBlock, Inflater pInflater)
+			throws IOException {
+		if (pBlock.bytes == null || pBlock.bytes.length < pRawLength) {
+			pBlock.bytes = new byte[Math.max(pRawLength, 1 << 16)];
+		}
+		if (pCompressed) {
+			pInflater.reset();
+			pInflater.setInput(pData);
+			try {
+				int n = 0;
+				while (n < pRawLength && !pInflater.finished()) {
+					int m = pInflater.inflate(pBlock.bytes, n, pRawLength - n);
+					if (m == 0 && pInflater.needsInput()) {
+						break;
+					}
+					n += m;
+				}
+				if (n != pRawLength) {
+					throw new IOException("Corrupt session file block");
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt session file block", e);
+			}
+		} else if (pRawLength > 0) {
+			pData.get(pBlock.bytes, 0, pRawLength);
+		}
+		pBlock.pos = 0;
+		pBlock.end = pRawLength;
+	}
+
+	/*
+	 * Collects the read table and diffs for a block of reads, since the diffs
+	 * follow the table in each READS block.
+	 */
+	private static class ReadBlockWriter {
+		final BlockWriter mWriter;
+		final BlockBuffer mDiffs = new BlockBuffer();
+		int mCount = 0;
+
+		ReadBlockWriter(BlockWriter pWriter) {
+			mWriter = pWriter;
+		}
+
+		void add(Read pRead) throws IOException {
+			if (mCount == 0) {
+				// leave room for the count
+				mWriter.buffer.reset();
+			}
+			BlockBuffer b = mWriter.buffer;
+			Alignment a = pRead.getAlignment();
+			PackedDiffList diffs = a.getPackedDiffs();
+
+			boolean hasQuality = false;
+			for (int i = 0; i < diffs.size(); i++) {
+				if (diffs.hasQuality(i)) {
+					hasQuality = true;
+					break;
+				}
+			}
+
+			int flags = 0;
+			if (pRead.isRecombinant()) {
+				flags |= RECOMBINANT;
+			}
+			if (pRead.isBadClone()) {
+				flags |= BAD_CLONE;
+			}
+			if (a.isForward()) {
+				flags |= FORWARD;
+			}
+			if (hasQuality) {
+				flags |= HAS_QUALITY;
+			}
+
+			b.writeVarint(pRead.getId());
+			b.writeString(pRead.getName());
+			b.writeVarint(pRead.getLength());
+			b.writeSignedVarint(pRead.getMatePair() == null ? -1 : pRead
+					.getMatePair().getId());
+			b.write(flags);
+			b.writeSignedVarint(a.getStart());
+			b.writeSignedVarint(a.getEnd() - a.getStart());
+			b.writeSignedVarint(a.score);
+			b.writeVarint(diffs.size());
+
+			int lastPos1 = a.getStart();
+			int lastPos2 = 0;
+			for (int i = 0; i < diffs.size(); i++) {
+				int pos1 = diffs.getPosition1(i);
+				int pos2 = diffs.getPosition2(i);
+				mDiffs.writeSignedVarint(pos1 - lastPos1);
+				mDiffs.writeSignedVarint(pos2 - lastPos2);
+				mDiffs.write(diffs.getBase1(i));
+				mDiffs.write(diffs.getBase2Actual(i));
+				if (hasQuality) {
+					mDiffs.writeSignedVarint(diffs.getQuality(i));
+				}
+				lastPos1 = pos1;
+				lastPos2 = pos2;
+			}
+
+			mCount++;
+			if (mCount == READS_PER_BLOCK) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			if (mCount == 0) {
+				return;
+			}
+			mWriter.flushReads(mCount, mDiffs);
+			mDiffs.reset();
+			mCount = 0;
+		}
+	}
+
+	/*
+	 * Writes blocks to the output stream
+	 */
+	private static class BlockWriter {
+		final DataOutputStream mOut;
+		final Deflater mDeflater;
+		final BlockBuffer buffer = new BlockBuffer();
+		final BlockBuffer mPayload = new BlockBuffer();
+		byte[] mCompressed = new byte[1 << 16];
+
+		BlockWriter(DataOutputStream pOut, boolean pCompress) {
+			mOut = pOut;
+			mDeflater = pCompress ? new Deflater(Deflater.BEST_SPEED) : null;
+		}
+
+		/*
+		 * READS blocks start with the read count, which is not known until
+		 * the table is done, so they are put together here
+		 */
+		void flushReads(int pCount, BlockBuffer pDiffs) throws IOException {
+			mPayload.reset();
+			mPayload.writeVarint(pCount);
+			mPayload.write(buffer.bytes, 0, buffer.length);
+			mPayload.write(pDiffs.bytes, 0, pDiffs.length);
+			writeBlock(READS, mPayload);
+			buffer.reset();
+		}
+
+		void flush(byte pType) throws IOException {
+			writeBlock(pType, buffer);
+			buffer.reset();
+		}
+
+		private void writeBlock(byte pType, BlockBuffer pData)
+				throws IOException {
+			mOut.writeByte(pType);
+			if (mDeflater == null || pData.length == 0) {
+				mOut.writeByte(0);
+				mOut.writeInt(pData.length);
+				mOut.writeInt(pData.length);
+				mOut.write(pData.bytes, 0, pData.length);
+				return;
+			}
+
+			mDeflater.reset();
+			mDeflater.setInput(pData.bytes, 0, pData.length);
+			mDeflater.finish();
+			int stored = 0;
+			while (!mDeflater.finished()) {
+				if (stored == mCompressed.length) {
+					byte[] bigger = new byte[mCompressed.length * 2];
+					System.arraycopy(mCompressed, 0, bigger, 0, stored);
+					mCompressed = bigger;
+				}
+				stored += mDeflater.deflate(mCompressed, stored,
+						mCompressed.length - stored);
+			}
+			mOut.writeByte(1);
+			mOut.writeInt(pData.length);
+			mOut.writeInt(stored);
+			mOut.write(mCompressed, 0, stored);
+		}
+	}
+
+	/*
+	 * Growable byte array with variable length integer encoding
+	 */
+	private static class BlockBuffer {
+		byte[] bytes = new byte[1 << 16];
+		int length = 0;
+
+		void reset() {
+			length = 0;
+		}
+
+		private void ensureCapacity(int pExtra) {
+			if (length + pExtra > bytes.length) {
+				byte[] bigger = new byte[Math.max(bytes.length * 2, length
+						+ pExtra)];
+				System.arraycopy(bytes, 0, bigger, 0, length);
+				bytes = bigger;
+			}
+		}
+
+		void write(int pByte) {
+			ensureCapacity(1);
+			bytes[length++] = (byte) pByte;
+		}
+
+		void write(byte[] pBytes, int pOffset, int pLength) {
+			ensureCapacity(pLength);
+			System.arraycopy(pBytes, pOffset, bytes, length, pLength);
+			length += pLength;
+		}
+
+		void writeVarint(int pValue) {
+			ensureCapacity(5);
+			while ((pValue & ~0x7F) != 0) {
+				bytes[length++] = (byte) ((pValue & 0x7F) | 0x80);
+				pValue >>>= 7;
+			}
+			bytes[length++] = (byte) pValue;
+		}
+
+		void writeSignedVarint(int pValue) {
+			writeVarint((pValue << 1) ^ (pValue >> 31));
+		}
+
+		void writeString(String pString) {
+			byte[] b = pString.getBytes(StandardCharsets.UTF_8);
+			writeVarint(b.length);
+			write(b, 0, b.length);
+		}
+	}
+
+	/*
+	 * Decodes a block payload
+	 */
+	static class BlockReader {
+		byte[] bytes;
+		int pos;
+		int end;
+
+		int read() throws IOException {
+			if (pos >= end) {
+				throw new EOFException("Unexpected end of session file block");
+			}
+			return bytes[pos++] & 0xFF;
+		}
+
+		int readVarint() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = read();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed number in session file");
+		}
+
+		int readSignedVarint() throws IOException {
+			int value = readVarint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		String readString() throws IOException {
+			int length = readVarint();
+			if (length < 0 || pos + length > end) {
+				throw new EOFException("Unexpected end of session file block");
+			}
+			String s = new String(bytes, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return s;
+		}
+
+		void skipString() throws IOException {
+			int length = readVarint();
+			if (length < 0 || pos + length > end) {
+				throw new EOFException("Unexpected end of session file block");
+			}
+			pos += length;
+		}
+	}
+
+	/*
+	 * The read table at the start of a READS block and the diffs that follow
+	 * it
+	 */
+	static class ReadTable {
+		int count = 0;
+		int[] ids;
+		String[] names;
+		int[] lengths;
+		int[] mates;
+		int[] flags;
+		int[] starts;
+		int[] ends;
+		int[] scores;
+		int[] diffCounts;
+		// true if any diff read by readDiffs() had a quality score
+		boolean hasQuality = false;
+
+		/*
+		 * reads the table (names are skipped unless pNames is true)
+		 */
+		void read(BlockReader pBlock, boolean pNames) throws IOException {
+			count = pBlock.readVarint();
+			ids = new int[count];
+			names = pNames ? new String[count] : null;
+			lengths = new int[count];
+			mates = new int[count];
+			flags = new int[count];
+			starts = new int[count];
+			ends = new int[count];
+			scores = new int[count];
+			diffCounts = new int[count];
+			for (int i = 0; i < count; i++) {
+				ids[i] = pBlock.readVarint();
+				if (pNames) {
+					names[i] = pBlock.readString();
+				} else {
+					pBlock.skipString();
+				}
+				lengths[i] = pBlock.readVarint();
+				mates[i] = pBlock.readSignedVarint();
+				flags[i] = pBlock.read();
+				starts[i] = pBlock.readSignedVarint();
+				ends[i] = starts[i] + pBlock.readSignedVarint();
+				scores[i] = pBlock.readSignedVarint();
+				diffCounts[i] = pBlock.readVarint();
+			}
+		}
+
+		/*
+		 * reads the diffs of every read in the table
+		 */
+		PackedDiffList[] readDiffs(BlockReader pBlock) throws IOException {
+			PackedDiffList[] diffs = new PackedDiffList[count];
+			for (int i = 0; i < count; i++) {
+				diffs[i] = new PackedDiffList(diffCounts[i]);
+				boolean readHasQuality = (flags[i] & HAS_QUALITY) != 0;
+				int pos1 = starts[i];
+				int pos2 = 0;
+				for (int j = 0; j < diffCounts[i]; j++) {
+					pos1 += pBlock.readSignedVarint();
+					pos2 += pBlock.readSignedVarint();
+					char base1 = (char) pBlock.read();
+					char base2 = (char) pBlock.read();
+					diffs[i].add(pos1, base1, pos2, base2);
+					if (readHasQuality) {
+						short quality = (short) pBlock.readSignedVarint();
+						if (quality != PackedDiffList.NO_QUALITY) {
+							diffs[i].setQuality(j, quality);
+							hasQuality = true;
+						}
+					}
+				}
+			}
+			return diffs;
+		}
+	}
+
+	/*
+	 * Loads the blocks of one file into a ReferenceSequence the same way
+	 * StrainXMLHandler3 does.
+	 */
+	private static class SessionReader {
+		final FileChannel mChannel;
+		final ReferenceSequence mRefSeq;
+		final Task mTask;
+		final SessionDiffCache mCache;
+		final Inflater mInflater = new Inflater();
+		final BlockReader mBlock = new BlockReader();
+		final ByteBuffer mHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		long mPosition = 0;
+
+		HashMap<Integer, Strain> mStrains = null;
+		int mStrainCount = 0;
+		boolean[] mOpen = null;
+		int[] mStrainSizes = null;
+		int mReadCount = 0;
+
+		// which strain the next read goes in and how many it has so far
+		int mStrainIndex = 0;
+		int mStrainFill = 0;
+		Strain mCurrentStrain = null;
+		int mReadsLoaded = 0;
+
+		// the mapped payload of the last block (for the diff cache)
+		MappedByteBuffer mBlockData = null;
+		boolean mBlockCompressed = false;
+
+		SessionReader(FileChannel pChannel, ReferenceSequence pRefSeq,
+				Task pTask, SessionDiffCache pCache) {
+			mChannel = pChannel;
+			mRefSeq = pRefSeq;
+			mTask = pTask;
+			mCache = pCache;
+		}
+
+		void read() throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			readFully(header, 0);
+			header.flip();
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (header.get() != MAGIC[i]) {
+					throw new IOException("Not a strain session file");
+				}
+			}
+			int version = header.getInt();
+			if (version > VERSION) {
+				throw new IOException("Unsupported session file version: "
+						+ version);
+			}
+			header.getInt(); // flags (unused in version 1)
+			mPosition = FILE_HEADER_SIZE;
+
+			byte type;
+			try {
+				while ((type = nextBlock()) != END) {
+					if (mTask != null && mTask.isInterrupted()) {
+						throw new RuntimeException("Interrupted!");
+					}
+					switch (type) {
+					case CONTIG:
+						readContig();
+						break;
+					case STRAINS:
+						readStrains();
+						break;
+					case READS:
+						readReads();
+						break;
+					default:
+						// skip unknown blocks from newer minor revisions
+						break;
+					}
+				}
+			} finally {
+				mInflater.end();
+			}
+
+			if (mStrains == null) {
+				throw new IOException("No strains in session file");
+			}
+			if (mReadsLoaded != mReadCount || mCurrentStrain != null) {
+				throw new IOException("Session file is missing reads: found "
+						+ mReadsLoaded + " of " + mReadCount);
+			}
+			mRefSeq.strains = mStrains;
+			mRefSeq.maxStrainId = mStrains.size();
+		}
+
+		private void readFully(ByteBuffer pBuffer, long pPosition)
+				throws IOException {
+			while (pBuffer.hasRemaining()) {
+				int n = mChannel.read(pBuffer, pPosition + pBuffer.position());
+				if (n < 0) {
+					throw new EOFException("Unexpected end of session file");
+				}
+			}
+		}
+
+		/*
+		 * maps the next block and leaves its payload in mBlock
+		 */
+		private byte nextBlock() throws IOException {
+			mHeader.clear();
+			readFully(mHeader, mPosition);
+			mHeader.flip();
+			byte type = mHeader.get();
+			boolean compressed = mHeader.get() != 0;
+			int rawLength = mHeader.getInt();
+			int storedLength = mHeader.getInt();
+			if (rawLength < 0 || storedLength < 0) {
+				throw new IOException("Corrupt session file block at "
+						+ mPosition);
+			}
+			mPosition += BLOCK_HEADER_SIZE;
+			if (mPosition + storedLength > mChannel.size()) {
+				throw new EOFException("Unexpected end of session file");
+			}
+
+			mBlockData = null;
+			mBlockCompressed = compressed;
+			if (storedLength > 0) {
+				mBlockData = mChannel.map(
+						FileChannel.MapMode.READ_ONLY,
+						mPosition,
+						storedLength);
+				loadBlock(
+						mBlockData.duplicate(),
+						compressed,
+						rawLength,
+						mBlock,
+						mInflater);
+			} else {
+				mBlock.pos = 0;
+				mBlock.end = 0;
+			}
+			mPosition += storedLength;
+			return type;
+		}
+
+		private void readContig() throws IOException {
+			mBlock.readSignedVarint(); // id
+			mBlock.readString(); // name
+			if (mBlock.read() != 0) {
+				mBlock.readString(); // label
+			}
+			if (mBlock.read() != 0) {
+				mRefSeq.hasQualityData = true;
+			}
+			mStrainCount = mBlock.readVarint();
+			mReadCount = mBlock.readVarint();
+			if (mTask != null) {
+				mTask.setLengthOfTask(mReadCount);
+			}
+		}
+
+		private void readStrains() throws IOException {
+			mOpen = new boolean[mStrainCount];
+			mStrainSizes = new int[mStrainCount];
+			for (int i = 0; i < mStrainCount; i++) {
+				mOpen[i] = mBlock.read() != 0;
+				mStrainSizes[i] = mBlock.readVarint();
+				if (mStrainSizes[i] <= 0) {
+					throw new IOException("Empty strain in session file");
+				}
+			}
+			mStrains = new HashMap<Integer, Strain>();
+			mStrainIndex = 0;
+			mCurrentStrain = null;
+		}
+
+		private void startStrain() {
+			mCurrentStrain = new Strain();
+			mCurrentStrain.setId(mStrainIndex + 1);
+			if (!mOpen[mStrainIndex]) {
+				mCurrentStrain.toggleOpen();
+			}
+			mStrainFill = 0;
+		}
+
+		private void endStrain() {
+			try {
+				mCurrentStrain.setAlignmentFromReads();
+			} catch (RuntimeException e) {
+				System.out.println("Id:" + mCurrentStrain.getId());
+				e.printStackTrace();
+			}
+			mStrains.put(Integer.valueOf(mCurrentStrain.getId()), mCurrentStrain);
+			mCurrentStrain = null;
+			mStrainIndex++;
+		}
+
+		private void readReads() throws IOException {
+			if (mStrains == null) {
+				throw new IOException("Session file has reads before strains");
+			}
+			int rawLength = mBlock.end;
+			ReadTable table = new ReadTable();
+			table.read(mBlock, true);
+			PackedDiffList[] diffs = table.readDiffs(mBlock);
+			if (table.hasQuality) {
+				mRefSeq.hasQualityData = true;
+			}
+			int count = table.count;
+			SessionAlignment[] lazyAlignments = null;
+			int block = -1;
+			if (mCache != null) {
+				// the diffs were just read, so start with them in the cache
+				// (the alignments are filled in below)
+				lazyAlignments = new SessionAlignment[count];
+				block = mCache.addBlock(
+						mBlockData,
+						mBlockCompressed,
+						rawLength,
+						lazyAlignments,
+						diffs);
+			}
+
+			for (int i = 0; i < count; i++) {
+				if (mCurrentStrain == null) {
+					if (mStrainIndex >= mStrainSizes.length) {
+						throw new IOException(
+								"Session file has more reads than strains hold");
+					}
+					startStrain();
+				}
+
+				Integer readId = Integer.valueOf(table.ids[i]);
+				Read read = new Read();
+				read.setId(table.ids[i]);
+				read.setName(table.names[i]);
+				read.setLength(table.lengths[i]);
+				int flags = table.flags[i];
+				read.setBadClone((flags & BAD_CLONE) != 0);
+				if (read.isRecombinant() != ((flags & RECOMBINANT) != 0)) {
+					read.toggleRecombinant();
+				}
+				mRefSeq.reads.put(readId, read);
+
+				SequenceSegment ss1 = new SequenceSegment(mRefSeq,
+						table.starts[i], table.ends[i]);
+				SequenceSegment ss2 = new SequenceSegment(read, 1, read
+						.getLength());
+				boolean forward = (flags & FORWARD) != 0;
+				Alignment a;
+				if (mCache == null) {
+					a = new Alignment(ss1, ss2, forward, diffs[i]);
+				} else {
+					lazyAlignments[i] = new SessionAlignment(ss1, ss2,
+							forward, diffs[i], mCache, block, i);
+					a = lazyAlignments[i];
+				}
+				a.score = table.scores[i];
+				read.setAlignment(a);
+
+				if (table.mates[i] >= 0) {
+					Read mp = mRefSeq.reads.get(Integer
+							.valueOf(table.mates[i]));
+					if (mp != null) {
+						// this call associates pair in both directions
+						read.setMatepair(mp);
+					}
+				}
+
+				mCurrentStrain.putRead(readId, read);
+				mReadsLoaded++;
+				mStrainFill++;
+				if (mStrainFill == mStrainSizes[mStrainIndex]) {
+					endStrain();
+				}
+			}
+
+			if (mTask != null && mTask.getLengthOfTask() > 0) {
+				mTask.setCurrent(mReadsLoaded);
+			}
+		}
+	}
+}
@@ -84,6 +84,8 @@ public class Util {
 			.compile("^([-0-9a-zA-Z_]+)\\.([a-zA-Z])[0-9]+");
 	private final static Pattern illuminaReadRE = Pattern
 			.compile("^(.+)[/:][12]");
+	private final static Pattern cigarRE = Pattern
+			.compile("([0-9]+)([MIDNSHP=X])");
 
 	/**
 	 * @param pReadHolder
@@ -816,6 +818,27 @@ public class Util {
 		return mNucleotideMatrix;
 	}
 
+	// which pairs of characters the nucleotide matrix scores as a match
+	private static boolean[][] mNucleotideMatches;
+
+	/**
+	 * @return true if the nucleotide matrix scores the two bases as a match
+	 *         (anything else is recorded as a Difference)
+	 */
+	static boolean isNucleotideMatch(char pQueryBase, char pReferenceBase) {
+		if (mNucleotideMatches == null) {
+			Matrix matrix = getNucleotideMatrix();
+			boolean[][] matches = new boolean[SIZE][SIZE];
+			for (int i = 0; i < SIZE; i++) {
+				for (int j = 0; j < SIZE; j++) {
+					matches[i][j] = matrix.getScore((char) i, (char) j) == MATCH;
+				}
+			}
+			mNucleotideMatches = matches;
+		}
+		return mNucleotideMatches[pQueryBase][pReferenceBase];
+	}
+
 	public static ReferenceSequence createRefSeqFromBioJava(
 			org.biojava.bio.symbol.Alignment a) throws IllegalSymbolException,
 			IndexOutOfBoundsException {
@@ -1051,7 +1074,6 @@ public class Util {
 
 		Matrix scoreMatrix = getNucleotideMatrix();
 
-		Pattern cigarRE = Pattern.compile("([0-9]+)([MIDNSHP=X])");
 		Matcher cigarElements = cigarRE.matcher(pCigarString);
 		while (cigarElements.find()) {
 			int bitLen = Integer.parseInt(cigarElements.group(1));
@@ -1145,12 +1167,20 @@ public class Util {
 	 * @return eValue-like probability (10^(qual/-10))
 	 */
 	private static double getEvalueFromMapQual(String pMapQual) {
-		int qual = Integer.parseInt(pMapQual);
-		if (qual == 255) {
+		return getEvalueFromMapQual(Integer.parseInt(pMapQual));
+	}
+
+	/**
+	 * @param pMapQual
+	 *            SAM mapping quality
+	 * @return eValue-like probability (10^(qual/-10))
+	 */
+	static double getEvalueFromMapQual(int pMapQual) {
+		if (pMapQual == 255) {
 			// special value indicating no quality available
 			return -1.;
 		}
-		return Math.pow(10., (qual / -10.));
+		return Math.pow(10., (pMapQual / -10.));
 	}
 
 }
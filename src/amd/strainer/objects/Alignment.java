@@ -63,7 +63,8 @@ public class Alignment {
 	public SequenceSegment getSequenceSegment2() { return ss2; }
 	private boolean direction = true;
 	
-	private int [] gaps = null;
+	// built by processDiffs(), which sets gaps last (so check gaps to see if the others are ready)
+	private volatile int [] gaps = null;
 	private int [] refSeqGaps = null;
 	private int [] gapsRef = null;
 	private int [] refSeqGapsRef = null;
@@ -80,8 +81,9 @@ public class Alignment {
 	 */
 	public double eValue = -1.0;
 
-	// This is an array list so the order won't change
-	private List<Difference> diffs = null;
+	// diffs are packed into primitive arrays to save memory (the order won't change). Volatile 
+	//  because subclasses build them on demand, possibly in a strainer thread.
+	private volatile PackedDiffList diffs = null;
 	protected List<SequenceSegment> unknownRegions = null;
 	/**
 	 * @return A java.util.List of SequenceSegments indicating any large gaps in the alignment. This is empty for reads
@@ -164,8 +166,7 @@ public class Alignment {
 
 		List<Difference> cDiffs = null;
 		if (diffs != null) {
-			cDiffs = new ArrayList<Difference>();
-			cDiffs.addAll(diffs);
+			cDiffs = new PackedDiffList(diffs);
 		}
 		
 		Alignment c = new Alignment(css1,css2,direction,cDiffs);
@@ -200,7 +201,7 @@ public class Alignment {
 	 * @return position in reference sequence (start-end)
 	 */
 	public int getReferencePos(int pPos) {		
-		if (gaps==null) { processDiffs(getDiffs()); }
+		if (gaps==null) { processDiffs(getPackedDiffs()); }
 		int shift = gapsBefore(pPos,gaps) - gapsBefore(pPos,refSeqGaps);
 		return pPos + getStart() - ss2.getStart() + shift;
 	}
@@ -210,7 +211,7 @@ public class Alignment {
 	 * @return an array of integer positions
 	 */
 	public int [] getReferenceGaps() {
-		if (refSeqGaps==null) { processDiffs(getDiffs()); }
+		if (gaps==null) { processDiffs(getPackedDiffs()); }
 		return refSeqGapsRef;
 	}
 
@@ -219,7 +220,7 @@ public class Alignment {
 	 * @return The corresponding position relative to the aligned sequence.
 	 */
 	public int getPosFromReference(int pPos) {
-		if (gaps==null) { processDiffs(getDiffs()); }
+		if (gaps==null) { processDiffs(getPackedDiffs()); }
 		int shift = gapsBefore(pPos,gapsRef) - gapsBefore(pPos,refSeqGapsRef);
 		return pPos - getStart() + ss2.getStart() - shift;	
 	}
@@ -239,22 +240,53 @@ public class Alignment {
 	 * @return A string of nucleotides representing a part of this aligned sequence
 	 */	
 	public String getBases(boolean pFillFromConsensus,int pStart, int pEnd) {
-		// this calls getBase() at each position.  This is not optimal for performance, but
-		//  getting sequences shouldn't ever impinge on the GUI, and this is much
-		//  easier to debug than a completely separate method.
+		// this walks the gap and diff lists along with the position instead of calling 
+		//  getReferencePos() and getBase() at each position, so it must give the same 
+		//  answers as those methods.
+		
+		PackedDiffList diffs = getPackedDiffs();
+		if (gaps==null) { processDiffs(diffs); }
+		int offset = getStart() - ss2.getStart();
+		int gapCount = 0;
+		int refSeqGapCount = 0;
+		int diffIndex = 0;
+		int diffCount = diffs.size();
 		
 		StringBuffer sb = new StringBuffer((pEnd-pStart)+1);
 		Sequence reference = ss1.getSequence();
 		for (int i = pStart; i <= pEnd; i++) {
-			int rPos = this.getReferencePos(i);
+			// same as getReferencePos(i)
+			while (gapCount<gaps.length && gaps[gapCount]<=i) {
+				gapCount++;
+			}
+			while (refSeqGapCount<refSeqGaps.length && refSeqGaps[refSeqGapCount]<=i) {
+				refSeqGapCount++;
+			}
+			int rPos = i + offset + gapCount - refSeqGapCount;
+
 			if (this.isUncovered(rPos)) {
 				if (pFillFromConsensus) {
 					sb.append(reference.getBase(rPos));
 				} else {
 					sb.append("n");
 				}
+				continue;
+			}
+
+			// same as getBase(i)
+			while (diffIndex<diffCount && diffs.getPosition2(diffIndex)<i) {
+				diffIndex++;
+			}
+			if (diffIndex<diffCount && diffs.getPosition2(diffIndex)==i) {
+				// there may be more than one diff here, so look it up the same way getBase() does
+				char base2 = diffs.getBase2(diffs.indexOfPosition2(i));
+				if (base2=='-') {
+					sb.append(reference.getBase(rPos));
+				} else {
+					sb.append(base2);
+				}
 			} else {
-				sb.append(this.getBase(i));
+				sb.append(reference.getBase(rPos));
 			}
 		}
 		return sb.toString();
@@ -310,17 +342,18 @@ public class Alignment {
 	 */
 	public char getBase(int pPos) {
 		// is there a diff at this position
-		Difference d = getDiffAtPosition(pPos);
+		PackedDiffList diffs = getPackedDiffs();
+		int index = diffs.indexOfPosition2(pPos);
 
 		int rPos = this.getReferencePos(pPos);
 
 		// skip if reference sequence has an extra base here
-		if (d!=null) {
-			if (d.getBase2()=='-') { 
+		if (index>=0) {
+			char base2 = diffs.getBase2(index);
+			if (base2=='-') { 
 				return getSequenceSegment1().getSequence().getBase(rPos);
 			} else {
-//				System.out.println(d.getBase2());
-				return d.getBase2();
+				return base2;
 			}
 		}
 		
@@ -335,11 +368,12 @@ public class Alignment {
 	 */
 	public char getBaseFromReference(int pPos) {
 		// is there a diff at this position
-		Difference d = getDiffAtReferencePosition(pPos);
+		PackedDiffList diffs = getPackedDiffs();
+		int index = diffs.indexOfPosition1(pPos);
 
 		// skip if refernce seqence has an extra base here
-		if (d!=null) {
-			return d.getBase2();
+		if (index>=0) {
+			return diffs.getBase2(index);
 		}
 		
 		// if no diff:
@@ -353,121 +387,21 @@ public class Alignment {
 	 * @return the number of diffs
 	 */
 	public int countDiffsInRange(int pStartPos, int pEndPos) {
-		// use halving algorithm to find first diff in range, then just count up
-
 		// make sure diff array is current
-		List<Difference> diffs = getDiffs();
-		if (diffs.size()==0) {
-			// if there are no diffs, there are no diffs in the range
-			return 0;
-		}
-		
-		int diffCount = 0;
-		
-		// start in middle
-		int lastHigh = diffs.size();
-		int lastLow = -1;
-		int diffIndex;
-		Difference d;
-		
-		// as long as high and low are at least 2 apart, keep halving
-		while (lastLow + 1 < lastHigh) {
-			diffIndex = (lastHigh+lastLow)/2;
-			d = diffs.get(diffIndex);
-			// check where we are
-			if (d.getPosition1()<pStartPos) {
-				// go up
-				lastLow = diffIndex;
-			} else if ( d.getPosition1()>pEndPos) {
-				// go down
-				lastHigh = diffIndex;
-			} else {
-				// diff is in range
-				// increment counter if quality is good
-				if (d.getBase2()!='n') {
-					diffCount++;
-				}
-
-				// count diffs down till we leave range
-				int i = 1;
-				while (diffIndex-i>0 && 
-						diffs.get(diffIndex-i).getPosition1()>=pStartPos) {
-					if (d.getBase2()!='n') {
-						diffCount++;
-					}
-					i++;
-				}
-
-				// count next diffs up til we leave the range
-				i = 1;
-				while (diffIndex+i<diffs.size() && 
-						diffs.get(diffIndex+i).getPosition1()<=pEndPos) {
-					if (d.getBase2()!='n') {
-						diffCount++;
-					}
-					i++;
-				}
-				
-				// done
-				return diffCount;
-			}
-		}
-		
-		// done (if we get here, the answer should be 0)
-		return diffCount;		
+		//  (the list keeps a running count of diffs, skipping 'n's from low quality)
+		return getPackedDiffs().countInRange(pStartPos,pEndPos);
 	}
 	
-	private Difference getDiffAtPosition(int pPos) {
-		// use halving algorithm to find diff at pos
-
-		// make sure diff array is current
-		List<Difference> diffs = getDiffs();
-		if (diffs.size()==0) {
-			// if there are no diffs, there are no diffs in the range
-			return null;
-		}
-		
-		// start in middle
-		int lastHigh = diffs.size();
-		int lastLow = -1;
-		int diffIndex;
-		Difference d;
-		
-		// as long as high and low are at least 2 apart, keep halving
-		while (lastLow + 1 < lastHigh) {
-			diffIndex = (lastHigh+lastLow)/2;
-			d = diffs.get(diffIndex);
-			// check where we are
-			if (d.getPosition2()<pPos) {
-				// go up
-				lastLow = diffIndex;
-			} else if ( d.getPosition2()>pPos) {
-				// go down
-				lastHigh = diffIndex;
-			} else {
-				// diff is in pPos
-				return d;
-			}
-		}
-		
-		// done (if we get here, there is no diff at pPos)
-		return null;	
-
-		/*
-		for (int i = 0; i<getDiffs().size(); i++) {
-			Difference d = (Difference) getDiffs().get(i);
-			if (d.getPosition2()==pPos) {
-				if (d.getBase1()!='-') {
-					return d;
-				}
-			} else {
-				if (d.getPosition2()>pPos) {
-					break;
-				}
-			}
-		}
-		return null;
-		*/
+	/**
+	 * return the difference object at the given position relative to this sequence
+	 * 
+	 * @param pPos the position on this sequence (1-length)
+	 * @return a Difference object, null if same as reference at the given position
+	 */
+	public Difference getDiffAtPosition(int pPos) {
+		PackedDiffList diffs = getPackedDiffs();
+		int index = diffs.indexOfPosition2(pPos);
+		return index<0 ? null : diffs.get(index);
 	}
 	
 	/**
@@ -477,56 +411,9 @@ public class Alignment {
 	 * @return a Difference object, null if same as reference at the given position
 	 */
 	public Difference getDiffAtReferencePosition(int pPos) {
-		// use halving algorithm to find diff at pos
-
-		// make sure diff array is current
-		List<Difference> diffs = getDiffs();
-		if (diffs.size()==0) {
-			// if there are no diffs, there are no diffs in the range
-			return null;
-		}
-		
-		// start in middle
-		int lastHigh = diffs.size();
-		int lastLow = -1;
-		int diffIndex;
-		Difference d;
-		
-		// as long as high and low are at least 2 apart, keep halving
-		while (lastLow + 1 < lastHigh) {
-			diffIndex = (lastHigh+lastLow)/2;
-			d = diffs.get(diffIndex);
-			// check where we are
-			if (d.getPosition1()<pPos) {
-				// go up
-				lastLow = diffIndex;
-			} else if ( d.getPosition1()>pPos) {
-				// go down
-				lastHigh = diffIndex;
-			} else {
-				// diff is in pPos
-				return d;
-			}
-		}
-		
-		// done (if we get here, there is no diff at pPos)
-		return null;	
-		
-		/*
-		for (int i = 0; i<getDiffs().size(); i++) {
-			Difference d = (Difference) getDiffs().get(i);
-			if (d.getPosition1()==pPos) {
-				if (d.getBase1()!='-') {
-					return d;
-				}
-			} else {
-				if (d.getPosition1()>pPos) {
-					break;
-				}
-			}
-		}
-		return null;
-		*/
+		PackedDiffList diffs = getPackedDiffs();
+		int index = diffs.indexOfPosition1(pPos);
+		return index<0 ? null : diffs.get(index);
 	}
 	
 	private int gapsBefore(int pPos, int [] pGaps) {
@@ -545,15 +432,41 @@ public class Alignment {
 	}
 
 	/**
+	 * Subclasses that keep their diffs elsewhere (eg: in a file) return false until they are 
+	 * loaded, so callers that can wait (eg: the diff counts kept by each Strain) don't load them early.
+	 * @return true if getDiffs() can be called without loading anything
+	 */
+	public boolean areDiffsLoaded() {
+		return true;
+	}
+
+	/**
+	 * Subclasses that build their diffs on demand override getDiffs(), so this goes through 
+	 * getDiffs() to make sure the diffs are loaded before returning the packed list.
+	 * @return the diffs as a PackedDiffList (for looking at diffs without creating Difference objects)
+	 */
+	public PackedDiffList getPackedDiffs() {
+		List<Difference> d = getDiffs();
+		if (d instanceof PackedDiffList) {
+			return (PackedDiffList) d;
+		}
+		// subclasses may return a plain list (eg: an empty list on error)
+		return new PackedDiffList(d);
+	}
+
+	/**
+	 * The diffs are copied into a PackedDiffList (unless they already are one), so later 
+	 * changes to the given List are not seen unless setDiffs() is called again.
 	 * @param diffs The diffs to set.
 	 */
 	public void setDiffs(List<Difference> diffs) {
-		if (diffs != null) {
-			processDiffs(diffs);
+		PackedDiffList packed = PackedDiffList.pack(diffs);
+		if (packed != null) {
+			processDiffs(packed);
 		} else {
 			unknownRegions=null;
 		}
-		this.diffs = diffs;
+		this.diffs = packed;
 	}
 	
 	/*
@@ -562,30 +475,33 @@ public class Alignment {
 	 * <P>
 	 * also genereates gap lists.  refSeqGaps lists the position where the reference sequence is
 	 * gapped, and gaps lists the positions where this sequence is gapped.  
+	 * <P>
+	 * Strainer threads may get here at the same time for an alignment whose diffs are loaded on demand,
+	 * so this is synchronized and gaps is set last.
 	 */
-	private void processDiffs(List<Difference> pDiffs) {
+	private synchronized void processDiffs(PackedDiffList pDiffs) {
 		ArrayList<Integer> refSeqGapList = new ArrayList<Integer>();
 		ArrayList<Integer> gapList = new ArrayList<Integer>();
 		ArrayList<Integer> refSeqGapListRef = new ArrayList<Integer>();
 		ArrayList<Integer> gapListRef = new ArrayList<Integer>();
 
- 		for (Difference d : pDiffs) {
+ 		for (int i = 0; i < pDiffs.size(); i++) {
 			// don't add to map if it's a gap
-			if (d.getBase2()=='-') {
-				gapList.add(new Integer(d.getPosition2()));
-				gapListRef.add(new Integer(d.getPosition1()));
+			if (pDiffs.getBase2(i)=='-') {
+				gapList.add(new Integer(pDiffs.getPosition2(i)));
+				gapListRef.add(new Integer(pDiffs.getPosition1(i)));
 			} else {
-				if (d.getBase1()=='-') {
-					refSeqGapList.add(new Integer(d.getPosition2()));
-					refSeqGapListRef.add(new Integer(d.getPosition1()));
+				if (pDiffs.getBase1(i)=='-') {
+					refSeqGapList.add(new Integer(pDiffs.getPosition2(i)));
+					refSeqGapListRef.add(new Integer(pDiffs.getPosition1(i)));
 				}
 			}
 		}
 
 		// set arrays from ArrayLists to save memory
-		this.gaps = new int [gapList.size()];
+		int [] gaps = new int [gapList.size()];
 		for (int i = 0; i<gapList.size(); i++) {
-			this.gaps[i] = gapList.get(i);
+			gaps[i] = gapList.get(i);
 		}
 		this.refSeqGaps = new int [refSeqGapList.size()];
 		for (int i = 0; i<refSeqGapList.size(); i++) {
@@ -608,6 +524,7 @@ public class Alignment {
 			int length = ss1.getEnd()-ss1.getStart()+1-gapList.size()+refSeqGapList.size();
 			ss2.setEnd(ss2.getStart()+length-1);
 		}
+		this.gaps = gaps;
 	}
 
 //	protected int uncoveredLength = 0;
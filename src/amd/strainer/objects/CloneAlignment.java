@@ -109,14 +109,22 @@ public class CloneAlignment extends Alignment {
 	}
 	
 	/**
+	 * The diffs are merged from the reads the first time they are asked for (synchronized, since
+	 * strainer threads can share a clone).
 	 * @return Returns the list of Differences.
 	 */
 	public List<Difference> getDiffs() {
-		if (super.getDiffs()==null) {
-			setDiffs(lookUpDiffs());
+		List<Difference> diffs = super.getDiffs();
+		if (diffs==null) {
+			synchronized (this) {
+				diffs = super.getDiffs();
+				if (diffs==null) {
+					setDiffs(lookUpDiffs());
+					diffs = super.getDiffs();
+				}
+			}
 		}
-		
-		return super.getDiffs();
+		return diffs;
 	}
 
 	// get position in mate pair of this position in read 2
@@ -0,0 +1,496 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */package amd.strainer.objects;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A java.util.List of Difference objects that stores the diffs in parallel primitive arrays instead
+ * of keeping one Difference object per diff.
+ * <P>
+ * get() builds a new Difference (or QualifiedDifference, if a quality score was set) from the arrays
+ * each time it is called, so changing the returned object does NOT change the list. Use set() or one of the
+ * update methods (setBase1(), shiftPosition1()) to change diffs in place.
+ * <P>
+ * Alignment and its subclasses use the primitive accessors (getPosition1(i), getBase2(i), etc) directly
+ * so that searching the diffs doesn't create any objects.
+ *
+ * @author jmeppley
+ *
+ */
+public class PackedDiffList extends AbstractList<Difference> implements RandomAccess {
+
+	/**
+	 * value stored in the quality array for diffs without quality data
+	 */
+	public static final short NO_QUALITY = Short.MIN_VALUE;
+
+	private static final int DEFAULT_CAPACITY = 4;
+
+	private int size = 0;
+	private int [] positions1;
+	private int [] positions2;
+	private byte [] bases1;
+	private byte [] bases2;
+	// only created if a QualifiedDifference is added
+	private short [] qualities = null;
+
+	// calledBefore[i] is the number of diffs before index i that are not 'n' (see countInRange())
+	//  built on demand, dropped whenever a diff is changed
+	private int [] calledBefore = null;
+	// the quality threshold calledBefore was built with
+	private short calledThreshold = 0;
+
+	// counts every change, including ones that don't change the size (see getChangeCount())
+	private int changes = 0;
+
+	/**
+	 * Creates an empty list
+	 */
+	public PackedDiffList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty list with room for the given number of diffs
+	 * @param pCapacity initial capacity
+	 */
+	public PackedDiffList(int pCapacity) {
+		positions1 = new int [pCapacity];
+		positions2 = new int [pCapacity];
+		bases1 = new byte [pCapacity];
+		bases2 = new byte [pCapacity];
+	}
+
+	/**
+	 * Creates a packed copy of the given diffs
+	 * @param pDiffs a List of Difference objects
+	 */
+	public PackedDiffList(List<Difference> pDiffs) {
+		this(pDiffs.size());
+		if (pDiffs instanceof PackedDiffList) {
+			PackedDiffList p = (PackedDiffList) pDiffs;
+			size = p.size;
+			System.arraycopy(p.positions1,0,positions1,0,size);
+			System.arraycopy(p.positions2,0,positions2,0,size);
+			System.arraycopy(p.bases1,0,bases1,0,size);
+			System.arraycopy(p.bases2,0,bases2,0,size);
+			if (p.qualities!=null) {
+				qualities = new short [positions1.length];
+				Arrays.fill(qualities,NO_QUALITY);
+				System.arraycopy(p.qualities,0,qualities,0,size);
+			}
+		} else {
+			for (Difference d : pDiffs) {
+				add(d);
+			}
+		}
+	}
+
+	/**
+	 * Returns the given list if it's already packed, otherwise creates a packed copy
+	 * @param pDiffs a List of Difference objects (may be null)
+	 * @return a PackedDiffList with the same diffs (or null)
+	 */
+	public static PackedDiffList pack(List<Difference> pDiffs) {
+		if (pDiffs==null || pDiffs instanceof PackedDiffList) {
+			return (PackedDiffList) pDiffs;
+		}
+		return new PackedDiffList(pDiffs);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Difference get(int pIndex) {
+		checkIndex(pIndex);
+		if (qualities!=null && qualities[pIndex]!=NO_QUALITY) {
+			return new QualifiedDifference(positions1[pIndex],
+					(char) bases1[pIndex],
+					positions2[pIndex],
+					(char) bases2[pIndex],
+					qualities[pIndex]);
+		}
+		return new Difference(positions1[pIndex],
+				(char) bases1[pIndex],
+				positions2[pIndex],
+				(char) bases2[pIndex]);
+	}
+
+	public Difference set(int pIndex, Difference pDiff) {
+		Difference old = get(pIndex);
+		store(pIndex,pDiff);
+		return old;
+	}
+
+	public void add(int pIndex, Difference pDiff) {
+		if (pIndex>size || pIndex<0) {
+			throw new IndexOutOfBoundsException("Index: " + pIndex + ", Size: " + size);
+		}
+		ensureCapacity(size+1);
+		if (pIndex<size) {
+			int n = size - pIndex;
+			System.arraycopy(positions1,pIndex,positions1,pIndex+1,n);
+			System.arraycopy(positions2,pIndex,positions2,pIndex+1,n);
+			System.arraycopy(bases1,pIndex,bases1,pIndex+1,n);
+			System.arraycopy(bases2,pIndex,bases2,pIndex+1,n);
+			if (qualities!=null) {
+				System.arraycopy(qualities,pIndex,qualities,pIndex+1,n);
+			}
+		}
+		size++;
+		store(pIndex,pDiff);
+		modCount++;
+	}
+
+	/**
+	 * Appends a diff to the end of the list without creating a Difference object
+	 * @param pPosition1 position in sequence 1 (the reference)
+	 * @param pBase1 base in sequence 1
+	 * @param pPosition2 position in sequence 2
+	 * @param pBase2 base in sequence 2
+	 */
+	public void add(int pPosition1, char pBase1, int pPosition2, char pBase2) {
+		ensureCapacity(size+1);
+		calledBefore = null;
+		positions1[size] = pPosition1;
+		positions2[size] = pPosition2;
+		bases1[size] = (byte) pBase1;
+		bases2[size] = (byte) pBase2;
+		if (qualities!=null) {
+			qualities[size] = NO_QUALITY;
+		}
+		size++;
+		modCount++;
+		changes++;
+	}
+
+	public Difference remove(int pIndex) {
+		Difference old = get(pIndex);
+		int n = size - pIndex - 1;
+		if (n>0) {
+			System.arraycopy(positions1,pIndex+1,positions1,pIndex,n);
+			System.arraycopy(positions2,pIndex+1,positions2,pIndex,n);
+			System.arraycopy(bases1,pIndex+1,bases1,pIndex,n);
+			System.arraycopy(bases2,pIndex+1,bases2,pIndex,n);
+			if (qualities!=null) {
+				System.arraycopy(qualities,pIndex+1,qualities,pIndex,n);
+			}
+		}
+		size--;
+		calledBefore = null;
+		modCount++;
+		changes++;
+		return old;
+	}
+
+	public void clear() {
+		size = 0;
+		qualities = null;
+		calledBefore = null;
+		modCount++;
+		changes++;
+	}
+
+	/*
+	 * writes the diff's values into the arrays at the given index
+	 */
+	private void store(int pIndex, Difference pDiff) {
+		calledBefore = null;
+		changes++;
+		positions1[pIndex] = pDiff.getPosition1();
+		positions2[pIndex] = pDiff.getPosition2();
+		bases1[pIndex] = (byte) pDiff.getBase1();
+		if (pDiff instanceof QualifiedDifference) {
+			QualifiedDifference qd = (QualifiedDifference) pDiff;
+			bases2[pIndex] = (byte) qd.getBase2Actual();
+			setQuality(pIndex,qd.getQuality());
+		} else {
+			bases2[pIndex] = (byte) pDiff.getBase2();
+			if (qualities!=null) {
+				qualities[pIndex] = NO_QUALITY;
+			}
+		}
+	}
+
+	private void ensureCapacity(int pCapacity) {
+		if (pCapacity > positions1.length) {
+			int newCapacity = Math.max(pCapacity, positions1.length + (positions1.length >> 1) + 1);
+			positions1 = Arrays.copyOf(positions1,newCapacity);
+			positions2 = Arrays.copyOf(positions2,newCapacity);
+			bases1 = Arrays.copyOf(bases1,newCapacity);
+			bases2 = Arrays.copyOf(bases2,newCapacity);
+			if (qualities!=null) {
+				qualities = Arrays.copyOf(qualities,newCapacity);
+				Arrays.fill(qualities,size,newCapacity,NO_QUALITY);
+			}
+		}
+	}
+
+	/**
+	 * Shrink the arrays to the number of diffs in the list
+	 */
+	public void trimToSize() {
+		if (size < positions1.length) {
+			positions1 = Arrays.copyOf(positions1,size);
+			positions2 = Arrays.copyOf(positions2,size);
+			bases1 = Arrays.copyOf(bases1,size);
+			bases2 = Arrays.copyOf(bases2,size);
+			if (qualities!=null) {
+				qualities = Arrays.copyOf(qualities,size);
+			}
+		}
+	}
+
+	private void checkIndex(int pIndex) {
+		if (pIndex>=size || pIndex<0) {
+			throw new IndexOutOfBoundsException("Index: " + pIndex + ", Size: " + size);
+		}
+	}
+
+	//////
+	// primitive accessors (these do not check the index against the size)
+
+	/** the position of the i'th diff on sequence 1 (the reference) */
+	public int getPosition1(int i) { return positions1[i]; }
+	/** the position of the i'th diff on sequence 2 */
+	public int getPosition2(int i) { return positions2[i]; }
+	/** the base in sequence 1 of the i'th diff */
+	public char getBase1(int i) { return (char) bases1[i]; }
+	/**
+	 * the base in sequence 2 of the i'th diff. Like QualifiedDifference.getBase2(), 'n' is
+	 * returned if the quality is below the current threshold.
+	 */
+	public char getBase2(int i) {
+		if (qualities!=null && qualities[i]!=NO_QUALITY
+				&& qualities[i]<QualifiedDifference.getQualityThreshold()) {
+			return 'n';
+		}
+		return (char) bases2[i];
+	}
+	/** the base in sequence 2 of the i'th diff regardless of quality */
+	public char getBase2Actual(int i) { return (char) bases2[i]; }
+	/** the quality of the i'th diff, NO_QUALITY if not known */
+	public short getQuality(int i) {
+		return qualities==null ? NO_QUALITY : qualities[i];
+	}
+	/** true if the i'th diff has a quality score (ie: get(i) is a QualifiedDifference) */
+	public boolean hasQuality(int i) {
+		return qualities!=null && qualities[i]!=NO_QUALITY;
+	}
+
+	/** change the base in sequence 1 for the i'th diff */
+	public void setBase1(int i, char pBase) {
+		checkIndex(i);
+		bases1[i] = (byte) pBase;
+		changes++;
+	}
+
+	/** set the quality score for the i'th diff */
+	public void setQuality(int i, short pQuality) {
+		calledBefore = null;
+		changes++;
+		if (qualities==null) {
+			if (pQuality==NO_QUALITY) {
+				return;
+			}
+			qualities = new short [positions1.length];
+			Arrays.fill(qualities,NO_QUALITY);
+		}
+		qualities[i] = pQuality;
+	}
+
+	/**
+	 * Adds pChange to position1 of every diff whose position1 is greater than pPosition. Used when the
+	 * reference sequence gains or loses bases.
+	 * @param pPosition only diffs after this position are moved
+	 * @param pChange amount to move them
+	 */
+	public void shiftPosition1(int pPosition, int pChange) {
+		for (int i = 0; i < size; i++) {
+			if (positions1[i] > pPosition) {
+				positions1[i] += pChange;
+			}
+		}
+		changes++;
+	}
+
+	/**
+	 * Lets anyone sharing this list (eg: a cache of diffs read from a file) tell if it has
+	 * been edited since they last looked.
+	 * @return the number of times the contents of the list have been changed
+	 */
+	public int getChangeCount() {
+		return changes;
+	}
+
+	/**
+	 * Halving search on position1 (diffs are sorted by position on the reference sequence).
+	 * @param pPos position relative to the reference sequence
+	 * @return index of a diff at pPos (or -1 if none)
+	 */
+	public int indexOfPosition1(int pPos) {
+		return halvingSearch(positions1,pPos);
+	}
+
+	/**
+	 * Halving search on position2 (diffs are sorted by position on the aligned sequence).
+	 * @param pPos position relative to the aligned sequence
+	 * @return index of a diff at pPos (or -1 if none)
+	 */
+	public int indexOfPosition2(int pPos) {
+		return halvingSearch(positions2,pPos);
+	}
+
+	private int halvingSearch(int [] pPositions, int pPos) {
+		int lastHigh = size;
+		int lastLow = -1;
+		int index;
+
+		// as long as high and low are at least 2 apart, keep halving
+		while (lastLow + 1 < lastHigh) {
+			index = (lastHigh+lastLow)/2;
+			if (pPositions[index]<pPos) {
+				lastLow = index;
+			} else if (pPositions[index]>pPos) {
+				lastHigh = index;
+			} else {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param pPos position relative to the reference sequence
+	 * @return index of the first diff at or after pPos (size() if there are none)
+	 */
+	public int firstIndexAtOrAfter(int pPos) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (positions1[mid] < pPos) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Counts the diffs between the given positions, skipping any that are 'n' (unknown or low quality).
+	 * Uses a cumulative count, so it takes two halving searches no matter how many diffs are in range.
+	 * @param pStartPos the first position to check (relative to the reference sequence)
+	 * @param pEndPos the last position to check (relative to the reference sequence)
+	 * @return the number of diffs
+	 */
+	public int countInRange(int pStartPos, int pEndPos) {
+		if (pEndPos < pStartPos) {
+			return 0;
+		}
+		return countBefore(firstIndexAtOrAfter(pEndPos+1)) - countBefore(firstIndexAtOrAfter(pStartPos));
+	}
+
+	/**
+	 * @param pIndex an index from 0 to size()
+	 * @return the number of diffs before the given index that are not 'n'
+	 */
+	public int countBefore(int pIndex) {
+		int [] called = calledBefore;
+		if (called==null || calledThreshold!=QualifiedDifference.getQualityThreshold()) {
+			called = buildCalledBefore();
+		}
+		return called[pIndex];
+	}
+
+	private int [] buildCalledBefore() {
+		int [] called = new int [size+1];
+		for (int i = 0; i < size; i++) {
+			called[i+1] = getBase2(i)=='n' ? called[i] : called[i] + 1;
+		}
+		calledThreshold = QualifiedDifference.getQualityThreshold();
+		calledBefore = called;
+		return called;
+	}
+
+	/**
+	 * @return approximate number of heap bytes used by this list
+	 */
+	public long getMemoryUsage() {
+		long bytes = 16 + 4 + 2 + 6 * 8;
+		bytes += 2 * arrayBytes(positions1.length, 4);
+		bytes += 2 * arrayBytes(bases1.length, 1);
+		if (qualities!=null) {
+			bytes += arrayBytes(qualities.length, 2);
+		}
+		if (calledBefore!=null) {
+			bytes += arrayBytes(calledBefore.length, 4);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the heap used to store the given diffs as an ArrayList of Difference objects (the old layout)
+	 * @param pDiffs a list of Difference objects
+	 * @return approximate number of bytes
+	 */
+	public static long getObjectListMemoryUsage(List<Difference> pDiffs) {
+		// ArrayList object plus its reference array
+		long bytes = 24 + arrayBytes(pDiffs.size(), 4);
+		if (pDiffs instanceof PackedDiffList) {
+			PackedDiffList p = (PackedDiffList) pDiffs;
+			for (int i = 0; i < p.size; i++) {
+				bytes += p.hasQuality(i) ? 32 : 24;
+			}
+		} else {
+			for (Difference d : pDiffs) {
+				bytes += d instanceof QualifiedDifference ? 32 : 24;
+			}
+		}
+		return bytes;
+	}
+
+	private static long arrayBytes(int pLength, int pElementSize) {
+		// 16 byte header, padded to 8 bytes
+		return (16 + (long) pLength * pElementSize + 7) & ~7L;
+	}
+}
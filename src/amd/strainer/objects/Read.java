@@ -117,6 +117,47 @@ public class Read extends AbstractAlignedSequence implements Readable {
 		setDisplayGeometry(new ReadDisplayGeometry(this));
 	}
 	
+	/**
+	 * Replaces this read's Alignment and tells the reference sequence and strain to update their
+	 * read position indexes.
+	 * @see amd.strainer.objects.AbstractAlignedSequence#setAlignment(amd.strainer.objects.Alignment)
+	 */
+	public void setAlignment(Alignment pAlignment) {
+		Alignment old = getAlignment();
+		super.setAlignment(pAlignment);
+		ReferenceSequence oldRefSeq = getIndexingSequence(old);
+		ReferenceSequence newRefSeq = getIndexingSequence(pAlignment);
+		if (oldRefSeq!=null && oldRefSeq==newRefSeq) {
+			oldRefSeq.readMoved(this,old);
+		} else {
+			// on to, off of, or between sequences. Rare enough to just rebuild.
+			if (oldRefSeq!=null) {
+				oldRefSeq.invalidateReadIndex();
+			}
+			if (newRefSeq!=null) {
+				newRefSeq.invalidateReadIndex();
+			}
+		}
+		if (strain!=null) {
+			strain.readMoved(this,old);
+		}
+	}
+
+	/*
+	 * The reference sequence whose read index includes this read, if the alignment is to one
+	 */
+	private ReferenceSequence getIndexingSequence(Alignment pAlignment) {
+		if (pAlignment!=null && pAlignment.getSequenceSegment1()!=null) {
+			Sequence refSeq = pAlignment.getSequenceSegment1().getSequence();
+			// only if this read is in the index (not a copy made by a strainer, for example)
+			if (refSeq instanceof ReferenceSequence && 
+					((ReferenceSequence) refSeq).reads.get(getIdInteger())==this) {
+				return (ReferenceSequence) refSeq;
+			}
+		}
+		return null;
+	}
+
 	private Strain strain = null;
 	public Strain getStrain() { return strain; }
 	public void setStrain(Strain pStrain) { strain = pStrain; }
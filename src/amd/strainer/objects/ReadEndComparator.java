@@ -38,24 +38,27 @@
 import java.util.*;
 
 public class ReadEndComparator implements Comparator<Read> {
-	// this is not thread safe.  Another thread can change the dir
-	//  of your comparator
-	private static ReadEndComparator instance = null;
-	private ReadEndComparator() {}
+	public static final int ASC = -1;
+	public static final int DESC = 1;
+	private final int dir;
+	
+	// one instance for each direction. They never change, so they can be shared
+	//  between threads
+	private static final ReadEndComparator ascInstance = new ReadEndComparator(ASC);
+	private static final ReadEndComparator descInstance = new ReadEndComparator(DESC);
+	private ReadEndComparator(int pDir) { dir = pDir; }
+	
 	public static ReadEndComparator getReadEndComparator(int pDir) {
-		if (instance==null) {
-			instance = new ReadEndComparator();
+		if (pDir==ASC) {
+			return ascInstance;
+		} else if (pDir==DESC) {
+			return descInstance;
 		}
-		instance.dir=pDir;
-		return instance;
+		return new ReadEndComparator(pDir);
 	}
 	
-	public static final int ASC = -1;
-	public static final int DESC = 1;
-	private int dir = DESC;
-	
 	public boolean equals(Object pObject) {
-		return pObject==instance;
+		return pObject==this;
 	}
 	
 	public int compare(Read r1, Read r2) throws ClassCastException {
@@ -0,0 +1,326 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */package amd.strainer.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Index of the Reads in a ReadHolder by their position on the reference sequence. Answers "which reads
+ * overlap this range" without looking at every read.
+ * <P>
+ * The reads are kept in an array sorted by start position. The array is split into blocks and the largest
+ * end position in each block is recorded, so blocks that end before the query range can be skipped.
+ * <P>
+ * The index is built the first time it is queried and then kept up to date: the owner (ReferenceSequence
+ * or Strain) calls add(), remove() and move() as reads come, go, or get a new alignment. Added reads wait in
+ * a short unsorted list and removed reads are blanked out in place; both are folded back into the sorted
+ * array once enough of them pile up. Changes that shift many reads at once (like inserting a base in the
+ * reference) should call invalidate() instead, which discards the index until it is next used.
+ *
+ * @author jmeppley
+ *
+ */
+public class ReadIntervalIndex {
+	private static final int BLOCK_SIZE = 32;
+	// merge pending changes into the sorted array once there are this many
+	private static final int MAX_PENDING = 2 * BLOCK_SIZE;
+
+	private static final Comparator<Read> START_COMPARATOR = new Comparator<Read>() {
+		public int compare(Read r1, Read r2) {
+			return r1.getStart() - r2.getStart();
+		}
+	};
+
+	private ReadHolder mHolder = null;
+
+	// false until the index is first used (and after invalidate())
+	private boolean mBuilt = false;
+
+	// sorted by start. Removed reads are left in place as null with an end of Integer.MIN_VALUE
+	private Read [] mReads = null;
+	private int [] mStarts = null;
+	private int [] mEnds = null;
+	private int [] mBlockMaxEnds = null;
+	private int mRemovedCount = 0;
+
+	// reads added since the arrays were last sorted
+	private List<Read> mAdded = new ArrayList<Read>();
+
+	/**
+	 * @param pHolder the ReferenceSequence or Strain whose reads are indexed
+	 */
+	public ReadIntervalIndex(ReadHolder pHolder) {
+		mHolder = pHolder;
+	}
+
+	/**
+	 * Discard the index. It will be rebuilt the next time it is used.
+	 */
+	public synchronized void invalidate() {
+		mBuilt = false;
+		mReads = null;
+		mStarts = null;
+		mEnds = null;
+		mBlockMaxEnds = null;
+		mRemovedCount = 0;
+		mAdded.clear();
+	}
+
+	/**
+	 * Add a read to the index (at its current position).
+	 * @param pRead the new Read
+	 */
+	public synchronized void add(Read pRead) {
+		if (!mBuilt || pRead.getAlignment()==null) {
+			return;
+		}
+		mAdded.add(pRead);
+		if (mAdded.size() > MAX_PENDING && mAdded.size() > mReads.length) {
+			// more new reads than old ones: cheaper to start over
+			invalidate();
+		}
+	}
+
+	/**
+	 * Remove a read from the index. The read must not have moved since it was indexed.
+	 * @param pRead the Read to remove
+	 */
+	public synchronized void remove(Read pRead) {
+		if (mBuilt && pRead.getAlignment()!=null) {
+			removeAt(pRead,pRead.getStart());
+		}
+	}
+
+	/**
+	 * Update the index after a read's alignment has been replaced.
+	 * @param pRead the Read (with its new alignment)
+	 * @param pOldAlignment the alignment the read had when it was indexed (may be null)
+	 */
+	public synchronized void move(Read pRead, Alignment pOldAlignment) {
+		if (!mBuilt) {
+			return;
+		}
+		if (pOldAlignment==null) {
+			// unaligned reads aren't indexed, so there's no way to tell if this one belongs here
+			invalidate();
+		} else if (removeAt(pRead,pOldAlignment.getStart())) {
+			add(pRead);
+		}
+	}
+
+	/**
+	 * @param pStart first position (relative to the reference sequence)
+	 * @param pEnd last position (relative to the reference sequence)
+	 * @return a List of all Reads that overlap the given range, sorted by start position
+	 */
+	public synchronized List<Read> getReadsOverlapping(int pStart, int pEnd) {
+		if (!mBuilt) {
+			build();
+		} else if (mAdded.size() + mRemovedCount > MAX_PENDING) {
+			merge();
+		}
+
+		List<Read> overlapping = new ArrayList<Read>();
+
+		// only reads that start before the range ends can overlap
+		int last = firstStartAfter(pEnd);
+
+		for (int block = 0; block * BLOCK_SIZE < last; block++) {
+			// skip blocks where every read ends before the range
+			if (mBlockMaxEnds[block] < pStart) {
+				continue;
+			}
+			int blockEnd = Math.min(last, (block + 1) * BLOCK_SIZE);
+			for (int i = block * BLOCK_SIZE; i < blockEnd; i++) {
+				if (mEnds[i] >= pStart) {
+					overlapping.add(mReads[i]);
+				}
+			}
+		}
+
+		if (mAdded.size()==0) {
+			return overlapping;
+		}
+
+		List<Read> added = new ArrayList<Read>();
+		for (Read read : mAdded) {
+			if (read.getStart() <= pEnd && read.getEnd() >= pStart) {
+				added.add(read);
+			}
+		}
+		if (added.size()==0) {
+			return overlapping;
+		}
+		Collections.sort(added,START_COMPARATOR);
+		return mergeSorted(overlapping,added);
+	}
+
+	/**
+	 * @param pPos a position relative to the reference sequence
+	 * @return a List of all Reads that include the given position, sorted by start position
+	 */
+	public List<Read> getReadsCovering(int pPos) {
+		return getReadsOverlapping(pPos,pPos);
+	}
+
+	/*
+	 * Build the sorted arrays from scratch
+	 */
+	private void build() {
+		List<Read> readList = new ArrayList<Read>();
+		Iterator<Read> it = mHolder.getReadIterator();
+		while (it.hasNext()) {
+			Read read = it.next();
+			if (read.getAlignment()!=null) {
+				readList.add(read);
+			}
+		}
+
+		Read [] reads = readList.toArray(new Read [readList.size()]);
+		// (the shared ReadStartComparator is not thread safe, so use our own)
+		Arrays.sort(reads,START_COMPARATOR);
+		setReads(reads);
+
+		mAdded.clear();
+		mBuilt = true;
+	}
+
+	/*
+	 * Fold the added and removed reads into the sorted arrays. Only the added reads need sorting.
+	 */
+	private void merge() {
+		List<Read> kept = new ArrayList<Read>(mReads.length - mRemovedCount);
+		for (Read read : mReads) {
+			if (read!=null) {
+				kept.add(read);
+			}
+		}
+		Collections.sort(mAdded,START_COMPARATOR);
+		List<Read> merged = mergeSorted(kept,mAdded);
+		setReads(merged.toArray(new Read [merged.size()]));
+		mAdded.clear();
+	}
+
+	private void setReads(Read [] pReads) {
+		mReads = pReads;
+		mStarts = new int [pReads.length];
+		mEnds = new int [pReads.length];
+		mBlockMaxEnds = new int [(pReads.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		for (int i = 0; i < pReads.length; i++) {
+			mStarts[i] = pReads[i].getStart();
+			mEnds[i] = pReads[i].getEnd();
+			int block = i / BLOCK_SIZE;
+			if (i % BLOCK_SIZE == 0 || mEnds[i] > mBlockMaxEnds[block]) {
+				mBlockMaxEnds[block] = mEnds[i];
+			}
+		}
+		mRemovedCount = 0;
+	}
+
+	/*
+	 * Blank out the read in the sorted arrays (the block max ends are left alone, they are still an upper
+	 * bound), or drop it from the added list.
+	 * @return false if the read wasn't in the index
+	 */
+	private boolean removeAt(Read pRead, int pStart) {
+		for (int i = mAdded.size() - 1; i >= 0; i--) {
+			if (mAdded.get(i)==pRead) {
+				mAdded.remove(i);
+				return true;
+			}
+		}
+
+		int i = firstStartAfter(pStart - 1);
+		while (i < mStarts.length && mStarts[i]==pStart) {
+			if (mReads[i]==pRead) {
+				blank(i);
+				return true;
+			}
+			i++;
+		}
+
+		// the read was moved without telling us
+		for (i = 0; i < mReads.length; i++) {
+			if (mReads[i]==pRead) {
+				blank(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void blank(int pIndex) {
+		mReads[pIndex] = null;
+		mEnds[pIndex] = Integer.MIN_VALUE;
+		mRemovedCount++;
+	}
+
+	// index of the first read that starts after the given position
+	private int firstStartAfter(int pPos) {
+		int low = 0;
+		int high = mStarts.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mStarts[mid] <= pPos) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static List<Read> mergeSorted(List<Read> pList1, List<Read> pList2) {
+		List<Read> merged = new ArrayList<Read>(pList1.size() + pList2.size());
+		int i = 0;
+		int j = 0;
+		while (i < pList1.size() && j < pList2.size()) {
+			if (pList2.get(j).getStart() < pList1.get(i).getStart()) {
+				merged.add(pList2.get(j++));
+			} else {
+				merged.add(pList1.get(i++));
+			}
+		}
+		merged.addAll(pList1.subList(i,pList1.size()));
+		merged.addAll(pList2.subList(j,pList2.size()));
+		return merged;
+	}
+}
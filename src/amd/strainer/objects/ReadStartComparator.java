@@ -40,34 +40,31 @@ import java.util.*;
 public class ReadStartComparator implements Comparator<Readable> {
 	// TODO:3 merge with StrainStartComparator using SequenceSegment
 	
-	// this is not thread safe.  Another thread can change the dir
-	//  of your comparator
+	public static final int ASC = -1;
+	public static final int DESC = 1;
+	private final int dir;
 	
-	private static ReadStartComparator instance = null;
-	private ReadStartComparator() {}
+	// one instance for each direction. They never change, so they can be shared
+	//  between threads
+	private static final ReadStartComparator ascInstance = new ReadStartComparator(ASC);
+	private static final ReadStartComparator descInstance = new ReadStartComparator(DESC);
+	private ReadStartComparator(int pDir) { dir = pDir; }
 	
 	public static ReadStartComparator getReadStartComparator(int pDir) {
-		if (instance==null) {
-			instance = new ReadStartComparator();
+		if (pDir==ASC) {
+			return ascInstance;
+		} else if (pDir==DESC) {
+			return descInstance;
 		}
-		instance.dir=pDir;
-		return instance;
+		return new ReadStartComparator(pDir);
 	}
 	
 	public static ReadStartComparator getReadStartComparator() {
-		if (instance==null) {
-			instance = new ReadStartComparator();
-		}
-		instance.dir=ASC;
-		return instance;
+		return ascInstance;
 	}
 	
-	public static final int ASC = -1;
-	public static final int DESC = 1;
-	private int dir = DESC;
-	
 	public boolean equals(Object pObject) {
-		return pObject==instance;
+		return pObject==this;
 	}
 	
 	public int compare(Readable r1, Readable r2) throws ClassCastException {
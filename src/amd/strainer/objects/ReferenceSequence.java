@@ -36,6 +36,8 @@
  ***** END LICENSE BLOCK ***** */
 package amd.strainer.objects;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -46,6 +48,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import amd.strainer.DuplicateReadNameException;
 
@@ -60,7 +64,7 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 	/**
 	 * The reads aligned to this Sequence
 	 */
-	public HashMap<Integer, Read> reads = new HashMap<Integer, Read>();
+	public HashMap<Integer, Read> reads = new ReadMap();
 	/**
 	 * The Strains into which the Reads are grouped
 	 */
@@ -89,6 +93,53 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 		return reads.values().iterator();
 	}
 
+	// position index of reads (kept current by ReadMap, Read and setBase())
+	private ReadIntervalIndex mReadIndex = new ReadIntervalIndex(this);
+
+	/**
+	 * @param pStart
+	 *            first position
+	 * @param pEnd
+	 *            last position
+	 * @return all Reads aligned to any part of the given range, sorted by
+	 *         start position
+	 */
+	public List<Read> readsOverlapping(int pStart, int pEnd) {
+		return mReadIndex.getReadsOverlapping(pStart, pEnd);
+	}
+
+	/**
+	 * @param pPos
+	 *            a position on this sequence
+	 * @return all Reads aligned to the given position, sorted by start
+	 *         position
+	 */
+	public List<Read> readsCovering(int pPos) {
+		return mReadIndex.getReadsCovering(pPos);
+	}
+
+	/**
+	 * Tell the read index that many reads have moved (or that a read has moved
+	 * on to or off of this sequence). The index is rebuilt the next time it is
+	 * used.
+	 */
+	void invalidateReadIndex() {
+		mReadIndex.invalidate();
+	}
+
+	/**
+	 * Tell the read index that a read has moved. This is called by Read when
+	 * its Alignment is replaced.
+	 * 
+	 * @param pRead
+	 *            the Read (with its new Alignment)
+	 * @param pOldAlignment
+	 *            the Alignment it had before
+	 */
+	void readMoved(Read pRead, Alignment pOldAlignment) {
+		mReadIndex.move(pRead, pOldAlignment);
+	}
+
 	/**
 	 * The path of the file (if one was used) from which the strains associated
 	 * with this ReferenceSequence were read
@@ -277,7 +328,9 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 				// rebuild strain alig from reads or maybe just fix start/end
 				// and clear diffs
 				moveStrain(strain, position, change);
+				strain.invalidateReadIndex();
 			}
+			invalidateReadIndex();
 		}
 	}
 
@@ -323,12 +376,7 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 		if (moveAlignedSequence(pRead, position, change)) {
 			// if it moved, adjust postion of diffs so they are in the correct
 			// spot
-			// List<Difference> diffs = pRead.getAlignment().getDiffs();
-			for (Difference diff : pRead.getAlignment().getDiffs()) {
-				if (diff.getPosition1() > position) {
-					diff.setPosition1(diff.getPosition1() + change);
-				}
-			}
+			pRead.getAlignment().getPackedDiffs().shiftPosition1(position,change);
 		}
 	}
 
@@ -342,7 +390,9 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 			boolean passedPosition = false;
 
 			// loop over diffs
-			for (Difference diff : aSeq.getAlignment().getDiffs()) {
+			PackedDiffList oldDiffs = aSeq.getAlignment().getPackedDiffs();
+			for (int i = 0; i < oldDiffs.size(); i++) {
+				Difference diff = oldDiffs.get(i);
 				if (diff.getPosition1() < position) {
 					newDiffs.add(diff);
 				} else if (diff.getPosition1() == position) {
@@ -355,7 +405,7 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 						passedPosition = true;
 					} else {
 						// change diff
-						diff.setBase1(newBase);
+						oldDiffs.setBase1(i,newBase);
 						// otherwise, diffs are unchanged...
 						return;
 					}
@@ -407,12 +457,8 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 		}
 
 		// add each read to overlapped diffs
-		for (Read read : reads.values()) {
-			SortedMap<Integer, List<Read>> coveredDiffMap = diffSS.subMap(read
-					.getStart(), read.getEnd() + 1);
-			for (List<Read> readList : coveredDiffMap.values()) {
-				readList.add(read);
-			}
+		for (Map.Entry<Integer, List<Read>> e : diffSS.entrySet()) {
+			e.getValue().addAll(readsCovering(e.getKey()));
 		}
 
 		// update each diff
@@ -442,4 +488,321 @@ public class ReferenceSequence extends AbstractSequence implements ReadHolder {
 		// }
 		return mReadIdMap;
 	}
+
+	/*
+	 * HashMap that keeps the read index current as reads are added or
+	 * removed. The reads map is public, so every way of changing it is
+	 * covered here: the Map methods, and the keySet(), values() and
+	 * entrySet() views along with their iterators and Entry.setValue().
+	 */
+	private class ReadMap extends HashMap<Integer, Read> {
+		private static final long serialVersionUID = 1L;
+
+		private void changed(Read pOld, Read pNew) {
+			if (pOld != pNew) {
+				if (pOld != null) {
+					mReadIndex.remove(pOld);
+				}
+				if (pNew != null) {
+					mReadIndex.add(pNew);
+				}
+			}
+		}
+
+		@Override
+		public Read put(Integer pKey, Read pValue) {
+			Read old = super.put(pKey, pValue);
+			changed(old, pValue);
+			return old;
+		}
+
+		@Override
+		public void putAll(Map<? extends Integer, ? extends Read> pMap) {
+			for (Map.Entry<? extends Integer, ? extends Read> entry : pMap
+					.entrySet()) {
+				put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		@Override
+		public Read putIfAbsent(Integer pKey, Read pValue) {
+			Read old = super.putIfAbsent(pKey, pValue);
+			if (old == null) {
+				changed(null, pValue);
+			}
+			return old;
+		}
+
+		@Override
+		public Read remove(Object pKey) {
+			Read old = super.remove(pKey);
+			changed(old, null);
+			return old;
+		}
+
+		@Override
+		public boolean remove(Object pKey, Object pValue) {
+			if (super.remove(pKey, pValue)) {
+				changed((Read) pValue, null);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public Read replace(Integer pKey, Read pValue) {
+			if (!containsKey(pKey)) {
+				return null;
+			}
+			Read old = super.replace(pKey, pValue);
+			changed(old, pValue);
+			return old;
+		}
+
+		@Override
+		public boolean replace(Integer pKey, Read pOldValue, Read pNewValue) {
+			if (super.replace(pKey, pOldValue, pNewValue)) {
+				changed(pOldValue, pNewValue);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void replaceAll(
+				BiFunction<? super Integer, ? super Read, ? extends Read> pFunction) {
+			for (Map.Entry<Integer, Read> entry : super.entrySet()) {
+				Read old = entry.getValue();
+				Read value = pFunction.apply(entry.getKey(), old);
+				entry.setValue(value);
+				changed(old, value);
+			}
+		}
+
+		@Override
+		public Read compute(Integer pKey,
+				BiFunction<? super Integer, ? super Read, ? extends Read> pFunction) {
+			Read old = get(pKey);
+			Read value = super.compute(pKey, pFunction);
+			changed(old, value);
+			return value;
+		}
+
+		@Override
+		public Read computeIfAbsent(Integer pKey,
+				Function<? super Integer, ? extends Read> pFunction) {
+			Read old = get(pKey);
+			Read value = super.computeIfAbsent(pKey, pFunction);
+			changed(old, value);
+			return value;
+		}
+
+		@Override
+		public Read computeIfPresent(Integer pKey,
+				BiFunction<? super Integer, ? super Read, ? extends Read> pFunction) {
+			Read old = get(pKey);
+			Read value = super.computeIfPresent(pKey, pFunction);
+			changed(old, value);
+			return value;
+		}
+
+		@Override
+		public Read merge(Integer pKey, Read pValue,
+				BiFunction<? super Read, ? super Read, ? extends Read> pFunction) {
+			Read old = get(pKey);
+			Read value = super.merge(pKey, pValue, pFunction);
+			changed(old, value);
+			return value;
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			mReadIndex.invalidate();
+		}
+
+		/*
+		 * A copy shouldn't update this sequence's index
+		 */
+		@Override
+		public Object clone() {
+			return new HashMap<Integer, Read>(this);
+		}
+
+		@Override
+		public Set<Integer> keySet() {
+			return new AbstractSet<Integer>() {
+				@Override
+				public Iterator<Integer> iterator() {
+					return new ViewIterator<Integer>() {
+						@Override
+						Integer get(Map.Entry<Integer, Read> pEntry) {
+							return pEntry.getKey();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return ReadMap.this.size();
+				}
+
+				@Override
+				public boolean contains(Object pKey) {
+					return ReadMap.this.containsKey(pKey);
+				}
+
+				@Override
+				public boolean remove(Object pKey) {
+					if (ReadMap.this.containsKey(pKey)) {
+						ReadMap.this.remove(pKey);
+						return true;
+					}
+					return false;
+				}
+
+				@Override
+				public void clear() {
+					ReadMap.this.clear();
+				}
+			};
+		}
+
+		@Override
+		public Collection<Read> values() {
+			return new AbstractCollection<Read>() {
+				@Override
+				public Iterator<Read> iterator() {
+					return new ViewIterator<Read>() {
+						@Override
+						Read get(Map.Entry<Integer, Read> pEntry) {
+							return pEntry.getValue();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return ReadMap.this.size();
+				}
+
+				@Override
+				public boolean contains(Object pValue) {
+					return ReadMap.this.containsValue(pValue);
+				}
+
+				@Override
+				public void clear() {
+					ReadMap.this.clear();
+				}
+			};
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Read>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, Read>>() {
+				@Override
+				public Iterator<Map.Entry<Integer, Read>> iterator() {
+					return new ViewIterator<Map.Entry<Integer, Read>>() {
+						@Override
+						Map.Entry<Integer, Read> get(
+								Map.Entry<Integer, Read> pEntry) {
+							return new ReadEntry(pEntry);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return ReadMap.this.size();
+				}
+
+				@Override
+				public boolean contains(Object pEntry) {
+					return ReadMap.super.entrySet().contains(pEntry);
+				}
+
+				@Override
+				public boolean remove(Object pEntry) {
+					if (contains(pEntry)) {
+						ReadMap.this.remove(((Map.Entry<?, ?>) pEntry).getKey());
+						return true;
+					}
+					return false;
+				}
+
+				@Override
+				public void clear() {
+					ReadMap.this.clear();
+				}
+			};
+		}
+
+		/*
+		 * Iterates over the map's entries and updates the index when an entry
+		 * is removed
+		 */
+		private abstract class ViewIterator<E> implements Iterator<E> {
+			private Iterator<Map.Entry<Integer, Read>> mEntries = ReadMap.super
+					.entrySet().iterator();
+			private Read mLast = null;
+
+			abstract E get(Map.Entry<Integer, Read> pEntry);
+
+			public boolean hasNext() {
+				return mEntries.hasNext();
+			}
+
+			public E next() {
+				Map.Entry<Integer, Read> entry = mEntries.next();
+				mLast = entry.getValue();
+				return get(entry);
+			}
+
+			public void remove() {
+				mEntries.remove();
+				changed(mLast, null);
+			}
+		}
+
+		/*
+		 * Map entry that updates the index when its value is replaced
+		 */
+		private class ReadEntry implements Map.Entry<Integer, Read> {
+			private Map.Entry<Integer, Read> mEntry;
+
+			ReadEntry(Map.Entry<Integer, Read> pEntry) {
+				mEntry = pEntry;
+			}
+
+			public Integer getKey() {
+				return mEntry.getKey();
+			}
+
+			public Read getValue() {
+				return mEntry.getValue();
+			}
+
+			public Read setValue(Read pValue) {
+				Read old = mEntry.setValue(pValue);
+				changed(old, pValue);
+				return old;
+			}
+
+			@Override
+			public boolean equals(Object pObject) {
+				return mEntry.equals(pObject);
+			}
+
+			@Override
+			public int hashCode() {
+				return mEntry.hashCode();
+			}
+
+			@Override
+			public String toString() {
+				return mEntry.toString();
+			}
+		}
+	}
 }
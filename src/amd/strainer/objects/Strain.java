@@ -84,6 +84,100 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 	 * @return an iterator over the Readables in this Strain
 	 */
 	public Iterator<Readable> getReadableIterator() {return reads.values().iterator(); }
+
+	// position index of this strain's reads (updated whenever reads are added or removed)
+	private ReadIntervalIndex readIndex = new ReadIntervalIndex(this);
+
+	/**
+	 * @param pStart first position (relative to the reference sequence)
+	 * @param pEnd last position (relative to the reference sequence)
+	 * @return the Reads (not Readables) in this strain that overlap the given range, sorted by start
+	 */
+	public List<Read> readsOverlapping(int pStart, int pEnd) {
+		return readIndex.getReadsOverlapping(pStart,pEnd);
+	}
+
+	/**
+	 * @param pPos a position relative to the reference sequence
+	 * @return the Reads (not Readables) in this strain that include the given position, sorted by start
+	 */
+	public List<Read> readsCovering(int pPos) {
+		return readIndex.getReadsCovering(pPos);
+	}
+
+	/**
+	 * Tell the read index (and the diff counts) that many reads have been moved
+	 */
+	void invalidateReadIndex() {
+		readIndex.invalidate();
+		pileup.invalidate();
+	}
+
+	/**
+	 * Tell the read index (and the diff counts) that one read's alignment has been replaced
+	 * @param pRead the Read (with its new alignment)
+	 * @param pOldAlignment the alignment it had before
+	 */
+	void readMoved(Read pRead, Alignment pOldAlignment) {
+		readIndex.move(pRead,pOldAlignment);
+		pileup.invalidate();
+	}
+	
+	// counts of the Readables' diffs at each position (updated whenever reads are added or removed)
+	private StrainPileup pileup = new StrainPileup();
+
+	/**
+	 * Synchronized because strainer threads can ask for the consensus of the same strain at once.
+	 * @return the diff counts used by StrainAlignment to build the consensus (recounted first if out of date)
+	 */
+	synchronized StrainPileup getPileup() {
+		if (!pileup.isCurrent()) {
+			pileup.rebuild(getReadableIterator());
+		}
+		return pileup;
+	}
+	
+	/**
+	 * Tell the diff counts that the diffs of this strain's reads have changed
+	 */
+	void invalidatePileup() {
+		pileup.invalidate();
+	}
+	
+	/*
+	 * All changes to the reads map go through here and removeFromMap() so the diff counts and the read
+	 * index stay current
+	 */
+	private Readable putInMap(Integer pId, Readable pReadable) {
+		Readable old = reads.put(pId,pReadable);
+		if (old!=null) {
+			pileup.remove(old);
+			updateReadIndex(old,false);
+		}
+		pileup.add(pReadable);
+		updateReadIndex(pReadable,true);
+		return old;
+	}
+	
+	private Readable removeFromMap(Integer pId) {
+		Readable old = reads.remove(pId);
+		if (old!=null) {
+			pileup.remove(old);
+			updateReadIndex(old,false);
+		}
+		return old;
+	}
+
+	private void updateReadIndex(Readable pReadable, boolean pAdd) {
+		if (pReadable instanceof Clone) {
+			updateReadIndex(((Clone) pReadable).reads[0],pAdd);
+			updateReadIndex(((Clone) pReadable).reads[1],pAdd);
+		} else if (pAdd) {
+			readIndex.add((Read) pReadable);
+		} else {
+			readIndex.remove((Read) pReadable);
+		}
+	}
 	
 	/**
 	 * Return a collection of this Strain's Readables
@@ -152,17 +246,17 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 
 		if (pRead.getMatePair()==null || pRead.isBadClone()) {
 			// if it has no mate pair (or it's too far away), just add it solo
-			ret = reads.put(pReadId,pRead);
+			ret = putInMap(pReadId,pRead);
 		} else {
 			// look for matepair (first solo then as Clone object)
 			Integer matePairId = pRead.getMatePair().getIdInteger();
 			Integer cloneId = pRead.getClone().getIdInteger();
-			Read matePair = (Read) reads.remove(matePairId);
+			Read matePair = (Read) removeFromMap(matePairId);
 			if (matePair!=null) {
 				// put clone object into strain (in place of removed MAte Pair)
 				pRead.setInClone(true);
 				matePair.setInClone(true);
-				ret = reads.put(cloneId,pRead.getClone());
+				ret = putInMap(cloneId,pRead.getClone());
 				if (stealReads) {
 //					pRead.getClone().strain = this;
 					pRead.getClone().setStrain(this);
@@ -172,7 +266,7 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 				ret = reads.get(cloneId);
 				if (ret==null) {
 					// only add read if it's not already here
-					ret = reads.put(pReadId,pRead);
+					ret = putInMap(pReadId,pRead);
 				}
 			}
 		}
@@ -201,7 +295,7 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 		removeRead(pClone.reads[1]);
 		
 		// add mate pair
-		Object ret = reads.put(pCloneId,pClone);
+		Object ret = putInMap(pCloneId,pClone);
 
 		// don't increment if we replaced one  (that should never happen, but just in case...)
 		if (ret==null) {
@@ -253,13 +347,13 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 	 * @return true if the Read was in this Strain
 	 */
 	public boolean removeRead(Read pRead) {
-		Object r = reads.remove(pRead.getIdInteger());
+		Object r = removeFromMap(pRead.getIdInteger());
 		if (r==null) {
 			// check if it has a mate pair
 			if (pRead.getMatePair()!=null) {
 				// if it does...
 				// first look for Clone containing this read
-				r = reads.remove(pRead.getClone().getIdInteger());
+				r = removeFromMap(pRead.getClone().getIdInteger());
 				if (r!=null) {
 					//System.out.println("   found MP, breaking up");
 					if (stealReads) {
@@ -272,7 +366,7 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 					
 					// put matePair(the other read) back in hash map by itself
 					try {
-						reads.put(pRead.getMatePair().getIdInteger(),pRead.getMatePair());
+						putInMap(pRead.getMatePair().getIdInteger(),pRead.getMatePair());
 					} catch (NullPointerException e) {
 						System.out.println(r);
 						System.out.println(pRead);
@@ -306,7 +400,7 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 	 * @return true if the Clone was in the Strain.
 	 */
 	public boolean removeClone(Clone pClone) {
-		Object clone = reads.remove(pClone.getIdInteger());
+		Object clone = removeFromMap(pClone.getIdInteger());
 		if (clone==null) {
 			return false;
 		} else {
@@ -397,6 +491,9 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 		Strain c = (Strain) super.clone();
 		c.reads = new HashMap<Integer,Readable>();
 		c.reads.putAll(reads);
+		c.readIndex = new ReadIntervalIndex(c);
+		c.pileup = new StrainPileup();
+		c.pileup.invalidate();
 		c.size=getSize();
 		c.stealReads = stealReads;
 		return c;
@@ -481,6 +578,8 @@ public class Strain extends AbstractAlignedSequence implements ReadHolder {
 	
 	public void close() {
 		reads.clear();
+		readIndex.invalidate();
+		pileup.clear();
 		if (getAlignment()!=null) {
 			getAlignment().setDiffs(null);
 			setAlignment(null);
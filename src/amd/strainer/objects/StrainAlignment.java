@@ -38,9 +38,6 @@
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 /**
  * Extension of the alignment object specifically for strains.  Will automatcially build Difference array and List of Unknown Regions
@@ -53,6 +50,10 @@ public class StrainAlignment extends Alignment {
 	
 	private Strain parent = null;
 	int [] strainGaps = null;
+	// bounds of the unknown regions for isUncovered(), built from holesSource
+	private List<SequenceSegment> holesSource = null;
+	private int [] holeStarts = null;
+	private int [] holeEnds = null;
 
 	/**
 	 * Creates a new StrainAlignment object with the following parameters. The direction is set
@@ -89,164 +90,77 @@ public class StrainAlignment extends Alignment {
 	}
 	
 	/**
+	 * The diffs are calculated from the reads the first time they are asked for (synchronized, since
+	 * strainer threads can share a strain).
 	 * @return Returns the list of differences.
 	 */
 	public List<Difference> getDiffs() {
-		if (super.getDiffs()==null) {
-			try {
-				setDiffs(calculateDiffs());
-			} catch (Exception e) {
-				e.printStackTrace(System.err);
-				return new ArrayList<Difference>();
+		List<Difference> diffs = super.getDiffs();
+		if (diffs==null) {
+			synchronized (this) {
+				diffs = super.getDiffs();
+				if (diffs==null) {
+					try {
+						setDiffs(calculateDiffs());
+					} catch (Exception e) {
+						e.printStackTrace(System.err);
+						return new ArrayList<Difference>();
+					}
+					diffs = super.getDiffs();
+				}
 			}
-		}		
-		return super.getDiffs();
+		}
+		return diffs;
+	}
+
+	/**
+	 * Clearing the diffs (setDiffs(null)) means something about the reads has changed, so the
+	 * Strain's diff counts are rebuilt, too, the next time they are needed.
+	 * @see amd.strainer.objects.Alignment#setDiffs(java.util.List)
+	 */
+	public void setDiffs(List<Difference> pDiffs) {
+		if (pDiffs==null && parent!=null) {
+			parent.invalidatePileup();
+		}
+		super.setDiffs(pDiffs);
 	}
 
 	private List<Difference> calculateDiffs() {
 	 	// merge diffs from all reads
 		List<Difference> diffs = new ArrayList<Difference>(); 
 
-		// get a sorted map of all diffs grouped by position 			
-		SortedMap<Integer,List<Difference>> diffListsByPos = new TreeMap<Integer,List<Difference>>();
-
-		// loop over readables...build map
-		Iterator<Readable> rit = parent.getReadableIterator();
-		while (rit.hasNext()) {
-			Readable read = rit.next();
-			for (Difference diff : read.getAlignment().getDiffs()) {
-				Integer pos = new Integer(diff.getPosition1());
-				List<Difference> posDiffs = diffListsByPos.get(pos);
-				if (posDiffs == null) {
-					posDiffs = new ArrayList<Difference>();
-					diffListsByPos.put(pos,posDiffs);
-				}
-				posDiffs.add(diff);
-			}
-		}
-		
-//		int [] diffCoverage = new int [diffListsByPos.size()];
-		SortedMap<Integer,Short> diffCoverageMap = new TreeMap<Integer,Short>();
-		
-		// loop over readables build table of coverage at each diff
-		rit = parent.getReadableIterator();
-		while (rit.hasNext()) {
-			Readable read = rit.next();
-			if (read instanceof Read) {
-				SortedMap<Integer,List<Difference>> coveredDiffMap = diffListsByPos.subMap(read.getStart(),read.getEnd()+1);
-				for (Integer diffPos : coveredDiffMap.keySet()) {
-					Short coverage = diffCoverageMap.get(diffPos);
-					if (coverage==null) {
-						diffCoverageMap.put(diffPos,(short)1);
-					} else {
-						diffCoverageMap.put(diffPos, (short)(coverage.shortValue()+1));
-					}
-				}
-			} else {
-				Clone clone = (Clone) read;
-				SortedMap<Integer,List<Difference>> coveredDiffMap = diffListsByPos.subMap(clone.reads[0].getStart(),clone.reads[0].getEnd()+1);
-				for (Integer diffPos : coveredDiffMap.keySet()) {
-					Short coverage = diffCoverageMap.get(diffPos);
-					if (coverage==null) {
-						diffCoverageMap.put(diffPos,(short)1);
-					} else {
-						diffCoverageMap.put(diffPos, (short)(coverage.shortValue()+1));
-					}
-				}
-				coveredDiffMap = diffListsByPos.subMap(clone.reads[1].getStart(),clone.reads[1].getEnd()+1);
-				for (Integer diffPos : coveredDiffMap.keySet()) {
-					Short coverage = diffCoverageMap.get(diffPos);
-					if (coverage==null) {
-						diffCoverageMap.put(diffPos,(short)1);
-					} else {
-						diffCoverageMap.put(diffPos, (short)(coverage.shortValue()+1));
-					}
-				}
-			}
-		}
+		// the strain keeps counts of its reads' diffs at each position
+		StrainPileup.Columns columns = parent.getPileup().getColumns();
 		
 		/*
-		 * get sorted list of positions, loop
+		 * loop over positions with diffs (in order)
 		 */
 		ArrayList<Integer> refSeqGaps = new ArrayList<Integer>();
 		ArrayList<Integer> strainGaps = new ArrayList<Integer>();
-		for (Map.Entry<Integer,List<Difference>> e : diffListsByPos.entrySet()) {
-			List<Difference> posDiffs = e.getValue();
-			
-//			System.out.println("getting consensus at position " + e.getKey());
-
+		for (int i = 0; i < columns.size; i++) {
 			// count the different things that can happen at this diff
 			//  some will have a different base or a gap
-			int readBaseCountA = 0;
-			int readBaseCountG = 0;
-			int readBaseCountC = 0;
-			int readBaseCountT = 0;
-			int readBaseCountN = 0;
-			int readBaseCountX = 0;
-			int readBaseCountGap = 0;
+			int readBaseCountA = columns.getCount(i,0);
+			int readBaseCountC = columns.getCount(i,1);
+			int readBaseCountG = columns.getCount(i,2);
+			int readBaseCountT = columns.getCount(i,3);
+			int readBaseCountN = columns.getCount(i,4);
+			int readBaseCountX = columns.getCount(i,5);
+			int readBaseCountGap = columns.getCount(i,StrainPileup.GAP);
 			//  some will have a base where the reference sequence has a gap
-			int refSeqGapCountA = 0;
-			int refSeqGapCountG = 0;
-			int refSeqGapCountC = 0;
-			int refSeqGapCountT = 0;
-			int refSeqGapCountN = 0;
-			int refSeqGapCountX = 0;
-			int refSeqGapCountGap = 0;
-				
-			// loop over all diffs at this position
-			Iterator<Difference> rdit = posDiffs.iterator();
-			Difference diff = null;
-			while (rdit.hasNext()) {
-				diff = rdit.next();
-//				System.out.println(diff.toString());
-				
-				if (diff.getBase1()=='-') {
-					// refSeq is gapped, increment the appropriate counter
-					switch (Character.toLowerCase(diff.getBase2())){
-					case 'a':  refSeqGapCountA++; break;
-					case 'c':  refSeqGapCountC++; break;
-					case 'g':  refSeqGapCountG++; break;
-					case 't':  refSeqGapCountT++; break;
-					case 'n':  refSeqGapCountN++; break;
-					case 'x':  refSeqGapCountX++; break;
-					case '-':  refSeqGapCountGap++; break;
-					}
-				} else {
-					// refSeq is NOT gapped, increment the appropriate counter
-					switch (Character.toLowerCase(diff.getBase2())) {
-					case 'a':  readBaseCountA++; break;
-					case 'c':  readBaseCountC++; break;
-					case 'g':  readBaseCountG++; break;
-					case 't':  readBaseCountT++; break;
-					case 'n':  readBaseCountN++; break;
-					case 'x':  readBaseCountX++; break;
-					case '-':  readBaseCountGap++; break;
-					}
-				}    
-			}
+			int refSeqGapCountA = columns.getCount(i,StrainPileup.BASES);
+			int refSeqGapCountC = columns.getCount(i,StrainPileup.BASES+1);
+			int refSeqGapCountG = columns.getCount(i,StrainPileup.BASES+2);
+			int refSeqGapCountT = columns.getCount(i,StrainPileup.BASES+3);
+			int refSeqGapCountN = columns.getCount(i,StrainPileup.BASES+4);
+			int refSeqGapCountX = columns.getCount(i,StrainPileup.BASES+5);
 			
 			// get this position on the refSeq
-			int ePos = diff.getPosition1();
+			int ePos = columns.positions[i];
 			int sPos = ePos - getStart() + 1 + refSeqGaps.size() - strainGaps.size();
 			
-//			// count the number of reads that overlap this position
-//			// (this is slow, but I don't have an alternative)
-//			int readCount = 0;
-////			System.out.println("parent has " + parent.size + " reads and spans " + parent.getStart() + " to " + parent.getEnd());
-//			Iterator<Read> it = parent.getReadIterator();
-//			while (it.hasNext()) {
-//				Read r = it.next();
-//				boolean intersects = r.intersectsRefereceSequenceAt(ePos);
-////				System.out.println("Read " + r.getName() + " (" + r.getStart() + "-" + r.getEnd() + ":" + intersects);
-//				if (intersects) {
-//					readCount++;
-//				}
-//			}
-
 			// get teh coverage at ths pos
-			short readCount = diffCoverageMap.get(ePos);
-			
-//			System.out.println("There are " + readCount + " reads at position " + ePos);
+			int readCount = columns.coverage[i];
 			
 			// this is ugly, but I'd have to do things completely 
 			// differently to avoid it
@@ -487,14 +401,30 @@ public class StrainAlignment extends Alignment {
 	}
 	
 	public boolean isUncovered(int pPos) {
-		List urs = getUnknownRegions();
-		for (int i=0; i<urs.size(); i++) {
-			SequenceSegment ur = (SequenceSegment) urs.get(i);
-			if (ur.containsPosition(pPos)) {
-				return true;
+		List<SequenceSegment> urs = getUnknownRegions();
+		if (urs!=holesSource) {
+			// unknown regions were rebuilt, refresh the sorted bounds
+			holeStarts = new int [urs.size()];
+			holeEnds = new int [urs.size()];
+			for (int i=0; i<urs.size(); i++) {
+				holeStarts[i] = urs.get(i).getStart();
+				holeEnds[i] = urs.get(i).getEnd();
+			}
+			holesSource = urs;
+		}
+
+		// holes are sorted and don't overlap, so find the last one starting at or before pPos
+		int low = 0;
+		int high = holeStarts.length;
+		while (low<high) {
+			int mid = (low+high) >>> 1;
+			if (holeStarts[mid]<=pPos) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
 		}
-		return false;
+		return low>0 && holeEnds[low-1]>=pPos;
 	}
 
 	
@@ -0,0 +1,327 @@
+/****** BEGIN LICENSE BLOCK *****
+ * This file is part of the Strainer application. To obtain or learn more 
+ * about strainer visit: 
+ *  http://bioinformatics.org/strainer
+ * 
+ * Copyright (c) 2007 The Regents of the University of California.  All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published 
+ * by the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version. You may not use this file except in 
+ * compliance with the License. 
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  
+ * USA or visit http://www.gnu.org/licenses/lgpl.html
+ *
+ * IN NO EVENT SHALL REGENTS BE LIABLE TO ANY PARTY FOR DIRECT,
+ * INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING
+ * LOST PROFITS, ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS
+ * DOCUMENTATION, EVEN IF REGENTS HAS BEEN ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ * 
+ * REGENTS SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE. THE SOFTWARE AND ACCOMPANYING
+ * DOCUMENTATION, IF ANY, PROVIDED HEREUNDER IS PROVIDED "AS
+ * IS". REGENTS HAS NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT,
+ * UPDATES, ENHANCEMENTS, OR MODIFICATIONS. 
+ *
+ * Contributor(s):
+ *  John Eppley <jmeppley@berkeley.edu>
+ * 
+ ***** END LICENSE BLOCK ***** */package amd.strainer.objects;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Running counts of the differences in a Strain's reads, grouped by position on the reference sequence. 
+ * The Strain adds and removes each Readable as it comes and goes, so building the consensus
+ * (in StrainAlignment) only has to look at positions that have diffs, not at every read.
+ * <P>
+ * For each position there are 14 counters: one for each possible base2 (a, c, g, t, n, x, or -) where
+ * the reference has a base, and another seven where the reference has a gap. Coverage is kept as
+ * a +1 at the start of each read and a -1 just after its end, so it can be summed in one pass.
+ * <P>
+ * The counts are only good as long as the reads' diffs don't change. Anything that changes diffs 
+ * in place (quality data, a new reference base, moving reads) must call invalidate(). The counts are
+ * then rebuilt from all the reads the next time they are used. They are also rebuilt if the quality
+ * threshold (which changes what getBase2() returns) has changed.
+ *
+ * @author jmeppley
+ *
+ */
+class StrainPileup {
+	/** number of counters for each base2 */
+	static final int BASES = 7;
+	/** number of counters per position: BASES where the reference has a base, then BASES where it has a gap */
+	static final int CATEGORIES = 2 * BASES;
+	/** index of the gap in each group of counters */
+	static final int GAP = 6;
+	
+	// counters plus the coverage change at each position
+	private static final int STRIDE = CATEGORIES + 1;
+	private static final int COVERAGE = CATEGORIES;
+	
+	// start small: most strains are single reads or clones when a file is loaded
+	private static final int INITIAL_SLOTS = 8;
+	
+	// open addressing hash of position -> slot (slots are never removed until clear())
+	//  The arrays are created when the first position is counted, since strains whose reads
+	//  leave their diffs on disk may never be counted.
+	private int [] keys = null;
+	private int [] slotsByKey = null;
+	private boolean [] used = null;
+	private int slotCount = 0;
+	// STRIDE ints for each slot
+	private int [] counts = null;
+	private int [] positions = null;
+	
+	private boolean valid = true;
+	private short threshold = QualifiedDifference.getQualityThreshold();
+
+	/**
+	 * @param pBase2 base from a difference
+	 * @return the counter (0 to BASES-1) for this base, or -1 if it isn't counted
+	 */
+	static int baseIndex(char pBase2) {
+		switch (Character.toLowerCase(pBase2)) {
+		case 'a': return 0;
+		case 'c': return 1;
+		case 'g': return 2;
+		case 't': return 3;
+		case 'n': return 4;
+		case 'x': return 5;
+		case '-': return GAP;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return true if the counts match the current reads and quality threshold
+	 */
+	boolean isCurrent() {
+		return valid && threshold==QualifiedDifference.getQualityThreshold();
+	}
+	
+	/**
+	 * Mark the counts as out of date. Updates are ignored until rebuild() is called.
+	 */
+	void invalidate() {
+		valid = false;
+	}
+	
+	/**
+	 * Empty the counts (eg: when the Strain is emptied). 
+	 */
+	void clear() {
+		if (used!=null) {
+			Arrays.fill(used,false);
+		}
+		slotCount = 0;
+		valid = true;
+		threshold = QualifiedDifference.getQualityThreshold();
+	}
+	
+	/**
+	 * Recount from scratch.
+	 * @param pReadables all the Readables in the Strain
+	 */
+	void rebuild(Iterator<Readable> pReadables) {
+		clear();
+		while (pReadables.hasNext()) {
+			update(pReadables.next(),1);
+		}
+	}
+	
+	/**
+	 * Count the diffs and coverage of a Readable that was added to the Strain
+	 */
+	void add(Readable pReadable) {
+		if (isCurrent() && areDiffsLoaded(pReadable)) {
+			update(pReadable,1);
+		} else {
+			// (don't load diffs just to keep the counts current: count them if they're needed)
+			valid = false;
+		}
+	}
+	
+	/**
+	 * Take back the diffs and coverage of a Readable that was removed from the Strain
+	 */
+	void remove(Readable pReadable) {
+		if (isCurrent()) {
+			update(pReadable,-1);
+		} else {
+			valid = false;
+		}
+	}
+	
+	private static boolean areDiffsLoaded(Readable pReadable) {
+		if (pReadable instanceof Clone) {
+			Clone clone = (Clone) pReadable;
+			return clone.reads[0].getAlignment().areDiffsLoaded()
+					&& clone.reads[1].getAlignment().areDiffsLoaded();
+		}
+		Alignment a = pReadable.getAlignment();
+		return a==null || a.areDiffsLoaded();
+	}
+
+	private void update(Readable pReadable, int pChange) {
+		// coverage: Clones count each Read separately
+		if (pReadable instanceof Clone) {
+			Clone clone = (Clone) pReadable;
+			addCoverage(clone.reads[0],pChange);
+			addCoverage(clone.reads[1],pChange);
+		} else {
+			addCoverage(pReadable,pChange);
+		}
+		
+		Alignment a = pReadable.getAlignment();
+		if (a==null || a.getDiffs()==null) {
+			return;
+		}
+		PackedDiffList diffs = a.getPackedDiffs();
+		for (int i = 0; i < diffs.size(); i++) {
+			int base = baseIndex(diffs.getBase2(i));
+			if (base<0) {
+				continue;
+			}
+			int category = diffs.getBase1(i)=='-' ? BASES + base : base;
+			int slot = slotOf(diffs.getPosition1(i));
+			int offset = slot * STRIDE + category;
+			counts[offset] += pChange;
+			if (counts[offset]<0) {
+				// the diffs must have changed since this read was added
+				valid = false;
+			}
+		}
+	}
+
+	private void addCoverage(Readable pReadable, int pChange) {
+		// (find the slots first: slotOf() may replace the counts array)
+		int startSlot = slotOf(pReadable.getStart());
+		counts[startSlot * STRIDE + COVERAGE] += pChange;
+		int endSlot = slotOf(pReadable.getEnd() + 1);
+		counts[endSlot * STRIDE + COVERAGE] -= pChange;
+	}
+	
+	// find (or create) the slot for this position
+	private int slotOf(int pPos) {
+		if (keys==null) {
+			keys = new int [2 * INITIAL_SLOTS];
+			slotsByKey = new int [2 * INITIAL_SLOTS];
+			used = new boolean [2 * INITIAL_SLOTS];
+			counts = new int [INITIAL_SLOTS * STRIDE];
+			positions = new int [INITIAL_SLOTS];
+		}
+		int mask = keys.length - 1;
+		int i = hash(pPos) & mask;
+		while (used[i]) {
+			if (keys[i]==pPos) {
+				return slotsByKey[i];
+			}
+			i = (i + 1) & mask;
+		}
+		
+		// new position
+		if (slotCount * STRIDE == counts.length) {
+			counts = Arrays.copyOf(counts, counts.length * 2);
+			positions = Arrays.copyOf(positions, positions.length * 2);
+		}
+		int slot = slotCount++;
+		Arrays.fill(counts, slot * STRIDE, (slot + 1) * STRIDE, 0);
+		positions[slot] = pPos;
+		used[i] = true;
+		keys[i] = pPos;
+		slotsByKey[i] = slot;
+		
+		// keep the table at most half full
+		if (2 * slotCount > keys.length) {
+			rehash(keys.length * 2);
+		}
+		return slot;
+	}
+	
+	private void rehash(int pCapacity) {
+		keys = new int [pCapacity];
+		slotsByKey = new int [pCapacity];
+		used = new boolean [pCapacity];
+		int mask = pCapacity - 1;
+		for (int slot = 0; slot < slotCount; slot++) {
+			int i = hash(positions[slot]) & mask;
+			while (used[i]) {
+				i = (i + 1) & mask;
+			}
+			used[i] = true;
+			keys[i] = positions[slot];
+			slotsByKey[i] = slot;
+		}
+	}
+	
+	private static int hash(int pPos) {
+		int h = pPos * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Make a sorted copy of the counts at positions that have at least one diff.
+	 * @return the counts and coverage at each diff position
+	 */
+	Columns getColumns() {
+		// sort slots by position
+		long [] order = new long [slotCount];
+		for (int slot = 0; slot < slotCount; slot++) {
+			order[slot] = ((long) positions[slot] << 32) | slot;
+		}
+		Arrays.sort(order);
+		
+		Columns c = new Columns(slotCount);
+		int coverage = 0;
+		for (int j = 0; j < order.length; j++) {
+			int slot = (int) order[j];
+			int offset = slot * STRIDE;
+			coverage += counts[offset + COVERAGE];
+			
+			boolean hasDiffs = false;
+			for (int k = 0; k < CATEGORIES; k++) {
+				if (counts[offset + k]!=0) {
+					hasDiffs = true;
+					break;
+				}
+			}
+			if (hasDiffs) {
+				c.positions[c.size] = positions[slot];
+				c.coverage[c.size] = coverage;
+				System.arraycopy(counts, offset, c.counts, c.size * CATEGORIES, CATEGORIES);
+				c.size++;
+			}
+		}
+		return c;
+	}
+	
+	/**
+	 * The counts at each position that has diffs, in order of position
+	 */
+	static class Columns {
+		int size = 0;
+		final int [] positions;
+		final int [] coverage;
+		// CATEGORIES counts for each position
+		final int [] counts;
+		
+		Columns(int pCapacity) {
+			positions = new int [pCapacity];
+			coverage = new int [pCapacity];
+			counts = new int [pCapacity * CATEGORIES];
+		}
+		
+		int getCount(int pIndex, int pCategory) {
+			return counts[pIndex * CATEGORIES + pCategory];
+		}
+	}
+}
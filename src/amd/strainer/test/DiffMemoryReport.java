@@ -0,0 +1,63 @@
+package amd.strainer.test;
+
+import java.io.File;
+import java.util.Iterator;
+
+import amd.strainer.file.AceFileReader;
+import amd.strainer.objects.PackedDiffList;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * Compares the heap used by read diffs stored in PackedDiffLists with the old layout (an ArrayList
+ * of Difference objects per alignment) for every contig in an ACE file.
+ * <P>
+ * Usage: DiffMemoryReport ACE_FILE
+ *
+ * @author jmeppley
+ *
+ */
+public class DiffMemoryReport {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length<1) {
+			System.err.println("Usage: DiffMemoryReport ACE_FILE");
+			System.exit(-1);
+		}
+
+		AceFileReader reader = new AceFileReader(new File(args[0]));
+		Iterator<ReferenceSequence> it = reader.getContigIterator();
+
+		long totalReads = 0;
+		long totalDiffs = 0;
+		long totalPacked = 0;
+		long totalObjects = 0;
+
+		System.out.println("contig\treads\tdiffs\tpacked_bytes\tobject_bytes");
+		while (it.hasNext()) {
+			ReferenceSequence refSeq = it.next();
+			long diffs = 0;
+			long packed = 0;
+			long objects = 0;
+			for (Read read : refSeq.reads.values()) {
+				PackedDiffList pdl = read.getAlignment().getPackedDiffs();
+				diffs += pdl.size();
+				packed += pdl.getMemoryUsage();
+				objects += PackedDiffList.getObjectListMemoryUsage(pdl);
+			}
+			System.out.println(refSeq.getName() + "\t" + refSeq.reads.size() + "\t" + diffs + "\t" + packed + "\t" + objects);
+
+			totalReads += refSeq.reads.size();
+			totalDiffs += diffs;
+			totalPacked += packed;
+			totalObjects += objects;
+		}
+
+		System.out.println("TOTAL\t" + totalReads + "\t" + totalDiffs + "\t" + totalPacked + "\t" + totalObjects);
+		if (totalPacked>0) {
+			System.out.println("Packed diffs use " +
+					Math.round(100.0 * totalPacked / totalObjects) +
+					"% of the memory of Difference object lists");
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package amd.strainer.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.Difference;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReadHolder;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
+import amd.strainer.objects.Strain;
+
+/**
+ * Changes the reads of a reference sequence and a strain in every way the
+ * API allows and checks the read position indexes against a scan of all the
+ * reads after each change.
+ *
+ * @author jmeppley
+ *
+ */
+public class TestReadIntervalIndex extends TestCase {
+	private static final int REFERENCE_LENGTH = 20000;
+
+	ReferenceSequence referenceSequence = null;
+	Strain strain = null;
+	Random random = null;
+	int nextId = 1;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		random = new Random(11);
+		referenceSequence = new ReferenceSequence();
+		referenceSequence.setName("Contig1");
+		referenceSequence.setLength(REFERENCE_LENGTH);
+		strain = new Strain();
+		strain.setId(1);
+		Read previous = null;
+		for (int i = 0; i < 500; i++) {
+			Read read = newRead();
+			referenceSequence.reads.put(read.getIdInteger(), read);
+			if (previous != null && i % 5 == 0) {
+				read.setMatepair(previous);
+			}
+			previous = read;
+		}
+		// build the indexes before changing anything
+		check();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		referenceSequence = null;
+		strain = null;
+	}
+
+	/*
+	 * Map methods
+	 */
+	public void testMapMethods() {
+		Map<Integer, Read> reads = referenceSequence.reads;
+		for (int i = 0; i < 400; i++) {
+			Integer key = randomKey();
+			switch (i % 10) {
+			case 0:
+				Read read = newRead();
+				reads.put(read.getIdInteger(), read);
+				break;
+			case 1:
+				reads.put(key, newRead(key.intValue()));
+				break;
+			case 2:
+				reads.remove(key);
+				break;
+			case 3:
+				reads.remove(key, reads.get(key));
+				break;
+			case 4:
+				reads.putIfAbsent(key, newRead(key.intValue()));
+				reads.putIfAbsent(Integer.valueOf(nextId), newRead(nextId++));
+				break;
+			case 5:
+				reads.replace(key, newRead(key.intValue()));
+				break;
+			case 6:
+				reads.replace(key, reads.get(key), newRead(key.intValue()));
+				break;
+			case 7:
+				reads.compute(key, (k, v) -> random.nextBoolean() ? null
+						: newRead(k.intValue()));
+				break;
+			case 8:
+				reads.computeIfPresent(key, (k, v) -> null);
+				reads.computeIfAbsent(key, k -> newRead(k.intValue()));
+				break;
+			default:
+				reads.merge(key, newRead(key.intValue()), (v1, v2) -> v2);
+				break;
+			}
+			check();
+		}
+
+		reads.replaceAll((k, v) -> random.nextInt(4) == 0 ? newRead(k
+				.intValue()) : v);
+		check();
+
+		reads.putAll(Collections.singletonMap(key(nextId), newRead(nextId++)));
+		check();
+
+		reads.clear();
+		check();
+	}
+
+	/*
+	 * keySet(), values() and entrySet() views
+	 */
+	public void testViews() {
+		Map<Integer, Read> reads = referenceSequence.reads;
+
+		Iterator<Integer> keys = reads.keySet().iterator();
+		while (keys.hasNext()) {
+			keys.next();
+			if (random.nextInt(10) == 0) {
+				keys.remove();
+				check();
+			}
+		}
+		reads.keySet().remove(randomKey());
+		check();
+
+		reads.values().removeIf(r -> r.getStart() < 2000);
+		check();
+		Iterator<Read> values = reads.values().iterator();
+		values.next();
+		values.remove();
+		check();
+
+		for (Map.Entry<Integer, Read> entry : reads.entrySet()) {
+			if (random.nextInt(10) == 0) {
+				entry.setValue(newRead(entry.getKey().intValue()));
+			}
+		}
+		check();
+		reads.entrySet().removeIf(e -> e.getValue().getEnd() > 18000);
+		check();
+		Map.Entry<Integer, Read> first = reads.entrySet().iterator().next();
+		reads.entrySet().remove(first);
+		check();
+
+		reads.keySet().retainAll(new ArrayList<Integer>(reads.keySet())
+				.subList(0, reads.size() / 2));
+		check();
+		reads.values().clear();
+		check();
+	}
+
+	/*
+	 * Reads moving, and being added to and removed from a strain
+	 */
+	public void testMovesAndStrains() {
+		List<Read> all = new ArrayList<Read>(referenceSequence.reads
+				.values());
+		for (int i = 0; i < 600; i++) {
+			Read read = all.get(random.nextInt(all.size()));
+			switch (i % 4) {
+			case 0:
+				read.setAlignment(newAlignment(read));
+				break;
+			case 1:
+			case 2:
+				strain.putRead(read.getIdInteger(), read);
+				break;
+			default:
+				strain.removeRead(read);
+				break;
+			}
+			check();
+		}
+
+		// a copy of the map must not change the index
+		@SuppressWarnings("unchecked")
+		Map<Integer, Read> copy = (Map<Integer, Read>) ((java.util.HashMap<Integer, Read>) referenceSequence.reads)
+				.clone();
+		copy.clear();
+		check();
+	}
+
+	private void check() {
+		for (int i = 0; i < 5; i++) {
+			int start = 1 + random.nextInt(REFERENCE_LENGTH);
+			int end = start + random.nextInt(3) * random.nextInt(1000);
+			checkRange(referenceSequence, referenceSequence.readsOverlapping(
+					start, end), start, end);
+			checkRange(strain, strain.readsOverlapping(start, end), start,
+					end);
+			checkRange(strain, strain.readsCovering(start), start, start);
+		}
+	}
+
+	private static void checkRange(ReadHolder pHolder, List<Read> pFound,
+			int pStart, int pEnd) {
+		Set<Read> expected = new HashSet<Read>();
+		Iterator<Read> it = pHolder.getReadIterator();
+		while (it.hasNext()) {
+			Read read = it.next();
+			if (read.getAlignment() != null && read.getStart() <= pEnd
+					&& read.getEnd() >= pStart) {
+				expected.add(read);
+			}
+		}
+		assertEquals(expected.size(), pFound.size());
+		assertEquals(expected, new HashSet<Read>(pFound));
+		for (int i = 1; i < pFound.size(); i++) {
+			assertTrue(pFound.get(i - 1).getStart() <= pFound.get(i)
+					.getStart());
+		}
+	}
+
+	private Integer randomKey() {
+		return key(1 + random.nextInt(nextId));
+	}
+
+	private static Integer key(int pId) {
+		return Integer.valueOf(pId);
+	}
+
+	private Read newRead() {
+		return newRead(nextId++);
+	}
+
+	private Read newRead(int pId) {
+		Read read = new Read();
+		read.setId(pId);
+		read.setName("read" + pId);
+		read.setLength(300);
+		read.setAlignment(newAlignment(read));
+		return read;
+	}
+
+	private Alignment newAlignment(Read pRead) {
+		int length = 1 + random.nextInt(500);
+		int start = 1 + random.nextInt(REFERENCE_LENGTH - length);
+		return new Alignment(new SequenceSegment(referenceSequence, start,
+				start + length - 1), new SequenceSegment(pRead, 1, length),
+				true, new ArrayList<Difference>());
+	}
+}
@@ -0,0 +1,249 @@
+package amd.strainer.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import junit.framework.TestCase;
+import amd.strainer.file.BAMFileReader;
+import amd.strainer.file.SAMFileReader;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReferenceSequence;
+
+/**
+ * Loads paired reads from SAM and BAM files and checks that mates are linked.
+ * 
+ * @author jmeppley
+ * 
+ */
+public class TestSAMFileReader extends TestCase {
+	private static final char[] BASES = { 'a', 'c', 'g', 't' };
+	private static final String REF_NAME = "Contig1";
+	private static final int REFERENCE_LENGTH = 5000;
+	private static final int READ_LENGTH = 100;
+	private static final int INSERT = 300;
+	private static final int PAIRS = 20;
+
+	ReferenceSequence referenceSequence = null;
+	File file = null;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random random = new Random(3);
+		char[] bases = new char[REFERENCE_LENGTH];
+		for (int i = 0; i < REFERENCE_LENGTH; i++) {
+			bases[i] = BASES[random.nextInt(BASES.length)];
+		}
+		referenceSequence = new ReferenceSequence();
+		referenceSequence.setName(REF_NAME);
+		referenceSequence.setId(1);
+		referenceSequence.setBases(new String(bases));
+		referenceSequence.setLength(REFERENCE_LENGTH);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		referenceSequence = null;
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	/*
+	 * Test that mates named frag/1 and frag/2 are linked
+	 */
+	public void testSAMSlashNames() throws Exception {
+		file = File.createTempFile("pairs", ".sam");
+		writeSAM(file, true);
+		new SAMFileReader(file).addReadsToReferenceSequence(referenceSequence,
+				0, 1000, null);
+		assertPaired();
+	}
+
+	/*
+	 * Test that mates with the same QNAME are linked
+	 */
+	public void testSAMSameNames() throws Exception {
+		file = File.createTempFile("pairs", ".sam");
+		writeSAM(file, false);
+		new SAMFileReader(file).addReadsToReferenceSequence(referenceSequence,
+				0, 1000, null);
+		assertPaired();
+	}
+
+	/*
+	 * Test that mates named frag/1 and frag/2 are linked in BAM files
+	 */
+	public void testBAMSlashNames() throws Exception {
+		file = File.createTempFile("pairs", ".bam");
+		writeBAM(file, true);
+		new BAMFileReader(file, 1).addReadsToReferenceSequence(
+				referenceSequence, 0, 1000, null);
+		assertPaired();
+	}
+
+	private void assertPaired() {
+		assertEquals(2 * PAIRS, referenceSequence.reads.size());
+		assertEquals(PAIRS, referenceSequence.strains.size());
+		for (Read read : referenceSequence.reads.values()) {
+			Read mate = read.getMatePair();
+			assertNotNull(read.getName(), mate);
+			assertSame(read, mate.getMatePair());
+			assertEquals(amd.strainer.file.Util.getReadNameBase(read
+					.getName()), amd.strainer.file.Util.getReadNameBase(mate
+					.getName()));
+			assertSame(read.getStrain(), mate.getStrain());
+		}
+	}
+
+	/*
+	 * Pairs of perfect matches (first end forward, last end reversed)
+	 */
+	private void writeSAM(File pFile, boolean pSlashNames) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(pFile));
+		try {
+			out.println("@SQ\tSN:" + REF_NAME + "\tLN:" + REFERENCE_LENGTH);
+			for (int i = 0; i < PAIRS; i++) {
+				for (int end = 0; end < 2; end++) {
+					int pos = getPosition(i, end);
+					out.println(getName(i, end, pSlashNames) + "\t"
+							+ getFlag(end) + "\t" + REF_NAME + "\t" + pos
+							+ "\t60\t" + READ_LENGTH + "M\t=\t"
+							+ getPosition(i, 1 - end) + "\t0\t"
+							+ getBases(pos) + "\t*");
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * The same records as writeSAM() in one BGZF block (plus the empty end
+	 * block)
+	 */
+	private void writeBAM(File pFile, boolean pSlashNames) throws IOException {
+		LittleEndianBuffer out = new LittleEndianBuffer();
+		out.putString("BAM\001");
+		out.putInt(0);
+		out.putInt(1);
+		out.putInt(REF_NAME.length() + 1);
+		out.putString(REF_NAME);
+		out.write(0);
+		out.putInt(REFERENCE_LENGTH);
+
+		for (int i = 0; i < PAIRS; i++) {
+			for (int end = 0; end < 2; end++) {
+				String name = getName(i, end, pSlashNames);
+				String bases = getBases(getPosition(i, end)).toUpperCase();
+				out.putInt(32 + name.length() + 1 + 4 + (READ_LENGTH + 1)
+						/ 2 + READ_LENGTH);
+				out.putInt(0);
+				out.putInt(getPosition(i, end) - 1);
+				out.write(name.length() + 1);
+				out.write(60);
+				out.putShort(0);
+				out.putShort(1);
+				out.putShort(getFlag(end));
+				out.putInt(READ_LENGTH);
+				out.putInt(0);
+				out.putInt(getPosition(i, 1 - end) - 1);
+				out.putInt(0);
+				out.putString(name);
+				out.write(0);
+				// 100M
+				out.putInt(READ_LENGTH << 4);
+				for (int b = 0; b < READ_LENGTH; b += 2) {
+					int code = "=ACMGRSVTWYHKDBN".indexOf(bases.charAt(b)) << 4;
+					if (b + 1 < READ_LENGTH) {
+						code |= "=ACMGRSVTWYHKDBN".indexOf(bases.charAt(b + 1));
+					}
+					out.write(code);
+				}
+				for (int b = 0; b < READ_LENGTH; b++) {
+					out.write(0xff);
+				}
+			}
+		}
+		FileOutputStream fos = new FileOutputStream(pFile);
+		try {
+			writeBGZFBlock(fos, out.toByteArray());
+			writeBGZFBlock(fos, new byte[0]);
+		} finally {
+			fos.close();
+		}
+	}
+
+	private static void writeBGZFBlock(FileOutputStream pOut, byte[] pData)
+			throws IOException {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(pData);
+		deflater.finish();
+		byte[] buffer = new byte[pData.length + 1024];
+		int compressed = deflater.deflate(buffer);
+		deflater.end();
+		CRC32 crc = new CRC32();
+		crc.update(pData);
+
+		LittleEndianBuffer out = new LittleEndianBuffer();
+		// gzip header with an extra field
+		for (int b : new int[] { 31, 139, 8, 4, 0, 0, 0, 0, 0, 255 }) {
+			out.write(b);
+		}
+		out.putShort(6);
+		// the BC field holds the block size - 1
+		out.putString("BC");
+		out.putShort(2);
+		out.putShort(18 + compressed + 8 - 1);
+		out.write(buffer, 0, compressed);
+		out.putInt((int) crc.getValue());
+		out.putInt(pData.length);
+		out.writeTo(pOut);
+	}
+
+	private static String getName(int pPair, int pEnd, boolean pSlashNames) {
+		return "frag" + pPair + (pSlashNames ? "/" + (pEnd + 1) : "");
+	}
+
+	private static int getFlag(int pEnd) {
+		// paired, mate reversed or reversed, first or last
+		return pEnd == 0 ? 0x1 | 0x20 | 0x40 : 0x1 | 0x10 | 0x80;
+	}
+
+	private static int getPosition(int pPair, int pEnd) {
+		return 1 + pPair * (REFERENCE_LENGTH - INSERT - READ_LENGTH) / PAIRS
+				+ pEnd * INSERT;
+	}
+
+	private String getBases(int pPosition) {
+		return referenceSequence.getBases().substring(pPosition - 1,
+				pPosition - 1 + READ_LENGTH);
+	}
+
+	/*
+	 * BAM and BGZF numbers are little endian
+	 */
+	private static class LittleEndianBuffer extends ByteArrayOutputStream {
+		void putShort(int pValue) {
+			write(pValue & 0xff);
+			write((pValue >> 8) & 0xff);
+		}
+
+		void putInt(int pValue) {
+			putShort(pValue & 0xffff);
+			putShort((pValue >> 16) & 0xffff);
+		}
+
+		void putString(String pValue) {
+			for (int i = 0; i < pValue.length(); i++) {
+				write(pValue.charAt(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package amd.strainer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import amd.strainer.display.util.Stacker;
+import amd.strainer.objects.AlignedSequence;
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.Clone;
+import amd.strainer.objects.Difference;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.Readable;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
+
+/**
+ * Stacks reads and clones with Stacker and with the old LegacyStacker and
+ * checks that every sequence ends up in the same row. The sequences are
+ * crowded into a short reference so that many of them touch, start and end at
+ * the same position (zero length to Stacker) or belong to two row clones.
+ *
+ * @author jmeppley
+ *
+ */
+public class TestStacker extends TestCase {
+	private static final int REFERENCE_LENGTH = 60;
+
+	ReferenceSequence referenceSequence = null;
+	Random random = null;
+	int nextId = 1;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		random = new Random(17);
+		referenceSequence = new ReferenceSequence();
+		referenceSequence.setName("Contig1");
+		referenceSequence.setLength(REFERENCE_LENGTH);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		referenceSequence = null;
+	}
+
+	/*
+	 * A few hand made cases
+	 */
+	public void testEdgeCases() {
+		List<Readable> seqs = new ArrayList<Readable>();
+		// touching reads share a row
+		seqs.add(newRead(10, 20));
+		seqs.add(newRead(20, 30));
+		seqs.add(newRead(5, 10));
+		// zero length reads on the ends and in the middle of another read
+		seqs.add(newRead(20, 20));
+		seqs.add(newRead(20, 20));
+		seqs.add(newRead(25, 25));
+		seqs.add(newRead(30, 30));
+		// two row clones (the reads overlap)
+		seqs.add(newClone(12, 18, 15, 25));
+		seqs.add(newClone(22, 22, 22, 22));
+		// a one row clone touching both neighbours
+		seqs.add(newClone(18, 20, 25, 28));
+		seqs.add(newRead(28, 40));
+		seqs.add(newRead(12, 18));
+		checkAll(seqs);
+	}
+
+	/*
+	 * Lots of random lists
+	 */
+	public void testRandom() {
+		for (int i = 0; i < 300; i++) {
+			List<Readable> seqs = new ArrayList<Readable>();
+			int count = 1 + random.nextInt(60);
+			for (int j = 0; j < count; j++) {
+				if (random.nextInt(3) == 0) {
+					int start1 = randomStart();
+					int start2 = random.nextBoolean() ? start1
+							+ random.nextInt(10) : randomStart();
+					seqs.add(newClone(start1, randomEnd(start1), start2,
+							randomEnd(start2)));
+				} else {
+					int start = randomStart();
+					seqs.add(newRead(start, randomEnd(start)));
+				}
+			}
+			checkAll(seqs);
+		}
+	}
+
+	/*
+	 * Compare each stacking method (compact, strict and the mix used for
+	 * reads within a strain) on the list, and the Placement versions used by
+	 * the display.
+	 */
+	private void checkAll(List<Readable> pSeqs) {
+		int rows = LegacyStacker.stackPositions(pSeqs);
+		int[] expected = getRows(pSeqs);
+		scramble(pSeqs);
+		assertEquals(rows, Stacker.stackPositions(pSeqs));
+		assertRows(expected, pSeqs);
+		List<Stacker.Placement> placements = getPlacements(pSeqs);
+		assertEquals(rows, Stacker.stackPlacements(placements));
+		assertPlacementRows(expected, placements);
+
+		rows = LegacyStacker.stackPositionsStrictly(pSeqs);
+		expected = getRows(pSeqs);
+		scramble(pSeqs);
+		assertEquals(rows, Stacker.stackPositionsStrictly(pSeqs));
+		assertRows(expected, pSeqs);
+		placements = getPlacements(pSeqs);
+		assertEquals(rows, Stacker.stackPlacementsStrictly(placements));
+		assertPlacementRows(expected, placements);
+
+		rows = LegacyStacker.stackReadables(pSeqs);
+		expected = getRows(pSeqs);
+		scramble(pSeqs);
+		assertEquals(rows, Stacker.stackReadables(pSeqs));
+		assertRows(expected, pSeqs);
+		placements = getPlacements(pSeqs);
+		assertEquals(rows, Stacker.stackReadablePlacements(placements));
+		assertPlacementRows(expected, placements);
+	}
+
+	private static int[] getRows(List<? extends AlignedSequence> pSeqs) {
+		int[] rows = new int[pSeqs.size()];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = pSeqs.get(i).getDisplayGeometry().getRow();
+		}
+		return rows;
+	}
+
+	// so rows left over from the last stacking can't pass for new ones
+	private void scramble(List<? extends AlignedSequence> pSeqs) {
+		for (AlignedSequence seq : pSeqs) {
+			seq.getDisplayGeometry().setRow(random.nextInt(100));
+		}
+	}
+
+	private List<Stacker.Placement> getPlacements(
+			List<? extends AlignedSequence> pSeqs) {
+		List<Stacker.Placement> placements = new ArrayList<Stacker.Placement>();
+		for (AlignedSequence seq : pSeqs) {
+			Stacker.Placement placement = new Stacker.Placement(seq);
+			placement.row = random.nextInt(100);
+			placements.add(placement);
+		}
+		return placements;
+	}
+
+	private static void assertRows(int[] pExpected,
+			List<? extends AlignedSequence> pSeqs) {
+		for (int i = 0; i < pExpected.length; i++) {
+			assertEquals("row of " + pSeqs.get(i), pExpected[i], pSeqs.get(i)
+					.getDisplayGeometry().getRow());
+		}
+	}
+
+	private static void assertPlacementRows(int[] pExpected,
+			List<Stacker.Placement> pPlacements) {
+		for (int i = 0; i < pExpected.length; i++) {
+			assertEquals("row of placement " + i, pExpected[i], pPlacements
+					.get(i).row);
+		}
+	}
+
+	private int randomStart() {
+		return 1 + random.nextInt(REFERENCE_LENGTH - 10);
+	}
+
+	// a quarter of the reads start and end at the same position
+	private int randomEnd(int pStart) {
+		return random.nextInt(4) == 0 ? pStart : pStart + random.nextInt(10);
+	}
+
+	private Read newRead(int pStart, int pEnd) {
+		Read read = new Read();
+		read.setId(nextId);
+		read.setName("read" + nextId++);
+		read.setLength(pEnd - pStart + 1);
+		read.setAlignment(new Alignment(new SequenceSegment(
+				referenceSequence, pStart, pEnd), new SequenceSegment(read, 1,
+				pEnd - pStart + 1), true, new ArrayList<Difference>()));
+		read.initializeGraphics();
+		return read;
+	}
+
+	private Clone newClone(int pStart1, int pEnd1, int pStart2, int pEnd2) {
+		Read read1 = newRead(pStart1, pEnd1);
+		Read read2 = newRead(pStart2, pEnd2);
+		read1.setMatepair(read2);
+		Clone clone = new Clone(-read2.getId(), read1, read2);
+		clone.initializeGraphics();
+		return clone;
+	}
+}
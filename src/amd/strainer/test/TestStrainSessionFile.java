@@ -0,0 +1,292 @@
+package amd.strainer.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import amd.strainer.file.ReadsLoader;
+import amd.strainer.file.StrainSessionFile;
+import amd.strainer.objects.Alignment;
+import amd.strainer.objects.Difference;
+import amd.strainer.objects.PackedDiffList;
+import amd.strainer.objects.QualifiedDifference;
+import amd.strainer.objects.Read;
+import amd.strainer.objects.ReferenceSequence;
+import amd.strainer.objects.SequenceSegment;
+import amd.strainer.objects.Strain;
+
+/**
+ * Saves random strains as XML and as a session file and checks that both
+ * load into the same objects.
+ *
+ * @author jmeppley
+ *
+ */
+public class TestStrainSessionFile extends TestCase {
+	private static final char[] BASES = { 'a', 'c', 'g', 't' };
+	private static final int REFERENCE_LENGTH = 5000;
+
+	ReferenceSequence referenceSequence = null;
+	File xmlFile = null;
+	File sessionFile = null;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		referenceSequence = generate(new Random(7), 1500);
+		xmlFile = File.createTempFile("strains", ".xml");
+		sessionFile = File.createTempFile("strains",
+				StrainSessionFile.EXTENSION);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		referenceSequence = null;
+		xmlFile.delete();
+		sessionFile.delete();
+	}
+
+	/*
+	 * Test that the session file loads the same as XML
+	 */
+	public void testRoundTripAgainstXML() throws Exception {
+		amd.strainer.file.Util.writeStrainsToXML(referenceSequence, xmlFile,
+				"test", true);
+		StrainSessionFile.write(referenceSequence, sessionFile, "test");
+		assertTrue(StrainSessionFile.isSessionFile(sessionFile));
+		assertFalse(StrainSessionFile.isSessionFile(xmlFile));
+
+		ReferenceSequence fromXML = createEmptyReference();
+		ReadsLoader.addStrainedReadsFromFileToReferenceSequence(fromXML,
+				xmlFile);
+		ReferenceSequence fromSession = createEmptyReference();
+		ReadsLoader.addStrainedReadsFromFileToReferenceSequence(fromSession,
+				sessionFile);
+
+		assertEquals(referenceSequence.reads.size(), fromSession.reads.size());
+		assertSameStrains(fromXML, fromSession);
+	}
+
+	/*
+	 * Test that uncompressed blocks load the same as compressed ones
+	 */
+	public void testUncompressed() throws Exception {
+		StrainSessionFile.write(referenceSequence, sessionFile, null, true);
+		ReferenceSequence compressed = createEmptyReference();
+		StrainSessionFile.read(compressed, sessionFile, null);
+		long compressedLength = sessionFile.length();
+
+		StrainSessionFile.write(referenceSequence, sessionFile, null, false);
+		ReferenceSequence uncompressed = createEmptyReference();
+		StrainSessionFile.read(uncompressed, sessionFile, null);
+
+		assertTrue(compressedLength < sessionFile.length());
+		assertSameStrains(compressed, uncompressed);
+	}
+
+	/*
+	 * Test that diffs left in the file (with a cache too small to hold them
+	 * all) match the diffs loaded up front
+	 */
+	public void testLazyDiffs() throws Exception {
+		// enough reads for several blocks
+		referenceSequence = generate(new Random(11), 10000);
+		StrainSessionFile.write(referenceSequence, sessionFile, null);
+		ReferenceSequence loaded = createEmptyReference();
+		StrainSessionFile.read(loaded, sessionFile, null, 0);
+		ReferenceSequence lazy = createEmptyReference();
+		StrainSessionFile.read(lazy, sessionFile, null, 1000);
+
+		for (Read read : lazy.reads.values()) {
+			assertNotSame(Alignment.class, read.getAlignment().getClass());
+		}
+		assertSameStrains(loaded, lazy);
+		// twice, so blocks are read back from the file
+		assertSameStrains(loaded, lazy);
+	}
+
+	/*
+	 * Test that diffs changed in place are not lost when they are dropped
+	 * from the cache
+	 */
+	public void testLazyDiffsKeepChanges() throws Exception {
+		referenceSequence = generate(new Random(11), 10000);
+		StrainSessionFile.write(referenceSequence, sessionFile, null);
+		ReferenceSequence lazy = createEmptyReference();
+		StrainSessionFile.read(lazy, sessionFile, null, 1000);
+
+		Read changed = null;
+		for (Read read : lazy.reads.values()) {
+			if (read.getAlignment().getDiffs().size() > 0) {
+				changed = read;
+				break;
+			}
+		}
+		changed.getAlignment().getPackedDiffs().setBase1(0, 'x');
+
+		// use all the other diffs, so the changed block is dropped
+		for (Read read : lazy.reads.values()) {
+			read.getAlignment().getDiffs().size();
+		}
+		assertEquals('x', changed.getAlignment().getPackedDiffs().getBase1(0));
+
+		// the save goes through the cache too
+		StrainSessionFile.write(lazy, sessionFile, null);
+		ReferenceSequence reloaded = createEmptyReference();
+		StrainSessionFile.read(reloaded, sessionFile, null, 0);
+		assertSameStrains(lazy, reloaded);
+	}
+
+	private ReferenceSequence createEmptyReference() {
+		ReferenceSequence refSeq = new ReferenceSequence();
+		refSeq.setName(referenceSequence.getName());
+		refSeq.setId(referenceSequence.getId());
+		refSeq.setBases(referenceSequence.getBases());
+		refSeq.setLength(referenceSequence.getLength());
+		return refSeq;
+	}
+
+	/*
+	 * Random reads with SNPs, gaps, qualities and mate pairs grouped into
+	 * strains of a few reads each
+	 */
+	private static ReferenceSequence generate(Random pRandom, int pReadCount) {
+		ReferenceSequence refSeq = new ReferenceSequence();
+		refSeq.setName("Contig1");
+		refSeq.setId(3);
+		char[] refBases = new char[REFERENCE_LENGTH];
+		for (int i = 0; i < REFERENCE_LENGTH; i++) {
+			refBases[i] = BASES[pRandom.nextInt(BASES.length)];
+		}
+		refSeq.setBases(new String(refBases));
+		refSeq.setLength(REFERENCE_LENGTH);
+
+		List<Read> reads = new ArrayList<Read>();
+		for (int r = 1; r <= pReadCount; r++) {
+			int readLength = 200 + pRandom.nextInt(300);
+			int start = 1 + pRandom.nextInt(REFERENCE_LENGTH - readLength);
+			List<Difference> diffs = new ArrayList<Difference>();
+			int pos1 = start;
+			int pos2 = 1;
+			while (pos2 <= readLength && pos1 < REFERENCE_LENGTH) {
+				double roll = pRandom.nextDouble();
+				char refBase = refBases[pos1 - 1];
+				if (roll < 0.005) {
+					// read has a gap
+					diffs.add(new Difference(pos1, refBase, pos2, '-'));
+					pos1++;
+				} else if (roll < 0.01) {
+					// reference has a gap
+					diffs.add(new Difference(pos1, '-', pos2, BASES[pRandom
+							.nextInt(BASES.length)]));
+					pos2++;
+				} else {
+					if (roll < 0.03) {
+						char base = BASES[(new String(BASES).indexOf(refBase) + 1) % 4];
+						if (pRandom.nextBoolean()) {
+							diffs.add(new QualifiedDifference(pos1, refBase,
+									pos2, base, (short) pRandom.nextInt(60)));
+						} else {
+							diffs.add(new Difference(pos1, refBase, pos2,
+									base));
+						}
+					}
+					pos1++;
+					pos2++;
+				}
+			}
+
+			Read read = new Read();
+			read.setId(r);
+			read.setName("read" + r + ".b1");
+			read.setLength(readLength);
+			read.setBadClone(pRandom.nextInt(10) == 0);
+			if (pRandom.nextInt(20) == 0) {
+				read.toggleRecombinant();
+			}
+			Alignment a = new Alignment(new SequenceSegment(refSeq, start,
+					pos1 - 1), new SequenceSegment(read, 1, readLength),
+					pRandom.nextBoolean(), diffs);
+			a.score = pRandom.nextInt(1000) - 1;
+			read.setAlignment(a);
+			if (r % 2 == 0 && pRandom.nextInt(3) > 0) {
+				read.setMatepair(reads.get(r - 2));
+			}
+			reads.add(read);
+			refSeq.reads.put(read.getIdInteger(), read);
+		}
+		refSeq.hasQualityData = true;
+
+		// strains of up to 6 reads (mates usually end up together)
+		int strainId = 0;
+		Iterator<Read> rit = reads.iterator();
+		while (rit.hasNext()) {
+			Strain strain = new Strain();
+			strain.setId(++strainId);
+			int size = 1 + pRandom.nextInt(6);
+			for (int i = 0; i < size && rit.hasNext(); i++) {
+				Read read = rit.next();
+				strain.putRead(read.getIdInteger(), read);
+			}
+			strain.setAlignmentFromReads();
+			refSeq.putStrain(strain.getIdInteger(), strain);
+		}
+		return refSeq;
+	}
+
+	private static void assertSameStrains(ReferenceSequence pExpected,
+			ReferenceSequence pActual) {
+		assertEquals(pExpected.hasQualityData, pActual.hasQualityData);
+		assertEquals(pExpected.maxStrainId, pActual.maxStrainId);
+		assertEquals(pExpected.strains.size(), pActual.strains.size());
+		for (Strain expected : pExpected.strains.values()) {
+			Strain actual = pActual.strains.get(expected.getIdInteger());
+			assertNotNull(actual);
+			assertEquals(expected.getSize(), actual.getSize());
+			assertEquals(expected.isOpen(), actual.isOpen());
+			assertEquals(expected.getStart(), actual.getStart());
+			assertEquals(expected.getEnd(), actual.getEnd());
+		}
+
+		assertEquals(pExpected.reads.size(), pActual.reads.size());
+		for (Read expected : pExpected.reads.values()) {
+			Read actual = pActual.reads.get(expected.getIdInteger());
+			assertNotNull(actual);
+			assertEquals(expected.getName(), actual.getName());
+			assertEquals(expected.getLength(), actual.getLength());
+			assertEquals(expected.isBadClone(), actual.isBadClone());
+			assertEquals(expected.isRecombinant(), actual.isRecombinant());
+			assertEquals(expected.getStrain().getId(), actual.getStrain()
+					.getId());
+			if (expected.getMatePair() == null) {
+				assertNull(actual.getMatePair());
+			} else {
+				assertEquals(expected.getMatePair().getId(), actual
+						.getMatePair().getId());
+			}
+
+			Alignment ea = expected.getAlignment();
+			Alignment aa = actual.getAlignment();
+			assertEquals(ea.getStart(), aa.getStart());
+			assertEquals(ea.getEnd(), aa.getEnd());
+			assertEquals(ea.isForward(), aa.isForward());
+			assertEquals(ea.score, aa.score);
+			assertEquals(ea.getIdentity(), aa.getIdentity(), 0.0);
+			assertEquals(ea.getSequenceSegment2().getEnd(), aa
+					.getSequenceSegment2().getEnd());
+
+			PackedDiffList ed = ea.getPackedDiffs();
+			PackedDiffList ad = aa.getPackedDiffs();
+			assertEquals(ed.size(), ad.size());
+			for (int i = 0; i < ed.size(); i++) {
+				assertEquals(ed.getPosition1(i), ad.getPosition1(i));
+				assertEquals(ed.getPosition2(i), ad.getPosition2(i));
+				assertEquals(ed.getBase1(i), ad.getBase1(i));
+				assertEquals(ed.getBase2Actual(i), ad.getBase2Actual(i));
+				assertEquals(ed.getQuality(i), ad.getQuality(i));
+			}
+		}
+	}
+}
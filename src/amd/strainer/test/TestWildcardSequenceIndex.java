@@ -0,0 +1,150 @@
+package amd.strainer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import amd.strainer.algs.WildcardSequenceIndex;
+
+/**
+ * Checks the duplicate lookup used for amino acid strain sequences against a
+ * scan of every sequence added so far. 'X' (in either sequence) matches
+ * anything and case is ignored, but 'N' (asparagine) is not a wildcard.
+ *
+ * @author jmeppley
+ *
+ */
+public class TestWildcardSequenceIndex extends TestCase {
+	private static final String RESIDUES = "ACNXacnx";
+	private static final String BASES = "acgtnACGTN";
+
+	Random random = null;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		random = new Random(5);
+	}
+
+	public void testExamples() {
+		WildcardSequenceIndex<String> index = new WildcardSequenceIndex<String>();
+		assertNull(index.findMatch("KLM"));
+		index.add("KLM", "first");
+		assertEquals("first", index.findMatch("KLM"));
+		assertEquals("first", index.findMatch("klm"));
+		// wildcard in the query
+		assertEquals("first", index.findMatch("KxM"));
+		assertEquals("first", index.findMatch("XXX"));
+		assertNull(index.findMatch("KLN"));
+		// different lengths never match
+		assertNull(index.findMatch("KL"));
+		assertNull(index.findMatch("KLMX"));
+
+		// wildcard in the stored sequence
+		index.add("xLN", "second");
+		assertEquals("second", index.findMatch("KLN"));
+		assertEquals("second", index.findMatch("kln"));
+		// the earliest match wins
+		assertEquals("first", index.findMatch("KLX"));
+		index.add("KLX", "third");
+		assertEquals("first", index.findMatch("KLM"));
+		assertEquals("third", index.findMatch("KLQ"));
+		// a duplicate keeps the old value
+		index.add("klm", "fourth");
+		assertEquals("first", index.findMatch("KLM"));
+
+		// N is not a wildcard
+		assertNull(index.findMatch("NNN"));
+		assertNull(index.findMatch("KNM"));
+
+		assertNull(index.findMatch(""));
+		index.add("", "empty");
+		assertEquals("empty", index.findMatch(""));
+	}
+
+	/*
+	 * Random short sequences (so there are lots of matches), added only if
+	 * they don't match anything yet, as in DefaultStrainerResult
+	 */
+	public void testRandomSequences() {
+		List<String> sequences = new ArrayList<String>();
+		for (int i = 0; i < 3000; i++) {
+			int length = random.nextInt(7);
+			StringBuffer sequence = new StringBuffer(length);
+			for (int j = 0; j < length; j++) {
+				sequence.append(RESIDUES.charAt(random
+						.nextInt(RESIDUES.length())));
+			}
+			sequences.add(sequence.toString());
+		}
+		check(sequences);
+	}
+
+	/*
+	 * Uncovered bases ('n') in either strain's DNA come out as X
+	 */
+	public void testTranslatedSequences() throws Exception {
+		List<String> sequences = new ArrayList<String>();
+		int wildcards = 0;
+		for (int i = 0; i < 2000; i++) {
+			int length = 3 * (1 + random.nextInt(3));
+			StringBuffer dna = new StringBuffer(length);
+			for (int j = 0; j < length; j++) {
+				// mostly a and c, so different strains often agree
+				dna.append(BASES.charAt(random.nextInt(4) == 0 ? random
+						.nextInt(BASES.length()) : 5 * random.nextInt(2)
+						+ random.nextInt(2)));
+			}
+			String protein = amd.strainer.algs.Util.getProteinSequence(dna
+					.toString(), random.nextBoolean());
+			if (protein.indexOf('X') >= 0) {
+				wildcards++;
+			}
+			sequences.add(protein);
+		}
+		assertTrue(wildcards > 100);
+		check(sequences);
+	}
+
+	private static void check(List<String> pSequences) {
+		WildcardSequenceIndex<Integer> index = new WildcardSequenceIndex<Integer>();
+		List<String> added = new ArrayList<String>();
+		for (String sequence : pSequences) {
+			Integer expected = scan(added, sequence);
+			assertEquals(sequence, expected, index.findMatch(sequence));
+			if (expected == null) {
+				index.add(sequence, Integer.valueOf(added.size()));
+				added.add(sequence);
+			}
+		}
+		// and look everything up again once all are in
+		for (String sequence : pSequences) {
+			assertEquals(sequence, scan(added, sequence), index
+					.findMatch(sequence));
+		}
+	}
+
+	// position in pAdded of the first sequence that matches pSequence
+	private static Integer scan(List<String> pAdded, String pSequence) {
+		for (int i = 0; i < pAdded.size(); i++) {
+			if (matches(pAdded.get(i), pSequence)) {
+				return Integer.valueOf(i);
+			}
+		}
+		return null;
+	}
+
+	private static boolean matches(String pSeq1, String pSeq2) {
+		if (pSeq1.length() != pSeq2.length()) {
+			return false;
+		}
+		for (int i = 0; i < pSeq1.length(); i++) {
+			char c1 = Character.toUpperCase(pSeq1.charAt(i));
+			char c2 = Character.toUpperCase(pSeq2.charAt(i));
+			if (c1 != c2 && c1 != 'X' && c2 != 'X') {
+				return false;
+			}
+		}
+		return true;
+	}
+}